@@ -0,0 +1,372 @@
+/*
+ * Copyright (C) 2015  Andrew Gunnerson <andrewgunnerson@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.chenxiaolong.dualbootpatcher.socket;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.github.chenxiaolong.dualbootpatcher.socket.MbtoolSocket.Lane;
+import com.github.chenxiaolong.dualbootpatcher.socket.MbtoolStats.Histogram;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import mbtool.daemon.v3.FileOpenFlag;
+import mbtool.daemon.v3.FileSeekWhence;
+
+/**
+ * Drives concurrent request mixes through {@link MbtoolSocket} and reports throughput and latency.
+ *
+ * This is meant to be run against {@link MbtoolStandInDaemon} (see
+ * {@link #runAgainstStandIn(Context, int, long, long, long, double)}) so that changes to the client
+ * can be compared on an emulator under the same conditions. It works against the real daemon too.
+ */
+public class MbtoolLoadTest {
+    private static final String TAG = MbtoolLoadTest.class.getSimpleName();
+
+    private static final String STAND_IN_ADDRESS = "mbtool.daemon.standin";
+
+    private static final int DATA_FILE_SIZE = 4 * 1024 * 1024;
+    private static final int TREE_FILES = 256;
+    private static final int TREE_FILE_SIZE = 4096;
+    private static final int READ_SIZE = 64 * 1024;
+
+    public enum Workload {
+        /** Repeated fileStat() on an open file */
+        STAT_STORM,
+        /** Random 64 KiB fileSeek() + fileRead() pairs */
+        READ_STORM,
+        /** pathCopy() of a 4 MiB file in the bulk lane */
+        COPY,
+        /** pathGetDirectorySize() of a directory with 256 files */
+        DIRECTORY_SIZE,
+        /** pathCopy() of a 4 KiB file and pathGetDirectorySize() in one {@link MbtoolBatch} */
+        BATCH,
+        /**
+         * {@link MbtoolBatch}es whose middle request fails. Counts as a failure unless the results
+         * come back in order and the failure only affects its own entry (or, with stop-on-error,
+         * the entries after it).
+         */
+        BATCH_ISOLATION
+    }
+
+    private final Context mContext;
+    private final File mWorkDir;
+    private final File mDataFile;
+    private final File mTreeDir;
+
+    public static class Result {
+        public long elapsedMs;
+        public final long[] operations = new long[Workload.values().length];
+        public final long[] failures = new long[Workload.values().length];
+        /** Latency of each workload's operations in microseconds */
+        public final Histogram[] latency = new Histogram[Workload.values().length];
+
+        Result() {
+            for (int i = 0; i < latency.length; i++) {
+                latency[i] = new Histogram();
+            }
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format(Locale.US, "%-16s %8s %6s %10s %9s %9s %9s\n",
+                    "workload", "ops", "fail", "ops/s", "p50_us", "p99_us", "max_us"));
+
+            for (Workload w : Workload.values()) {
+                int i = w.ordinal();
+                if (operations[i] == 0 && failures[i] == 0) {
+                    continue;
+                }
+                sb.append(String.format(Locale.US, "%-16s %8d %6d %10.1f %9d %9d %9d\n",
+                        w.name(), operations[i], failures[i],
+                        elapsedMs > 0 ? operations[i] * 1000.0 / elapsedMs : 0.0,
+                        latency[i].getPercentile(50), latency[i].getPercentile(99),
+                        latency[i].getMax()));
+            }
+
+            sb.append("\nPer request type:\n");
+            sb.append(MbtoolStats.dump());
+
+            return sb.toString();
+        }
+    }
+
+    /**
+     * @param context Application context
+     * @param workDir Directory for the test files. Must be accessible by the daemon.
+     */
+    public MbtoolLoadTest(Context context, File workDir) {
+        mContext = context;
+        mWorkDir = workDir;
+        mDataFile = new File(workDir, "data.bin");
+        mTreeDir = new File(workDir, "tree");
+    }
+
+    private void createTestFiles() throws IOException {
+        if (!mTreeDir.isDirectory() && !mTreeDir.mkdirs()) {
+            throw new IOException("Failed to create " + mTreeDir);
+        }
+
+        Random random = new Random(0);
+
+        byte[] data = new byte[DATA_FILE_SIZE];
+        random.nextBytes(data);
+        writeFile(mDataFile, data);
+
+        byte[] small = new byte[TREE_FILE_SIZE];
+        for (int i = 0; i < TREE_FILES; i++) {
+            random.nextBytes(small);
+            writeFile(new File(mTreeDir, "file" + i), small);
+        }
+    }
+
+    private static void writeFile(File file, byte[] data) throws IOException {
+        FileOutputStream fos = null;
+        try {
+            fos = new FileOutputStream(file);
+            fos.write(data);
+        } finally {
+            IOUtils.closeQuietly(fos);
+        }
+    }
+
+    /**
+     * Run a request mix
+     *
+     * Thread {@code i} runs workload {@code mix[i % mix.length]} in a loop until the duration has
+     * passed. The statistics in {@link MbtoolStats} are reset beforehand.
+     *
+     * @param mix Workloads to run
+     * @param threads Number of threads
+     * @param durationMs How long to run for
+     * @return Results
+     * @throws IOException If the test files could not be created
+     */
+    public Result run(final Workload[] mix, int threads, long durationMs) throws IOException {
+        createTestFiles();
+        MbtoolStats.reset();
+
+        final Result result = new Result();
+        final AtomicLong[] operations = new AtomicLong[Workload.values().length];
+        final AtomicLong[] failures = new AtomicLong[Workload.values().length];
+        for (int i = 0; i < operations.length; i++) {
+            operations[i] = new AtomicLong();
+            failures[i] = new AtomicLong();
+        }
+
+        final long start = System.nanoTime();
+        final long deadline = start + durationMs * 1000000L;
+
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            final Workload workload = mix[i % mix.length];
+            final int index = i;
+
+            workers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Worker worker = new Worker(workload, index);
+                    int w = workload.ordinal();
+
+                    while (System.nanoTime() < deadline) {
+                        long opStart = System.nanoTime();
+                        boolean success;
+                        try {
+                            success = worker.runOnce();
+                        } catch (IOException e) {
+                            success = false;
+                        }
+                        long opEnd = System.nanoTime();
+
+                        if (success) {
+                            operations[w].incrementAndGet();
+                            result.latency[w].record((opEnd - opStart) / 1000);
+                        } else {
+                            failures[w].incrementAndGet();
+                            // The worker's file is gone if the connection was lost
+                            worker.reset();
+                        }
+                    }
+
+                    worker.cleanUp();
+                }
+            }, TAG + "-" + i);
+            workers[i].start();
+        }
+
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        result.elapsedMs = (System.nanoTime() - start) / 1000000L;
+        for (int i = 0; i < operations.length; i++) {
+            result.operations[i] = operations[i].get();
+            result.failures[i] = failures[i].get();
+        }
+
+        return result;
+    }
+
+    private class Worker {
+        private final Workload mWorkload;
+        private final MbtoolSocket mSocket;
+        private final File mCopyTarget;
+        private final Random mRandom;
+        private final byte[] mBuf = new byte[READ_SIZE];
+        private int mFileId = -1;
+
+        Worker(Workload workload, int index) {
+            mWorkload = workload;
+            mSocket = MbtoolSocket.getInstance(workload == Workload.COPY
+                    ? Lane.BULK : Lane.INTERACTIVE);
+            mCopyTarget = new File(mWorkDir, "copy" + index + ".bin");
+            mRandom = new Random(index);
+        }
+
+        boolean runOnce() throws IOException {
+            switch (mWorkload) {
+            case STAT_STORM:
+                return openFile() && mSocket.fileStat(mContext, mFileId) != null;
+            case READ_STORM:
+                if (!openFile()) {
+                    return false;
+                }
+                long offset = mRandom.nextInt(DATA_FILE_SIZE / READ_SIZE) * (long) READ_SIZE;
+                return mSocket.fileSeek(mContext, mFileId, offset, FileSeekWhence.SEEK_SET) >= 0
+                        && mSocket.fileRead(mContext, mFileId, mBuf, 0, mBuf.length) >= 0;
+            case COPY:
+                return mSocket.pathCopy(mContext, mDataFile.getAbsolutePath(),
+                        mCopyTarget.getAbsolutePath());
+            case DIRECTORY_SIZE:
+                return mSocket.pathGetDirectorySize(
+                        mContext, mTreeDir.getAbsolutePath(), null) >= 0;
+            case BATCH:
+                MbtoolBatch.Results results = mSocket.newBatch()
+                        .stopOnError(true)
+                        .pathCopy(new File(mTreeDir, "file0").getAbsolutePath(),
+                                mCopyTarget.getAbsolutePath())
+                        .pathGetDirectorySize(mTreeDir.getAbsolutePath(), null)
+                        .execute(mContext);
+                return results.getBoolean(0) && results.getLong(1) >= 0;
+            case BATCH_ISOLATION:
+                return checkBatchIsolation(false) && checkBatchIsolation(true);
+            default:
+                throw new IllegalStateException("Invalid workload: " + mWorkload);
+            }
+        }
+
+        private boolean checkBatchIsolation(boolean stopOnError) throws IOException {
+            // The two sizes differ so that swapped results are noticed
+            MbtoolBatch.Results results = mSocket.newBatch()
+                    .stopOnError(stopOnError)
+                    .pathGetDirectorySize(mTreeDir.getAbsolutePath(), null)
+                    .pathCopy(new File(mWorkDir, "missing").getAbsolutePath(),
+                            mCopyTarget.getAbsolutePath())
+                    .pathGetDirectorySize(mTreeDir.getAbsolutePath(), new String[] { "file0" })
+                    .execute(mContext);
+
+            long fullSize = (long) TREE_FILES * TREE_FILE_SIZE;
+            boolean ok = results.size() == 3
+                    && results.getLong(0) == fullSize
+                    && results.wasExecuted(1) && !results.getBoolean(1)
+                    && results.wasExecuted(2) != stopOnError
+                    && (stopOnError || results.getLong(2) == fullSize - TREE_FILE_SIZE);
+            if (!ok) {
+                Log.w(TAG, String.format(Locale.US, "Unexpected batch results"
+                        + " (stopOnError=%b): executed=%b,%b,%b values=%d,%b,%d",
+                        stopOnError, results.wasExecuted(0), results.wasExecuted(1),
+                        results.wasExecuted(2), results.getLong(0), results.getBoolean(1),
+                        results.getLong(2)));
+            }
+            return ok;
+        }
+
+        private boolean openFile() throws IOException {
+            if (mFileId < 0) {
+                mFileId = mSocket.fileOpen(mContext, mDataFile.getAbsolutePath(),
+                        new short[] { FileOpenFlag.RDONLY }, 0);
+            }
+            return mFileId >= 0;
+        }
+
+        void reset() {
+            mFileId = -1;
+        }
+
+        void cleanUp() {
+            if (mFileId >= 0) {
+                try {
+                    mSocket.fileClose(mContext, mFileId);
+                } catch (IOException e) {
+                    // Ignore
+                }
+            }
+            mCopyTarget.delete();
+        }
+    }
+
+    /**
+     * Run every workload against a fresh {@link MbtoolStandInDaemon}
+     *
+     * The client is pointed back at mbtool afterwards.
+     *
+     * @param context Application context
+     * @param threads Number of threads
+     * @param durationMs How long to run for
+     * @param latencyMs Latency to inject into every response
+     * @param bandwidth Bandwidth limit per connection in bytes per second or 0 for no limit
+     * @param failureRate Probability of a request dropping the connection
+     * @return Results
+     * @throws IOException If the stand-in daemon could not be started
+     */
+    public static Result runAgainstStandIn(Context context, int threads, long durationMs,
+                                           long latencyMs, long bandwidth, double failureRate)
+            throws IOException {
+        MbtoolStandInDaemon daemon = new MbtoolStandInDaemon(STAND_IN_ADDRESS);
+        daemon.setLatency(latencyMs);
+        daemon.setBandwidth(bandwidth);
+        daemon.setFailureRate(failureRate);
+        daemon.start();
+
+        MbtoolSocket.setSocketAddress(STAND_IN_ADDRESS);
+
+        try {
+            MbtoolLoadTest test = new MbtoolLoadTest(context,
+                    new File(context.getCacheDir(), "mbtool-load-test"));
+            Result result = test.run(Workload.values(), threads, durationMs);
+            Log.d(TAG, "Load test results:\n" + result);
+            return result;
+        } finally {
+            MbtoolSocket.setSocketAddress(null);
+            daemon.stop();
+        }
+    }
+}
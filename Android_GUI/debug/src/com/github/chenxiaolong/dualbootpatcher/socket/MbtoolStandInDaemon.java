@@ -0,0 +1,908 @@
+/*
+ * Copyright (C) 2015  Andrew Gunnerson <andrewgunnerson@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.chenxiaolong.dualbootpatcher.socket;
+
+import android.net.LocalServerSocket;
+import android.net.LocalSocket;
+import android.net.LocalSocketAddress;
+import android.net.LocalSocketAddress.Namespace;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.google.flatbuffers.FlatBufferBuilder;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.Deflater;
+
+import mbtool.daemon.v3.CompressionType;
+import mbtool.daemon.v3.FileCloseRequest;
+import mbtool.daemon.v3.FileCloseResponse;
+import mbtool.daemon.v3.FileOpenFlag;
+import mbtool.daemon.v3.FileOpenRequest;
+import mbtool.daemon.v3.FileOpenResponse;
+import mbtool.daemon.v3.FileReadRequest;
+import mbtool.daemon.v3.FileReadResponse;
+import mbtool.daemon.v3.FileSeekRequest;
+import mbtool.daemon.v3.FileSeekResponse;
+import mbtool.daemon.v3.FileSeekWhence;
+import mbtool.daemon.v3.FileStatRequest;
+import mbtool.daemon.v3.FileStatResponse;
+import mbtool.daemon.v3.Invalid;
+import mbtool.daemon.v3.MbGetVersionResponse;
+import mbtool.daemon.v3.NestedResponse;
+import mbtool.daemon.v3.PathCopyRequest;
+import mbtool.daemon.v3.PathCopyResponse;
+import mbtool.daemon.v3.PathGetDirectorySizeRequest;
+import mbtool.daemon.v3.PathGetDirectorySizeResponse;
+import mbtool.daemon.v3.PathHashRequest;
+import mbtool.daemon.v3.PathHashResponse;
+import mbtool.daemon.v3.Request;
+import mbtool.daemon.v3.RequestBatch;
+import mbtool.daemon.v3.RequestType;
+import mbtool.daemon.v3.Response;
+import mbtool.daemon.v3.ResponseBatch;
+import mbtool.daemon.v3.ResponseType;
+import mbtool.daemon.v3.SetCompressionRequest;
+import mbtool.daemon.v3.SetCompressionResponse;
+import mbtool.daemon.v3.StructStat;
+import mbtool.daemon.v3.Unsupported;
+
+/**
+ * Stand-in for the mbtool daemon that runs inside the app.
+ *
+ * It speaks the v3 protocol on an abstract socket of its own, so {@link MbtoolSocket} can be
+ * pointed at it with {@link MbtoolSocket#setSocketAddress(String)} on an emulator or a device
+ * without root. Only the requests needed to exercise the client are implemented:
+ * - MbGetVersionRequest
+ * - FileOpenRequest, FileCloseRequest, FileReadRequest, FileSeekRequest, FileStatRequest
+ * - PathCopyRequest, PathGetDirectorySizeRequest, PathHashRequest
+ * - SetCompressionRequest
+ * - RequestBatch
+ *
+ * Everything else gets an Unsupported response. Files are accessed with the app's own
+ * permissions.
+ *
+ * Like mbtool, each connection has one thread that handles requests in order, except that path
+ * copy, size and hash requests with a non-zero ID are handed off to a small pool of workers and
+ * may complete out of order. Latency, bandwidth and failures can be injected to see how the
+ * client behaves on a slow or unreliable daemon.
+ */
+public class MbtoolStandInDaemon {
+    private static final String TAG = MbtoolStandInDaemon.class.getSimpleName();
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private static final int S_IFREG = 0100000;
+
+    /** Same as mbtool's worker thread limit */
+    private static final int MAX_WORKERS = 4;
+
+    private final String mAddress;
+    private LocalServerSocket mServer;
+    private Thread mAcceptThread;
+    private final List<Session> mSessions = new ArrayList<>();
+
+    private volatile long mLatencyMs;
+    private volatile long mBandwidth;
+    private volatile double mFailureRate;
+    private final Random mRandom = new Random();
+
+    /**
+     * @param address Abstract socket name to listen on. Must not be the name that mbtool uses.
+     */
+    public MbtoolStandInDaemon(String address) {
+        mAddress = address;
+    }
+
+    /**
+     * Delay every response by a fixed amount of time
+     *
+     * @param latencyMs Delay in milliseconds
+     */
+    public void setLatency(long latencyMs) {
+        mLatencyMs = latencyMs;
+    }
+
+    /**
+     * Limit the rate at which each connection sends responses and copies files
+     *
+     * @param bytesPerSecond Maximum rate or 0 for no limit
+     */
+    public void setBandwidth(long bytesPerSecond) {
+        mBandwidth = bytesPerSecond;
+    }
+
+    /**
+     * Randomly drop connections instead of responding
+     *
+     * @param failureRate Probability between 0 and 1 that a request closes the connection
+     */
+    public void setFailureRate(double failureRate) {
+        mFailureRate = failureRate;
+    }
+
+    public synchronized void start() throws IOException {
+        if (mServer != null) {
+            return;
+        }
+
+        mServer = new LocalServerSocket(mAddress);
+        mAcceptThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                acceptConnections();
+            }
+        }, TAG + "-accept");
+        mAcceptThread.setDaemon(true);
+        mAcceptThread.start();
+    }
+
+    public synchronized void stop() {
+        if (mServer == null) {
+            return;
+        }
+
+        LocalServerSocket server = mServer;
+        mServer = null;
+
+        // LocalServerSocket.close() does not wake up accept(), so connect once to unblock it
+        LocalSocket wakeup = new LocalSocket();
+        try {
+            wakeup.connect(new LocalSocketAddress(mAddress, Namespace.ABSTRACT));
+        } catch (IOException e) {
+            // Ignore
+        } finally {
+            IOUtils.closeQuietly(wakeup);
+        }
+
+        try {
+            server.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to close server socket", e);
+        }
+
+        synchronized (mSessions) {
+            // The session threads clean up after themselves once their sockets are closed
+            for (Session session : mSessions) {
+                session.shutdown();
+            }
+        }
+    }
+
+    private void acceptConnections() {
+        while (true) {
+            LocalServerSocket server;
+            synchronized (this) {
+                server = mServer;
+            }
+            if (server == null) {
+                return;
+            }
+
+            final LocalSocket socket;
+            try {
+                socket = server.accept();
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to accept connection", e);
+                return;
+            }
+
+            synchronized (this) {
+                if (mServer == null) {
+                    IOUtils.closeQuietly(socket);
+                    return;
+                }
+            }
+
+            final Session session = new Session(socket);
+            synchronized (mSessions) {
+                mSessions.add(session);
+            }
+
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        session.run();
+                    } catch (IOException e) {
+                        Log.d(TAG, "Connection closed: " + e.getMessage());
+                    } finally {
+                        session.close();
+                        synchronized (mSessions) {
+                            mSessions.remove(session);
+                        }
+                    }
+                }
+            }, TAG + "-session");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private class Session {
+        private final LocalSocket mSocket;
+        private InputStream mIS;
+        private OutputStream mOS;
+        private final Object mWriteLock = new Object();
+
+        /** Runs slow path requests so that they can complete out of order */
+        private final ExecutorService mWorkers = Executors.newFixedThreadPool(MAX_WORKERS,
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(@NonNull Runnable r) {
+                        Thread thread = new Thread(r, TAG + "-worker");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+
+        private final HashMap<Integer, RandomAccessFile> mFiles = new HashMap<>();
+        private int mNextFileId = 1;
+
+        private ByteBuffer mReadBuffer;
+
+        private short mCompression = CompressionType.NONE;
+        private long mCompressionThreshold;
+        private Deflater mDeflater;
+
+        /** Start of the current bandwidth accounting window */
+        private long mWindowStart;
+        private long mWindowBytes;
+
+        Session(LocalSocket socket) {
+            mSocket = socket;
+        }
+
+        void run() throws IOException {
+            mIS = mSocket.getInputStream();
+            mOS = mSocket.getOutputStream();
+
+            // Same handshake as mbtool
+            SocketUtils.writeString(mOS, "ALLOW");
+            int version = SocketUtils.readInt32(mIS);
+            if (version != 3) {
+                SocketUtils.writeString(mOS, "UNSUPPORTED");
+                return;
+            }
+            SocketUtils.writeString(mOS, "OK");
+
+            while (true) {
+                int length = SocketUtils.readInt32(mIS);
+                if (length < 0) {
+                    throw new IOException("Invalid byte array length");
+                }
+                mReadBuffer = MbtoolCodec.ensureCapacity(mReadBuffer, length);
+                SocketUtils.readFully(mIS, mReadBuffer.array(), mReadBuffer.arrayOffset(), length);
+                mReadBuffer.position(0);
+                mReadBuffer.limit(length);
+
+                Request request = Request.getRootAsRequest(mReadBuffer);
+
+                if (mFailureRate > 0 && mRandom.nextDouble() < mFailureRate) {
+                    throw new IOException("Injected failure");
+                }
+
+                // Like mbtool, slow path requests with an ID are handed off to a worker and
+                // everything else is handled in order on this thread
+                if (request.id() != 0 && canOffload(request.requestType())) {
+                    ByteBuffer copy = ByteBuffer.allocate(length);
+                    copy.put(mReadBuffer);
+                    copy.flip();
+                    offload(Request.getRootAsRequest(copy));
+                } else {
+                    respond(request);
+                }
+            }
+        }
+
+        private void offload(final Request request) {
+            try {
+                mWorkers.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            respond(request);
+                        } catch (IOException e) {
+                            // The session thread notices when its next read fails
+                            Log.d(TAG, "Failed to send response: " + e.getMessage());
+                            shutdown();
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // Session is closing
+            }
+        }
+
+        private void respond(Request request) throws IOException {
+            if (mLatencyMs > 0) {
+                sleep(mLatencyMs);
+            }
+
+            FlatBufferBuilder builder = MbtoolCodec.obtainBuilder();
+            builder.finish(handleRequest(builder, request));
+            MbtoolCodec.finishedBuilder(builder);
+
+            ByteBuffer bb = builder.dataBuffer();
+            synchronized (mWriteLock) {
+                throttle(bb.remaining());
+                SocketUtils.writeBytes(mOS, bb);
+            }
+        }
+
+        void shutdown() {
+            IOUtils.closeQuietly(mSocket);
+        }
+
+        void close() {
+            mWorkers.shutdownNow();
+            for (RandomAccessFile raf : mFiles.values()) {
+                IOUtils.closeQuietly(raf);
+            }
+            mFiles.clear();
+            if (mDeflater != null) {
+                mDeflater.end();
+            }
+            IOUtils.closeQuietly(mSocket);
+        }
+
+        /**
+         * Handle a request and wrap the result in a Response table.
+         *
+         * @return Offset of the (unfinished) Response table
+         */
+        private int handleRequest(FlatBufferBuilder builder, Request request) {
+            byte type;
+            int fbResponse;
+
+            switch (request.requestType()) {
+            case RequestType.MbGetVersionRequest:
+                type = ResponseType.MbGetVersionResponse;
+                fbResponse = handleGetVersion(builder);
+                break;
+            case RequestType.FileOpenRequest:
+                type = ResponseType.FileOpenResponse;
+                fbResponse = handleFileOpen(builder,
+                        (FileOpenRequest) request.request(new FileOpenRequest()));
+                break;
+            case RequestType.FileCloseRequest:
+                type = ResponseType.FileCloseResponse;
+                fbResponse = handleFileClose(builder,
+                        (FileCloseRequest) request.request(new FileCloseRequest()));
+                break;
+            case RequestType.FileReadRequest:
+                type = ResponseType.FileReadResponse;
+                fbResponse = handleFileRead(builder,
+                        (FileReadRequest) request.request(new FileReadRequest()));
+                break;
+            case RequestType.FileSeekRequest:
+                type = ResponseType.FileSeekResponse;
+                fbResponse = handleFileSeek(builder,
+                        (FileSeekRequest) request.request(new FileSeekRequest()));
+                break;
+            case RequestType.FileStatRequest:
+                type = ResponseType.FileStatResponse;
+                fbResponse = handleFileStat(builder,
+                        (FileStatRequest) request.request(new FileStatRequest()));
+                break;
+            case RequestType.PathCopyRequest:
+                type = ResponseType.PathCopyResponse;
+                fbResponse = handlePathCopy(builder,
+                        (PathCopyRequest) request.request(new PathCopyRequest()));
+                break;
+            case RequestType.PathGetDirectorySizeRequest:
+                type = ResponseType.PathGetDirectorySizeResponse;
+                fbResponse = handlePathGetDirectorySize(builder, (PathGetDirectorySizeRequest)
+                        request.request(new PathGetDirectorySizeRequest()));
+                break;
+            case RequestType.PathHashRequest:
+                type = ResponseType.PathHashResponse;
+                fbResponse = handlePathHash(builder,
+                        (PathHashRequest) request.request(new PathHashRequest()));
+                break;
+            case RequestType.SetCompressionRequest:
+                type = ResponseType.SetCompressionResponse;
+                fbResponse = handleSetCompression(builder, (SetCompressionRequest)
+                        request.request(new SetCompressionRequest()));
+                break;
+            case RequestType.RequestBatch:
+                type = ResponseType.ResponseBatch;
+                fbResponse = handleBatch(builder,
+                        (RequestBatch) request.request(new RequestBatch()));
+                break;
+            case RequestType.NONE:
+                type = ResponseType.Invalid;
+                Invalid.startInvalid(builder);
+                fbResponse = Invalid.endInvalid(builder);
+                break;
+            default:
+                type = ResponseType.Unsupported;
+                Unsupported.startUnsupported(builder);
+                fbResponse = Unsupported.endUnsupported(builder);
+                break;
+            }
+
+            return Response.createResponse(builder, type, fbResponse, request.id());
+        }
+
+        private int handleBatch(FlatBufferBuilder builder, RequestBatch batch) {
+            ArrayList<byte[]> responses = new ArrayList<>();
+            Request request = new Request();
+
+            // Like mbtool, the requests are handled in order on the session thread
+            for (int i = 0; i < batch.requestsLength(); i++) {
+                batch.requests(request, i);
+
+                // The per-thread builder is already in use for the batch response
+                FlatBufferBuilder nestedBuilder = new FlatBufferBuilder(256);
+                if (request.requestType() == RequestType.RequestBatch) {
+                    // Batches cannot be nested
+                    Invalid.startInvalid(nestedBuilder);
+                    nestedBuilder.finish(Response.createResponse(nestedBuilder,
+                            ResponseType.Invalid, Invalid.endInvalid(nestedBuilder),
+                            request.id()));
+                } else {
+                    nestedBuilder.finish(handleRequest(nestedBuilder, request));
+                }
+
+                byte[] data = nestedBuilder.sizedByteArray();
+                responses.add(data);
+
+                if (batch.stopOnError()
+                        && !succeeded(Response.getRootAsResponse(ByteBuffer.wrap(data)))) {
+                    break;
+                }
+            }
+
+            int[] fbResponses = new int[responses.size()];
+            for (int i = 0; i < fbResponses.length; i++) {
+                int fbData = NestedResponse.createDataVector(builder, responses.get(i));
+                fbResponses[i] = NestedResponse.createNestedResponse(builder, fbData);
+            }
+            int fbResponsesVec = ResponseBatch.createResponsesVector(builder, fbResponses);
+            return ResponseBatch.createResponseBatch(builder, fbResponsesVec);
+        }
+
+        private int handleGetVersion(FlatBufferBuilder builder) {
+            int fbVersion = builder.createString(
+                    MbtoolUtils.getMinimumRequiredVersion(MbtoolUtils.Feature.DAEMON).toString());
+            MbGetVersionResponse.startMbGetVersionResponse(builder);
+            MbGetVersionResponse.addVersion(builder, fbVersion);
+            return MbGetVersionResponse.endMbGetVersionResponse(builder);
+        }
+
+        private int handleFileOpen(FlatBufferBuilder builder, FileOpenRequest request) {
+            String mode = "r";
+            for (int i = 0; i < request.flagsLength(); i++) {
+                short flag = request.flags(i);
+                if (flag == FileOpenFlag.RDWR || flag == FileOpenFlag.WRONLY
+                        || flag == FileOpenFlag.CREAT) {
+                    mode = "rw";
+                }
+            }
+
+            RandomAccessFile raf;
+            try {
+                raf = new RandomAccessFile(request.path(), mode);
+            } catch (IOException e) {
+                int fbErrorMsg = builder.createString(String.valueOf(e.getMessage()));
+                FileOpenResponse.startFileOpenResponse(builder);
+                FileOpenResponse.addErrorMsg(builder, fbErrorMsg);
+                return FileOpenResponse.endFileOpenResponse(builder);
+            }
+
+            int id = mNextFileId++;
+            mFiles.put(id, raf);
+
+            FileOpenResponse.startFileOpenResponse(builder);
+            FileOpenResponse.addSuccess(builder, true);
+            FileOpenResponse.addId(builder, id);
+            return FileOpenResponse.endFileOpenResponse(builder);
+        }
+
+        private int handleFileClose(FlatBufferBuilder builder, FileCloseRequest request) {
+            RandomAccessFile raf = mFiles.remove(request.id());
+            int fbErrorMsg = raf == null ? builder.createString("Invalid file ID") : 0;
+            IOUtils.closeQuietly(raf);
+
+            FileCloseResponse.startFileCloseResponse(builder);
+            FileCloseResponse.addSuccess(builder, raf != null);
+            FileCloseResponse.addErrorMsg(builder, fbErrorMsg);
+            return FileCloseResponse.endFileCloseResponse(builder);
+        }
+
+        private int handleFileRead(FlatBufferBuilder builder, FileReadRequest request) {
+            int fbErrorMsg = 0;
+            int fbData = 0;
+            int n = -1;
+            short compression = CompressionType.NONE;
+
+            RandomAccessFile raf = mFiles.get(request.id());
+            if (raf == null) {
+                fbErrorMsg = builder.createString("Invalid file ID");
+            } else {
+                try {
+                    byte[] buf = new byte[(int) Math.min(request.count(), Integer.MAX_VALUE)];
+                    n = Math.max(raf.read(buf), 0);
+
+                    byte[] data = buf;
+                    int dataSize = n;
+                    if (mCompression == CompressionType.DEFLATE && n > 0
+                            && n >= mCompressionThreshold) {
+                        byte[] compressed = deflate(buf, n);
+                        if (compressed != null) {
+                            data = compressed;
+                            dataSize = compressed.length;
+                            compression = CompressionType.DEFLATE;
+                        }
+                    }
+
+                    FileReadResponse.startDataVector(builder, dataSize);
+                    for (int i = dataSize - 1; i >= 0; i--) {
+                        builder.addByte(data[i]);
+                    }
+                    fbData = builder.endVector();
+                } catch (IOException e) {
+                    n = -1;
+                    fbErrorMsg = builder.createString(String.valueOf(e.getMessage()));
+                }
+            }
+
+            FileReadResponse.startFileReadResponse(builder);
+            FileReadResponse.addSuccess(builder, n >= 0);
+            FileReadResponse.addErrorMsg(builder, fbErrorMsg);
+            if (n >= 0) {
+                FileReadResponse.addBytesRead(builder, n);
+                FileReadResponse.addData(builder, fbData);
+                FileReadResponse.addCompression(builder, compression);
+            }
+            return FileReadResponse.endFileReadResponse(builder);
+        }
+
+        /**
+         * Compress data the same way mbtool does.
+         *
+         * @return Compressed data or null if it would not be smaller
+         */
+        private byte[] deflate(byte[] data, int size) {
+            if (mDeflater == null) {
+                mDeflater = new Deflater(Deflater.BEST_SPEED);
+            }
+            mDeflater.reset();
+            mDeflater.setInput(data, 0, size);
+            mDeflater.finish();
+
+            byte[] out = new byte[size];
+            int n = 0;
+            while (!mDeflater.finished() && n < out.length) {
+                n += mDeflater.deflate(out, n, out.length - n);
+            }
+            if (!mDeflater.finished()) {
+                return null;
+            }
+
+            byte[] result = new byte[n];
+            System.arraycopy(out, 0, result, 0, n);
+            return result;
+        }
+
+        private int handleSetCompression(FlatBufferBuilder builder,
+                                         SetCompressionRequest request) {
+            mCompression = CompressionType.NONE;
+            for (int i = 0; i < request.typesLength(); i++) {
+                if (request.types(i) == CompressionType.DEFLATE) {
+                    mCompression = CompressionType.DEFLATE;
+                    break;
+                }
+            }
+            mCompressionThreshold = request.threshold();
+
+            SetCompressionResponse.startSetCompressionResponse(builder);
+            SetCompressionResponse.addSuccess(builder, true);
+            SetCompressionResponse.addType(builder, mCompression);
+            return SetCompressionResponse.endSetCompressionResponse(builder);
+        }
+
+        private int handleFileSeek(FlatBufferBuilder builder, FileSeekRequest request) {
+            String error = null;
+            long offset = -1;
+
+            RandomAccessFile raf = mFiles.get(request.id());
+            if (raf == null) {
+                error = "Invalid file ID";
+            } else {
+                try {
+                    switch (request.whence()) {
+                    case FileSeekWhence.SEEK_SET:
+                        offset = request.offset();
+                        break;
+                    case FileSeekWhence.SEEK_CUR:
+                        offset = raf.getFilePointer() + request.offset();
+                        break;
+                    case FileSeekWhence.SEEK_END:
+                        offset = raf.length() + request.offset();
+                        break;
+                    }
+                    if (offset < 0) {
+                        error = "Invalid argument";
+                    } else {
+                        raf.seek(offset);
+                    }
+                } catch (IOException e) {
+                    error = String.valueOf(e.getMessage());
+                }
+            }
+
+            int fbErrorMsg = error != null ? builder.createString(error) : 0;
+            FileSeekResponse.startFileSeekResponse(builder);
+            FileSeekResponse.addSuccess(builder, error == null);
+            FileSeekResponse.addErrorMsg(builder, fbErrorMsg);
+            FileSeekResponse.addOffset(builder, offset);
+            return FileSeekResponse.endFileSeekResponse(builder);
+        }
+
+        private int handleFileStat(FlatBufferBuilder builder, FileStatRequest request) {
+            RandomAccessFile raf = mFiles.get(request.id());
+            long size = -1;
+            if (raf != null) {
+                try {
+                    size = raf.length();
+                } catch (IOException e) {
+                    // Reported below
+                }
+            }
+
+            if (size < 0) {
+                int fbErrorMsg = builder.createString(
+                        raf == null ? "Invalid file ID" : "Failed to get file size");
+                FileStatResponse.startFileStatResponse(builder);
+                FileStatResponse.addErrorMsg(builder, fbErrorMsg);
+                return FileStatResponse.endFileStatResponse(builder);
+            }
+
+            StructStat.startStructStat(builder);
+            StructStat.addStMode(builder, S_IFREG | 0644);
+            StructStat.addStNlink(builder, 1);
+            StructStat.addStSize(builder, size);
+            StructStat.addStBlksize(builder, 4096);
+            StructStat.addStBlocks(builder, (size + 511) / 512);
+            int fbStat = StructStat.endStructStat(builder);
+
+            FileStatResponse.startFileStatResponse(builder);
+            FileStatResponse.addSuccess(builder, true);
+            FileStatResponse.addStat(builder, fbStat);
+            return FileStatResponse.endFileStatResponse(builder);
+        }
+
+        private int handlePathCopy(FlatBufferBuilder builder, PathCopyRequest request) {
+            String error = null;
+            FileInputStream fis = null;
+            FileOutputStream fos = null;
+
+            try {
+                fis = new FileInputStream(request.source());
+                fos = new FileOutputStream(request.target());
+
+                byte[] buf = new byte[COPY_BUFFER_SIZE];
+                int n;
+                while ((n = fis.read(buf)) > 0) {
+                    throttle(n);
+                    fos.write(buf, 0, n);
+                }
+            } catch (IOException e) {
+                error = String.valueOf(e.getMessage());
+            } finally {
+                IOUtils.closeQuietly(fis);
+                IOUtils.closeQuietly(fos);
+            }
+
+            int fbErrorMsg = error != null ? builder.createString(error) : 0;
+            PathCopyResponse.startPathCopyResponse(builder);
+            PathCopyResponse.addSuccess(builder, error == null);
+            PathCopyResponse.addErrorMsg(builder, fbErrorMsg);
+            return PathCopyResponse.endPathCopyResponse(builder);
+        }
+
+        private int handlePathGetDirectorySize(FlatBufferBuilder builder,
+                                               PathGetDirectorySizeRequest request) {
+            File dir = new File(request.path());
+            if (!dir.isDirectory()) {
+                int fbErrorMsg = builder.createString("Not a directory");
+                PathGetDirectorySizeResponse.startPathGetDirectorySizeResponse(builder);
+                PathGetDirectorySizeResponse.addErrorMsg(builder, fbErrorMsg);
+                return PathGetDirectorySizeResponse.endPathGetDirectorySizeResponse(builder);
+            }
+
+            // Like mbtool, exclusions only apply to first-level entries
+            ArrayList<String> exclusions = new ArrayList<>();
+            for (int i = 0; i < request.exclusionsLength(); i++) {
+                exclusions.add(request.exclusions(i));
+            }
+
+            long total = 0;
+            File[] children = dir.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    if (!exclusions.contains(child.getName())) {
+                        total += getSize(child);
+                    }
+                }
+            }
+
+            PathGetDirectorySizeResponse.startPathGetDirectorySizeResponse(builder);
+            PathGetDirectorySizeResponse.addSuccess(builder, true);
+            PathGetDirectorySizeResponse.addSize(builder, total);
+            return PathGetDirectorySizeResponse.endPathGetDirectorySizeResponse(builder);
+        }
+
+        private int handlePathHash(FlatBufferBuilder builder, PathHashRequest request) {
+            String error = null;
+            byte[] digest = null;
+            long total = 0;
+            RandomAccessFile raf = null;
+
+            try {
+                MessageDigest md = MessageDigest.getInstance("SHA-256");
+                raf = new RandomAccessFile(request.path(), "r");
+                raf.seek(request.offset());
+
+                byte[] buf = new byte[COPY_BUFFER_SIZE];
+                while (request.size() == 0 || total < request.size()) {
+                    int toRead = buf.length;
+                    if (request.size() != 0) {
+                        toRead = (int) Math.min(toRead, request.size() - total);
+                    }
+                    int n = raf.read(buf, 0, toRead);
+                    if (n <= 0) {
+                        break;
+                    }
+                    md.update(buf, 0, n);
+                    total += n;
+                }
+
+                digest = md.digest();
+            } catch (IOException | NoSuchAlgorithmException e) {
+                error = String.valueOf(e.getMessage());
+            } finally {
+                IOUtils.closeQuietly(raf);
+            }
+
+            int fbErrorMsg = error != null ? builder.createString(error) : 0;
+            int fbDigest = digest != null
+                    ? PathHashResponse.createSha256Vector(builder, digest) : 0;
+            PathHashResponse.startPathHashResponse(builder);
+            PathHashResponse.addSuccess(builder, error == null);
+            PathHashResponse.addErrorMsg(builder, fbErrorMsg);
+            PathHashResponse.addSha256(builder, fbDigest);
+            PathHashResponse.addSize(builder, total);
+            return PathHashResponse.endPathHashResponse(builder);
+        }
+
+        /**
+         * Sleep long enough to keep this connection at or below the configured bandwidth.
+         *
+         * @param bytes Number of bytes about to be sent
+         */
+        private synchronized void throttle(long bytes) {
+            long bandwidth = mBandwidth;
+            if (bandwidth <= 0) {
+                return;
+            }
+
+            long now = System.nanoTime();
+            if (now - mWindowStart > 1000000000L) {
+                mWindowStart = now;
+                mWindowBytes = 0;
+            }
+            mWindowBytes += bytes;
+
+            long due = mWindowStart + mWindowBytes * 1000000000L / bandwidth;
+            if (due > now) {
+                sleep((due - now) / 1000000L);
+            }
+        }
+    }
+
+    /**
+     * Same set of requests that mbtool hands off to its worker threads (where implemented here)
+     */
+    private static boolean canOffload(byte requestType) {
+        switch (requestType) {
+        case RequestType.PathCopyRequest:
+        case RequestType.PathGetDirectorySizeRequest:
+        case RequestType.PathHashRequest:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Whether a response reports success. Matches mbtool's check for stop_on_error batches.
+     */
+    private static boolean succeeded(Response response) {
+        switch (response.responseType()) {
+        case ResponseType.MbGetVersionResponse:
+            return true;
+        case ResponseType.FileOpenResponse:
+            return ((FileOpenResponse) response.response(new FileOpenResponse())).success();
+        case ResponseType.FileCloseResponse:
+            return ((FileCloseResponse) response.response(new FileCloseResponse())).success();
+        case ResponseType.FileReadResponse:
+            return ((FileReadResponse) response.response(new FileReadResponse())).success();
+        case ResponseType.FileSeekResponse:
+            return ((FileSeekResponse) response.response(new FileSeekResponse())).success();
+        case ResponseType.FileStatResponse:
+            return ((FileStatResponse) response.response(new FileStatResponse())).success();
+        case ResponseType.PathCopyResponse:
+            return ((PathCopyResponse) response.response(new PathCopyResponse())).success();
+        case ResponseType.PathGetDirectorySizeResponse:
+            return ((PathGetDirectorySizeResponse)
+                    response.response(new PathGetDirectorySizeResponse())).success();
+        case ResponseType.PathHashResponse:
+            return ((PathHashResponse) response.response(new PathHashResponse())).success();
+        case ResponseType.SetCompressionResponse:
+            return ((SetCompressionResponse)
+                    response.response(new SetCompressionResponse())).success();
+        default:
+            return false;
+        }
+    }
+
+    private static long getSize(File file) {
+        if (!file.isDirectory()) {
+            return file.length();
+        }
+
+        long total = 0;
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                total += getSize(child);
+            }
+        }
+        return total;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -18,10 +18,12 @@
 package com.github.chenxiaolong.dualbootpatcher;
 
 import android.os.Bundle;
+import android.support.annotation.Nullable;
 import android.util.Log;
 
 import com.stericson.RootShell.exceptions.RootDeniedException;
 import com.stericson.RootShell.execution.Command;
+import com.stericson.RootShell.execution.Shell;
 import com.stericson.RootTools.RootTools;
 
 import java.io.BufferedReader;
@@ -283,6 +285,124 @@ public final class CommandUtils {
         }
     }
 
+    public interface RootBatchListener {
+        /**
+         * Called from the shell's reader thread for each line of output
+         *
+         * @param index Index of the command in the batch that produced the line
+         * @param line Line of output
+         */
+        void onNewOutputLine(int index, String line);
+    }
+
+    /**
+     * Long-lived root shell for running many commands without a thread and a root check per
+     * command
+     *
+     * Commands are run on the calling thread. A batch is queued to the shell all at once and the
+     * commands run one after another. Each command gets its own exit code and its output is tagged
+     * with its index in the batch. Unlike a single command joined with "&&", every command in a
+     * batch runs even if an earlier one fails.
+     */
+    public static class RootShellSession {
+        private final Shell mShell;
+
+        private RootShellSession(Shell shell) {
+            mShell = shell;
+        }
+
+        /**
+         * Request root access and open (or reuse) the root shell
+         *
+         * @return Session or null if root access was denied or the shell could not be started
+         */
+        @Nullable
+        public static RootShellSession open() {
+            if (!requestRootAccess()) {
+                return null;
+            }
+
+            try {
+                return new RootShellSession(RootTools.getShell(true));
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to start root shell", e);
+            } catch (TimeoutException e) {
+                Log.e(TAG, "Root shell timed out", e);
+            } catch (RootDeniedException e) {
+                Log.e(TAG, "Root access was denied", e);
+            }
+
+            return null;
+        }
+
+        /**
+         * Run a single command
+         *
+         * @param command Command to run
+         * @param listener Output listener (may be null)
+         * @return Exit code of the command or -1 if it could not be run
+         */
+        public int run(String command, @Nullable RootBatchListener listener) {
+            return runBatch(new String[] { command }, listener)[0];
+        }
+
+        /**
+         * Run a batch of commands in order
+         *
+         * @param commands Commands to run
+         * @param listener Output listener (may be null)
+         * @return Exit code of each command or -1 for commands that could not be run
+         */
+        public int[] runBatch(String[] commands, @Nullable final RootBatchListener listener) {
+            int[] exitCodes = new int[commands.length];
+            Arrays.fill(exitCodes, -1);
+
+            Command[] queued = new Command[commands.length];
+
+            try {
+                for (int i = 0; i < commands.length; i++) {
+                    Log.v(TAG, "Command [" + i + "]: " + commands[i]);
+
+                    queued[i] = new Command(i, 0, commands[i]) {
+                        @Override
+                        public void commandOutput(int id, String line) {
+                            Log.d(TAG, "Root command output [" + id + "]: " + line);
+
+                            if (listener != null) {
+                                listener.onNewOutputLine(id, line);
+                            }
+
+                            super.commandOutput(id, line);
+                        }
+                    };
+
+                    mShell.add(queued[i]);
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to queue command", e);
+            }
+
+            try {
+                for (int i = 0; i < queued.length && queued[i] != null; i++) {
+                    Command command = queued[i];
+
+                    while (!command.isFinished()) {
+                        synchronized (command) {
+                            command.wait(2000);
+                        }
+                    }
+
+                    exitCodes[i] = command.getExitCode();
+                }
+            } catch (InterruptedException e) {
+                Log.e(TAG, "Process was interrupted", e);
+                Thread.currentThread().interrupt();
+            }
+
+            return exitCodes;
+        }
+    }
+
     public static void waitForCommand(CommandRunner cmd) {
         try {
             cmd.join();
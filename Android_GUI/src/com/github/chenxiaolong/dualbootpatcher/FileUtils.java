@@ -43,12 +43,16 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Method;
-import java.util.Enumeration;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.List;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
 public class FileUtils {
+    /** Entries are usually deflated, so they are streamed through a buffer instead of mapped */
+    private static final int ZIP_EXTRACT_BUFFER_SIZE = 256 * 1024;
+
     @SuppressLint("NewApi")
     private static String getPathFromDocumentsUri(Context context, Uri uri) {
         // Based on
@@ -198,40 +202,72 @@ public class FileUtils {
 
     public static boolean zipExtractFile(String zipFile, String filename, String destFile) {
         ZipFile zf = null;
+        InputStream is = null;
         FileOutputStream fos = null;
 
         try {
             zf = new ZipFile(zipFile);
 
-            final Enumeration<? extends ZipEntry> entries = zf.entries();
-            while (entries.hasMoreElements()) {
-                final ZipEntry ze = entries.nextElement();
-
-                if (ze.getName().equals(filename)) {
-                    fos = new FileOutputStream(destFile);
-                    InputStream is = zf.getInputStream(ze);
-                    byte[] buffer = new byte[10240];
+            // Look the entry up in the central directory instead of walking every entry
+            final ZipEntry ze = zf.getEntry(filename);
+            if (ze == null) {
+                return false;
+            }
 
-                    int len;
-                    while ((len = is.read(buffer)) > 0) {
-                        fos.write(buffer, 0, len);
-                    }
+            is = zf.getInputStream(ze);
+            fos = new FileOutputStream(destFile);
 
-                    return true;
-                }
+            long written = IOUtils.copyLarge(is, fos, new byte[ZIP_EXTRACT_BUFFER_SIZE]);
+            if (ze.getSize() >= 0 && written != ze.getSize()) {
+                Log.e("FileUtils", "Extracted " + written + " bytes from " + filename
+                        + ", but expected " + ze.getSize());
+                return false;
             }
+
+            return true;
         } catch (FileNotFoundException e) {
             e.printStackTrace();
         } catch (IOException e) {
             e.printStackTrace();
         } finally {
-            IOUtils.closeQuietly(zf);
+            IOUtils.closeQuietly(is);
             IOUtils.closeQuietly(fos);
+            IOUtils.closeQuietly(zf);
         }
 
         return false;
     }
 
+    /**
+     * Compute the SHA-256 digest of a stream
+     *
+     * @param is Stream to read to the end. It is not closed.
+     * @return Lowercase hex digest
+     * @throws IOException If the stream could not be read
+     */
+    @NonNull
+    public static String sha256Hex(InputStream is) throws IOException {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        byte[] buf = new byte[ZIP_EXTRACT_BUFFER_SIZE];
+        int n;
+        while ((n = is.read(buf)) > 0) {
+            md.update(buf, 0, n);
+        }
+
+        byte[] digest = md.digest();
+        StringBuilder sb = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            sb.append(String.format("%02x", b & 0xff));
+        }
+        return sb.toString();
+    }
+
     private static class Base2Abbrev {
         long factor;
         int stringResId;
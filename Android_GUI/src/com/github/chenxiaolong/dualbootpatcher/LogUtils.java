@@ -20,12 +20,16 @@ package com.github.chenxiaolong.dualbootpatcher;
 import android.os.Environment;
 import android.util.Log;
 
+import com.github.chenxiaolong.dualbootpatcher.socket.MbtoolStats;
+
 import java.io.File;
 import java.io.IOException;
 
 public final class LogUtils {
     private static final String TAG = LogUtils.class.getSimpleName();
 
+    private static final String MBTOOL_STATS_FILE = "mbtool-stats.log";
+
     public static String getPath(String logFile) {
         String fileName = new File(logFile).getName();
 
@@ -43,5 +47,18 @@ public final class LogUtils {
         } catch (IOException e) {
             Log.e(TAG, "Failed to run logcat", e);
         }
+
+        dumpMbtoolStats();
+    }
+
+    /**
+     * Write the mbtool request statistics next to the other logs
+     *
+     * @see MbtoolStats#dump()
+     */
+    public static void dumpMbtoolStats() {
+        final File path = new File(getPath(MBTOOL_STATS_FILE));
+        path.getParentFile().mkdirs();
+        MbtoolStats.dump(path);
     }
 }
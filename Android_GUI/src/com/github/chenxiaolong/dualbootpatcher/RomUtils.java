@@ -26,7 +26,9 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.util.Log;
 
+import com.github.chenxiaolong.dualbootpatcher.socket.MbtoolFileChannel;
 import com.github.chenxiaolong.dualbootpatcher.socket.MbtoolSocket;
+import com.github.chenxiaolong.dualbootpatcher.socket.MbtoolSocket.Lane;
 import com.github.chenxiaolong.dualbootpatcher.socket.MbtoolSocket.StatBuf;
 import com.squareup.picasso.Picasso;
 
@@ -37,9 +39,6 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.ByteBuffer;
-
-import mbtool.daemon.v3.FileOpenFlag;
 
 public class RomUtils {
     private static final String TAG = RomUtils.class.getSimpleName();
@@ -354,54 +353,28 @@ public class RomUtils {
     private static boolean usesLiveWallpaper(Context context, RomInformation info) {
         String wallpaperInfoPath = info.getDataPath() + "/system/users/0/wallpaper_info.xml";
 
-        MbtoolSocket socket = MbtoolSocket.getInstance();
-        int id = -1;
+        MbtoolFileChannel channel = null;
 
         try {
-            id = socket.fileOpen(context, wallpaperInfoPath, new short[]{ FileOpenFlag.RDONLY }, 0);
-            if (id < 0) {
-                return false;
-            }
-
-            StatBuf sb = socket.fileStat(context, id);
-            if (sb == null) {
-                return false;
-            }
+            channel = MbtoolFileChannel.open(
+                    context, MbtoolSocket.getInstance(Lane.BULK), wallpaperInfoPath);
 
             // Check file size
-            if (sb.st_size < 0 || sb.st_size > 1024) {
+            long size = channel.size();
+            if (size > 1024) {
                 return false;
             }
 
             // Read file into memory
-            byte[] data = new byte[(int) sb.st_size];
-            int nWritten = 0;
-            while (nWritten < data.length) {
-                ByteBuffer newData = socket.fileRead(context, id, 10240);
-                if (newData == null) {
-                    return false;
-                }
-
-                int nRead = newData.limit() - newData.position();
-                newData.get(data, nWritten, nRead);
-                nWritten += nRead;
-            }
-
-            socket.fileClose(context, id);
-            id = -1;
+            byte[] data = new byte[(int) size];
+            IOUtils.readFully(channel.newInputStream(), data);
 
             String xml = new String(data, Charsets.UTF_8);
             return xml.contains("component=");
         } catch (IOException e) {
             return false;
         } finally {
-            if (id >= 0) {
-                try {
-                    socket.fileClose(context, id);
-                } catch (IOException e) {
-                    // Ignore
-                }
-            }
+            IOUtils.closeQuietly(channel);
         }
     }
 
@@ -422,20 +395,15 @@ public class RomUtils {
         File wallpaperCacheFile = new File(info.getWallpaperPath());
         FileOutputStream fos = null;
 
-        MbtoolSocket socket = MbtoolSocket.getInstance();
-        int id = -1;
+        MbtoolFileChannel channel = null;
+        boolean success = false;
 
         try {
-            id = socket.fileOpen(context, wallpaperPath, new short[]{}, 0);
-            if (id < 0) {
-                return CacheWallpaperResult.FAILED;
-            }
+            channel = MbtoolFileChannel.open(
+                    context, MbtoolSocket.getInstance(Lane.BULK), wallpaperPath);
 
             // Check if we need to re-cache the file
-            StatBuf sb = socket.fileStat(context, id);
-            if (sb == null) {
-                return CacheWallpaperResult.FAILED;
-            }
+            StatBuf sb = channel.stat();
 
             if (wallpaperCacheFile.exists()
                     && wallpaperCacheFile.lastModified() / 1000 > sb.st_mtime) {
@@ -444,32 +412,17 @@ public class RomUtils {
             }
 
             // Ignore large wallpapers
-            if (sb.st_size < 0 || sb.st_size > 20 * 1024 * 1024) {
+            if (channel.size() > 20 * 1024 * 1024) {
                 return CacheWallpaperResult.FAILED;
             }
 
-            // Read file into memory
-            byte[] data = new byte[(int) sb.st_size];
-            int nWritten = 0;
-            while (nWritten < data.length) {
-                ByteBuffer newData = socket.fileRead(context, id, 10240);
-                if (newData == null) {
-                    return CacheWallpaperResult.FAILED;
-                }
-
-                int nRead = newData.limit() - newData.position();
-                newData.get(data, nWritten, nRead);
-                nWritten += nRead;
-            }
-
-            socket.fileClose(context, id);
-            id = -1;
-
             fos = new FileOutputStream(wallpaperCacheFile);
 
             // Compression can be very slow (more than 10 seconds) for a large wallpaper, so we'll
             // just cache the actual file instead
-            fos.write(data);
+            IOUtils.copy(channel.newInputStream(), fos);
+            fos.close();
+            success = true;
 
             // Load into bitmap
             //Bitmap bitmap = BitmapFactory.decodeByteArray(data, 0, data.length);
@@ -488,14 +441,12 @@ public class RomUtils {
             Log.e(TAG, "Failed to cache wallpaper for " + info.getId(), e);
             return CacheWallpaperResult.FAILED;
         } finally {
-            if (id >= 0) {
-                try {
-                    socket.fileClose(context, id);
-                } catch (IOException e) {
-                    // Ignore
-                }
-            }
+            IOUtils.closeQuietly(channel);
             IOUtils.closeQuietly(fos);
+            if (!success && fos != null) {
+                // Don't leave a partially written wallpaper behind
+                wallpaperCacheFile.delete();
+            }
         }
     }
 }
@@ -30,17 +30,22 @@ import com.github.chenxiaolong.dualbootpatcher.nativelib.LibMbp.CWrapper.CPatche
 import com.github.chenxiaolong.dualbootpatcher.nativelib.LibMbp.CWrapper.CPatcherConfig;
 import com.github.chenxiaolong.dualbootpatcher.nativelib.LibMbp.CWrapper.CRamdiskPatcher;
 import com.sun.jna.Callback;
-import com.sun.jna.Memory;
 import com.sun.jna.Native;
 import com.sun.jna.Pointer;
 import com.sun.jna.PointerType;
 import com.sun.jna.StringArray;
-import com.sun.jna.ptr.IntByReference;
-import com.sun.jna.ptr.PointerByReference;
 
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 // NOTE: Almost no checking of parameters is performed on both the Java and C side of this native
 //       wrapper. As a rule of thumb, don't pass null to any function.
@@ -71,9 +76,9 @@ public class LibMbp {
         static native CBootImage mbp_bootimage_create();
         static native void mbp_bootimage_destroy(CBootImage bi);
         static native /* ErrorCode */ int mbp_bootimage_error(CBootImage bi);
-        static native boolean mbp_bootimage_load_data(CBootImage bi, Pointer data, int size);
+        static native boolean mbp_bootimage_load_data(CBootImage bi, byte[] data, /* size_t */ int size);
         static native boolean mbp_bootimage_load_file(CBootImage bi, String filename);
-        static native boolean mbp_bootimage_create_data(CBootImage bi, PointerByReference dataReturn, /* size_t */ IntByReference size);
+        static native boolean mbp_bootimage_create_data(CBootImage bi, /* unsigned char ** */ long[] dataReturn, /* size_t * */ long[] size);
         static native boolean mbp_bootimage_create_file(CBootImage bi, String filename);
         static native int /* BootImageType */ mbp_bootimage_was_type(CBootImage bi);
         static native int /* BootImageType */ mbp_bootimage_target_type(CBootImage bi);
@@ -100,30 +105,32 @@ public class LibMbp {
         static native void mbp_bootimage_set_appsbl_address(CBootImage bi, int address);
         static native int mbp_bootimage_entrypoint_address(CBootImage bi);
         static native void mbp_bootimage_set_entrypoint_address(CBootImage bi, int address);
-        static native void mbp_bootimage_kernel_image(CBootImage bi, PointerByReference dataReturn, /* size_t */ IntByReference sizeReturn);
+        static native void mbp_bootimage_kernel_image(CBootImage bi, /* const unsigned char ** */ long[] dataReturn, /* size_t * */ long[] sizeReturn);
+        static native void mbp_bootimage_set_kernel_image(CBootImage bi, byte[] data, /* size_t */ int size);
         static native void mbp_bootimage_set_kernel_image(CBootImage bi, Pointer data, /* size_t */ int size);
-        static native void mbp_bootimage_ramdisk_image(CBootImage bi, PointerByReference dataReturn, /* size_t */ IntByReference sizeReturn);
+        static native void mbp_bootimage_ramdisk_image(CBootImage bi, /* const unsigned char ** */ long[] dataReturn, /* size_t * */ long[] sizeReturn);
+        static native void mbp_bootimage_set_ramdisk_image(CBootImage bi, byte[] data, /* size_t */ int size);
         static native void mbp_bootimage_set_ramdisk_image(CBootImage bi, Pointer data, /* size_t */ int size);
-        static native void mbp_bootimage_second_bootloader_image(CBootImage bi, PointerByReference dataReturn, /* size_t */ IntByReference sizeReturn);
-        static native void mbp_bootimage_set_second_bootloader_image(CBootImage bi, Pointer data, /* size_t */ int size);
-        static native void mbp_bootimage_device_tree_image(CBootImage bi, PointerByReference dataReturn, /* size_t */ IntByReference sizeReturn);
-        static native void mbp_bootimage_set_device_tree_image(CBootImage bi, Pointer data, int size);
-        static native void mbp_bootimage_aboot_image(CBootImage bi, PointerByReference dataReturn, /* size_t */ IntByReference sizeReturn);
-        static native void mbp_bootimage_set_aboot_image(CBootImage bi, Pointer data, int size);
-        static native void mbp_bootimage_kernel_mtk_header(CBootImage bi, PointerByReference dataReturn, /* size_t */ IntByReference sizeReturn);
-        static native void mbp_bootimage_set_kernel_mtk_header(CBootImage bi, Pointer data, int size);
-        static native void mbp_bootimage_ramdisk_mtk_header(CBootImage bi, PointerByReference dataReturn, /* size_t */ IntByReference sizeReturn);
-        static native void mbp_bootimage_set_ramdisk_mtk_header(CBootImage bi, Pointer data, int size);
-        static native void mbp_bootimage_ipl_image(CBootImage bi, PointerByReference dataReturn, /* size_t */ IntByReference sizeReturn);
-        static native void mbp_bootimage_set_ipl_image(CBootImage bi, Pointer data, int size);
-        static native void mbp_bootimage_rpm_image(CBootImage bi, PointerByReference dataReturn, /* size_t */ IntByReference sizeReturn);
-        static native void mbp_bootimage_set_rpm_image(CBootImage bi, Pointer data, int size);
-        static native void mbp_bootimage_appsbl_image(CBootImage bi, PointerByReference dataReturn, /* size_t */ IntByReference sizeReturn);
-        static native void mbp_bootimage_set_appsbl_image(CBootImage bi, Pointer data, int size);
-        static native void mbp_bootimage_sin_image(CBootImage bi, PointerByReference dataReturn, /* size_t */ IntByReference sizeReturn);
-        static native void mbp_bootimage_set_sin_image(CBootImage bi, Pointer data, int size);
-        static native void mbp_bootimage_sin_header(CBootImage bi, PointerByReference dataReturn, /* size_t */ IntByReference sizeReturn);
-        static native void mbp_bootimage_set_sin_header(CBootImage bi, Pointer data, int size);
+        static native void mbp_bootimage_second_bootloader_image(CBootImage bi, /* const unsigned char ** */ long[] dataReturn, /* size_t * */ long[] sizeReturn);
+        static native void mbp_bootimage_set_second_bootloader_image(CBootImage bi, byte[] data, /* size_t */ int size);
+        static native void mbp_bootimage_device_tree_image(CBootImage bi, /* const unsigned char ** */ long[] dataReturn, /* size_t * */ long[] sizeReturn);
+        static native void mbp_bootimage_set_device_tree_image(CBootImage bi, byte[] data, /* size_t */ int size);
+        static native void mbp_bootimage_aboot_image(CBootImage bi, /* const unsigned char ** */ long[] dataReturn, /* size_t * */ long[] sizeReturn);
+        static native void mbp_bootimage_set_aboot_image(CBootImage bi, byte[] data, /* size_t */ int size);
+        static native void mbp_bootimage_kernel_mtk_header(CBootImage bi, /* const unsigned char ** */ long[] dataReturn, /* size_t * */ long[] sizeReturn);
+        static native void mbp_bootimage_set_kernel_mtk_header(CBootImage bi, byte[] data, /* size_t */ int size);
+        static native void mbp_bootimage_ramdisk_mtk_header(CBootImage bi, /* const unsigned char ** */ long[] dataReturn, /* size_t * */ long[] sizeReturn);
+        static native void mbp_bootimage_set_ramdisk_mtk_header(CBootImage bi, byte[] data, /* size_t */ int size);
+        static native void mbp_bootimage_ipl_image(CBootImage bi, /* const unsigned char ** */ long[] dataReturn, /* size_t * */ long[] sizeReturn);
+        static native void mbp_bootimage_set_ipl_image(CBootImage bi, byte[] data, /* size_t */ int size);
+        static native void mbp_bootimage_rpm_image(CBootImage bi, /* const unsigned char ** */ long[] dataReturn, /* size_t * */ long[] sizeReturn);
+        static native void mbp_bootimage_set_rpm_image(CBootImage bi, byte[] data, /* size_t */ int size);
+        static native void mbp_bootimage_appsbl_image(CBootImage bi, /* const unsigned char ** */ long[] dataReturn, /* size_t * */ long[] sizeReturn);
+        static native void mbp_bootimage_set_appsbl_image(CBootImage bi, byte[] data, /* size_t */ int size);
+        static native void mbp_bootimage_sin_image(CBootImage bi, /* const unsigned char ** */ long[] dataReturn, /* size_t * */ long[] sizeReturn);
+        static native void mbp_bootimage_set_sin_image(CBootImage bi, byte[] data, /* size_t */ int size);
+        static native void mbp_bootimage_sin_header(CBootImage bi, /* const unsigned char ** */ long[] dataReturn, /* size_t * */ long[] sizeReturn);
+        static native void mbp_bootimage_set_sin_header(CBootImage bi, byte[] data, /* size_t */ int size);
         static native boolean mbp_bootimage_equals(CBootImage lhs, CBootImage rhs);
         // END: cbootimage.h
 
@@ -136,16 +143,17 @@ public class LibMbp {
         static native CCpioFile mbp_cpiofile_create();
         static native void mbp_cpiofile_destroy(CCpioFile cpio);
         static native /* ErrorCode */ int mbp_cpiofile_error(CCpioFile cpio);
-        static native boolean mbp_cpiofile_load_data(CCpioFile cpio, Pointer data, int size);
-        static native boolean mbp_cpiofile_create_data(CCpioFile cpio, PointerByReference dataReturn, /* size_t */ IntByReference size);
+        static native boolean mbp_cpiofile_load_data(CCpioFile cpio, byte[] data, /* size_t */ int size);
+        static native boolean mbp_cpiofile_load_data(CCpioFile cpio, Pointer data, /* size_t */ int size);
+        static native boolean mbp_cpiofile_create_data(CCpioFile cpio, /* unsigned char ** */ long[] dataReturn, /* size_t * */ long[] size);
         static native boolean mbp_cpiofile_exists(CCpioFile cpio, String filename);
         static native boolean mbp_cpiofile_remove(CCpioFile cpio, String filename);
         static native Pointer mbp_cpiofile_filenames(CCpioFile cpio);
-        static native boolean mbp_cpiofile_contents(CCpioFile cpio, String filename, PointerByReference dataReturn, /* size_t */ IntByReference size);
-        static native boolean mbp_cpiofile_set_contents(CCpioFile cpio, String filename, Pointer data, /* size_t */ int size);
+        static native boolean mbp_cpiofile_contents(CCpioFile cpio, String filename, /* const unsigned char ** */ long[] dataReturn, /* size_t * */ long[] size);
+        static native boolean mbp_cpiofile_set_contents(CCpioFile cpio, String filename, byte[] data, /* size_t */ int size);
         static native boolean mbp_cpiofile_add_symlink(CCpioFile cpio, String source, String target);
         static native boolean mbp_cpiofile_add_file(CCpioFile cpio, String path, String name, int perms);
-        static native boolean mbp_cpiofile_add_file_from_data(CCpioFile cpio, Pointer data, /* size_t */ int size, String name, int perms);
+        static native boolean mbp_cpiofile_add_file_from_data(CCpioFile cpio, byte[] data, /* size_t */ int size, String name, int perms);
         // END: ccpiofile.h
 
         // BEGIN: cdevice.h
@@ -239,6 +247,51 @@ public class LibMbp {
         // END: cpatcherinterface.h
     }
 
+    /**
+     * Copy a buffer returned through a (const unsigned char **, size_t *) out parameter pair.
+     *
+     * The out parameters are passed as one-element long arrays. Unlike PointerByReference and
+     * IntByReference, direct-mapped primitive arrays don't need a native allocation (and a
+     * finalizer) of their own for every call. A long can hold a pointer or size_t on both 32-bit
+     * and 64-bit devices, which are all little endian.
+     */
+    private static byte[] getByteArray(long[] data, long[] size) {
+        if (size[0] == 0) {
+            return new byte[0];
+        }
+        return new Pointer(data[0]).getByteArray(0, (int) size[0]);
+    }
+
+    /**
+     * Get a read-only view of a buffer returned through a (const unsigned char **, size_t *) out
+     * parameter pair without copying it.
+     *
+     * The view points to memory owned by libmbp. It must not be used after the object it came from
+     * is modified or destroyed.
+     */
+    private static ByteBuffer getByteBuffer(long[] data, long[] size) {
+        if (size[0] == 0) {
+            return ByteBuffer.allocateDirect(0);
+        }
+        return new Pointer(data[0]).getByteBuffer(0, size[0]).asReadOnlyBuffer();
+    }
+
+    /**
+     * Get a pointer to the remaining bytes of a direct buffer
+     */
+    private static Pointer getBufferPointer(ByteBuffer buf) {
+        return Native.getDirectBufferPointer(buf).share(buf.position());
+    }
+
+    /**
+     * Copy the remaining bytes of a heap buffer, which cannot be passed to native code directly
+     */
+    private static byte[] getBufferArray(ByteBuffer buf) {
+        byte[] data = new byte[buf.remaining()];
+        buf.duplicate().get(data);
+        return data;
+    }
+
     private static String[] getStringArrayAndFree(Pointer p) {
         String[] array = p.getStringArray(0);
         CWrapper.mbp_free_array(p);
@@ -257,32 +310,6 @@ public class LibMbp {
         }
     }
 
-    private static <T> void incrementRefCount(HashMap<T, Integer> instances, T instance) {
-        if (instances.containsKey(instance)) {
-            int count = instances.get(instance);
-            instances.put(instance, ++count);
-        } else {
-            instances.put(instance, 1);
-        }
-    }
-
-    private static <T> boolean decrementRefCount(HashMap<T, Integer> instances, T instance) {
-        if (!instances.containsKey(instance)) {
-            throw new IllegalStateException("Ref count list does not contain instance");
-        }
-
-        int count = instances.get(instance) - 1;
-        if (count == 0) {
-            // Destroy
-            instances.remove(instance);
-            return true;
-        } else {
-            // Decrement
-            instances.put(instance, count);
-            return false;
-        }
-    }
-
     private static String getSig(PointerType ptr, Class clazz, String method, Object... params) {
         StringBuilder sb = new StringBuilder();
         sb.append('(');
@@ -319,14 +346,174 @@ public class LibMbp {
     }
 
     private static void validate(PointerType ptr, Class clazz, String method, Object... params) {
-        String signature = getSig(ptr, clazz, method, params);
-
+        // Only format the signature when it is actually going to be used. This is called for
+        // every native method, so it must stay cheap when DEBUG is disabled.
         if (DEBUG) {
-            Log.d("libmbp", signature);
+            Log.d("libmbp", getSig(ptr, clazz, method, params));
         }
 
         if (ptr == null && !method.equals("destroy")) {
-            throw new IllegalStateException("Called on a destroyed object! " + signature);
+            throw new IllegalStateException(
+                    "Called on a destroyed object! " + getSig(ptr, clazz, method, params));
+        }
+    }
+
+    /**
+     * Reference counts native handles shared between wrapper objects.
+     *
+     * Several wrappers may point to the same native object (eg. after being unparceled), so the
+     * native object is only destroyed when the last wrapper releases it. Counts are kept in a
+     * concurrent map so that unrelated handles never contend on a common lock.
+     *
+     * Each wrapper is tracked with a phantom reference instead of a finalizer. If a wrapper
+     * becomes unreachable without {@code destroy()} having been called, the reaper thread logs
+     * it as a leak and releases the handle on the wrapper's behalf.
+     */
+    private static final class HandleRegistry<T extends PointerType> {
+        interface Destroyer<T> {
+            void destroy(T ptr);
+        }
+
+        private static final String TAG = "libmbp";
+
+        private static final ReferenceQueue<Object> sQueue = new ReferenceQueue<>();
+        // Keeps unreleased handles strongly reachable so that they are actually enqueued
+        private static final Set<Reference<?>> sHandles =
+                Collections.newSetFromMap(new ConcurrentHashMap<Reference<?>, Boolean>());
+
+        static {
+            Thread reaper = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    while (true) {
+                        try {
+                            Reference<?> ref = sQueue.remove();
+                            ((HandleRegistry<?>.Handle) ref).reap();
+                        } catch (InterruptedException e) {
+                            // Ignore
+                        } catch (RuntimeException e) {
+                            Log.e(TAG, "Failed to release leaked native handle", e);
+                        }
+                    }
+                }
+            }, "LibMbp handle reaper");
+            reaper.setDaemon(true);
+            reaper.start();
+        }
+
+        private final Class mClass;
+        private final Destroyer<T> mDestroyer;
+        private final ConcurrentHashMap<T, AtomicInteger> mRefCounts = new ConcurrentHashMap<>();
+
+        HandleRegistry(Class clazz, Destroyer<T> destroyer) {
+            mClass = clazz;
+            mDestroyer = destroyer;
+        }
+
+        Handle register(Object owner, T ptr) {
+            return register(owner, ptr, true);
+        }
+
+        /**
+         * Take a reference to a native handle on behalf of a wrapper object
+         *
+         * @param owner Wrapper object whose reachability determines when the handle is leaked
+         * @param ptr Native handle
+         * @param destroyable Whether the native object should be destroyed if this is the last
+         *                    reference to be released
+         * @return Handle that must be released when the wrapper is destroyed
+         */
+        Handle register(Object owner, T ptr, boolean destroyable) {
+            acquire(ptr);
+            Handle handle = new Handle(owner, ptr, destroyable);
+            sHandles.add(handle);
+            return handle;
+        }
+
+        private void acquire(T ptr) {
+            while (true) {
+                AtomicInteger count = mRefCounts.get(ptr);
+                if (count == null) {
+                    if (mRefCounts.putIfAbsent(ptr, new AtomicInteger(1)) == null) {
+                        return;
+                    }
+                } else {
+                    // A count of zero means the entry is about to be removed by the thread that
+                    // released the last reference. Retry until it is gone.
+                    int value = count.get();
+                    if (value > 0 && count.compareAndSet(value, value + 1)) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        private boolean release(T ptr) {
+            AtomicInteger count = mRefCounts.get(ptr);
+            if (count == null) {
+                throw new IllegalStateException("Ref count list does not contain instance");
+            }
+
+            if (count.decrementAndGet() == 0) {
+                mRefCounts.remove(ptr, count);
+                return true;
+            }
+            return false;
+        }
+
+        final class Handle extends PhantomReference<Object> {
+            private final T mPtr;
+            private final boolean mDestroyable;
+            private final AtomicBoolean mReleased = new AtomicBoolean();
+            private final Throwable mAllocationSite;
+
+            private Handle(Object owner, T ptr, boolean destroyable) {
+                super(owner, sQueue);
+                mPtr = ptr;
+                mDestroyable = destroyable;
+                mAllocationSite = DEBUG ? new Throwable("Allocation site") : null;
+            }
+
+            /**
+             * Release this reference to the native handle. Safe to call more than once.
+             */
+            void release() {
+                if (!mReleased.compareAndSet(false, true)) {
+                    return;
+                }
+
+                clear();
+                sHandles.remove(this);
+
+                if (HandleRegistry.this.release(mPtr) && mDestroyable) {
+                    validate(mPtr, mClass, "(Destroyed)");
+                    mDestroyer.destroy(mPtr);
+                }
+            }
+
+            private void reap() {
+                if (mReleased.get()) {
+                    return;
+                }
+
+                // Non-owning wrappers (eg. the devices returned by PatcherConfig) are never
+                // destroyed explicitly. Dropping their reference is all there is to do.
+                if (!mDestroyable) {
+                    release();
+                    return;
+                }
+
+                String message = "Leaked " + mClass.getSimpleName() + " handle ("
+                        + Pointer.nativeValue(mPtr.getPointer())
+                        + "): destroy() was never called";
+                if (mAllocationSite != null) {
+                    Log.w(TAG, message, mAllocationSite);
+                } else {
+                    Log.w(TAG, message);
+                }
+
+                release();
+            }
         }
     }
 
@@ -338,14 +525,20 @@ public class LibMbp {
             int SONY_ELF = 4;
         }
 
-        private static final HashMap<CBootImage, Integer> sInstances = new HashMap<>();
+        private static final HandleRegistry<CBootImage> sRegistry = new HandleRegistry<>(
+                BootImage.class, new HandleRegistry.Destroyer<CBootImage>() {
+                    @Override
+                    public void destroy(CBootImage ptr) {
+                        CWrapper.mbp_bootimage_destroy(ptr);
+                    }
+                });
+
         private CBootImage mCBootImage;
+        private HandleRegistry<CBootImage>.Handle mHandle;
 
         public BootImage() {
             mCBootImage = CWrapper.mbp_bootimage_create();
-            synchronized (sInstances) {
-                incrementRefCount(sInstances, mCBootImage);
-            }
+            mHandle = sRegistry.register(this, mCBootImage);
             validate(mCBootImage, BootImage.class, "(Constructor)");
         }
 
@@ -353,21 +546,17 @@ public class LibMbp {
             ensureNotNull(cBootImage);
 
             mCBootImage = cBootImage;
-            synchronized (sInstances) {
-                incrementRefCount(sInstances, mCBootImage);
-            }
+            mHandle = sRegistry.register(this, mCBootImage);
             validate(mCBootImage, BootImage.class, "(Constructor)");
         }
 
         public void destroy() {
             validate(mCBootImage, BootImage.class, "destroy");
-            synchronized (sInstances) {
-                if (mCBootImage != null && decrementRefCount(sInstances, mCBootImage)) {
-                    validate(mCBootImage, BootImage.class, "(Destroyed)");
-                    CWrapper.mbp_bootimage_destroy(mCBootImage);
-                }
-                mCBootImage = null;
+            if (mHandle != null) {
+                mHandle.release();
+                mHandle = null;
             }
+            mCBootImage = null;
         }
 
         @Override
@@ -390,12 +579,6 @@ public class LibMbp {
             return mCBootImage.hashCode();
         }
 
-        @Override
-        protected void finalize() throws Throwable {
-            destroy();
-            super.finalize();
-        }
-
         CBootImage getPointer() {
             validate(mCBootImage, BootImage.class, "getPointer");
             return mCBootImage;
@@ -416,9 +599,7 @@ public class LibMbp {
             long peer = in.readLong();
             mCBootImage = new CBootImage();
             mCBootImage.setPointer(new Pointer(peer));
-            synchronized (sInstances) {
-                incrementRefCount(sInstances, mCBootImage);
-            }
+            mHandle = sRegistry.register(this, mCBootImage);
             validate(mCBootImage, BootImage.class, "(Constructor)");
         }
 
@@ -442,9 +623,7 @@ public class LibMbp {
             validate(mCBootImage, BootImage.class, "load", data.length);
             ensureNotNull(data);
 
-            Memory mem = new Memory(data.length);
-            mem.write(0, data, 0, data.length);
-            return CWrapper.mbp_bootimage_load_data(mCBootImage, mem, data.length);
+            return CWrapper.mbp_bootimage_load_data(mCBootImage, data, data.length);
         }
 
         public boolean load(String filename) {
@@ -456,18 +635,16 @@ public class LibMbp {
 
         public byte[] create() {
             validate(mCBootImage, BootImage.class, "create");
-            PointerByReference pData = new PointerByReference();
-            IntByReference pSize = new IntByReference();
+            long[] pData = new long[1];
+            long[] pSize = new long[1];
 
             boolean ret = CWrapper.mbp_bootimage_create_data(mCBootImage, pData, pSize);
             if (!ret) {
                 return null;
             }
 
-            int size = pSize.getValue();
-            Pointer data = pData.getValue();
-            byte[] out = data.getByteArray(0, size);
-            CWrapper.mbp_free(data);
+            byte[] out = getByteArray(pData, pSize);
+            CWrapper.mbp_free(new Pointer(pData[0]));
             return out;
         }
 
@@ -614,223 +791,268 @@ public class LibMbp {
 
         public byte[] getKernelImage() {
             validate(mCBootImage, BootImage.class, "getKernelImage");
-            PointerByReference pData = new PointerByReference();
-            IntByReference pSize = new IntByReference();
+            long[] pData = new long[1];
+            long[] pSize = new long[1];
             CWrapper.mbp_bootimage_kernel_image(mCBootImage, pData, pSize);
-            Pointer data = pData.getValue();
-            int size = pSize.getValue();
-            return data.getByteArray(0, size);
+            return getByteArray(pData, pSize);
         }
 
         public void setKernelImage(byte[] data) {
             validate(mCBootImage, BootImage.class, "setKernelImage", data.length);
             ensureNotNull(data);
 
-            Memory mem = new Memory(data.length);
-            mem.write(0, data, 0, data.length);
-            CWrapper.mbp_bootimage_set_kernel_image(mCBootImage, mem, data.length);
+            CWrapper.mbp_bootimage_set_kernel_image(mCBootImage, data, data.length);
+        }
+
+        /**
+         * Get the kernel image without copying it.
+         *
+         * @return Read-only view of the kernel image. It is only valid until this boot image is
+         *         modified or destroyed.
+         */
+        public ByteBuffer getKernelImageBuffer() {
+            validate(mCBootImage, BootImage.class, "getKernelImageBuffer");
+            long[] pData = new long[1];
+            long[] pSize = new long[1];
+            CWrapper.mbp_bootimage_kernel_image(mCBootImage, pData, pSize);
+            return getByteBuffer(pData, pSize);
+        }
+
+        /**
+         * Set the kernel image to the remaining bytes of a buffer. Direct buffers are passed to
+         * libmbp without copying them to the Java heap first.
+         */
+        public void setKernelImage(ByteBuffer data) {
+            validate(mCBootImage, BootImage.class, "setKernelImage", data.remaining());
+            ensureNotNull(data);
+
+            if (data.isDirect()) {
+                CWrapper.mbp_bootimage_set_kernel_image(
+                        mCBootImage, getBufferPointer(data), data.remaining());
+            } else {
+                setKernelImage(getBufferArray(data));
+            }
         }
 
         public byte[] getRamdiskImage() {
             validate(mCBootImage, BootImage.class, "getRamdiskImage");
-            PointerByReference pData = new PointerByReference();
-            IntByReference pSize = new IntByReference();
+            long[] pData = new long[1];
+            long[] pSize = new long[1];
             CWrapper.mbp_bootimage_ramdisk_image(mCBootImage, pData, pSize);
-            Pointer data = pData.getValue();
-            int size = pSize.getValue();
-            return data.getByteArray(0, size);
+            return getByteArray(pData, pSize);
         }
 
         public void setRamdiskImage(byte[] data) {
             validate(mCBootImage, BootImage.class, "setRamdiskImage", data.length);
             ensureNotNull(data);
 
-            Memory mem = new Memory(data.length);
-            mem.write(0, data, 0, data.length);
-            CWrapper.mbp_bootimage_set_ramdisk_image(mCBootImage, mem, data.length);
+            CWrapper.mbp_bootimage_set_ramdisk_image(mCBootImage, data, data.length);
+        }
+
+        /**
+         * Get the ramdisk image without copying it.
+         *
+         * @return Read-only view of the ramdisk image. It is only valid until this boot image is
+         *         modified or destroyed.
+         */
+        public ByteBuffer getRamdiskImageBuffer() {
+            validate(mCBootImage, BootImage.class, "getRamdiskImageBuffer");
+            long[] pData = new long[1];
+            long[] pSize = new long[1];
+            CWrapper.mbp_bootimage_ramdisk_image(mCBootImage, pData, pSize);
+            return getByteBuffer(pData, pSize);
+        }
+
+        /**
+         * Set the ramdisk image to the remaining bytes of a buffer. Direct buffers are passed to
+         * libmbp without copying them to the Java heap first.
+         */
+        public void setRamdiskImage(ByteBuffer data) {
+            validate(mCBootImage, BootImage.class, "setRamdiskImage", data.remaining());
+            ensureNotNull(data);
+
+            if (data.isDirect()) {
+                CWrapper.mbp_bootimage_set_ramdisk_image(
+                        mCBootImage, getBufferPointer(data), data.remaining());
+            } else {
+                setRamdiskImage(getBufferArray(data));
+            }
+        }
+
+        /**
+         * Set the ramdisk image to a cpio archive. The archive never passes through the Java heap.
+         *
+         * @return Whether the archive could be created. If not, the error is available from
+         *         {@link CpioFile#getError()}.
+         */
+        public boolean setRamdiskImage(CpioFile cpio) {
+            validate(mCBootImage, BootImage.class, "setRamdiskImage", cpio);
+            ensureNotNull(cpio);
+
+            long[] pData = new long[1];
+            long[] pSize = new long[1];
+
+            if (!CWrapper.mbp_cpiofile_create_data(cpio.getPointer(), pData, pSize)) {
+                return false;
+            }
+
+            Pointer data = new Pointer(pData[0]);
+            CWrapper.mbp_bootimage_set_ramdisk_image(mCBootImage, data, (int) pSize[0]);
+            CWrapper.mbp_free(data);
+            return true;
         }
 
         public byte[] getSecondBootloaderImage() {
             validate(mCBootImage, BootImage.class, "getSecondBootloaderImage");
-            PointerByReference pData = new PointerByReference();
-            IntByReference pSize = new IntByReference();
+            long[] pData = new long[1];
+            long[] pSize = new long[1];
             CWrapper.mbp_bootimage_second_bootloader_image(mCBootImage, pData, pSize);
-            Pointer data = pData.getValue();
-            int size = pSize.getValue();
-            return data.getByteArray(0, size);
+            return getByteArray(pData, pSize);
         }
 
         public void setSecondBootloaderImage(byte[] data) {
             validate(mCBootImage, BootImage.class, "setSecondBootloaderImage", data.length);
             ensureNotNull(data);
 
-            Memory mem = new Memory(data.length);
-            mem.write(0, data, 0, data.length);
-            CWrapper.mbp_bootimage_set_second_bootloader_image(mCBootImage, mem, data.length);
+            CWrapper.mbp_bootimage_set_second_bootloader_image(mCBootImage, data, data.length);
         }
 
         public byte[] getDeviceTreeImage() {
             validate(mCBootImage, BootImage.class, "getDeviceTreeImage");
-            PointerByReference pData = new PointerByReference();
-            IntByReference pSize = new IntByReference();
+            long[] pData = new long[1];
+            long[] pSize = new long[1];
             CWrapper.mbp_bootimage_device_tree_image(mCBootImage, pData, pSize);
-            Pointer data = pData.getValue();
-            int size = pSize.getValue();
-            return data.getByteArray(0, size);
+            return getByteArray(pData, pSize);
         }
 
         public void setDeviceTreeImage(byte[] data) {
             validate(mCBootImage, BootImage.class, "setDeviceTreeImage", data.length);
             ensureNotNull(data);
 
-            Memory mem = new Memory(data.length);
-            mem.write(0, data, 0, data.length);
-            CWrapper.mbp_bootimage_set_device_tree_image(mCBootImage, mem, data.length);
+            CWrapper.mbp_bootimage_set_device_tree_image(mCBootImage, data, data.length);
         }
 
         public byte[] getAbootImage() {
             validate(mCBootImage, BootImage.class, "getAbootImage");
-            PointerByReference pData = new PointerByReference();
-            IntByReference pSize = new IntByReference();
+            long[] pData = new long[1];
+            long[] pSize = new long[1];
             CWrapper.mbp_bootimage_aboot_image(mCBootImage, pData, pSize);
-            Pointer data = pData.getValue();
-            int size = pSize.getValue();
-            return data.getByteArray(0, size);
+            return getByteArray(pData, pSize);
         }
 
         public void setAbootImage(byte[] data) {
             validate(mCBootImage, BootImage.class, "setAbootImage", data.length);
             ensureNotNull(data);
 
-            Memory mem = new Memory(data.length);
-            mem.write(0, data, 0, data.length);
-            CWrapper.mbp_bootimage_set_aboot_image(mCBootImage, mem, data.length);
+            CWrapper.mbp_bootimage_set_aboot_image(mCBootImage, data, data.length);
         }
 
         public byte[] getKernelMtkHeader() {
             validate(mCBootImage, BootImage.class, "getKernelMtkHeader");
-            PointerByReference pData = new PointerByReference();
-            IntByReference pSize = new IntByReference();
+            long[] pData = new long[1];
+            long[] pSize = new long[1];
             CWrapper.mbp_bootimage_kernel_mtk_header(mCBootImage, pData, pSize);
-            Pointer data = pData.getValue();
-            int size = pSize.getValue();
-            return data.getByteArray(0, size);
+            return getByteArray(pData, pSize);
         }
 
         public void setKernelMtkHeader(byte[] data) {
             validate(mCBootImage, BootImage.class, "setKernelMtkHeader", data.length);
             ensureNotNull(data);
 
-            Memory mem = new Memory(data.length);
-            mem.write(0, data, 0, data.length);
-            CWrapper.mbp_bootimage_set_kernel_mtk_header(mCBootImage, mem, data.length);
+            CWrapper.mbp_bootimage_set_kernel_mtk_header(mCBootImage, data, data.length);
         }
 
         public byte[] getRamdiskMtkHeader() {
             validate(mCBootImage, BootImage.class, "getRamdiskMtkHeader");
-            PointerByReference pData = new PointerByReference();
-            IntByReference pSize = new IntByReference();
+            long[] pData = new long[1];
+            long[] pSize = new long[1];
             CWrapper.mbp_bootimage_ramdisk_mtk_header(mCBootImage, pData, pSize);
-            Pointer data = pData.getValue();
-            int size = pSize.getValue();
-            return data.getByteArray(0, size);
+            return getByteArray(pData, pSize);
         }
 
         public void setRamdiskMtkHeader(byte[] data) {
             validate(mCBootImage, BootImage.class, "setRamdiskMtkHeader", data.length);
             ensureNotNull(data);
 
-            Memory mem = new Memory(data.length);
-            mem.write(0, data, 0, data.length);
-            CWrapper.mbp_bootimage_set_ramdisk_mtk_header(mCBootImage, mem, data.length);
+            CWrapper.mbp_bootimage_set_ramdisk_mtk_header(mCBootImage, data, data.length);
         }
 
         public byte[] getIplImage() {
             validate(mCBootImage, BootImage.class, "getIplImage");
-            PointerByReference pData = new PointerByReference();
-            IntByReference pSize = new IntByReference();
+            long[] pData = new long[1];
+            long[] pSize = new long[1];
             CWrapper.mbp_bootimage_ipl_image(mCBootImage, pData, pSize);
-            Pointer data = pData.getValue();
-            int size = pSize.getValue();
-            return data.getByteArray(0, size);
+            return getByteArray(pData, pSize);
         }
 
         public void setIplImage(byte[] data) {
             validate(mCBootImage, BootImage.class, "setIplImage", data.length);
             ensureNotNull(data);
 
-            Memory mem = new Memory(data.length);
-            mem.write(0, data, 0, data.length);
-            CWrapper.mbp_bootimage_set_ipl_image(mCBootImage, mem, data.length);
+            CWrapper.mbp_bootimage_set_ipl_image(mCBootImage, data, data.length);
         }
 
         public byte[] getRpmImage() {
             validate(mCBootImage, BootImage.class, "getRpmImage");
-            PointerByReference pData = new PointerByReference();
-            IntByReference pSize = new IntByReference();
+            long[] pData = new long[1];
+            long[] pSize = new long[1];
             CWrapper.mbp_bootimage_rpm_image(mCBootImage, pData, pSize);
-            Pointer data = pData.getValue();
-            int size = pSize.getValue();
-            return data.getByteArray(0, size);
+            return getByteArray(pData, pSize);
         }
 
         public void setRpmImage(byte[] data) {
             validate(mCBootImage, BootImage.class, "setRpmImage", data.length);
             ensureNotNull(data);
 
-            Memory mem = new Memory(data.length);
-            mem.write(0, data, 0, data.length);
-            CWrapper.mbp_bootimage_set_rpm_image(mCBootImage, mem, data.length);
+            CWrapper.mbp_bootimage_set_rpm_image(mCBootImage, data, data.length);
         }
 
         public byte[] getAppsblImage() {
             validate(mCBootImage, BootImage.class, "getAppsblImage");
-            PointerByReference pData = new PointerByReference();
-            IntByReference pSize = new IntByReference();
+            long[] pData = new long[1];
+            long[] pSize = new long[1];
             CWrapper.mbp_bootimage_appsbl_image(mCBootImage, pData, pSize);
-            Pointer data = pData.getValue();
-            int size = pSize.getValue();
-            return data.getByteArray(0, size);
+            return getByteArray(pData, pSize);
         }
 
         public void setAppsblImage(byte[] data) {
             validate(mCBootImage, BootImage.class, "setAppsblImage", data.length);
             ensureNotNull(data);
 
-            Memory mem = new Memory(data.length);
-            mem.write(0, data, 0, data.length);
-            CWrapper.mbp_bootimage_set_appsbl_image(mCBootImage, mem, data.length);
+            CWrapper.mbp_bootimage_set_appsbl_image(mCBootImage, data, data.length);
         }
 
         public byte[] getSinImage() {
             validate(mCBootImage, BootImage.class, "getSinImage");
-            PointerByReference pData = new PointerByReference();
-            IntByReference pSize = new IntByReference();
+            long[] pData = new long[1];
+            long[] pSize = new long[1];
             CWrapper.mbp_bootimage_sin_image(mCBootImage, pData, pSize);
-            Pointer data = pData.getValue();
-            int size = pSize.getValue();
-            return data.getByteArray(0, size);
+            return getByteArray(pData, pSize);
         }
 
         public void setSinImage(byte[] data) {
             validate(mCBootImage, BootImage.class, "setSinImage", data.length);
             ensureNotNull(data);
 
-            Memory mem = new Memory(data.length);
-            mem.write(0, data, 0, data.length);
-            CWrapper.mbp_bootimage_set_sin_image(mCBootImage, mem, data.length);
+            CWrapper.mbp_bootimage_set_sin_image(mCBootImage, data, data.length);
         }
     }
 
     public static class CpioFile implements Parcelable {
-        private static final HashMap<CCpioFile, Integer> sInstances = new HashMap<>();
+        private static final HandleRegistry<CCpioFile> sRegistry = new HandleRegistry<>(
+                CpioFile.class, new HandleRegistry.Destroyer<CCpioFile>() {
+                    @Override
+                    public void destroy(CCpioFile ptr) {
+                        CWrapper.mbp_cpiofile_destroy(ptr);
+                    }
+                });
+
         private CCpioFile mCCpioFile;
+        private HandleRegistry<CCpioFile>.Handle mHandle;
 
         public CpioFile() {
             mCCpioFile = CWrapper.mbp_cpiofile_create();
-            synchronized (sInstances) {
-                incrementRefCount(sInstances, mCCpioFile);
-            }
+            mHandle = sRegistry.register(this, mCCpioFile);
             validate(mCCpioFile, CpioFile.class, "(Constructor)");
         }
 
@@ -838,19 +1060,15 @@ public class LibMbp {
             ensureNotNull(cCpioFile);
 
             mCCpioFile = cCpioFile;
-            synchronized (sInstances) {
-                incrementRefCount(sInstances, mCCpioFile);
-            }
+            mHandle = sRegistry.register(this, mCCpioFile);
             validate(mCCpioFile, CpioFile.class, "(Constructor)");
         }
 
         public void destroy() {
             validate(mCCpioFile, CpioFile.class, "destroy");
-            synchronized (sInstances) {
-                if (mCCpioFile != null && decrementRefCount(sInstances, mCCpioFile)) {
-                    validate(mCCpioFile, CpioFile.class, "(Destroyed)");
-                    CWrapper.mbp_cpiofile_destroy(mCCpioFile);
-                }
+            if (mHandle != null) {
+                mHandle.release();
+                mHandle = null;
             }
             mCCpioFile = null;
         }
@@ -865,12 +1083,6 @@ public class LibMbp {
             return mCCpioFile.hashCode();
         }
 
-        @Override
-        protected void finalize() throws Throwable {
-            destroy();
-            super.finalize();
-        }
-
         CCpioFile getPointer() {
             validate(mCCpioFile, CpioFile.class, "getPointer");
             return mCCpioFile;
@@ -891,9 +1103,7 @@ public class LibMbp {
             long peer = in.readLong();
             mCCpioFile = new CCpioFile();
             mCCpioFile.setPointer(new Pointer(peer));
-            synchronized (sInstances) {
-                incrementRefCount(sInstances, mCCpioFile);
-            }
+            mHandle = sRegistry.register(this, mCCpioFile);
             validate(mCCpioFile, CpioFile.class, "(Constructor)");
         }
 
@@ -917,15 +1127,30 @@ public class LibMbp {
             validate(mCCpioFile, CpioFile.class, "load", data.length);
             ensureNotNull(data);
 
-            Memory mem = new Memory(data.length);
-            mem.write(0, data, 0, data.length);
-            return CWrapper.mbp_cpiofile_load_data(mCCpioFile, mem, data.length);
+            return CWrapper.mbp_cpiofile_load_data(mCCpioFile, data, data.length);
+        }
+
+        /**
+         * Load an archive from the remaining bytes of a buffer, such as
+         * {@link BootImage#getRamdiskImageBuffer()}. Direct buffers are passed to libmbp without
+         * copying them to the Java heap first.
+         */
+        public boolean load(ByteBuffer data) {
+            validate(mCCpioFile, CpioFile.class, "load", data.remaining());
+            ensureNotNull(data);
+
+            if (data.isDirect()) {
+                return CWrapper.mbp_cpiofile_load_data(
+                        mCCpioFile, getBufferPointer(data), data.remaining());
+            } else {
+                return load(getBufferArray(data));
+            }
         }
 
         public byte[] createData() {
             validate(mCCpioFile, CpioFile.class, "createData");
-            PointerByReference pData = new PointerByReference();
-            IntByReference pSize = new IntByReference();
+            long[] pData = new long[1];
+            long[] pSize = new long[1];
 
             boolean ret = CWrapper.mbp_cpiofile_create_data(mCCpioFile, pData, pSize);
 
@@ -933,10 +1158,8 @@ public class LibMbp {
                 return null;
             }
 
-            int size = pSize.getValue();
-            Pointer data = pData.getValue();
-            byte[] out = data.getByteArray(0, size);
-            CWrapper.mbp_free(data);
+            byte[] out = getByteArray(pData, pSize);
+            CWrapper.mbp_free(new Pointer(pData[0]));
             return out;
         }
 
@@ -964,8 +1187,8 @@ public class LibMbp {
             validate(mCCpioFile, CpioFile.class, "getContents", name);
             ensureNotNull(name);
 
-            PointerByReference pData = new PointerByReference();
-            IntByReference pSize = new IntByReference();
+            long[] pData = new long[1];
+            long[] pSize = new long[1];
 
             boolean ret = CWrapper.mbp_cpiofile_contents(mCCpioFile, name, pData, pSize);
 
@@ -973,9 +1196,29 @@ public class LibMbp {
                 return null;
             }
 
-            int size = pSize.getValue();
-            Pointer data = pData.getValue();
-            return data.getByteArray(0, size);
+            return getByteArray(pData, pSize);
+        }
+
+        /**
+         * Get the contents of a file without copying them.
+         *
+         * @return Read-only view of the contents or null if the file does not exist. It is only
+         *         valid until this archive is modified or destroyed.
+         */
+        public ByteBuffer getContentsBuffer(String name) {
+            validate(mCCpioFile, CpioFile.class, "getContentsBuffer", name);
+            ensureNotNull(name);
+
+            long[] pData = new long[1];
+            long[] pSize = new long[1];
+
+            boolean ret = CWrapper.mbp_cpiofile_contents(mCCpioFile, name, pData, pSize);
+
+            if (!ret) {
+                return null;
+            }
+
+            return getByteBuffer(pData, pSize);
         }
 
         public boolean setContents(String name, byte[] data) {
@@ -983,9 +1226,7 @@ public class LibMbp {
             ensureNotNull(name);
             ensureNotNull(data);
 
-            Memory mem = new Memory(data.length);
-            mem.write(0, data, 0, data.length);
-            return CWrapper.mbp_cpiofile_set_contents(mCCpioFile, name, mem, data.length);
+            return CWrapper.mbp_cpiofile_set_contents(mCCpioFile, name, data, data.length);
         }
 
         public boolean addSymlink(String source, String target) {
@@ -1009,24 +1250,28 @@ public class LibMbp {
             ensureNotNull(contents);
             ensureNotNull(name);
 
-            Memory mem = new Memory(contents.length);
-            mem.write(0, contents, 0, contents.length);
             return CWrapper.mbp_cpiofile_add_file_from_data(
-                    mCCpioFile, mem, contents.length, name, perms);
+                    mCCpioFile, contents, contents.length, name, perms);
         }
     }
 
     public static class Device implements Parcelable {
-        private static final HashMap<CDevice, Integer> sInstances = new HashMap<>();
+        private static final HandleRegistry<CDevice> sRegistry = new HandleRegistry<>(
+                Device.class, new HandleRegistry.Destroyer<CDevice>() {
+                    @Override
+                    public void destroy(CDevice ptr) {
+                        CWrapper.mbp_device_destroy(ptr);
+                    }
+                });
+
         private CDevice mCDevice;
+        private HandleRegistry<CDevice>.Handle mHandle;
         private boolean mDestroyable;
 
         public Device() {
             mCDevice = CWrapper.mbp_device_create();
-            synchronized (sInstances) {
-                incrementRefCount(sInstances, mCDevice);
-            }
             mDestroyable = true;
+            mHandle = sRegistry.register(this, mCDevice, mDestroyable);
             validate(mCDevice, Device.class, "(Constructor)");
         }
 
@@ -1034,20 +1279,16 @@ public class LibMbp {
             ensureNotNull(cDevice);
 
             mCDevice = cDevice;
-            synchronized (sInstances) {
-                incrementRefCount(sInstances, mCDevice);
-            }
             mDestroyable = destroyable;
+            mHandle = sRegistry.register(this, mCDevice, mDestroyable);
             validate(mCDevice, Device.class, "(Constructor)");
         }
 
         public void destroy() {
             validate(mCDevice, Device.class, "destroy");
-            synchronized (sInstances) {
-                if (mCDevice != null && decrementRefCount(sInstances, mCDevice) && mDestroyable) {
-                    validate(mCDevice, Device.class, "(Destroyed)");
-                    CWrapper.mbp_device_destroy(mCDevice);
-                }
+            if (mHandle != null) {
+                mHandle.release();
+                mHandle = null;
             }
             mCDevice = null;
         }
@@ -1065,12 +1306,6 @@ public class LibMbp {
             return hashCode;
         }
 
-        @Override
-        protected void finalize() throws Throwable {
-            destroy();
-            super.finalize();
-        }
-
         CDevice getPointer() {
             validate(mCDevice, Device.class, "getPointer");
             return mCDevice;
@@ -1093,9 +1328,7 @@ public class LibMbp {
             mCDevice = new CDevice();
             mCDevice.setPointer(new Pointer(peer));
             mDestroyable = in.readInt() != 0;
-            synchronized (sInstances) {
-                incrementRefCount(sInstances, mCDevice);
-            }
+            mHandle = sRegistry.register(this, mCDevice, mDestroyable);
             validate(mCDevice, Device.class, "(Constructor)");
         }
 
@@ -1255,14 +1488,20 @@ public class LibMbp {
     }
 
     public static class FileInfo implements Parcelable {
-        private static final HashMap<CFileInfo, Integer> sInstances = new HashMap<>();
+        private static final HandleRegistry<CFileInfo> sRegistry = new HandleRegistry<>(
+                FileInfo.class, new HandleRegistry.Destroyer<CFileInfo>() {
+                    @Override
+                    public void destroy(CFileInfo ptr) {
+                        CWrapper.mbp_fileinfo_destroy(ptr);
+                    }
+                });
+
         private CFileInfo mCFileInfo;
+        private HandleRegistry<CFileInfo>.Handle mHandle;
 
         public FileInfo() {
             mCFileInfo = CWrapper.mbp_fileinfo_create();
-            synchronized (sInstances) {
-                incrementRefCount(sInstances, mCFileInfo);
-            }
+            mHandle = sRegistry.register(this, mCFileInfo);
             validate(mCFileInfo, FileInfo.class, "(Constructor)");
         }
 
@@ -1270,19 +1509,15 @@ public class LibMbp {
             ensureNotNull(cFileInfo);
 
             mCFileInfo = cFileInfo;
-            synchronized (sInstances) {
-                incrementRefCount(sInstances, mCFileInfo);
-            }
+            mHandle = sRegistry.register(this, mCFileInfo);
             validate(mCFileInfo, FileInfo.class, "(Constructor)");
         }
 
         public void destroy() {
             validate(mCFileInfo, FileInfo.class, "destroy");
-            synchronized (sInstances) {
-                if (mCFileInfo != null && decrementRefCount(sInstances, mCFileInfo)) {
-                    validate(mCFileInfo, FileInfo.class, "(Destroyed)");
-                    CWrapper.mbp_fileinfo_destroy(mCFileInfo);
-                }
+            if (mHandle != null) {
+                mHandle.release();
+                mHandle = null;
             }
             mCFileInfo = null;
         }
@@ -1297,12 +1532,6 @@ public class LibMbp {
             return mCFileInfo.hashCode();
         }
 
-        @Override
-        protected void finalize() throws Throwable {
-            destroy();
-            super.finalize();
-        }
-
         CFileInfo getPointer() {
             validate(mCFileInfo, FileInfo.class, "getPointer");
             return mCFileInfo;
@@ -1323,9 +1552,7 @@ public class LibMbp {
             long peer = in.readLong();
             mCFileInfo = new CFileInfo();
             mCFileInfo.setPointer(new Pointer(peer));
-            synchronized (sInstances) {
-                incrementRefCount(sInstances, mCFileInfo);
-            }
+            mHandle = sRegistry.register(this, mCFileInfo);
             validate(mCFileInfo, FileInfo.class, "(Constructor)");
         }
 
@@ -1381,14 +1608,20 @@ public class LibMbp {
     }
 
     public static class PatcherConfig implements Parcelable {
-        private static final HashMap<CPatcherConfig, Integer> sInstances = new HashMap<>();
+        private static final HandleRegistry<CPatcherConfig> sRegistry = new HandleRegistry<>(
+                PatcherConfig.class, new HandleRegistry.Destroyer<CPatcherConfig>() {
+                    @Override
+                    public void destroy(CPatcherConfig ptr) {
+                        CWrapper.mbp_config_destroy(ptr);
+                    }
+                });
+
         private CPatcherConfig mCPatcherConfig;
+        private HandleRegistry<CPatcherConfig>.Handle mHandle;
 
         public PatcherConfig() {
             mCPatcherConfig = CWrapper.mbp_config_create();
-            synchronized (sInstances) {
-                incrementRefCount(sInstances, mCPatcherConfig);
-            }
+            mHandle = sRegistry.register(this, mCPatcherConfig);
             validate(mCPatcherConfig, PatcherConfig.class, "(Constructor)");
         }
 
@@ -1396,21 +1629,17 @@ public class LibMbp {
             ensureNotNull(cPatcherConfig);
 
             mCPatcherConfig = cPatcherConfig;
-            synchronized (sInstances) {
-                incrementRefCount(sInstances, mCPatcherConfig);
-            }
+            mHandle = sRegistry.register(this, mCPatcherConfig);
             validate(mCPatcherConfig, PatcherConfig.class, "(Constructor)");
         }
 
         public void destroy() {
             validate(mCPatcherConfig, PatcherConfig.class, "destroy");
-            synchronized (sInstances) {
-                if (mCPatcherConfig != null && decrementRefCount(sInstances, mCPatcherConfig)) {
-                    validate(mCPatcherConfig, PatcherConfig.class, "(Destroyed)");
-                    CWrapper.mbp_config_destroy(mCPatcherConfig);
-                }
-                mCPatcherConfig = null;
+            if (mHandle != null) {
+                mHandle.release();
+                mHandle = null;
             }
+            mCPatcherConfig = null;
         }
 
         @Override
@@ -1424,12 +1653,6 @@ public class LibMbp {
             return mCPatcherConfig.hashCode();
         }
 
-        @Override
-        protected void finalize() throws Throwable {
-            destroy();
-            super.finalize();
-        }
-
         CPatcherConfig getPointer() {
             validate(mCPatcherConfig, PatcherConfig.class, "getPointer");
             return mCPatcherConfig;
@@ -1450,9 +1673,7 @@ public class LibMbp {
             long peer = in.readLong();
             mCPatcherConfig = new CPatcherConfig();
             mCPatcherConfig.setPointer(new Pointer(peer));
-            synchronized (sInstances) {
-                incrementRefCount(sInstances, mCPatcherConfig);
-            }
+            mHandle = sRegistry.register(this, mCPatcherConfig);
             validate(mCPatcherConfig, PatcherConfig.class, "(Constructor)");
         }
 
@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2016  Andrew Gunnerson <andrewgunnerson@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.chenxiaolong.dualbootpatcher.patcher;
+
+import android.content.Context;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.github.chenxiaolong.dualbootpatcher.RomUtils;
+import com.github.chenxiaolong.dualbootpatcher.nativelib.LibMbp.Device;
+import com.github.chenxiaolong.dualbootpatcher.nativelib.LibMbp.PatcherConfig;
+
+import java.util.HashMap;
+
+/**
+ * Immutable snapshot of the devices supported by libmbp
+ *
+ * Reading a device's properties goes through JNA and copies every string array, so the list is
+ * marshalled once and shared by all callers. Devices can be looked up by codename or ID without
+ * scanning. The snapshot is only rebuilt if the patcher data directory (which is versioned)
+ * changes.
+ */
+public class DeviceDatabase {
+    private static final String TAG = DeviceDatabase.class.getSimpleName();
+
+    private static volatile DeviceDatabase sInstance;
+
+    private final String mDataVersion;
+    private final DeviceInfo[] mDevices;
+    private final HashMap<String, DeviceInfo> mByCodename = new HashMap<>();
+    private final HashMap<String, DeviceInfo> mById = new HashMap<>();
+
+    public static class DeviceInfo {
+        private final int mIndex;
+        private final String mId;
+        private final String[] mCodenames;
+        private final String mName;
+        private final String mArchitecture;
+        private final String[] mBlockDevBaseDirs;
+        private final String[] mSystemBlockDevs;
+        private final String[] mCacheBlockDevs;
+        private final String[] mDataBlockDevs;
+        private final String[] mBootBlockDevs;
+        private final String[] mRecoveryBlockDevs;
+        private final String[] mExtraBlockDevs;
+
+        private DeviceInfo(int index, Device device) {
+            mIndex = index;
+            mId = device.getId();
+            mCodenames = device.getCodenames();
+            mName = device.getName();
+            mArchitecture = device.getArchitecture();
+            mBlockDevBaseDirs = device.getBlockDevBaseDirs();
+            mSystemBlockDevs = device.getSystemBlockDevs();
+            mCacheBlockDevs = device.getCacheBlockDevs();
+            mDataBlockDevs = device.getDataBlockDevs();
+            mBootBlockDevs = device.getBootBlockDevs();
+            mRecoveryBlockDevs = device.getRecoveryBlockDevs();
+            mExtraBlockDevs = device.getExtraBlockDevs();
+        }
+
+        /**
+         * Position of the device in {@link PatcherConfig#getDevices()}
+         */
+        public int getIndex() {
+            return mIndex;
+        }
+
+        public String getId() {
+            return mId;
+        }
+
+        public String[] getCodenames() {
+            return mCodenames.clone();
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        public String getArchitecture() {
+            return mArchitecture;
+        }
+
+        public String[] getBlockDevBaseDirs() {
+            return mBlockDevBaseDirs.clone();
+        }
+
+        public String[] getSystemBlockDevs() {
+            return mSystemBlockDevs.clone();
+        }
+
+        public String[] getCacheBlockDevs() {
+            return mCacheBlockDevs.clone();
+        }
+
+        public String[] getDataBlockDevs() {
+            return mDataBlockDevs.clone();
+        }
+
+        public String[] getBootBlockDevs() {
+            return mBootBlockDevs.clone();
+        }
+
+        public String[] getRecoveryBlockDevs() {
+            return mRecoveryBlockDevs.clone();
+        }
+
+        public String[] getExtraBlockDevs() {
+            return mExtraBlockDevs.clone();
+        }
+    }
+
+    private DeviceDatabase(String dataVersion) {
+        mDataVersion = dataVersion;
+
+        PatcherConfig pc = new PatcherConfig();
+        try {
+            Device[] devices = pc.getDevices();
+            mDevices = new DeviceInfo[devices.length];
+
+            for (int i = 0; i < devices.length; i++) {
+                DeviceInfo info = new DeviceInfo(i, devices[i]);
+                mDevices[i] = info;
+
+                if (mById.containsKey(info.mId)) {
+                    Log.w(TAG, "Duplicate device ID: " + info.mId);
+                } else {
+                    mById.put(info.mId, info);
+                }
+
+                // The first device listing a codename takes precedence, like the linear scans
+                // that this replaces
+                for (String codename : info.mCodenames) {
+                    if (!mByCodename.containsKey(codename)) {
+                        mByCodename.put(codename, info);
+                    }
+                }
+            }
+        } finally {
+            pc.destroy();
+        }
+
+        Log.d(TAG, "Loaded " + mDevices.length + " devices for " + dataVersion);
+    }
+
+    /**
+     * Get the shared device database, building it if needed
+     *
+     * @param context Context
+     * @return Device database for the current patcher data version
+     */
+    public static DeviceDatabase getInstance(Context context) {
+        String dataVersion = PatcherUtils.getTargetDirectory(context).getName();
+
+        DeviceDatabase db = sInstance;
+        if (db == null || !db.mDataVersion.equals(dataVersion)) {
+            synchronized (DeviceDatabase.class) {
+                db = sInstance;
+                if (db == null || !db.mDataVersion.equals(dataVersion)) {
+                    db = new DeviceDatabase(dataVersion);
+                    sInstance = db;
+                }
+            }
+        }
+        return db;
+    }
+
+    public int size() {
+        return mDevices.length;
+    }
+
+    public DeviceInfo get(int index) {
+        return mDevices[index];
+    }
+
+    @Nullable
+    public DeviceInfo findByCodename(String codename) {
+        return mByCodename.get(codename);
+    }
+
+    @Nullable
+    public DeviceInfo findById(String id) {
+        return mById.get(id);
+    }
+
+    /**
+     * Get the device matching the codename of the running device
+     *
+     * @param context Context
+     * @return Device or null if the device is not supported
+     */
+    @Nullable
+    public DeviceInfo getCurrentDevice(Context context) {
+        return findByCodename(RomUtils.getDeviceCodename(context));
+    }
+}
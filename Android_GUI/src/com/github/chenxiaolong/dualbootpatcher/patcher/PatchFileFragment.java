@@ -74,6 +74,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 
 public class PatchFileFragment extends Fragment implements
         ServiceConnection, PatcherOptionsDialogListener, OnItemMovedOrDismissedListener,
@@ -126,6 +127,21 @@ public class PatchFileFragment extends Fragment implements
     /** Handler for processing events from the service on the UI thread */
     private final Handler mHandler = new Handler(Looper.getMainLooper());
 
+    /** Task IDs of items whose progress changed since the adapter was last notified */
+    private final HashSet<Integer> mChangedTaskIds = new HashSet<>();
+    /** Notifies the adapter once for all items changed by the events processed so far */
+    private final Runnable mNotifyChangedItems = new Runnable() {
+        @Override
+        public void run() {
+            for (int taskId : mChangedTaskIds) {
+                if (mItemsMap.containsKey(taskId)) {
+                    mAdapter.notifyItemChanged(mItemsMap.get(taskId));
+                }
+            }
+            mChangedTaskIds.clear();
+        }
+    };
+
     /** {@link Runnable}s to process once the service has been connected */
     private ArrayList<Runnable> mExecOnConnect = new ArrayList<>();
 
@@ -331,6 +347,7 @@ public class PatchFileFragment extends Fragment implements
         // At this point, the mCallback will not get called anymore by the service. Now we just need
         // to remove all pending Runnables that were posted to mHandler.
         mHandler.removeCallbacksAndMessages(null);
+        mChangedTaskIds.clear();
     }
 
     /**
@@ -704,6 +721,19 @@ public class PatchFileFragment extends Fragment implements
         }
     }
 
+    /**
+     * Schedule the item for a task to be redrawn. Progress events that are processed in the same
+     * batch only redraw each item once.
+     *
+     * Must be called on the UI thread.
+     */
+    private void notifyItemProgressChanged(int taskId) {
+        if (mChangedTaskIds.isEmpty()) {
+            mHandler.post(mNotifyChangedItems);
+        }
+        mChangedTaskIds.add(taskId);
+    }
+
     private class PatcherEventCallback implements PatcherEventListener {
         @Override
         public void onPatcherInitialized() {
@@ -731,7 +761,7 @@ public class PatchFileFragment extends Fragment implements
                         int itemIndex = mItemsMap.get(taskId);
                         PatchFileItem item = mItems.get(itemIndex);
                         item.details = details;
-                        mAdapter.notifyItemChanged(itemIndex);
+                        notifyItemProgressChanged(taskId);
                     }
                 }
             });
@@ -748,7 +778,7 @@ public class PatchFileFragment extends Fragment implements
                         PatchFileItem item = mItems.get(itemIndex);
                         item.bytes = bytes;
                         item.maxBytes = maxBytes;
-                        mAdapter.notifyItemChanged(itemIndex);
+                        notifyItemProgressChanged(taskId);
                     }
                 }
             });
@@ -765,7 +795,7 @@ public class PatchFileFragment extends Fragment implements
                         PatchFileItem item = mItems.get(itemIndex);
                         item.files = files;
                         item.maxFiles = maxFiles;
-                        mAdapter.notifyItemChanged(itemIndex);
+                        notifyItemProgressChanged(taskId);
                     }
                 }
             });
@@ -41,6 +41,7 @@ import com.afollestad.materialdialogs.MaterialDialog;
 import com.afollestad.materialdialogs.MaterialDialog.SingleButtonCallback;
 import com.github.chenxiaolong.dualbootpatcher.R;
 import com.github.chenxiaolong.dualbootpatcher.nativelib.LibMbp.Device;
+import com.github.chenxiaolong.dualbootpatcher.patcher.DeviceDatabase.DeviceInfo;
 import com.github.chenxiaolong.dualbootpatcher.patcher.PatcherUtils.InstallLocation;
 
 import java.util.ArrayList;
@@ -133,7 +134,9 @@ public class PatcherOptionsDialog extends DialogFragment {
                         PatcherOptionsDialogListener owner = getOwner();
                         if (owner != null) {
                             int position = mDeviceSpinner.getSelectedItemPosition();
-                            Device device = PatcherUtils.sPC.getDevices()[position];
+                            DeviceInfo info =
+                                    DeviceDatabase.getInstance(getActivity()).get(position);
+                            Device device = PatcherUtils.getDevice(info);
                             owner.onConfirmedOptions(id, device, getRomId());
                         }
                     }
@@ -162,7 +165,8 @@ public class PatcherOptionsDialog extends DialogFragment {
         // Select our device on initial startup
         if (savedInstanceState == null) {
             if (preselectedDeviceId == null) {
-                Device device = PatcherUtils.getCurrentDevice(getActivity(), PatcherUtils.sPC);
+                DeviceInfo device =
+                        DeviceDatabase.getInstance(getActivity()).getCurrentDevice(getActivity());
                 if (device != null) {
                     preselectedDeviceId = device.getId();
                 }
@@ -264,7 +268,9 @@ public class PatcherOptionsDialog extends DialogFragment {
      */
     public void refreshDevices() {
         mDevices.clear();
-        for (Device device : PatcherUtils.sPC.getDevices()) {
+        DeviceDatabase db = DeviceDatabase.getInstance(getActivity());
+        for (int i = 0; i < db.size(); i++) {
+            DeviceInfo device = db.get(i);
             mDevices.add(String.format("%s - %s", device.getId(), device.getName()));
         }
         mDeviceAdapter.notifyDataSetChanged();
@@ -288,13 +294,9 @@ public class PatcherOptionsDialog extends DialogFragment {
     }
 
     private void selectDeviceId(String deviceId) {
-        Device[] devices = PatcherUtils.sPC.getDevices();
-        for (int i = 0; i < devices.length; i++) {
-            Device device = devices[i];
-            if (device.getId().equals(deviceId)) {
-                mDeviceSpinner.setSelection(i);
-                return;
-            }
+        DeviceInfo device = DeviceDatabase.getInstance(getActivity()).findById(deviceId);
+        if (device != null) {
+            mDeviceSpinner.setSelection(device.getIndex());
         }
     }
 
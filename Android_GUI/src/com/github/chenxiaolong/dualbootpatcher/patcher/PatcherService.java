@@ -17,6 +17,8 @@
 
 package com.github.chenxiaolong.dualbootpatcher.patcher;
 
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
 import android.util.Log;
 
 import com.github.chenxiaolong.dualbootpatcher.BuildConfig;
@@ -32,6 +34,10 @@ import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -46,6 +52,23 @@ public class PatcherService extends ThreadPoolService {
     private static final int THREAD_POOL_DEFAULT_THREADS = 2;
     private static final int THREAD_POOL_PATCHING_THREADS = 2;
 
+    /** Default minimum interval between progress events for a single task */
+    public static final long DEFAULT_PROGRESS_UPDATE_INTERVAL_MS = 100;
+
+    /** Minimum interval between progress events for a single task */
+    private static volatile long sProgressUpdateInterval = DEFAULT_PROGRESS_UPDATE_INTERVAL_MS;
+
+    /** Delivers progress that was held back by the rate limit once the interval has passed */
+    private static final ScheduledExecutorService sProgressScheduler =
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull Runnable r) {
+                    Thread t = new Thread(r, TAG + "-progress");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
     /**
      * {@inheritDoc}
      */
@@ -152,6 +175,24 @@ public class PatcherService extends ThreadPoolService {
         }
     }
 
+    /**
+     * Set the maximum rate at which progress events are sent for each task
+     *
+     * libmbp reports progress for every chunk it processes. Updates are coalesced so that
+     * listeners receive at most one event per interval for each of details, progress, and files
+     * progress. Only the latest values are sent; intermediate values are dropped. The final
+     * values are always sent before
+     * {@link PatcherEventListener#onPatcherFinished(int, boolean, boolean, int, String)}.
+     *
+     * @param intervalMs Minimum interval between events in milliseconds (0 to disable coalescing)
+     */
+    public static void setProgressUpdateInterval(long intervalMs) {
+        if (intervalMs < 0) {
+            throw new IllegalArgumentException("Interval cannot be negative");
+        }
+        sProgressUpdateInterval = intervalMs;
+    }
+
     /**
      * Asynchronously initialize the patcher
      *
@@ -240,6 +281,8 @@ public class PatcherService extends ThreadPoolService {
      *   maximum progress values. It is not guaranteed that current <= maximum or that they are
      *   positive.
      *
+     * The three progress events are rate limited (see {@link #setProgressUpdateInterval(long)}).
+     *
      * When the patching is finished,
      * {@link PatcherEventListener#onPatcherFinished(int, boolean, boolean, int, String)} will be
      * called.
@@ -497,6 +540,30 @@ public class PatcherService extends ThreadPoolService {
         /** Maximum files */
         AtomicLong mMaxFiles = new AtomicLong(0);
 
+        // Progress event coalescing
+
+        /** Whether {@link #mDetails} changed since it was last sent to listeners */
+        private final AtomicBoolean mDetailsChanged = new AtomicBoolean(false);
+        /** Whether {@link #mBytes} or {@link #mMaxBytes} changed since they were last sent */
+        private final AtomicBoolean mProgressChanged = new AtomicBoolean(false);
+        /** Whether {@link #mFiles} or {@link #mMaxFiles} changed since they were last sent */
+        private final AtomicBoolean mFilesChanged = new AtomicBoolean(false);
+        /** Time (from {@link SystemClock#elapsedRealtime()}) of the last progress dispatch */
+        private final AtomicLong mLastDispatchTime = new AtomicLong(0);
+        /** Whether a delayed dispatch is already scheduled */
+        private final AtomicBoolean mDispatchScheduled = new AtomicBoolean(false);
+        /** Ensures that listeners never receive older values after newer ones */
+        private final Object mDispatchLock = new Object();
+
+        private final Runnable mScheduledDispatch = new Runnable() {
+            @Override
+            public void run() {
+                mDispatchScheduled.set(false);
+                mLastDispatchTime.set(SystemClock.elapsedRealtime());
+                dispatchProgress();
+            }
+        };
+
         // Completion information
 
         /** Whether patching was successful */
@@ -566,6 +633,9 @@ public class PatcherService extends ThreadPoolService {
 
                 boolean cancelled = mCancelled.get();
 
+                // Make sure listeners have the final progress values
+                dispatchProgress();
+
                 getService().onPatcherFinished(mTaskId, cancelled, ret, mPatcher.getError(),
                         mPatcher.newFilePath());
 
@@ -592,20 +662,60 @@ public class PatcherService extends ThreadPoolService {
         public void onProgressUpdated(long bytes, long maxBytes) {
             mBytes.set(bytes);
             mMaxBytes.set(maxBytes);
-            getService().onPatcherUpdateProgress(mTaskId, bytes, maxBytes);
+            mProgressChanged.set(true);
+            onProgressChanged();
         }
 
         @Override
         public void onFilesUpdated(long files, long maxFiles) {
             mFiles.set(files);
             mMaxFiles.set(maxFiles);
-            getService().onPatcherUpdateFilesProgress(mTaskId, files, maxFiles);
+            mFilesChanged.set(true);
+            onProgressChanged();
         }
 
         @Override
         public void onDetailsUpdated(String text) {
             mDetails.set(text);
-            getService().onPatcherUpdateDetails(mTaskId, text);
+            mDetailsChanged.set(true);
+            onProgressChanged();
+        }
+
+        /**
+         * Send the changed values now if the rate limit allows it. Otherwise, schedule them to be
+         * sent once the interval has passed. Updates arriving in the meantime overwrite the values
+         * that will be sent.
+         */
+        private void onProgressChanged() {
+            long interval = sProgressUpdateInterval;
+            long now = SystemClock.elapsedRealtime();
+            long last = mLastDispatchTime.get();
+
+            if (now - last >= interval && mLastDispatchTime.compareAndSet(last, now)) {
+                dispatchProgress();
+            } else if (mDispatchScheduled.compareAndSet(false, true)) {
+                long delay = Math.max(0, last + interval - now);
+                sProgressScheduler.schedule(mScheduledDispatch, delay, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void dispatchProgress() {
+            synchronized (mDispatchLock) {
+                PatcherService service = getService();
+                if (service == null) {
+                    return;
+                }
+
+                if (mDetailsChanged.getAndSet(false)) {
+                    service.onPatcherUpdateDetails(mTaskId, mDetails.get());
+                }
+                if (mProgressChanged.getAndSet(false)) {
+                    service.onPatcherUpdateProgress(mTaskId, mBytes.get(), mMaxBytes.get());
+                }
+                if (mFilesChanged.getAndSet(false)) {
+                    service.onPatcherUpdateFilesProgress(mTaskId, mFiles.get(), mMaxFiles.get());
+                }
+            }
         }
     }
 
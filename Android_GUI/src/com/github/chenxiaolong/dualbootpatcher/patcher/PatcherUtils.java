@@ -24,10 +24,10 @@ import android.util.Log;
 import com.github.chenxiaolong.dualbootpatcher.BuildConfig;
 import com.github.chenxiaolong.dualbootpatcher.FileUtils;
 import com.github.chenxiaolong.dualbootpatcher.R;
-import com.github.chenxiaolong.dualbootpatcher.RomUtils;
 import com.github.chenxiaolong.dualbootpatcher.nativelib.LibMbp.Device;
 import com.github.chenxiaolong.dualbootpatcher.nativelib.LibMbp.PatcherConfig;
 import com.github.chenxiaolong.dualbootpatcher.nativelib.LibMiscStuff;
+import com.github.chenxiaolong.dualbootpatcher.patcher.DeviceDatabase.DeviceInfo;
 
 import java.io.File;
 import java.util.ArrayList;
@@ -41,6 +41,9 @@ public class PatcherUtils {
     private static final String PREFIX_EXTSD_SLOT = "extsd-slot-";
 
     public static PatcherConfig sPC;
+    // Devices of sPC and their IDs. Marshalled once since the list never changes.
+    private static Device[] sDevices;
+    private static String[] sDeviceIds;
 
     private static String sTargetFile;
     private static String sTargetDir;
@@ -68,26 +71,41 @@ public class PatcherUtils {
             sPC = new PatcherConfig();
             sPC.setDataDirectory(getTargetDirectory(context).getAbsolutePath());
             sPC.setTempDirectory(context.getCacheDir().getAbsolutePath());
+
+            sDevices = sPC.getDevices();
+            sDeviceIds = new String[sDevices.length];
+            for (int i = 0; i < sDevices.length; i++) {
+                sDeviceIds[i] = sDevices[i].getId();
+            }
         }
     }
 
-    public synchronized static Device getCurrentDevice(Context context, PatcherConfig pc) {
-        String realCodename = RomUtils.getDeviceCodename(context);
+    public static Device getCurrentDevice(Context context) {
+        DeviceInfo info = DeviceDatabase.getInstance(context).getCurrentDevice(context);
+        if (info == null) {
+            return null;
+        }
 
-        Device device = null;
-        for (Device d : pc.getDevices()) {
-            for (String codename : d.getCodenames()) {
-                if (realCodename.equals(codename)) {
-                    device = d;
-                    break;
-                }
-            }
-            if (device != null) {
-                break;
+        return getDevice(info);
+    }
+
+    /**
+     * Get the device of {@link #sPC} matching an entry of the {@link DeviceDatabase}
+     */
+    public synchronized static Device getDevice(DeviceInfo info) {
+        int index = info.getIndex();
+        if (index < sDeviceIds.length && info.getId().equals(sDeviceIds[index])) {
+            return sDevices[index];
+        }
+
+        // Fall back to searching by ID if sPC does not list devices in the same order
+        for (int i = 0; i < sDeviceIds.length; i++) {
+            if (info.getId().equals(sDeviceIds[i])) {
+                return sDevices[i];
             }
         }
 
-        return device;
+        return null;
     }
 
     public synchronized static void extractPatcher(Context context) {
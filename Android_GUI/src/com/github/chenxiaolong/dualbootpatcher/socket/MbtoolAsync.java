@@ -0,0 +1,825 @@
+/*
+ * Copyright (C) 2016  Andrew Gunnerson <andrewgunnerson@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.chenxiaolong.dualbootpatcher.socket;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.github.chenxiaolong.dualbootpatcher.RomUtils.RomInformation;
+import com.github.chenxiaolong.dualbootpatcher.socket.MbtoolSocket.CachedDirectorySize;
+import com.github.chenxiaolong.dualbootpatcher.socket.MbtoolSocket.DirectorySize;
+import com.github.chenxiaolong.dualbootpatcher.socket.MbtoolSocket.DirectorySizeListener;
+import com.github.chenxiaolong.dualbootpatcher.socket.MbtoolSocket.PackageCounts;
+import com.github.chenxiaolong.dualbootpatcher.socket.MbtoolSocket.StatBuf;
+import com.google.flatbuffers.FlatBufferBuilder;
+import com.google.flatbuffers.Table;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import mbtool.daemon.v3.CompressionType;
+import mbtool.daemon.v3.FileCloseRequest;
+import mbtool.daemon.v3.FileCloseResponse;
+import mbtool.daemon.v3.FileOpenRequest;
+import mbtool.daemon.v3.FileOpenResponse;
+import mbtool.daemon.v3.FileReadRequest;
+import mbtool.daemon.v3.FileReadResponse;
+import mbtool.daemon.v3.FileSeekRequest;
+import mbtool.daemon.v3.FileSeekResponse;
+import mbtool.daemon.v3.FileStatRequest;
+import mbtool.daemon.v3.FileStatResponse;
+import mbtool.daemon.v3.MbGetBootedRomIdRequest;
+import mbtool.daemon.v3.MbGetBootedRomIdResponse;
+import mbtool.daemon.v3.MbGetInstalledRomsRequest;
+import mbtool.daemon.v3.MbGetInstalledRomsResponse;
+import mbtool.daemon.v3.MbGetPackagesCountRequest;
+import mbtool.daemon.v3.MbGetPackagesCountResponse;
+import mbtool.daemon.v3.PathChmodRequest;
+import mbtool.daemon.v3.PathChmodResponse;
+import mbtool.daemon.v3.PathCopyRequest;
+import mbtool.daemon.v3.PathCopyResponse;
+import mbtool.daemon.v3.PathGetDirectorySizeRequest;
+import mbtool.daemon.v3.PathGetDirectorySizeResponse;
+import mbtool.daemon.v3.PathGetDirectorySizeStreamResponse;
+import mbtool.daemon.v3.PathHashRequest;
+import mbtool.daemon.v3.PathHashResponse;
+import mbtool.daemon.v3.PathSELinuxGetLabelRequest;
+import mbtool.daemon.v3.PathSELinuxGetLabelResponse;
+import mbtool.daemon.v3.RequestCancelRequest;
+import mbtool.daemon.v3.RequestCancelResponse;
+import mbtool.daemon.v3.RequestType;
+import mbtool.daemon.v3.Response;
+import mbtool.daemon.v3.ResponseType;
+
+/**
+ * Asynchronous interface to a {@link MbtoolSocket} lane.
+ *
+ * Every method returns immediately with a {@link MbtoolFuture} and may be called from any thread,
+ * including the main thread. A single dispatcher thread (shared by all lanes) connects to the
+ * daemon and writes the requests, and the connection's reader thread completes the futures. The
+ * only other thread is a timer for timeouts. A screen that fans out a dozen calls therefore
+ * doesn't tie up a dozen threads.
+ *
+ * Results have the same meaning as the return values of the corresponding {@link MbtoolSocket}
+ * methods. For example:
+ *
+ * <pre>
+ * MbtoolAsync async = MbtoolSocket.getInstance().async().withTimeout(5000);
+ * async.getInstalledRoms(context).addCallback(new MbtoolFuture.Callback&lt;RomInformation[]&gt;() {
+ *     ...
+ * });
+ * </pre>
+ *
+ * Requests are sent in the order they were made. The daemon handles file handle and state changing
+ * requests in that order too, so a read after a seek on the same handle sees the new position. Slow
+ * path requests (copying, hashing, measuring or listing paths) may complete out of order, so wait
+ * for a copy to complete before using its target.
+ */
+public class MbtoolAsync {
+    private static final String TAG = MbtoolAsync.class.getSimpleName();
+
+    /** Sends requests in order. Blocks while connecting. */
+    private static final ExecutorService sDispatcher = Executors.newSingleThreadExecutor(
+            new NamedThreadFactory(TAG + "-dispatcher"));
+
+    /** Fails requests that time out, even while the dispatcher is busy connecting */
+    private static final ScheduledExecutorService sTimer = Executors.newScheduledThreadPool(
+            1, new NamedThreadFactory(TAG + "-timer"));
+
+    /** Runs callbacks on the thread that completed the future */
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(@NonNull Runnable command) {
+            command.run();
+        }
+    };
+
+    private final MbtoolSocket mSocket;
+    private final long mTimeoutMs;
+
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final String mName;
+
+        NamedThreadFactory(String name) {
+            mName = name;
+        }
+
+        @Override
+        public Thread newThread(@NonNull Runnable r) {
+            Thread t = new Thread(r, mName);
+            t.setDaemon(true);
+            return t;
+        }
+    }
+
+    private static abstract class Operation<T> {
+        final byte requestType;
+        final byte responseType;
+
+        Operation(byte requestType, byte responseType) {
+            this.requestType = requestType;
+            this.responseType = responseType;
+        }
+
+        /** Add the request table to the builder and return its offset */
+        abstract int build(FlatBufferBuilder builder);
+
+        /**
+         * Complete the future with the result of the response. Called on the reader thread.
+         */
+        void deliver(Response response, MbtoolFuture<T> future) throws IOException {
+            future.set(parse(response));
+        }
+
+        /**
+         * Convert the response envelope to the result value. Called on the reader thread, so the
+         * result must not reference the response's buffer.
+         */
+        T parse(Response response) throws IOException {
+            return parse(MbtoolSocket.unwrapResponse(response, responseType));
+        }
+
+        /** Convert the response table to the result value */
+        abstract T parse(Table table) throws IOException;
+    }
+
+    /**
+     * Operation that gets intermediate responses and that mbtool stops when the future is
+     * cancelled.
+     */
+    private static abstract class StreamOperation<T> extends Operation<T> {
+        StreamOperation(byte requestType, byte responseType) {
+            super(requestType, responseType);
+        }
+
+        /** Handle an intermediate response. Called on the reader thread. */
+        abstract void onProgress(Response response);
+    }
+
+    MbtoolAsync(MbtoolSocket socket, long timeoutMs) {
+        mSocket = socket;
+        mTimeoutMs = timeoutMs;
+    }
+
+    /**
+     * Get an interface whose requests fail if they do not complete in time.
+     *
+     * The timeout covers the whole request, including connecting to the daemon and waiting for
+     * earlier requests to be dispatched. Requests that time out fail with an
+     * {@link InterruptedIOException}. The daemon still runs them if they were already sent.
+     *
+     * @param timeoutMs Timeout in milliseconds or 0 for no timeout
+     * @return New interface for the same lane
+     */
+    @NonNull
+    public MbtoolAsync withTimeout(long timeoutMs) {
+        return new MbtoolAsync(mSocket, timeoutMs);
+    }
+
+    private <T> MbtoolFuture<T> submit(final Context context, final Operation<T> op) {
+        final MbtoolFuture<T> future = new MbtoolFuture<>();
+
+        sDispatcher.execute(new Runnable() {
+            @Override
+            public void run() {
+                dispatch(context, op, future);
+            }
+        });
+
+        if (mTimeoutMs > 0) {
+            future.setTimeout(sTimer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    future.setException(new InterruptedIOException(
+                            "Request timed out after " + mTimeoutMs + " ms"));
+                }
+            }, mTimeoutMs, TimeUnit.MILLISECONDS));
+        }
+
+        return future;
+    }
+
+    private <T> void dispatch(final Context context, final Operation<T> op,
+                              final MbtoolFuture<T> future) {
+        // Cancelled or timed out while queued
+        if (future.isDone()) {
+            return;
+        }
+
+        try {
+            mSocket.connect(context);
+
+            FlatBufferBuilder builder = MbtoolCodec.obtainBuilder();
+            int fbRequest = op.build(builder);
+
+            MbtoolConnection.StreamListener stream = null;
+            if (op instanceof StreamOperation) {
+                stream = new CancellableListener<>(context, (StreamOperation<T>) op, future);
+            }
+
+            mSocket.submitRawRequest(builder, fbRequest, op.requestType,
+                    new MbtoolConnection.ResponseHandler() {
+                        @Override
+                        public void onResponse(Response response) {
+                            if (future.isDone()) {
+                                return;
+                            }
+                            try {
+                                op.deliver(response, future);
+                            } catch (IOException e) {
+                                future.setException(e);
+                            } catch (RuntimeException e) {
+                                // Don't take down the reader thread
+                                future.setException(new IOException("Invalid response", e));
+                            }
+                        }
+
+                        @Override
+                        public void onFailure(IOException e) {
+                            future.setException(e);
+                        }
+                    }, stream);
+        } catch (IOException e) {
+            future.setException(e);
+        }
+    }
+
+    /**
+     * Forwards intermediate responses to a {@link StreamOperation} and sends a
+     * RequestCancelRequest when the future is cancelled.
+     */
+    private class CancellableListener<T> implements MbtoolConnection.StreamListener {
+        private final Context mContext;
+        private final StreamOperation<T> mOp;
+        private final MbtoolFuture<T> mFuture;
+        private final AtomicLong mRequestId = new AtomicLong();
+
+        CancellableListener(Context context, StreamOperation<T> op, MbtoolFuture<T> future) {
+            mContext = context;
+            mOp = op;
+            mFuture = future;
+        }
+
+        @Override
+        public void onRequestId(final long id) {
+            mRequestId.set(id);
+            mFuture.setCancelHook(new Runnable() {
+                @Override
+                public void run() {
+                    requestCancel(mContext, id);
+                }
+            });
+        }
+
+        @Override
+        public void onIntermediateResponse(Response response) {
+            if (!mFuture.isDone()) {
+                mOp.onProgress(response);
+            } else if (mFuture.isCancelled()) {
+                // The cancel request may have reached mbtool before the request started
+                requestCancel(mContext, mRequestId.get());
+            }
+        }
+    }
+
+    /**
+     * See {@link MbtoolSocket#getInstalledRoms(Context)}.
+     */
+    @NonNull
+    public MbtoolFuture<RomInformation[]> getInstalledRoms(Context context) {
+        return submit(context, new Operation<RomInformation[]>(
+                RequestType.MbGetInstalledRomsRequest, ResponseType.MbGetInstalledRomsResponse) {
+            @Override
+            int build(FlatBufferBuilder builder) {
+                MbGetInstalledRomsRequest.startMbGetInstalledRomsRequest(builder);
+                // No parameters
+                return MbGetInstalledRomsRequest.endMbGetInstalledRomsRequest(builder);
+            }
+
+            @Override
+            RomInformation[] parse(Table table) {
+                return MbtoolSocket.toRomInformation((MbGetInstalledRomsResponse) table);
+            }
+        });
+    }
+
+    /**
+     * See {@link MbtoolSocket#getBootedRomId(Context)}.
+     */
+    @NonNull
+    public MbtoolFuture<String> getBootedRomId(Context context) {
+        return submit(context, new Operation<String>(
+                RequestType.MbGetBootedRomIdRequest, ResponseType.MbGetBootedRomIdResponse) {
+            @Override
+            int build(FlatBufferBuilder builder) {
+                MbGetBootedRomIdRequest.startMbGetBootedRomIdRequest(builder);
+                // No parameters
+                return MbGetBootedRomIdRequest.endMbGetBootedRomIdRequest(builder);
+            }
+
+            @Override
+            String parse(Table table) {
+                return ((MbGetBootedRomIdResponse) table).romId();
+            }
+        });
+    }
+
+    /**
+     * See {@link MbtoolSocket#getPackagesCounts(Context, String)}.
+     */
+    @NonNull
+    public MbtoolFuture<PackageCounts> getPackagesCounts(Context context, final String romId) {
+        return submit(context, new Operation<PackageCounts>(
+                RequestType.MbGetPackagesCountRequest, ResponseType.MbGetPackagesCountResponse) {
+            @Override
+            int build(FlatBufferBuilder builder) {
+                int fbRomId = builder.createString(romId);
+                MbGetPackagesCountRequest.startMbGetPackagesCountRequest(builder);
+                MbGetPackagesCountRequest.addRomId(builder, fbRomId);
+                return MbGetPackagesCountRequest.endMbGetPackagesCountRequest(builder);
+            }
+
+            @Override
+            PackageCounts parse(Table table) {
+                MbGetPackagesCountResponse response = (MbGetPackagesCountResponse) table;
+                if (!response.success()) {
+                    return null;
+                }
+
+                PackageCounts pc = new PackageCounts();
+                pc.systemPackages = (int) response.systemPackages();
+                pc.systemUpdatePackages = (int) response.systemUpdatePackages();
+                pc.nonSystemPackages = (int) response.nonSystemPackages();
+                return pc;
+            }
+        });
+    }
+
+    /**
+     * See {@link MbtoolSocket#pathGetDirectorySize(Context, String, String[])}.
+     */
+    @NonNull
+    public MbtoolFuture<Long> pathGetDirectorySize(Context context, final String path,
+                                                   final String[] exclusions) {
+        return submit(context, new Operation<Long>(
+                RequestType.PathGetDirectorySizeRequest,
+                ResponseType.PathGetDirectorySizeResponse) {
+            @Override
+            int build(FlatBufferBuilder builder) {
+                int fbPath = builder.createString(path);
+                int fbExclusions = 0;
+                if (exclusions != null) {
+                    int[] exclusionOffsets = new int[exclusions.length];
+                    for (int i = 0; i < exclusions.length; i++) {
+                        exclusionOffsets[i] = builder.createString(exclusions[i]);
+                    }
+
+                    fbExclusions = PathGetDirectorySizeRequest.createExclusionsVector(
+                            builder, exclusionOffsets);
+                }
+                PathGetDirectorySizeRequest.startPathGetDirectorySizeRequest(builder);
+                PathGetDirectorySizeRequest.addPath(builder, fbPath);
+                PathGetDirectorySizeRequest.addExclusions(builder, fbExclusions);
+                return PathGetDirectorySizeRequest.endPathGetDirectorySizeRequest(builder);
+            }
+
+            @Override
+            Long parse(Table table) {
+                PathGetDirectorySizeResponse response = (PathGetDirectorySizeResponse) table;
+                if (!response.success()) {
+                    Log.e(TAG, "Failed to get directory size for " + path + ": " +
+                            response.errorMsg());
+                    return -1L;
+                }
+                return response.size();
+            }
+        });
+    }
+
+    /**
+     * See {@link MbtoolSocket#pathGetDirectorySizeStream(Context, String, String[],
+     * DirectorySizeListener, android.os.CancellationSignal)}.
+     *
+     * Cancelling the future stops the walk in mbtool. The listener is called on the connection's
+     * reader thread.
+     */
+    @NonNull
+    public MbtoolFuture<DirectorySize> pathGetDirectorySizeStream(
+            final Context context, final String path, @Nullable final String[] exclusions,
+            @Nullable final DirectorySizeListener listener) {
+        final String key = MbtoolSocket.getDirectorySizeCacheKey(path, exclusions);
+        final CachedDirectorySize cached = MbtoolSocket.getCachedDirectorySize(key);
+
+        return submit(context, new StreamOperation<DirectorySize>(
+                RequestType.PathGetDirectorySizeStreamRequest,
+                ResponseType.PathGetDirectorySizeStreamResponse) {
+            @Override
+            int build(FlatBufferBuilder builder) {
+                return MbtoolSocket.buildDirectorySizeStreamRequest(
+                        builder, path, exclusions, cached);
+            }
+
+            @Override
+            void onProgress(Response response) {
+                MbtoolSocket.reportDirectorySizeProgress(response, listener);
+            }
+
+            @Override
+            void deliver(Response response, final MbtoolFuture<DirectorySize> future)
+                    throws IOException {
+                if (response.responseType() != ResponseType.Unsupported) {
+                    super.deliver(response, future);
+                    return;
+                }
+
+                Log.w(TAG, "mbtool does not support streaming directory sizes");
+                final MbtoolFuture<Long> fallback = pathGetDirectorySize(context, path, exclusions);
+                future.setCancelHook(new Runnable() {
+                    @Override
+                    public void run() {
+                        fallback.cancel(false);
+                    }
+                });
+                fallback.addCallback(new MbtoolFuture.Callback<Long>() {
+                    @Override
+                    public void onSuccess(Long size) {
+                        DirectorySize result = new DirectorySize();
+                        result.size = size;
+                        result.success = size >= 0;
+                        future.set(result);
+                    }
+
+                    @Override
+                    public void onFailure(IOException e) {
+                        future.setException(e);
+                    }
+                }, DIRECT_EXECUTOR);
+            }
+
+            @Override
+            DirectorySize parse(Table table) {
+                return MbtoolSocket.toDirectorySize(
+                        (PathGetDirectorySizeStreamResponse) table, path, key, cached);
+            }
+        });
+    }
+
+    /**
+     * See {@link MbtoolSocket#pathHash(Context, String, long, long)}.
+     */
+    @NonNull
+    public MbtoolFuture<byte[]> pathHash(Context context, final String path, final long offset,
+                                         final long size) {
+        return submit(context, new Operation<byte[]>(
+                RequestType.PathHashRequest, ResponseType.PathHashResponse) {
+            @Override
+            int build(FlatBufferBuilder builder) {
+                int fbPath = builder.createString(path);
+                PathHashRequest.startPathHashRequest(builder);
+                PathHashRequest.addPath(builder, fbPath);
+                PathHashRequest.addOffset(builder, offset);
+                PathHashRequest.addSize(builder, size);
+                return PathHashRequest.endPathHashRequest(builder);
+            }
+
+            @Override
+            byte[] parse(Response response) throws IOException {
+                if (response.responseType() == ResponseType.Unsupported) {
+                    Log.w(TAG, "mbtool does not support hashing paths");
+                    return null;
+                }
+                return super.parse(response);
+            }
+
+            @Override
+            byte[] parse(Table table) {
+                PathHashResponse response = (PathHashResponse) table;
+                if (!response.success()) {
+                    Log.e(TAG, "Failed to hash " + path + ": " + response.errorMsg());
+                    return null;
+                }
+
+                ByteBuffer bb = response.sha256AsByteBuffer();
+                if (bb == null) {
+                    return null;
+                }
+                byte[] digest = new byte[bb.remaining()];
+                bb.get(digest);
+                return digest;
+            }
+        });
+    }
+
+    /**
+     * See {@link MbtoolSocket#pathSelinuxGetLabel(Context, String, boolean)}.
+     */
+    @NonNull
+    public MbtoolFuture<String> pathSelinuxGetLabel(Context context, final String path,
+                                                    final boolean followSymlinks) {
+        return submit(context, new Operation<String>(
+                RequestType.PathSELinuxGetLabelRequest, ResponseType.PathSELinuxGetLabelResponse) {
+            @Override
+            int build(FlatBufferBuilder builder) {
+                int fbPath = builder.createString(path);
+                PathSELinuxGetLabelRequest.startPathSELinuxGetLabelRequest(builder);
+                PathSELinuxGetLabelRequest.addPath(builder, fbPath);
+                PathSELinuxGetLabelRequest.addFollowSymlinks(builder, followSymlinks);
+                return PathSELinuxGetLabelRequest.endPathSELinuxGetLabelRequest(builder);
+            }
+
+            @Override
+            String parse(Table table) {
+                PathSELinuxGetLabelResponse response = (PathSELinuxGetLabelResponse) table;
+                if (!response.success()) {
+                    Log.e(TAG, "Failed to get SELinux label for " + path + ": " +
+                            response.errorMsg());
+                    return null;
+                }
+                return response.label();
+            }
+        });
+    }
+
+    /**
+     * See {@link MbtoolSocket#pathCopy(Context, String, String)}.
+     */
+    @NonNull
+    public MbtoolFuture<Boolean> pathCopy(Context context, final String source,
+                                          final String target) {
+        return submit(context, new Operation<Boolean>(
+                RequestType.PathCopyRequest, ResponseType.PathCopyResponse) {
+            @Override
+            int build(FlatBufferBuilder builder) {
+                int fbSource = builder.createString(source);
+                int fbTarget = builder.createString(target);
+                PathCopyRequest.startPathCopyRequest(builder);
+                PathCopyRequest.addSource(builder, fbSource);
+                PathCopyRequest.addTarget(builder, fbTarget);
+                return PathCopyRequest.endPathCopyRequest(builder);
+            }
+
+            @Override
+            Boolean parse(Table table) {
+                PathCopyResponse response = (PathCopyResponse) table;
+                if (!response.success()) {
+                    Log.e(TAG, "Failed to copy from " + source + " to " + target + ": " +
+                            response.errorMsg());
+                    return false;
+                }
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Ask mbtool to stop a running request.
+     *
+     * Only requests that check for cancellation (PathCopyStreamRequest and
+     * PathGetDirectorySizeStreamRequest) can be stopped.
+     * They still send their final response.
+     *
+     * @param context Application context
+     * @param id ID of the request
+     * @return True if the request was found. False if it has already completed or if mbtool does
+     *         not support cancellation.
+     */
+    @NonNull
+    public MbtoolFuture<Boolean> requestCancel(Context context, final long id) {
+        return submit(context, new Operation<Boolean>(
+                RequestType.RequestCancelRequest, ResponseType.RequestCancelResponse) {
+            @Override
+            int build(FlatBufferBuilder builder) {
+                RequestCancelRequest.startRequestCancelRequest(builder);
+                RequestCancelRequest.addId(builder, id);
+                return RequestCancelRequest.endRequestCancelRequest(builder);
+            }
+
+            @Override
+            Boolean parse(Response response) throws IOException {
+                if (response.responseType() == ResponseType.Unsupported) {
+                    Log.w(TAG, "mbtool does not support cancelling requests");
+                    return false;
+                }
+                return super.parse(response);
+            }
+
+            @Override
+            Boolean parse(Table table) {
+                return ((RequestCancelResponse) table).success();
+            }
+        });
+    }
+
+    /**
+     * See {@link MbtoolSocket#pathChmod(Context, String, int)}.
+     */
+    @NonNull
+    public MbtoolFuture<Boolean> pathChmod(Context context, final String filename,
+                                           final int mode) {
+        return submit(context, new Operation<Boolean>(
+                RequestType.PathChmodRequest, ResponseType.PathChmodResponse) {
+            @Override
+            int build(FlatBufferBuilder builder) {
+                int fbFilename = builder.createString(filename);
+                PathChmodRequest.startPathChmodRequest(builder);
+                PathChmodRequest.addPath(builder, fbFilename);
+                PathChmodRequest.addMode(builder, mode);
+                return PathChmodRequest.endPathChmodRequest(builder);
+            }
+
+            @Override
+            Boolean parse(Table table) {
+                PathChmodResponse response = (PathChmodResponse) table;
+                if (!response.success()) {
+                    Log.e(TAG, "Failed to chmod " + filename + ": " + response.errorMsg());
+                    return false;
+                }
+                return true;
+            }
+        });
+    }
+
+    /**
+     * See {@link MbtoolSocket#fileOpen(Context, String, short[], int)}.
+     */
+    @NonNull
+    public MbtoolFuture<Integer> fileOpen(Context context, final String path,
+                                          final short[] flags, final int perms) {
+        return submit(context, new Operation<Integer>(
+                RequestType.FileOpenRequest, ResponseType.FileOpenResponse) {
+            @Override
+            int build(FlatBufferBuilder builder) {
+                int fbPath = builder.createString(path);
+                int fbFlags = FileOpenRequest.createFlagsVector(builder, flags);
+                FileOpenRequest.startFileOpenRequest(builder);
+                FileOpenRequest.addPath(builder, fbPath);
+                FileOpenRequest.addFlags(builder, fbFlags);
+                FileOpenRequest.addPerms(builder, perms);
+                return FileOpenRequest.endFileOpenRequest(builder);
+            }
+
+            @Override
+            Integer parse(Table table) {
+                FileOpenResponse response = (FileOpenResponse) table;
+                if (!response.success()) {
+                    Log.e(TAG, "[" + path + "]: open failed: " + response.errorMsg());
+                    return -1;
+                }
+                return response.id();
+            }
+        });
+    }
+
+    /**
+     * See {@link MbtoolSocket#fileClose(Context, int)}.
+     */
+    @NonNull
+    public MbtoolFuture<Boolean> fileClose(Context context, final int id) {
+        return submit(context, new Operation<Boolean>(
+                RequestType.FileCloseRequest, ResponseType.FileCloseResponse) {
+            @Override
+            int build(FlatBufferBuilder builder) {
+                FileCloseRequest.startFileCloseRequest(builder);
+                FileCloseRequest.addId(builder, id);
+                return FileCloseRequest.endFileCloseRequest(builder);
+            }
+
+            @Override
+            Boolean parse(Table table) {
+                FileCloseResponse response = (FileCloseResponse) table;
+                if (!response.success()) {
+                    Log.e(TAG, "[" + id + "]: close failed: " + response.errorMsg());
+                    return false;
+                }
+                return true;
+            }
+        });
+    }
+
+    /**
+     * See {@link MbtoolSocket#fileRead(Context, int, byte[], int, int)}.
+     *
+     * The array must not be touched until the future has completed.
+     */
+    @NonNull
+    public MbtoolFuture<Integer> fileRead(Context context, final int id, final byte[] buf,
+                                          final int offset, final int length) {
+        return submit(context, new Operation<Integer>(
+                RequestType.FileReadRequest, ResponseType.FileReadResponse) {
+            @Override
+            int build(FlatBufferBuilder builder) {
+                FileReadRequest.startFileReadRequest(builder);
+                FileReadRequest.addId(builder, id);
+                FileReadRequest.addCount(builder, length);
+                return FileReadRequest.endFileReadRequest(builder);
+            }
+
+            @Override
+            Integer parse(Table table) throws IOException {
+                FileReadResponse response = (FileReadResponse) table;
+                if (!response.success()) {
+                    Log.e(TAG, "[" + id + "]: read failed: " + response.errorMsg());
+                    return -1;
+                }
+
+                ByteBuffer data = response.dataAsByteBuffer();
+                if (data == null) {
+                    return 0;
+                }
+
+                if (response.compression() == CompressionType.DEFLATE) {
+                    if (response.bytesRead() > length) {
+                        throw new IOException("Read returned more data than requested");
+                    }
+                    int n = (int) response.bytesRead();
+                    MbtoolCodec.inflate(data, buf, offset, n);
+                    return n;
+                }
+
+                int n = Math.min(data.remaining(), length);
+                data.get(buf, offset, n);
+                return n;
+            }
+        });
+    }
+
+    /**
+     * See {@link MbtoolSocket#fileSeek(Context, int, long, short)}.
+     */
+    @NonNull
+    public MbtoolFuture<Long> fileSeek(Context context, final int id, final long offset,
+                                       final short whence) {
+        return submit(context, new Operation<Long>(
+                RequestType.FileSeekRequest, ResponseType.FileSeekResponse) {
+            @Override
+            int build(FlatBufferBuilder builder) {
+                FileSeekRequest.startFileSeekRequest(builder);
+                FileSeekRequest.addId(builder, id);
+                FileSeekRequest.addOffset(builder, offset);
+                FileSeekRequest.addWhence(builder, whence);
+                return FileSeekRequest.endFileSeekRequest(builder);
+            }
+
+            @Override
+            Long parse(Table table) {
+                FileSeekResponse response = (FileSeekResponse) table;
+                if (!response.success()) {
+                    Log.e(TAG, "[" + id + "]: seek failed: " + response.errorMsg());
+                    return -1L;
+                }
+                return response.offset();
+            }
+        });
+    }
+
+    /**
+     * See {@link MbtoolSocket#fileStat(Context, int)}.
+     */
+    @NonNull
+    public MbtoolFuture<StatBuf> fileStat(Context context, final int id) {
+        return submit(context, new Operation<StatBuf>(
+                RequestType.FileStatRequest, ResponseType.FileStatResponse) {
+            @Override
+            int build(FlatBufferBuilder builder) {
+                FileStatRequest.startFileStatRequest(builder);
+                FileStatRequest.addId(builder, id);
+                return FileStatRequest.endFileStatRequest(builder);
+            }
+
+            @Override
+            StatBuf parse(Table table) {
+                FileStatResponse response = (FileStatResponse) table;
+                if (!response.success()) {
+                    Log.e(TAG, "[" + id + "]: stat failed: " + response.errorMsg());
+                    return null;
+                }
+                return MbtoolSocket.toStatBuf(response.stat());
+            }
+        });
+    }
+}
@@ -0,0 +1,390 @@
+/*
+ * Copyright (C) 2016  Andrew Gunnerson <andrewgunnerson@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.chenxiaolong.dualbootpatcher.socket;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.google.flatbuffers.FlatBufferBuilder;
+import com.google.flatbuffers.Table;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import mbtool.daemon.v3.PathChmodRequest;
+import mbtool.daemon.v3.PathChmodResponse;
+import mbtool.daemon.v3.PathCopyRequest;
+import mbtool.daemon.v3.PathCopyResponse;
+import mbtool.daemon.v3.PathGetDirectorySizeRequest;
+import mbtool.daemon.v3.PathGetDirectorySizeResponse;
+import mbtool.daemon.v3.PathSELinuxGetLabelRequest;
+import mbtool.daemon.v3.PathSELinuxGetLabelResponse;
+import mbtool.daemon.v3.PathSELinuxSetLabelRequest;
+import mbtool.daemon.v3.PathSELinuxSetLabelResponse;
+import mbtool.daemon.v3.Request;
+import mbtool.daemon.v3.RequestBatch;
+import mbtool.daemon.v3.RequestType;
+import mbtool.daemon.v3.Response;
+import mbtool.daemon.v3.ResponseBatch;
+import mbtool.daemon.v3.ResponseType;
+
+/**
+ * A list of requests that are sent to mbtool in a single round trip.
+ *
+ * Requests are run in the order they were added. The result of each request is available from
+ * {@link Results} at the same index and has the same meaning as the return value of the
+ * corresponding {@link MbtoolSocket} method. For example:
+ *
+ * <pre>
+ * Results results = socket.newBatch()
+ *         .stopOnError(true)
+ *         .pathCopy(source, target)
+ *         .pathChmod(target, 0644)
+ *         .execute(context);
+ * </pre>
+ *
+ * If the daemon is too old to support batches, the requests are sent one by one instead.
+ */
+public class MbtoolBatch {
+    private static final String TAG = MbtoolBatch.class.getSimpleName();
+
+    private final MbtoolSocket mSocket;
+    private final ArrayList<Operation> mOperations = new ArrayList<>();
+    private boolean mStopOnError;
+
+    private static abstract class Operation {
+        final byte requestType;
+        final byte responseType;
+
+        Operation(byte requestType, byte responseType) {
+            this.requestType = requestType;
+            this.responseType = responseType;
+        }
+
+        /** Add the request table to the builder and return its offset */
+        abstract int build(FlatBufferBuilder builder);
+
+        /** Convert the response table to the result value */
+        abstract Object parse(Table table);
+
+        abstract boolean succeeded(Object result);
+    }
+
+    private static abstract class BooleanOperation extends Operation {
+        BooleanOperation(byte requestType, byte responseType) {
+            super(requestType, responseType);
+        }
+
+        @Override
+        boolean succeeded(Object result) {
+            return (Boolean) result;
+        }
+    }
+
+    public static class Results {
+        private final Object[] mValues;
+        private final int mExecuted;
+
+        Results(Object[] values, int executed) {
+            mValues = values;
+            mExecuted = executed;
+        }
+
+        /** Number of requests in the batch */
+        public int size() {
+            return mValues.length;
+        }
+
+        /** Whether the request was run. Requests after a failure are skipped if requested. */
+        public boolean wasExecuted(int index) {
+            return index < mExecuted;
+        }
+
+        /** Result of a request that returns a boolean. False if it was not run. */
+        public boolean getBoolean(int index) {
+            return wasExecuted(index) && (Boolean) mValues[index];
+        }
+
+        /** Result of a request that returns a string. Null if it was not run. */
+        @Nullable
+        public String getString(int index) {
+            return wasExecuted(index) ? (String) mValues[index] : null;
+        }
+
+        /** Result of a request that returns a number. -1 if it was not run. */
+        public long getLong(int index) {
+            return wasExecuted(index) ? (Long) mValues[index] : -1;
+        }
+    }
+
+    MbtoolBatch(MbtoolSocket socket) {
+        mSocket = socket;
+    }
+
+    /**
+     * Whether to skip the remaining requests once a request fails.
+     */
+    @NonNull
+    public MbtoolBatch stopOnError(boolean stopOnError) {
+        mStopOnError = stopOnError;
+        return this;
+    }
+
+    /**
+     * Add a {@link MbtoolSocket#pathCopy(Context, String, String)} request.
+     */
+    @NonNull
+    public MbtoolBatch pathCopy(final String source, final String target) {
+        mOperations.add(new BooleanOperation(
+                RequestType.PathCopyRequest, ResponseType.PathCopyResponse) {
+            @Override
+            int build(FlatBufferBuilder builder) {
+                int fbSource = builder.createString(source);
+                int fbTarget = builder.createString(target);
+                PathCopyRequest.startPathCopyRequest(builder);
+                PathCopyRequest.addSource(builder, fbSource);
+                PathCopyRequest.addTarget(builder, fbTarget);
+                return PathCopyRequest.endPathCopyRequest(builder);
+            }
+
+            @Override
+            Object parse(Table table) {
+                PathCopyResponse response = (PathCopyResponse) table;
+                if (!response.success()) {
+                    Log.e(TAG, "Failed to copy from " + source + " to " + target + ": " +
+                            response.errorMsg());
+                    return false;
+                }
+                return true;
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Add a {@link MbtoolSocket#pathChmod(Context, String, int)} request.
+     */
+    @NonNull
+    public MbtoolBatch pathChmod(final String filename, final int mode) {
+        mOperations.add(new BooleanOperation(
+                RequestType.PathChmodRequest, ResponseType.PathChmodResponse) {
+            @Override
+            int build(FlatBufferBuilder builder) {
+                int fbFilename = builder.createString(filename);
+                PathChmodRequest.startPathChmodRequest(builder);
+                PathChmodRequest.addPath(builder, fbFilename);
+                PathChmodRequest.addMode(builder, mode);
+                return PathChmodRequest.endPathChmodRequest(builder);
+            }
+
+            @Override
+            Object parse(Table table) {
+                PathChmodResponse response = (PathChmodResponse) table;
+                if (!response.success()) {
+                    Log.e(TAG, "Failed to chmod " + filename + ": " + response.errorMsg());
+                    return false;
+                }
+                return true;
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Add a {@link MbtoolSocket#pathSelinuxGetLabel(Context, String, boolean)} request.
+     */
+    @NonNull
+    public MbtoolBatch pathSelinuxGetLabel(final String path, final boolean followSymlinks) {
+        mOperations.add(new Operation(
+                RequestType.PathSELinuxGetLabelRequest, ResponseType.PathSELinuxGetLabelResponse) {
+            @Override
+            int build(FlatBufferBuilder builder) {
+                int fbPath = builder.createString(path);
+                PathSELinuxGetLabelRequest.startPathSELinuxGetLabelRequest(builder);
+                PathSELinuxGetLabelRequest.addPath(builder, fbPath);
+                PathSELinuxGetLabelRequest.addFollowSymlinks(builder, followSymlinks);
+                return PathSELinuxGetLabelRequest.endPathSELinuxGetLabelRequest(builder);
+            }
+
+            @Override
+            Object parse(Table table) {
+                PathSELinuxGetLabelResponse response = (PathSELinuxGetLabelResponse) table;
+                if (!response.success()) {
+                    Log.e(TAG, "Failed to get SELinux label for " + path + ": " +
+                            response.errorMsg());
+                    return null;
+                }
+                return response.label();
+            }
+
+            @Override
+            boolean succeeded(Object result) {
+                return result != null;
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Add a {@link MbtoolSocket#pathSelinuxSetLabel(Context, String, String, boolean)} request.
+     */
+    @NonNull
+    public MbtoolBatch pathSelinuxSetLabel(final String path, final String label,
+                                           final boolean followSymlinks) {
+        mOperations.add(new BooleanOperation(
+                RequestType.PathSELinuxSetLabelRequest, ResponseType.PathSELinuxSetLabelResponse) {
+            @Override
+            int build(FlatBufferBuilder builder) {
+                int fbPath = builder.createString(path);
+                int fbLabel = builder.createString(label);
+                PathSELinuxSetLabelRequest.startPathSELinuxSetLabelRequest(builder);
+                PathSELinuxSetLabelRequest.addPath(builder, fbPath);
+                PathSELinuxSetLabelRequest.addLabel(builder, fbLabel);
+                PathSELinuxSetLabelRequest.addFollowSymlinks(builder, followSymlinks);
+                return PathSELinuxSetLabelRequest.endPathSELinuxSetLabelRequest(builder);
+            }
+
+            @Override
+            Object parse(Table table) {
+                PathSELinuxSetLabelResponse response = (PathSELinuxSetLabelResponse) table;
+                if (!response.success()) {
+                    Log.e(TAG, "Failed to set SELinux label for " + path + ": " +
+                            response.errorMsg());
+                    return false;
+                }
+                return true;
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Add a {@link MbtoolSocket#pathGetDirectorySize(Context, String, String[])} request.
+     */
+    @NonNull
+    public MbtoolBatch pathGetDirectorySize(final String path, final String[] exclusions) {
+        mOperations.add(new Operation(
+                RequestType.PathGetDirectorySizeRequest,
+                ResponseType.PathGetDirectorySizeResponse) {
+            @Override
+            int build(FlatBufferBuilder builder) {
+                int fbPath = builder.createString(path);
+                int fbExclusions = 0;
+                if (exclusions != null) {
+                    int[] exclusionOffsets = new int[exclusions.length];
+                    for (int i = 0; i < exclusions.length; i++) {
+                        exclusionOffsets[i] = builder.createString(exclusions[i]);
+                    }
+
+                    fbExclusions = PathGetDirectorySizeRequest.createExclusionsVector(
+                            builder, exclusionOffsets);
+                }
+                PathGetDirectorySizeRequest.startPathGetDirectorySizeRequest(builder);
+                PathGetDirectorySizeRequest.addPath(builder, fbPath);
+                PathGetDirectorySizeRequest.addExclusions(builder, fbExclusions);
+                return PathGetDirectorySizeRequest.endPathGetDirectorySizeRequest(builder);
+            }
+
+            @Override
+            Object parse(Table table) {
+                PathGetDirectorySizeResponse response = (PathGetDirectorySizeResponse) table;
+                if (!response.success()) {
+                    Log.e(TAG, "Failed to get directory size for " + path + ": " +
+                            response.errorMsg());
+                    return -1L;
+                }
+                return response.size();
+            }
+
+            @Override
+            boolean succeeded(Object result) {
+                return (Long) result >= 0;
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Send all requests and wait for the results.
+     *
+     * @param context Application context
+     * @return Results of the requests
+     * @throws IOException When any socket communication error occurs
+     */
+    @NonNull
+    public Results execute(Context context) throws IOException {
+        Object[] values = new Object[mOperations.size()];
+        if (values.length == 0) {
+            return new Results(values, 0);
+        }
+
+        mSocket.connect(context);
+
+        // Create request
+        FlatBufferBuilder builder = MbtoolCodec.obtainBuilder();
+        int[] fbRequests = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            Operation op = mOperations.get(i);
+            int fbRequest = op.build(builder);
+            fbRequests[i] = Request.createRequest(builder, op.requestType, fbRequest, 0);
+        }
+        int fbRequestsVec = RequestBatch.createRequestsVector(builder, fbRequests);
+        int fbBatch = RequestBatch.createRequestBatch(builder, fbRequestsVec, mStopOnError);
+
+        // Send request
+        Response response = mSocket.sendRawRequest(builder, fbBatch, RequestType.RequestBatch);
+        if (response.responseType() == ResponseType.Unsupported) {
+            Log.d(TAG, "mbtool does not support batches. Sending requests individually");
+            return executeIndividually(values);
+        }
+
+        ResponseBatch batch = (ResponseBatch)
+                MbtoolSocket.unwrapResponse(response, ResponseType.ResponseBatch);
+
+        int executed = Math.min(batch.responsesLength(), values.length);
+        for (int i = 0; i < executed; i++) {
+            Operation op = mOperations.get(i);
+            Response nested = Response.getRootAsResponse(batch.responses(i).dataAsByteBuffer());
+            values[i] = op.parse(MbtoolSocket.unwrapResponse(nested, op.responseType));
+        }
+
+        return new Results(values, executed);
+    }
+
+    @NonNull
+    private Results executeIndividually(Object[] values) throws IOException {
+        int executed = 0;
+
+        for (Operation op : mOperations) {
+            FlatBufferBuilder builder = MbtoolCodec.obtainBuilder();
+            int fbRequest = op.build(builder);
+            Table table = mSocket.sendRequest(builder, fbRequest, op.requestType, op.responseType);
+
+            Object result = op.parse(table);
+            values[executed++] = result;
+
+            if (mStopOnError && !op.succeeded(result)) {
+                break;
+            }
+        }
+
+        return new Results(values, executed);
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2016  Andrew Gunnerson <andrewgunnerson@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.chenxiaolong.dualbootpatcher.socket;
+
+import com.google.flatbuffers.FlatBufferBuilder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reusable buffers for encoding requests and decoding responses.
+ *
+ * Every thread gets its own {@link FlatBufferBuilder} and its own receive buffer, so a loop of
+ * requests from one thread (eg. reading a file in chunks) stops allocating builders and buffers
+ * once it has warmed up. The counters below make it possible to check that this is the case.
+ *
+ * Requests are not allocation-free though. Each one still creates its pending request record, an
+ * entry and a boxed ID in the connection's pending request map, the {@code Response} envelope and
+ * the response table, plus whatever the caller builds from the result. Only the record, envelope
+ * and table are counted by {@link #getObjectAllocations()}.
+ *
+ * Buffers are heap buffers because {@link java.io.InputStream} and {@link java.io.OutputStream}
+ * only work with arrays. A direct buffer would just add another copy.
+ */
+public final class MbtoolCodec {
+    /** Initial size of builders and receive buffers. Same as the C++ default. */
+    static final int DEFAULT_BUFFER_SIZE = 1024;
+
+    /** Buffers larger than this are used once and then left to the garbage collector */
+    static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+
+    private static final AtomicLong sBuilderAllocations = new AtomicLong();
+    private static final AtomicLong sBufferAllocations = new AtomicLong();
+    private static final AtomicLong sBytesAllocated = new AtomicLong();
+    private static final AtomicLong sObjectAllocations = new AtomicLong();
+
+    private static class BuilderState {
+        FlatBufferBuilder builder;
+        ByteBuffer buffer;
+    }
+
+    private static final ThreadLocal<BuilderState> sBuilderState =
+            new ThreadLocal<BuilderState>() {
+                @Override
+                protected BuilderState initialValue() {
+                    return new BuilderState();
+                }
+            };
+
+    private static final ThreadLocal<ByteBuffer> sReceiveBuffer = new ThreadLocal<>();
+
+    private static final ThreadLocal<Inflater> sInflater = new ThreadLocal<Inflater>() {
+        @Override
+        protected Inflater initialValue() {
+            return new Inflater();
+        }
+    };
+
+    private static final ThreadLocal<ByteBuffer> sInflateBuffer = new ThreadLocal<>();
+
+    private MbtoolCodec() {
+    }
+
+    /**
+     * Get this thread's builder, reset and ready for a new request.
+     *
+     * The builder must not be held across another request from the same thread.
+     */
+    static FlatBufferBuilder obtainBuilder() {
+        BuilderState state = sBuilderState.get();
+        if (state.builder == null) {
+            state.buffer = allocate(DEFAULT_BUFFER_SIZE);
+            state.builder = new FlatBufferBuilder(state.buffer);
+            sBuilderAllocations.incrementAndGet();
+        } else {
+            state.builder.init(state.buffer);
+        }
+        return state.builder;
+    }
+
+    /**
+     * Remember the buffer of a finished builder in case the builder had to grow it.
+     *
+     * @param builder Builder returned by {@link #obtainBuilder()}
+     */
+    static void finishedBuilder(FlatBufferBuilder builder) {
+        BuilderState state = sBuilderState.get();
+        if (state.builder != builder) {
+            return;
+        }
+
+        ByteBuffer buffer = builder.dataBuffer();
+        if (buffer != state.buffer) {
+            if (buffer.capacity() <= MAX_RETAINED_BUFFER_SIZE) {
+                // The builder allocated this when it grew
+                countAllocation(buffer.capacity());
+                state.buffer = buffer;
+            } else {
+                // Don't keep huge buffers around. Start over with a new builder next time.
+                state.builder = null;
+                state.buffer = null;
+            }
+        }
+    }
+
+    /**
+     * Take this thread's receive buffer so it can be filled with the next response.
+     *
+     * @return Receive buffer or null if this thread doesn't have one yet
+     */
+    static ByteBuffer takeReceiveBuffer() {
+        ByteBuffer buffer = sReceiveBuffer.get();
+        if (buffer != null) {
+            sReceiveBuffer.set(null);
+        }
+        return buffer;
+    }
+
+    /**
+     * Keep a buffer as this thread's receive buffer.
+     *
+     * The buffer (and thus the last response received by this thread) stays valid until the
+     * thread sends its next request.
+     */
+    static void putReceiveBuffer(ByteBuffer buffer) {
+        if (buffer != null && buffer.capacity() <= MAX_RETAINED_BUFFER_SIZE) {
+            sReceiveBuffer.set(buffer);
+        }
+    }
+
+    /**
+     * Get a buffer that can hold at least {@code size} bytes.
+     *
+     * @param buffer Existing buffer (may be null)
+     * @param size Minimum capacity
+     * @return {@code buffer} if it is large enough. Otherwise, a new buffer.
+     */
+    static ByteBuffer ensureCapacity(ByteBuffer buffer, int size) {
+        if (buffer != null && buffer.capacity() >= size) {
+            return buffer;
+        }
+
+        int capacity = DEFAULT_BUFFER_SIZE;
+        while (capacity < size && capacity > 0) {
+            capacity <<= 1;
+        }
+        if (capacity <= 0) {
+            capacity = size;
+        }
+        return allocate(capacity);
+    }
+
+    /**
+     * Decompress a zlib stream into an array.
+     *
+     * @param data Compressed data. Must be backed by an array.
+     * @param out Output array
+     * @param offset Offset in {@code out}
+     * @param size Exact size of the decompressed data
+     * @throws IOException If the data is corrupt or does not decompress to {@code size} bytes
+     */
+    static void inflate(ByteBuffer data, byte[] out, int offset, int size) throws IOException {
+        Inflater inflater = sInflater.get();
+        inflater.reset();
+        inflater.setInput(data.array(), data.arrayOffset() + data.position(), data.remaining());
+
+        try {
+            int n = 0;
+            while (n < size && !inflater.finished()) {
+                int ret = inflater.inflate(out, offset + n, size - n);
+                if (ret == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                n += ret;
+            }
+            if (n != size || !inflater.finished()) {
+                throw new IOException("Compressed data does not have the expected size");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt compressed data", e);
+        }
+    }
+
+    /**
+     * Decompress a zlib stream into this thread's decompression buffer.
+     *
+     * The returned buffer stays valid until the thread decompresses something else.
+     *
+     * @param data Compressed data. Must be backed by an array.
+     * @param size Exact size of the decompressed data
+     * @return Buffer containing the decompressed data between its position and limit
+     * @throws IOException If the data is corrupt or does not decompress to {@code size} bytes
+     */
+    static ByteBuffer inflate(ByteBuffer data, int size) throws IOException {
+        ByteBuffer buffer = ensureCapacity(sInflateBuffer.get(), size);
+        if (buffer.capacity() <= MAX_RETAINED_BUFFER_SIZE) {
+            sInflateBuffer.set(buffer);
+        }
+
+        inflate(data, buffer.array(), buffer.arrayOffset(), size);
+        buffer.position(0);
+        buffer.limit(size);
+        return buffer;
+    }
+
+    static ByteBuffer allocate(int size) {
+        countAllocation(size);
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static void countAllocation(int size) {
+        sBufferAllocations.incrementAndGet();
+        sBytesAllocated.addAndGet(size);
+    }
+
+    /** Count a pending request record, response envelope or response table */
+    static void countObject() {
+        sObjectAllocations.incrementAndGet();
+    }
+
+    /** Number of {@link FlatBufferBuilder}s created so far */
+    public static long getBuilderAllocations() {
+        return sBuilderAllocations.get();
+    }
+
+    /** Number of request and response buffers allocated so far */
+    public static long getBufferAllocations() {
+        return sBufferAllocations.get();
+    }
+
+    /** Total size of the request and response buffers allocated so far */
+    public static long getBytesAllocated() {
+        return sBytesAllocated.get();
+    }
+
+    /**
+     * Number of pending request records, response envelopes and response tables created so far.
+     * This is three per request. The pending request map's entries are not included.
+     */
+    public static long getObjectAllocations() {
+        return sObjectAllocations.get();
+    }
+}
@@ -0,0 +1,645 @@
+/*
+ * Copyright (C) 2016  Andrew Gunnerson <andrewgunnerson@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.chenxiaolong.dualbootpatcher.socket;
+
+import android.net.LocalSocket;
+import android.os.Build;
+import android.os.ParcelFileDescriptor;
+import android.support.annotation.Nullable;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.google.flatbuffers.FlatBufferBuilder;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import mbtool.daemon.v3.EventNotification;
+import mbtool.daemon.v3.PathCopyStreamProgress;
+import mbtool.daemon.v3.PathOpenFdResponse;
+import mbtool.daemon.v3.Request;
+import mbtool.daemon.v3.Response;
+import mbtool.daemon.v3.ResponseType;
+
+/**
+ * A single authenticated connection to the mbtool daemon.
+ *
+ * Requests are tagged with an ID and any number of them can be in flight at the same time. A
+ * reader thread receives the responses and hands each one to the thread waiting for it. If the
+ * daemon is too old to echo the request IDs, it handles requests strictly in order, so responses
+ * without an ID are matched to the oldest pending request.
+ *
+ * Requests sent with {@link #submit(FlatBufferBuilder, int, byte, ResponseHandler)} don't have a
+ * waiting thread. Their responses are handed to a {@link ResponseHandler} on the reader thread.
+ *
+ * Some requests (eg. PathCopyStreamRequest) get any number of intermediate responses, such as
+ * {@link PathCopyStreamProgress}, before their final response. These are handed to the
+ * request's {@link StreamListener} and don't complete the request.
+ *
+ * {@link EventNotification}s are not responses to any request. They are handed to the handler set
+ * with {@link #setEventHandler(ResponseHandler)}.
+ *
+ * Some responses (currently only a successful {@link PathOpenFdResponse}) are followed by a single
+ * byte carrying file descriptors as {@code SCM_RIGHTS} ancillary data. The reader thread receives
+ * them together with the response, so they can never be mixed up with another request's.
+ */
+class MbtoolConnection {
+    private static final String TAG = MbtoolConnection.class.getSimpleName();
+
+    private static final String RESPONSE_ALLOW = "ALLOW";
+    private static final String RESPONSE_DENY = "DENY";
+    private static final String RESPONSE_OK = "OK";
+    private static final String RESPONSE_UNSUPPORTED = "UNSUPPORTED";
+
+    private final LocalSocket mSocket;
+    private final InputStream mSocketIS;
+    private final OutputStream mSocketOS;
+
+    /** Serializes writes to {@link #mSocketOS} */
+    private final Object mWriteLock = new Object();
+
+    /** Pending requests in the order they were sent. Also guards the fields below. */
+    private final LinkedHashMap<Long, PendingRequest> mPending = new LinkedHashMap<>();
+    private int mNextId = 1;
+    private boolean mClosed;
+    private IOException mFailure;
+    /** Receives event notifications and the failure when the connection is closed */
+    private ResponseHandler mEventHandler;
+
+    private Thread mReaderThread;
+    /** Buffer the reader thread receives the next response into. Only used by that thread. */
+    private ByteBuffer mReadBuffer;
+
+    /**
+     * Receives the response to a request sent with
+     * {@link #submit(FlatBufferBuilder, int, byte, ResponseHandler)}.
+     *
+     * The methods are called on the reader thread (or on the thread that closed the connection)
+     * and must not block or send requests. The response is only valid until the method returns.
+     */
+    interface ResponseHandler {
+        void onResponse(Response response);
+
+        void onFailure(IOException e);
+    }
+
+    /**
+     * Receives the ID and the intermediate responses of a request.
+     */
+    interface StreamListener {
+        /** Called with the ID assigned to the request right before it is sent */
+        void onRequestId(long id);
+
+        /**
+         * Called on the reader thread for every intermediate response. This must not block or
+         * send requests and the response is only valid until the method returns.
+         */
+        void onIntermediateResponse(Response response);
+    }
+
+    private static class PendingRequest {
+        /** Handler for requests that nobody waits for */
+        ResponseHandler handler;
+        /** Listener for intermediate responses */
+        StreamListener stream;
+        byte requestType;
+        int requestSize;
+        long submitTime;
+        volatile long sendTime;
+
+        /** Receive buffer lent by the requesting thread. Swapped with the response's buffer. */
+        ByteBuffer spare;
+        /** Buffer containing the response */
+        ByteBuffer frame;
+        Response response;
+        /** File descriptors that came with the response */
+        ParcelFileDescriptor[] fds;
+        IOException error;
+        boolean done;
+        /** Whether the requesting thread gave up waiting */
+        boolean abandoned;
+
+        PendingRequest() {
+            MbtoolCodec.countObject();
+        }
+
+        void complete(Response response, ByteBuffer frame, ParcelFileDescriptor[] fds,
+                      IOException error) {
+            if (handler != null) {
+                closeQuietly(fds);
+                if (error != null) {
+                    MbtoolStats.recordFailure(requestType);
+                    handler.onFailure(error);
+                } else {
+                    MbtoolStats.record(requestType, sendTime - submitTime,
+                            System.nanoTime() - sendTime, requestSize, frame.remaining());
+                    handler.onResponse(response);
+                }
+                return;
+            }
+
+            synchronized (this) {
+                if (abandoned) {
+                    closeQuietly(fds);
+                    fds = null;
+                }
+                this.response = response;
+                this.frame = frame;
+                this.fds = fds;
+                this.error = error;
+                done = true;
+                notifyAll();
+            }
+        }
+
+        synchronized Response await() throws IOException {
+            while (!done) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    // The entry is left in place so that responses without an ID still line up
+                    abandoned = true;
+                    throw new InterruptedIOException("Interrupted while waiting for response");
+                }
+            }
+            if (error != null) {
+                throw error;
+            }
+            return response;
+        }
+    }
+
+    MbtoolConnection(LocalSocket socket) throws IOException {
+        mSocket = socket;
+        mSocketIS = socket.getInputStream();
+        mSocketOS = socket.getOutputStream();
+    }
+
+    /**
+     * Perform the handshake and start the reader thread.
+     *
+     * 1. Check to make sure mbtool authorized our connection
+     * 2. Request interface version and check if the daemon supports it
+     *
+     * @param interfaceVersion Protocol version to request
+     * @throws IOException Signature check failed, protocol version not supported, or unexpected
+     *                     reply
+     */
+    void initialize(int interfaceVersion) throws IOException {
+        verifyCredentials();
+        requestInterfaceVersion(interfaceVersion);
+
+        mReaderThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                readResponses();
+            }
+        }, TAG + "-reader");
+        mReaderThread.setDaemon(true);
+        mReaderThread.start();
+    }
+
+    /**
+     * Check if mbtool rejected the connection due to the signature check failing
+     *
+     * @throws IOException Signature check failed or unexpected response
+     */
+    private void verifyCredentials() throws IOException {
+        String response = SocketUtils.readString(mSocketIS);
+        if (RESPONSE_DENY.equals(response)) {
+            throw new IOException("mbtool explicitly denied access to the daemon. " +
+                    "WARNING: This app is probably not officially signed!");
+        } else if (!RESPONSE_ALLOW.equals(response)) {
+            throw new IOException("Unexpected reply: " + response);
+        }
+    }
+
+    /**
+     * Request protocol version from mbtool
+     *
+     * @throws IOException Protocol version not supported or unexpected reply
+     */
+    private void requestInterfaceVersion(int interfaceVersion) throws IOException {
+        SocketUtils.writeInt32(mSocketOS, interfaceVersion);
+        String response = SocketUtils.readString(mSocketIS);
+        if (RESPONSE_UNSUPPORTED.equals(response)) {
+            throw new IOException("Daemon does not support interface " + interfaceVersion);
+        } else if (!RESPONSE_OK.equals(response)) {
+            throw new IOException("Unexpected reply: " + response);
+        }
+    }
+
+    boolean isClosed() {
+        synchronized (mPending) {
+            return mClosed;
+        }
+    }
+
+    /**
+     * Set the handler for {@link EventNotification}s.
+     *
+     * The handler's {@link ResponseHandler#onFailure(IOException)} is called once the connection
+     * is closed, since no more events will be received.
+     *
+     * @param handler Handler or null to drop events
+     */
+    void setEventHandler(@Nullable ResponseHandler handler) {
+        synchronized (mPending) {
+            mEventHandler = handler;
+        }
+    }
+
+    /**
+     * Close the connection and fail all pending requests.
+     *
+     * @param cause Error that caused the connection to be closed or null if it was closed on
+     *              purpose
+     */
+    void close(IOException cause) {
+        ArrayList<PendingRequest> pending;
+        ResponseHandler eventHandler;
+
+        synchronized (mPending) {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+            mFailure = cause;
+
+            pending = new ArrayList<>(mPending.values());
+            mPending.clear();
+            eventHandler = mEventHandler;
+            mEventHandler = null;
+        }
+
+        // Handlers run outside of the lock
+        for (PendingRequest pr : pending) {
+            pr.complete(null, null, null, cause != null
+                    ? new IOException("mbtool connection lost", cause)
+                    : new IOException("mbtool connection closed"));
+        }
+        if (eventHandler != null) {
+            eventHandler.onFailure(cause != null
+                    ? new IOException("mbtool connection lost", cause)
+                    : new IOException("mbtool connection closed"));
+        }
+
+        IOUtils.closeQuietly(mSocket);
+        IOUtils.closeQuietly(mSocketIS);
+        IOUtils.closeQuietly(mSocketOS);
+    }
+
+    /**
+     * Send a request and wait for its response.
+     *
+     * This may be called from any number of threads at the same time. The response is backed by
+     * the calling thread's receive buffer and stays valid until that thread sends its next
+     * request.
+     *
+     * @param builder Builder containing the request
+     * @param fbRequest Offset of the request table
+     * @param fbRequestType Type of the request table
+     * @return Response envelope
+     * @throws IOException When any socket communication error occurs
+     */
+    @NonNull
+    Response transact(FlatBufferBuilder builder, int fbRequest, byte fbRequestType)
+            throws IOException {
+        return transact(builder, fbRequest, fbRequestType, null);
+    }
+
+    /**
+     * Send a request and wait for its response and any file descriptors that come with it.
+     *
+     * @param builder Builder containing the request
+     * @param fbRequest Offset of the request table
+     * @param fbRequestType Type of the request table
+     * @param fds List to add the received file descriptors to. The caller is responsible for
+     *            closing them. If null, received file descriptors are closed.
+     * @return Response envelope
+     * @throws IOException When any socket communication error occurs
+     */
+    @NonNull
+    Response transact(FlatBufferBuilder builder, int fbRequest, byte fbRequestType,
+                      @Nullable List<ParcelFileDescriptor> fds) throws IOException {
+        return transact(builder, fbRequest, fbRequestType, fds, null);
+    }
+
+    /**
+     * Send a request and wait for its final response.
+     *
+     * @param builder Builder containing the request
+     * @param fbRequest Offset of the request table
+     * @param fbRequestType Type of the request table
+     * @param fds List to add the received file descriptors to. The caller is responsible for
+     *            closing them. If null, received file descriptors are closed.
+     * @param stream Listener for the request ID and the intermediate responses
+     * @return Response envelope
+     * @throws IOException When any socket communication error occurs
+     */
+    @NonNull
+    Response transact(FlatBufferBuilder builder, int fbRequest, byte fbRequestType,
+                      @Nullable List<ParcelFileDescriptor> fds,
+                      @Nullable StreamListener stream) throws IOException {
+        PendingRequest pr = new PendingRequest();
+        pr.stream = stream;
+        pr.spare = MbtoolCodec.takeReceiveBuffer();
+        send(builder, fbRequest, fbRequestType, pr);
+
+        Response response;
+        try {
+            response = pr.await();
+        } catch (IOException e) {
+            MbtoolStats.recordFailure(fbRequestType);
+            throw e;
+        }
+        MbtoolStats.record(fbRequestType, pr.sendTime - pr.submitTime,
+                System.nanoTime() - pr.sendTime, pr.requestSize,
+                pr.frame != null ? pr.frame.remaining() : 0);
+        MbtoolCodec.putReceiveBuffer(pr.frame != null ? pr.frame : pr.spare);
+        if (pr.fds != null) {
+            if (fds != null) {
+                Collections.addAll(fds, pr.fds);
+            } else {
+                closeQuietly(pr.fds);
+            }
+        }
+        return response;
+    }
+
+    /**
+     * Send a request without waiting for its response.
+     *
+     * Only the socket write blocks. File descriptors that come with the response are closed.
+     *
+     * @param builder Builder containing the request
+     * @param fbRequest Offset of the request table
+     * @param fbRequestType Type of the request table
+     * @param handler Handler for the response. Not called if this method throws.
+     * @throws IOException When any socket communication error occurs
+     */
+    void submit(FlatBufferBuilder builder, int fbRequest, byte fbRequestType,
+                ResponseHandler handler) throws IOException {
+        submit(builder, fbRequest, fbRequestType, handler, null);
+    }
+
+    /**
+     * Send a request without waiting for its final response.
+     *
+     * @param builder Builder containing the request
+     * @param fbRequest Offset of the request table
+     * @param fbRequestType Type of the request table
+     * @param handler Handler for the final response. Not called if this method throws.
+     * @param stream Listener for the request ID and the intermediate responses
+     * @throws IOException When any socket communication error occurs
+     */
+    void submit(FlatBufferBuilder builder, int fbRequest, byte fbRequestType,
+                ResponseHandler handler, @Nullable StreamListener stream) throws IOException {
+        PendingRequest pr = new PendingRequest();
+        pr.handler = handler;
+        pr.stream = stream;
+        send(builder, fbRequest, fbRequestType, pr);
+    }
+
+    /**
+     * Register a pending request and write it to the socket.
+     */
+    private void send(FlatBufferBuilder builder, int fbRequest, byte fbRequestType,
+                      PendingRequest pr) throws IOException {
+        pr.requestType = fbRequestType;
+        pr.submitTime = System.nanoTime();
+        long id;
+
+        synchronized (mPending) {
+            if (mClosed) {
+                MbtoolStats.recordFailure(fbRequestType);
+                throw new IOException("mbtool connection closed", mFailure);
+            }
+            id = mNextId & 0xffffffffL;
+            // Zero means "no ID" to the daemon
+            mNextId = mNextId == -1 ? 1 : mNextId + 1;
+            mPending.put(id, pr);
+        }
+
+        if (pr.stream != null) {
+            pr.stream.onRequestId(id);
+        }
+
+        Request.startRequest(builder);
+        Request.addRequestType(builder, fbRequestType);
+        Request.addRequest(builder, fbRequest);
+        Request.addId(builder, id);
+        builder.finish(Request.endRequest(builder));
+        MbtoolCodec.finishedBuilder(builder);
+        pr.requestSize = builder.dataBuffer().remaining();
+
+        try {
+            synchronized (mWriteLock) {
+                pr.sendTime = System.nanoTime();
+                SocketUtils.writeBytes(mSocketOS, builder.dataBuffer());
+            }
+        } catch (IOException e) {
+            // Don't let close() report the failure to the handler as well
+            pr.handler = null;
+            MbtoolStats.recordFailure(fbRequestType);
+            close(e);
+            throw e;
+        }
+    }
+
+    private void readResponses() {
+        try {
+            while (true) {
+                int length = SocketUtils.readInt32(mSocketIS);
+                if (length < 0) {
+                    throw new IOException("Invalid byte array length");
+                }
+
+                // Oversized responses get a buffer of their own that isn't kept around
+                boolean oversized = length > MbtoolCodec.MAX_RETAINED_BUFFER_SIZE;
+                ByteBuffer frame;
+                if (oversized) {
+                    frame = MbtoolCodec.allocate(length);
+                } else {
+                    mReadBuffer = MbtoolCodec.ensureCapacity(mReadBuffer, length);
+                    frame = mReadBuffer;
+                }
+
+                SocketUtils.readFully(mSocketIS, frame.array(), frame.arrayOffset(), length);
+                frame.position(0);
+                frame.limit(length);
+                Response response = Response.getRootAsResponse(frame);
+                MbtoolCodec.countObject();
+                ParcelFileDescriptor[] fds = hasFileDescriptors(response)
+                        ? receiveFileDescriptors() : null;
+
+                // Events have no ID and must not be matched with an old request
+                if (response.responseType() == ResponseType.EventNotification) {
+                    ResponseHandler handler;
+                    synchronized (mPending) {
+                        handler = mEventHandler;
+                    }
+                    if (handler != null) {
+                        handler.onResponse(response);
+                    }
+                    continue;
+                }
+
+                if (isIntermediate(response)) {
+                    PendingRequest pr;
+                    synchronized (mPending) {
+                        pr = mPending.get(response.id());
+                    }
+                    if (pr != null && pr.stream != null) {
+                        pr.stream.onIntermediateResponse(response);
+                    }
+                    continue;
+                }
+
+                PendingRequest pr;
+                synchronized (mPending) {
+                    pr = takePending(response.id());
+                }
+
+                if (pr == null) {
+                    Log.w(TAG, "Received response for unknown request " + response.id());
+                    closeQuietly(fds);
+                    continue;
+                }
+
+                if (pr.handler != null) {
+                    // The handler is done with the frame once it returns
+                    pr.complete(response, frame, fds, null);
+                    continue;
+                }
+
+                if (!oversized) {
+                    // The requester now owns the frame. Continue with the buffer it lent us.
+                    mReadBuffer = pr.spare;
+                    pr.spare = null;
+                }
+                pr.complete(response, frame, fds, null);
+            }
+        } catch (IOException e) {
+            if (!isClosed()) {
+                Log.e(TAG, "Failed to read response from mbtool", e);
+            }
+            close(e);
+        }
+    }
+
+    private static boolean isIntermediate(Response response) {
+        switch (response.responseType()) {
+        case ResponseType.PathCopyStreamProgress:
+        case ResponseType.PathGetDirectorySizeStreamProgress:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    private static boolean hasFileDescriptors(Response response) {
+        if (response.responseType() != ResponseType.PathOpenFdResponse) {
+            return false;
+        }
+        PathOpenFdResponse r = (PathOpenFdResponse) response.response(new PathOpenFdResponse());
+        return r != null && r.success();
+    }
+
+    /**
+     * Read the dummy byte that follows a response and take ownership of the file descriptors
+     * attached to it.
+     */
+    private ParcelFileDescriptor[] receiveFileDescriptors() throws IOException {
+        SocketUtils.readFully(mSocketIS, new byte[1], 0, 1);
+
+        FileDescriptor[] received = mSocket.getAncillaryFileDescriptors();
+        if (received == null || received.length == 0) {
+            throw new IOException("Expected file descriptors from mbtool");
+        }
+
+        ParcelFileDescriptor[] fds = new ParcelFileDescriptor[received.length];
+        for (int i = 0; i < received.length; i++) {
+            fds[i] = adoptFileDescriptor(received[i]);
+        }
+        return fds;
+    }
+
+    /**
+     * Wrap a received file descriptor in a {@link ParcelFileDescriptor} that owns it.
+     *
+     * {@link FileDescriptor} has no public way of closing it, so this either duplicates the file
+     * descriptor and closes the original (API 21+) or adopts the raw file descriptor directly.
+     */
+    private static ParcelFileDescriptor adoptFileDescriptor(FileDescriptor fd) throws IOException {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            ParcelFileDescriptor pfd = ParcelFileDescriptor.dup(fd);
+            try {
+                Os.close(fd);
+            } catch (ErrnoException e) {
+                Log.w(TAG, "Failed to close received file descriptor", e);
+            }
+            return pfd;
+        }
+
+        try {
+            Method getInt = FileDescriptor.class.getDeclaredMethod("getInt$");
+            return ParcelFileDescriptor.adoptFd((Integer) getInt.invoke(fd));
+        } catch (Exception e) {
+            throw new IOException("Failed to adopt received file descriptor", e);
+        }
+    }
+
+    private static void closeQuietly(ParcelFileDescriptor[] fds) {
+        if (fds != null) {
+            for (ParcelFileDescriptor fd : fds) {
+                IOUtils.closeQuietly(fd);
+            }
+        }
+    }
+
+    private PendingRequest takePending(long id) {
+        if (id != 0) {
+            return mPending.remove(id);
+        }
+
+        // The daemon did not echo the ID, so it handles requests in order
+        Iterator<Map.Entry<Long, PendingRequest>> iter = mPending.entrySet().iterator();
+        if (!iter.hasNext()) {
+            return null;
+        }
+        PendingRequest pr = iter.next().getValue();
+        iter.remove();
+        return pr;
+    }
+}
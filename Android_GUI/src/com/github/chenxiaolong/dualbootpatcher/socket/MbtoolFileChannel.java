@@ -0,0 +1,563 @@
+/*
+ * Copyright (C) 2016  Andrew Gunnerson <andrewgunnerson@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.chenxiaolong.dualbootpatcher.socket;
+
+import android.content.Context;
+import android.os.ParcelFileDescriptor;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.github.chenxiaolong.dualbootpatcher.socket.MbtoolSocket.OpenFdResult;
+import com.github.chenxiaolong.dualbootpatcher.socket.MbtoolSocket.StatBuf;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import mbtool.daemon.v3.FileOpenFlag;
+import mbtool.daemon.v3.FileSeekWhence;
+
+/**
+ * Read-only, seekable channel over a file opened by the mbtool daemon.
+ *
+ * If the daemon can pass the file descriptor to us, the file is read directly with no round trips
+ * or copies through the socket. Otherwise (old daemon or SELinux not allowing us to use the file
+ * descriptor), the data is proxied through the daemon's file RPCs. In that case, the file is read
+ * in blocks of {@link #BLOCK_SIZE} bytes, which are kept in a small LRU cache. While the file is
+ * read sequentially, the readahead window doubles with every new block (up to
+ * {@link #MAX_READAHEAD_BLOCKS}) and the upcoming blocks are fetched by a background thread, so
+ * the consumer rarely has to wait for a round trip to the daemon. Seeking somewhere else resets
+ * the window.
+ *
+ * The size of the file (or block device) is determined when it is opened. Data appended afterwards
+ * is not visible.
+ */
+public class MbtoolFileChannel implements ReadableByteChannel {
+    private static final String TAG = MbtoolFileChannel.class.getSimpleName();
+
+    public static final int BLOCK_SIZE = 64 * 1024;
+
+    private static final int S_IFMT = 0170000;
+    private static final int S_IFBLK = 0060000;
+    public static final int MAX_READAHEAD_BLOCKS = 16;
+    private static final int MAX_CACHED_BLOCKS = 2 * MAX_READAHEAD_BLOCKS;
+
+    private static final ExecutorService sPrefetchExecutor =
+            Executors.newCachedThreadPool(new ThreadFactory() {
+                private final AtomicInteger mCount = new AtomicInteger();
+
+                @Override
+                public Thread newThread(@NonNull Runnable r) {
+                    Thread t = new Thread(r, TAG + "-prefetch-" + mCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
+    private static class Block {
+        final byte[] data = new byte[BLOCK_SIZE];
+        int length;
+    }
+
+    private final Context mContext;
+    private final MbtoolSocket mSocket;
+    private final int mId;
+    private final StatBuf mStat;
+    private final long mSize;
+
+    /** File descriptor passed by the daemon or null if reads go through the daemon */
+    private final ParcelFileDescriptor mFd;
+    private final FileChannel mLocalChannel;
+
+    /**
+     * Serializes all operations on the daemon's file descriptor, which has a single file position
+     * shared by everyone. Also guards {@link #mRemotePosition}.
+     */
+    private final Object mFdLock = new Object();
+    private long mRemotePosition;
+
+    /** Guards the cache and all of the fields below */
+    private final Object mLock = new Object();
+    private final ArrayDeque<Block> mFreeBlocks = new ArrayDeque<>();
+    private final LinkedHashMap<Long, Block> mCache =
+            new LinkedHashMap<Long, Block>(MAX_CACHED_BLOCKS, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, Block> eldest) {
+                    if (size() > MAX_CACHED_BLOCKS) {
+                        mFreeBlocks.push(eldest.getValue());
+                        return true;
+                    }
+                    return false;
+                }
+            };
+    private long mPosition;
+    private boolean mClosed;
+
+    /** Last block read by the consumer */
+    private long mLastBlock = -1;
+    /** Number of blocks to read ahead of {@link #mLastBlock} */
+    private int mWindow = 1;
+    /** Next block the prefetcher will fetch */
+    private long mPrefetchNext;
+    /** Block at which the prefetcher stops */
+    private long mPrefetchEnd;
+    private boolean mPrefetching;
+
+    private MbtoolFileChannel(Context context, MbtoolSocket socket, int id, StatBuf stat,
+                              long size, ParcelFileDescriptor fd, FileChannel localChannel) {
+        mContext = context;
+        mSocket = socket;
+        mId = id;
+        mStat = stat;
+        mSize = Math.max(size, 0);
+        mFd = fd;
+        mLocalChannel = localChannel;
+    }
+
+    /**
+     * Open a file or block device for reading.
+     *
+     * @param context Application context
+     * @param socket Socket (and thus lane) to use for all requests
+     * @param path Path of the file
+     * @return New channel positioned at the beginning of the file
+     * @throws FileNotFoundException If the daemon could not open or stat the file
+     * @throws IOException When any socket communication error occurs
+     */
+    @NonNull
+    public static MbtoolFileChannel open(Context context, MbtoolSocket socket, String path)
+            throws IOException {
+        OpenFdResult result = socket.pathOpenFd(context, path);
+        if (result != null) {
+            MbtoolFileChannel channel = openLocal(context, socket, path, result);
+            if (channel != null) {
+                return channel;
+            }
+        }
+
+        return openRemote(context, socket, path);
+    }
+
+    /**
+     * Use a file descriptor passed by the daemon if it is actually readable by this process.
+     *
+     * @return New channel or null if the file descriptor cannot be used
+     */
+    @Nullable
+    private static MbtoolFileChannel openLocal(Context context, MbtoolSocket socket, String path,
+                                               OpenFdResult result) {
+        // The stream does not own the file descriptor, so it doesn't need to be closed
+        FileChannel localChannel = new FileInputStream(result.fd.getFileDescriptor()).getChannel();
+
+        // SELinux may not allow the app to use a file descriptor for a file that it wouldn't be
+        // allowed to open itself. Passing the file descriptor succeeds regardless, so try reading.
+        if (result.size > 0) {
+            try {
+                localChannel.read(ByteBuffer.allocate(1), 0);
+            } catch (IOException e) {
+                Log.w(TAG, "Cannot read from file descriptor for " + path
+                        + ". Falling back to reading through mbtool", e);
+                IOUtils.closeQuietly(result.fd);
+                return null;
+            }
+        }
+
+        return new MbtoolFileChannel(context, socket, -1, result.stat, result.size,
+                result.fd, localChannel);
+    }
+
+    @NonNull
+    private static MbtoolFileChannel openRemote(Context context, MbtoolSocket socket, String path)
+            throws IOException {
+        int id = socket.fileOpen(context, path, new short[] { FileOpenFlag.RDONLY }, 0);
+        if (id < 0) {
+            throw new FileNotFoundException("Failed to open " + path);
+        }
+
+        boolean success = false;
+        try {
+            StatBuf sb = socket.fileStat(context, id);
+            if (sb == null) {
+                throw new FileNotFoundException("Failed to stat " + path);
+            }
+
+            long size = sb.st_size;
+            long remotePosition = 0;
+            if ((sb.st_mode & S_IFMT) == S_IFBLK) {
+                // st_size is always 0 for block devices. There's no need to seek back to the
+                // beginning afterwards because the first fetch will do it.
+                size = socket.fileSeek(context, id, 0, FileSeekWhence.SEEK_END);
+                if (size < 0) {
+                    throw new IOException("Failed to get size of " + path);
+                }
+                remotePosition = size;
+            }
+
+            MbtoolFileChannel channel =
+                    new MbtoolFileChannel(context, socket, id, sb, size, null, null);
+            channel.mRemotePosition = remotePosition;
+            success = true;
+            return channel;
+        } finally {
+            if (!success) {
+                socket.fileClose(context, id);
+            }
+        }
+    }
+
+    /**
+     * Get the stat information gathered when the file was opened
+     */
+    @NonNull
+    public StatBuf stat() {
+        return mStat;
+    }
+
+    public long size() throws IOException {
+        synchronized (mLock) {
+            ensureOpen();
+            return mSize;
+        }
+    }
+
+    public long position() throws IOException {
+        synchronized (mLock) {
+            ensureOpen();
+            return mPosition;
+        }
+    }
+
+    public MbtoolFileChannel position(long newPosition) throws IOException {
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("Negative position: " + newPosition);
+        }
+        synchronized (mLock) {
+            ensureOpen();
+            mPosition = newPosition;
+        }
+        return this;
+    }
+
+    @Override
+    public boolean isOpen() {
+        synchronized (mLock) {
+            return !mClosed;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (mLock) {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+            mCache.clear();
+            mFreeBlocks.clear();
+        }
+
+        if (mFd != null) {
+            mFd.close();
+            return;
+        }
+
+        // Wait for any in-flight fetch to finish before closing the daemon's descriptor
+        synchronized (mFdLock) {
+            mSocket.fileClose(mContext, mId);
+        }
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        if (dst.hasArray()) {
+            int n = read(dst.array(), dst.arrayOffset() + dst.position(), dst.remaining());
+            if (n > 0) {
+                dst.position(dst.position() + n);
+            }
+            return n;
+        } else {
+            byte[] buf = new byte[Math.min(dst.remaining(), BLOCK_SIZE)];
+            int n = read(buf, 0, buf.length);
+            if (n > 0) {
+                dst.put(buf, 0, n);
+            }
+            return n;
+        }
+    }
+
+    /**
+     * Read from the current position into an array.
+     *
+     * @return Number of bytes read or -1 if the position is at or past the end of the file
+     * @throws IOException When any socket communication error occurs
+     */
+    public int read(byte[] buf, int offset, int length) throws IOException {
+        long pos;
+        synchronized (mLock) {
+            ensureOpen();
+            pos = mPosition;
+        }
+
+        if (pos >= mSize) {
+            return -1;
+        }
+
+        if (mLocalChannel != null) {
+            return readLocal(pos, buf, offset, length);
+        }
+
+        int total = 0;
+        while (total < length && pos < mSize) {
+            long index = pos / BLOCK_SIZE;
+            int blockOffset = (int) (pos % BLOCK_SIZE);
+
+            int n = copyFromCache(index, blockOffset, buf, offset + total, length - total);
+            if (n < 0) {
+                fetchBlock(index);
+                continue;
+            } else if (n == 0) {
+                // File was truncated after it was opened
+                break;
+            }
+
+            pos += n;
+            total += n;
+        }
+
+        synchronized (mLock) {
+            mPosition = pos;
+        }
+
+        return total == 0 && length > 0 ? -1 : total;
+    }
+
+    private int readLocal(long pos, byte[] buf, int offset, int length) throws IOException {
+        int toRead = (int) Math.min(length, mSize - pos);
+        int n = mLocalChannel.read(ByteBuffer.wrap(buf, offset, toRead), pos);
+        if (n <= 0) {
+            return length > 0 ? -1 : 0;
+        }
+
+        synchronized (mLock) {
+            mPosition = pos + n;
+        }
+        return n;
+    }
+
+    /**
+     * Get an {@link InputStream} that reads from (and moves) this channel's position.
+     *
+     * Closing the stream closes the channel.
+     */
+    @NonNull
+    public InputStream newInputStream() {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] buf = new byte[1];
+                return MbtoolFileChannel.this.read(buf, 0, 1) == 1 ? buf[0] & 0xff : -1;
+            }
+
+            @Override
+            public int read(@NonNull byte[] b, int off, int len) throws IOException {
+                return MbtoolFileChannel.this.read(b, off, len);
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                synchronized (mLock) {
+                    ensureOpen();
+                    long skipped = Math.max(0, Math.min(n, mSize - mPosition));
+                    mPosition += skipped;
+                    return skipped;
+                }
+            }
+
+            @Override
+            public int available() throws IOException {
+                synchronized (mLock) {
+                    ensureOpen();
+                    return (int) Math.max(0, Math.min(mSize - mPosition, Integer.MAX_VALUE));
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                MbtoolFileChannel.this.close();
+            }
+        };
+    }
+
+    /**
+     * Must hold {@link #mLock}.
+     */
+    private void ensureOpen() throws IOException {
+        if (mClosed) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    /**
+     * Copy data from a cached block.
+     *
+     * @return Number of bytes copied or -1 if the block is not cached
+     */
+    private int copyFromCache(long index, int blockOffset, byte[] buf, int offset, int length)
+            throws IOException {
+        synchronized (mLock) {
+            ensureOpen();
+
+            Block block = mCache.get(index);
+            if (block == null) {
+                return -1;
+            }
+
+            int n = Math.max(0, Math.min(length, block.length - blockOffset));
+            System.arraycopy(block.data, blockOffset, buf, offset, n);
+
+            onBlockAccessed(index);
+            return n;
+        }
+    }
+
+    /**
+     * Update the readahead window and kick off the prefetcher. Must hold {@link #mLock}.
+     */
+    private void onBlockAccessed(long index) {
+        if (index == mLastBlock) {
+            return;
+        }
+
+        if (index == mLastBlock + 1) {
+            mWindow = Math.min(mWindow * 2, MAX_READAHEAD_BLOCKS);
+        } else {
+            // Random access. Drop whatever the prefetcher was going to do.
+            mWindow = 1;
+            mPrefetchNext = index + 1;
+            mPrefetchEnd = index + 1;
+        }
+        mLastBlock = index;
+
+        long blocks = (mSize + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        mPrefetchNext = Math.max(mPrefetchNext, index + 1);
+        mPrefetchEnd = Math.min(Math.max(mPrefetchEnd, index + 1 + mWindow), blocks);
+
+        if (!mPrefetching && mPrefetchNext < mPrefetchEnd) {
+            mPrefetching = true;
+            sPrefetchExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    prefetch();
+                }
+            });
+        }
+    }
+
+    private void prefetch() {
+        while (true) {
+            long index;
+            synchronized (mLock) {
+                if (mClosed || mPrefetchNext >= mPrefetchEnd) {
+                    mPrefetching = false;
+                    return;
+                }
+                index = mPrefetchNext++;
+            }
+
+            try {
+                fetchBlock(index);
+            } catch (IOException e) {
+                // The consumer will get the error when it tries to read the block itself
+                Log.w(TAG, "Failed to prefetch block " + index, e);
+                synchronized (mLock) {
+                    mPrefetching = false;
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Read a block from the daemon into the cache unless it's already there.
+     *
+     * Only one block is fetched per acquisition of {@link #mFdLock}, so a consumer waiting for a
+     * block never has to wait for more than one other block to be fetched.
+     */
+    private void fetchBlock(long index) throws IOException {
+        synchronized (mFdLock) {
+            Block block;
+            synchronized (mLock) {
+                ensureOpen();
+                if (mCache.containsKey(index)) {
+                    return;
+                }
+                block = mFreeBlocks.poll();
+            }
+            if (block == null) {
+                block = new Block();
+            }
+
+            long start = index * BLOCK_SIZE;
+            int length = (int) Math.min(BLOCK_SIZE, mSize - start);
+
+            if (mRemotePosition != start) {
+                // Invalidate until the seek is known to have succeeded
+                mRemotePosition = -1;
+                if (mSocket.fileSeek(mContext, mId, start, FileSeekWhence.SEEK_SET) != start) {
+                    throw new IOException("Failed to seek to offset " + start);
+                }
+                mRemotePosition = start;
+            }
+
+            int filled = 0;
+            while (filled < length) {
+                int n = mSocket.fileRead(mContext, mId, block.data, filled, length - filled);
+                if (n < 0) {
+                    mRemotePosition = -1;
+                    throw new IOException("Failed to read block " + index);
+                } else if (n == 0) {
+                    break;
+                }
+                filled += n;
+                mRemotePosition += n;
+            }
+            block.length = filled;
+
+            synchronized (mLock) {
+                if (!mClosed) {
+                    mCache.put(index, block);
+                }
+            }
+        }
+    }
+}
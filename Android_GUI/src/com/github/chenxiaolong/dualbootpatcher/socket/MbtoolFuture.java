@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) 2016  Andrew Gunnerson <andrewgunnerson@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.chenxiaolong.dualbootpatcher.socket;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Result of a request sent through {@link MbtoolAsync}.
+ *
+ * If the request fails due to a socket error or a timeout, {@link #get()} throws an
+ * {@link ExecutionException} whose cause is the {@link IOException}. Failures that the synchronous
+ * {@link MbtoolSocket} methods report with their return value (eg. null or -1) are reported the
+ * same way here.
+ *
+ * @param <T> Type of the result
+ */
+public class MbtoolFuture<T> implements Future<T> {
+    private static final int PENDING = 0;
+    private static final int SUCCEEDED = 1;
+    private static final int FAILED = 2;
+    private static final int CANCELLED = 3;
+
+    private static final Executor MAIN_THREAD_EXECUTOR = new Executor() {
+        private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public void execute(@NonNull Runnable command) {
+            mHandler.post(command);
+        }
+    };
+
+    public interface Callback<T> {
+        void onSuccess(T result);
+
+        void onFailure(IOException e);
+    }
+
+    private int mState = PENDING;
+    private T mResult;
+    private IOException mError;
+    private ArrayList<Runnable> mListeners = new ArrayList<>();
+    private ScheduledFuture<?> mTimeout;
+    private Runnable mCancelHook;
+
+    MbtoolFuture() {
+    }
+
+    /**
+     * Call a callback on the main thread once the request has completed.
+     *
+     * The callback is not called if the future is cancelled.
+     *
+     * @param callback Callback
+     */
+    public void addCallback(Callback<? super T> callback) {
+        addCallback(callback, MAIN_THREAD_EXECUTOR);
+    }
+
+    /**
+     * Call a callback once the request has completed.
+     *
+     * The callback is not called if the future is cancelled.
+     *
+     * @param callback Callback
+     * @param executor Executor to call the callback from
+     */
+    public void addCallback(final Callback<? super T> callback, final Executor executor) {
+        Runnable listener = new Runnable() {
+            @Override
+            public void run() {
+                final int state;
+                final T result;
+                final IOException error;
+                synchronized (MbtoolFuture.this) {
+                    state = mState;
+                    result = mResult;
+                    error = mError;
+                }
+
+                if (state == CANCELLED) {
+                    return;
+                }
+
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (state == SUCCEEDED) {
+                            callback.onSuccess(result);
+                        } else {
+                            callback.onFailure(error);
+                        }
+                    }
+                });
+            }
+        };
+
+        synchronized (this) {
+            if (mState == PENDING) {
+                mListeners.add(listener);
+                return;
+            }
+        }
+
+        listener.run();
+    }
+
+    void setTimeout(ScheduledFuture<?> timeout) {
+        boolean done;
+        synchronized (this) {
+            done = mState != PENDING;
+            if (!done) {
+                mTimeout = timeout;
+            }
+        }
+        if (done) {
+            timeout.cancel(false);
+        }
+    }
+
+    /**
+     * Set the action that stops the request in mbtool when the future is cancelled. If the future
+     * has already been cancelled, the action runs right away.
+     */
+    void setCancelHook(Runnable hook) {
+        boolean cancelled;
+        synchronized (this) {
+            cancelled = mState == CANCELLED;
+            if (mState == PENDING) {
+                mCancelHook = hook;
+            }
+        }
+        if (cancelled) {
+            hook.run();
+        }
+    }
+
+    boolean set(T result) {
+        return complete(SUCCEEDED, result, null);
+    }
+
+    boolean setException(IOException error) {
+        return complete(FAILED, null, error);
+    }
+
+    private boolean complete(int state, T result, IOException error) {
+        ArrayList<Runnable> listeners;
+        ScheduledFuture<?> timeout;
+        Runnable cancelHook;
+
+        synchronized (this) {
+            if (mState != PENDING) {
+                return false;
+            }
+            mState = state;
+            mResult = result;
+            mError = error;
+            listeners = mListeners;
+            mListeners = null;
+            timeout = mTimeout;
+            mTimeout = null;
+            cancelHook = mCancelHook;
+            mCancelHook = null;
+            notifyAll();
+        }
+
+        if (timeout != null) {
+            timeout.cancel(false);
+        }
+        if (state == CANCELLED && cancelHook != null) {
+            cancelHook.run();
+        }
+        for (Runnable listener : listeners) {
+            listener.run();
+        }
+        return true;
+    }
+
+    /**
+     * Cancel the request.
+     *
+     * If the request has not been sent yet, it never will be. Streaming requests that mbtool can
+     * stop (eg. {@link MbtoolAsync#pathGetDirectorySizeStream(android.content.Context, String,
+     * String[], MbtoolSocket.DirectorySizeListener)}) are stopped with a RequestCancelRequest.
+     * Otherwise, the daemon still runs the request to completion. Either way, the response is
+     * discarded.
+     *
+     * @param mayInterruptIfRunning Ignored. No thread is waiting for the response.
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return complete(CANCELLED, null, null);
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return mState == CANCELLED;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return mState != PENDING;
+    }
+
+    @Override
+    public synchronized T get() throws InterruptedException, ExecutionException {
+        while (mState == PENDING) {
+            wait();
+        }
+        return getResult();
+    }
+
+    @Override
+    public synchronized T get(long timeout, @NonNull TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (mState == PENDING) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw new TimeoutException();
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return getResult();
+    }
+
+    private T getResult() throws ExecutionException {
+        switch (mState) {
+        case SUCCEEDED:
+            return mResult;
+        case FAILED:
+            throw new ExecutionException(mError);
+        default:
+            throw new CancellationException();
+        }
+    }
+}
@@ -22,9 +22,13 @@ import android.net.LocalSocket;
 import android.net.LocalSocketAddress;
 import android.net.LocalSocketAddress.Namespace;
 import android.os.Build;
+import android.os.CancellationSignal;
+import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.util.Log;
+import android.util.LruCache;
 
 import com.github.chenxiaolong.dualbootpatcher.CommandUtils;
 import com.github.chenxiaolong.dualbootpatcher.RomUtils.RomInformation;
@@ -40,10 +44,23 @@ import com.google.flatbuffers.Table;
 import org.apache.commons.io.IOUtils;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.io.InterruptedIOException;
 import java.nio.ByteBuffer;
-
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import mbtool.daemon.v3.CompressionType;
+import mbtool.daemon.v3.DirectorySubtotal;
+import mbtool.daemon.v3.EventNotification;
+import mbtool.daemon.v3.EventSubscribeRequest;
+import mbtool.daemon.v3.EventSubscribeResponse;
+import mbtool.daemon.v3.EventType;
 import mbtool.daemon.v3.FileChmodRequest;
 import mbtool.daemon.v3.FileChmodResponse;
 import mbtool.daemon.v3.FileCloseRequest;
@@ -82,18 +99,33 @@ import mbtool.daemon.v3.PathChmodRequest;
 import mbtool.daemon.v3.PathChmodResponse;
 import mbtool.daemon.v3.PathCopyRequest;
 import mbtool.daemon.v3.PathCopyResponse;
+import mbtool.daemon.v3.PathCopyStreamProgress;
+import mbtool.daemon.v3.PathCopyStreamRequest;
+import mbtool.daemon.v3.PathCopyStreamResponse;
 import mbtool.daemon.v3.PathGetDirectorySizeRequest;
 import mbtool.daemon.v3.PathGetDirectorySizeResponse;
+import mbtool.daemon.v3.PathGetDirectorySizeStreamProgress;
+import mbtool.daemon.v3.PathGetDirectorySizeStreamRequest;
+import mbtool.daemon.v3.PathGetDirectorySizeStreamResponse;
+import mbtool.daemon.v3.PathHashRequest;
+import mbtool.daemon.v3.PathHashResponse;
+import mbtool.daemon.v3.PathListDirectoryRequest;
+import mbtool.daemon.v3.PathListDirectoryResponse;
+import mbtool.daemon.v3.PathOpenFdRequest;
+import mbtool.daemon.v3.PathOpenFdResponse;
 import mbtool.daemon.v3.PathSELinuxGetLabelRequest;
 import mbtool.daemon.v3.PathSELinuxGetLabelResponse;
 import mbtool.daemon.v3.PathSELinuxSetLabelRequest;
 import mbtool.daemon.v3.PathSELinuxSetLabelResponse;
 import mbtool.daemon.v3.RebootRequest;
 import mbtool.daemon.v3.RebootResponse;
-import mbtool.daemon.v3.Request;
+import mbtool.daemon.v3.RequestCancelResponse;
 import mbtool.daemon.v3.RequestType;
 import mbtool.daemon.v3.Response;
+import mbtool.daemon.v3.ResponseBatch;
 import mbtool.daemon.v3.ResponseType;
+import mbtool.daemon.v3.SetCompressionRequest;
+import mbtool.daemon.v3.SetCompressionResponse;
 import mbtool.daemon.v3.StructStat;
 
 public class MbtoolSocket {
@@ -101,61 +133,101 @@ public class MbtoolSocket {
 
     private static final String SOCKET_ADDRESS = "mbtool.daemon";
 
-    // Same as the C++ default
-    private static final int FBB_SIZE = 1024;
-
-    private static final String RESPONSE_ALLOW = "ALLOW";
-    private static final String RESPONSE_DENY = "DENY";
-    private static final String RESPONSE_OK = "OK";
-    private static final String RESPONSE_UNSUPPORTED = "UNSUPPORTED";
+    /** Socket to connect to. Only differs from {@link #SOCKET_ADDRESS} when benchmarking. */
+    private static volatile String sSocketAddress = SOCKET_ADDRESS;
 
-    private static MbtoolSocket sInstance;
+    /**
+     * Lanes that requests can be routed through.
+     *
+     * Each lane has its own authenticated connection to the daemon (and thus its own daemon
+     * process), so multi-gigabyte copies or ROM wipes in the bulk lane cannot starve the quick
+     * calls that the UI waits on. File IDs returned by {@link #fileOpen(Context, String, short[],
+     * int)} are only valid in the lane that opened them.
+     */
+    public enum Lane {
+        /** Short, latency-sensitive requests. This is the default. */
+        INTERACTIVE,
+        /** Long-running or data-heavy requests, such as copying partitions or reading files */
+        BULK
+    }
 
-    private LocalSocket mSocket;
-    private InputStream mSocketIS;
-    private OutputStream mSocketOS;
+    /** File reads smaller than this are never compressed */
+    private static final int COMPRESSION_THRESHOLD = 16 * 1024;
+    /** Amount of file data to look at before deciding whether compression is worth it */
+    private static final long COMPRESSION_SAMPLE_SIZE = 4 * 1024 * 1024;
+    /** Compression is turned off if it saves less than this fraction of the data */
+    private static final double COMPRESSION_MIN_SAVINGS = 0.1;
+    /** Number of times a streaming copy is resumed after losing the connection */
+    private static final int COPY_MAX_RESUMES = 3;
+    /** Number of entries to request per directory listing page */
+    private static final int LIST_DIRECTORY_PAGE_SIZE = 256;
+    /** How long cached directory sizes are trusted for */
+    private static final long DIRECTORY_SIZE_CACHE_MAX_AGE = 10 * 60 * 1000;
+
+    private static final LruCache<String, CachedDirectorySize> sDirectorySizeCache =
+            new LruCache<>(32);
+
+    private static final MbtoolSocket[] sInstances = new MbtoolSocket[Lane.values().length];
+
+    /** Ensures that only one lane at a time tries to (re)launch mbtool */
+    private static final Object sLaunchLock = new Object();
+
+    private final Lane mLane;
+    private MbtoolConnection mConn;
     private int mInterfaceVersion;
     private String mMbtoolVersion;
 
-    // Keep this as a singleton class for now
-    private MbtoolSocket() {
+    /** Compression negotiated for the current connection */
+    private volatile short mCompression = CompressionType.NONE;
+    /** Set once compression turned out not to help. Survives reconnects. */
+    private volatile boolean mCompressionDisabled;
+    /** Set when the daemon still has to be told to stop compressing */
+    private final AtomicBoolean mCompressionDisablePending = new AtomicBoolean();
+    /** Uncompressed and on-the-wire size of file reads above the threshold */
+    private final AtomicLong mCompressionRawBytes = new AtomicLong();
+    private final AtomicLong mCompressionWireBytes = new AtomicLong();
+    /** Events to subscribe to on every new connection. Guarded by this. */
+    private EventSubscription mSubscription;
+
+    // One instance per lane
+    private MbtoolSocket(Lane lane) {
+        mLane = lane;
         mInterfaceVersion = 3;
     }
 
-    public synchronized static MbtoolSocket getInstance() {
-        if (sInstance == null) {
-            sInstance = new MbtoolSocket();
-        }
-        return sInstance;
+    /**
+     * Get the instance for the {@link Lane#INTERACTIVE} lane.
+     */
+    public static MbtoolSocket getInstance() {
+        return getInstance(Lane.INTERACTIVE);
     }
 
     /**
-     * Check if mbtool rejected the connection due to the signature check failing
+     * Get the instance for a lane.
      *
-     * @throws IOException Signature check failed or unexpected response
+     * @param lane Lane to route requests through
      */
-    private synchronized void verifyCredentials() throws IOException {
-        String response = SocketUtils.readString(mSocketIS);
-        if (RESPONSE_DENY.equals(response)) {
-            throw new IOException("mbtool explicitly denied access to the daemon. " +
-                    "WARNING: This app is probably not officially signed!");
-        } else if (!RESPONSE_ALLOW.equals(response)) {
-            throw new IOException("Unexpected reply: " + response);
+    public synchronized static MbtoolSocket getInstance(Lane lane) {
+        MbtoolSocket instance = sInstances[lane.ordinal()];
+        if (instance == null) {
+            instance = sInstances[lane.ordinal()] = new MbtoolSocket(lane);
         }
+        return instance;
     }
 
     /**
-     * Request protocol version from mbtool
+     * Connect to a different daemon, such as the stand-in daemon in debug builds.
+     *
+     * Existing connections in every lane are closed. While a different address is set, the
+     * bundled mbtool is never launched.
      *
-     * @throws IOException Protocol version not supported or unexpected reply
+     * @param address Abstract socket name or null to connect to mbtool again
      */
-    private synchronized void requestInterfaceVersion() throws IOException {
-        SocketUtils.writeInt32(mSocketOS, mInterfaceVersion);
-        String response = SocketUtils.readString(mSocketIS);
-        if (RESPONSE_UNSUPPORTED.equals(response)) {
-            throw new IOException("Daemon does not support interface " + mInterfaceVersion);
-        } else if (!RESPONSE_OK.equals(response)) {
-            throw new IOException("Unexpected reply: " + response);
+    public static void setSocketAddress(@Nullable String address) {
+        sSocketAddress = address != null ? address : SOCKET_ADDRESS;
+
+        for (Lane lane : Lane.values()) {
+            getInstance(lane).disconnect();
         }
     }
 
@@ -167,7 +239,7 @@ public class MbtoolSocket {
      */
     private synchronized void verifyMbtoolVersion() throws IOException {
         // Get mbtool version
-        FlatBufferBuilder builder = new FlatBufferBuilder(FBB_SIZE);
+        FlatBufferBuilder builder = MbtoolCodec.obtainBuilder();
         MbGetVersionRequest.startMbGetVersionRequest(builder);
         int fbRequest = MbGetVersionRequest.endMbGetVersionRequest(builder);
         MbGetVersionResponse response = (MbGetVersionResponse)
@@ -208,12 +280,131 @@ public class MbtoolSocket {
      * @throws IOException
      */
     private synchronized void initializeConnection() throws IOException {
-        mSocketIS = mSocket.getInputStream();
-        mSocketOS = mSocket.getOutputStream();
+        LocalSocket socket = new LocalSocket();
+        try {
+            socket.connect(new LocalSocketAddress(sSocketAddress, Namespace.ABSTRACT));
+            mConn = new MbtoolConnection(socket);
+        } catch (IOException e) {
+            IOUtils.closeQuietly(socket);
+            throw e;
+        }
 
-        verifyCredentials();
-        requestInterfaceVersion();
+        mConn.initialize(mInterfaceVersion);
         verifyMbtoolVersion();
+        negotiateCompression();
+
+        if (mSubscription != null) {
+            sendEventSubscription(mSubscription);
+        }
+    }
+
+    /**
+     * Ask the daemon to compress large file reads.
+     *
+     * Older daemons don't know about compression and will just keep sending uncompressed data.
+     *
+     * @throws IOException When any socket communication error occurs
+     */
+    private synchronized void negotiateCompression() throws IOException {
+        if (mCompressionDisabled) {
+            mCompression = CompressionType.NONE;
+        } else {
+            mCompression = setCompression(
+                    new short[] { CompressionType.DEFLATE }, COMPRESSION_THRESHOLD);
+        }
+
+        Log.v(TAG, "[" + mLane + "] compression: " + CompressionType.name(mCompression));
+    }
+
+    /**
+     * Set the compression used for the rest of the connection
+     *
+     * @param types Compression types in order of preference or an empty array to disable
+     *              compression
+     * @param threshold Minimum payload size to compress
+     * @return Compression type chosen by the daemon
+     * @throws IOException When any socket communication error occurs
+     */
+    private short setCompression(short[] types, int threshold) throws IOException {
+        // Create request
+        FlatBufferBuilder builder = MbtoolCodec.obtainBuilder();
+        int fbTypes = SetCompressionRequest.createTypesVector(builder, types);
+        SetCompressionRequest.startSetCompressionRequest(builder);
+        SetCompressionRequest.addTypes(builder, fbTypes);
+        SetCompressionRequest.addThreshold(builder, threshold);
+        int fbRequest = SetCompressionRequest.endSetCompressionRequest(builder);
+
+        // Send request
+        Response rawResponse = sendRawRequest(
+                builder, fbRequest, RequestType.SetCompressionRequest);
+
+        if (rawResponse.responseType() == ResponseType.Unsupported) {
+            return CompressionType.NONE;
+        }
+
+        SetCompressionResponse response = (SetCompressionResponse)
+                unwrapResponse(rawResponse, ResponseType.SetCompressionResponse);
+
+        if (!response.success()) {
+            Log.e(TAG, "Failed to set compression: " + response.errorMsg());
+            return CompressionType.NONE;
+        }
+        return response.type();
+    }
+
+    /**
+     * Keep track of how well file reads compress and turn compression off if it doesn't help.
+     *
+     * Random or already-compressed data (eg. most of a ROM zip) only costs CPU time on both ends.
+     *
+     * @param response Successful read response
+     * @param wireSize Size of the data in the response
+     */
+    private void accountCompression(FileReadResponse response, int wireSize) {
+        if (mCompression == CompressionType.NONE || response.bytesRead() < COMPRESSION_THRESHOLD) {
+            return;
+        }
+
+        long raw = mCompressionRawBytes.addAndGet(response.bytesRead());
+        long wire = mCompressionWireBytes.addAndGet(wireSize);
+        MbtoolStats.recordCompression(response.bytesRead(), wireSize);
+
+        if (raw < COMPRESSION_SAMPLE_SIZE || wire <= raw * (1 - COMPRESSION_MIN_SAVINGS)) {
+            return;
+        }
+
+        synchronized (this) {
+            if (mCompressionDisabled) {
+                return;
+            }
+            mCompressionDisabled = true;
+        }
+
+        Log.i(TAG, "[" + mLane + "] Disabling compression: " + raw + " bytes compressed to "
+                + wire + " bytes");
+
+        // The data of the current response may still be a view of this thread's receive buffer,
+        // so the daemon is told before the next request instead of sending a request now
+        mCompressionDisablePending.set(true);
+    }
+
+    /**
+     * Tell the daemon to stop compressing if {@link #accountCompression(FileReadResponse, int)}
+     * decided that it doesn't help.
+     *
+     * Must be called before the calling thread obtains a builder for its next request.
+     */
+    private void applyPendingCompressionChange() {
+        if (!mCompressionDisablePending.getAndSet(false)) {
+            return;
+        }
+
+        try {
+            mCompression = setCompression(new short[0], 0);
+        } catch (IOException e) {
+            // The connection is gone and compression won't be requested on the next one
+            Log.w(TAG, "Failed to disable compression", e);
+        }
     }
 
     /**
@@ -225,48 +416,67 @@ public class MbtoolSocket {
      *
      * @param context Application context
      */
-    public synchronized void connect(Context context) throws IOException {
+    public void connect(Context context) throws IOException {
+        connectLocked(context);
+
+        // Every request starts by connecting, so this is the first point at which the previous
+        // response's data is no longer in use
+        applyPendingCompressionChange();
+    }
+
+    private synchronized void connectLocked(Context context) throws IOException {
         // If we're already connected, then we're good
-        if (mSocket != null) {
+        if (mConn != null && !mConn.isClosed()) {
             return;
         }
 
         // Try connecting to the socket
         try {
-            mSocket = new LocalSocket();
-            mSocket.connect(new LocalSocketAddress(SOCKET_ADDRESS, Namespace.ABSTRACT));
             initializeConnection();
             return;
         } catch (IOException e) {
-            Log.e(TAG, "Could not connect to mbtool socket", e);
+            Log.e(TAG, "[" + mLane + "] Could not connect to mbtool socket", e);
             disconnect();
         }
 
-        Log.v(TAG, "Launching bundled mbtool");
-
-        if (!executeMbtool(context)) {
-            throw new IOException("Failed to execute mbtool");
+        if (!SOCKET_ADDRESS.equals(sSocketAddress)) {
+            throw new IOException("Could not connect to " + sSocketAddress);
         }
 
-        // Give mbtool a little bit of time to start listening on the socket
-        try {
-            Thread.sleep(1000);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
+        synchronized (sLaunchLock) {
+            // Another lane may have launched mbtool while we were waiting. Launching it again
+            // would replace the daemon and drop that lane's connection.
+            try {
+                initializeConnection();
+                return;
+            } catch (IOException e) {
+                disconnect();
+            }
 
-        try {
-            mSocket = new LocalSocket();
-            mSocket.connect(new LocalSocketAddress(SOCKET_ADDRESS, Namespace.ABSTRACT));
-            initializeConnection();
-        } catch (IOException e) {
-            disconnect();
-            throw new IOException("Could not connect to mbtool socket", e);
+            Log.v(TAG, "Launching bundled mbtool");
+
+            if (!executeMbtool(context)) {
+                throw new IOException("Failed to execute mbtool");
+            }
+
+            // Give mbtool a little bit of time to start listening on the socket
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+
+            try {
+                initializeConnection();
+            } catch (IOException e) {
+                disconnect();
+                throw new IOException("Could not connect to mbtool socket", e);
+            }
         }
     }
 
     @SuppressWarnings("deprecation")
-    private synchronized boolean executeMbtool(Context context) {
+    private static boolean executeMbtool(Context context) {
         PatcherUtils.extractPatcher(context);
         String abi;
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
@@ -287,160 +497,205 @@ public class MbtoolSocket {
     }
 
     public synchronized void disconnect() {
-        Log.i(TAG, "Disconnecting from mbtool");
-        IOUtils.closeQuietly(mSocket);
-        IOUtils.closeQuietly(mSocketIS);
-        IOUtils.closeQuietly(mSocketOS);
-        mSocket = null;
-        mSocketIS = null;
-        mSocketOS = null;
+        Log.i(TAG, "[" + mLane + "] Disconnecting from mbtool");
+        if (mConn != null) {
+            mConn.close(null);
+            mConn = null;
+        }
 
         mMbtoolVersion = null;
     }
 
     // RPC calls
 
-    public synchronized boolean fileChmod(Context context, int id, int mode) throws IOException {
+    public boolean fileChmod(Context context, int id, int mode) throws IOException {
         connect(context);
 
-        try {
-            // Create request
-            FlatBufferBuilder builder = new FlatBufferBuilder(FBB_SIZE);
-            FileChmodRequest.startFileChmodRequest(builder);
-            FileChmodRequest.addId(builder, id);
-            FileChmodRequest.addMode(builder, mode);
-            int fbRequest = FileChmodRequest.endFileChmodRequest(builder);
-
-            // Send request
-            FileChmodResponse response = (FileChmodResponse)
-                    sendRequest(builder, fbRequest, RequestType.FileChmodRequest,
-                            ResponseType.FileChmodResponse);
-
-            if (!response.success()) {
-                Log.e(TAG, "[" + id + "]: chmod failed: " + response.errorMsg());
-                return false;
-            }
-            return true;
-        } catch (IOException e) {
-            disconnect();
-            throw e;
+        // Create request
+        FlatBufferBuilder builder = MbtoolCodec.obtainBuilder();
+        FileChmodRequest.startFileChmodRequest(builder);
+        FileChmodRequest.addId(builder, id);
+        FileChmodRequest.addMode(builder, mode);
+        int fbRequest = FileChmodRequest.endFileChmodRequest(builder);
+
+        // Send request
+        FileChmodResponse response = (FileChmodResponse)
+                sendRequest(builder, fbRequest, RequestType.FileChmodRequest,
+                        ResponseType.FileChmodResponse);
+
+        if (!response.success()) {
+            Log.e(TAG, "[" + id + "]: chmod failed: " + response.errorMsg());
+            return false;
         }
+        return true;
     }
 
-    public synchronized boolean fileClose(Context context, int id) throws IOException {
+    public boolean fileClose(Context context, int id) throws IOException {
         connect(context);
 
-        try {
-            // Create request
-            FlatBufferBuilder builder = new FlatBufferBuilder(FBB_SIZE);
-            FileCloseRequest.startFileCloseRequest(builder);
-            FileCloseRequest.addId(builder, id);
-            int fbRequest = FileCloseRequest.endFileCloseRequest(builder);
+        // Create request
+        FlatBufferBuilder builder = MbtoolCodec.obtainBuilder();
+        FileCloseRequest.startFileCloseRequest(builder);
+        FileCloseRequest.addId(builder, id);
+        int fbRequest = FileCloseRequest.endFileCloseRequest(builder);
 
-            // Send request
-            FileCloseResponse response = (FileCloseResponse)
-                    sendRequest(builder, fbRequest, RequestType.FileCloseRequest,
-                            ResponseType.FileCloseResponse);
+        // Send request
+        FileCloseResponse response = (FileCloseResponse)
+                sendRequest(builder, fbRequest, RequestType.FileCloseRequest,
+                        ResponseType.FileCloseResponse);
 
-            if (!response.success()) {
-                Log.e(TAG, "[" + id + "]: close failed: " + response.errorMsg());
-                return false;
-            }
-            return true;
-        } catch (IOException e) {
-            disconnect();
-            throw e;
+        if (!response.success()) {
+            Log.e(TAG, "[" + id + "]: close failed: " + response.errorMsg());
+            return false;
         }
+        return true;
     }
 
-    public synchronized int fileOpen(Context context, String path, short[] flags,
+    public int fileOpen(Context context, String path, short[] flags,
                                      int perms) throws IOException {
         connect(context);
 
-        try {
-            // Create request
-            FlatBufferBuilder builder = new FlatBufferBuilder(FBB_SIZE);
+        // Create request
+        FlatBufferBuilder builder = MbtoolCodec.obtainBuilder();
 
-            int fbPath = builder.createString(path);
-            int fbFlags = FileOpenRequest.createFlagsVector(builder, flags);
+        int fbPath = builder.createString(path);
+        int fbFlags = FileOpenRequest.createFlagsVector(builder, flags);
 
-            FileOpenRequest.startFileOpenRequest(builder);
-            FileOpenRequest.addPath(builder, fbPath);
-            FileOpenRequest.addFlags(builder, fbFlags);
-            FileOpenRequest.addPerms(builder, perms);
-            int fbRequest = FileOpenRequest.endFileOpenRequest(builder);
+        FileOpenRequest.startFileOpenRequest(builder);
+        FileOpenRequest.addPath(builder, fbPath);
+        FileOpenRequest.addFlags(builder, fbFlags);
+        FileOpenRequest.addPerms(builder, perms);
+        int fbRequest = FileOpenRequest.endFileOpenRequest(builder);
 
-            // Send request
-            FileOpenResponse response = (FileOpenResponse)
-                    sendRequest(builder, fbRequest, RequestType.FileOpenRequest,
-                            ResponseType.FileOpenResponse);
+        // Send request
+        FileOpenResponse response = (FileOpenResponse)
+                sendRequest(builder, fbRequest, RequestType.FileOpenRequest,
+                        ResponseType.FileOpenResponse);
 
-            if (!response.success()) {
-                Log.e(TAG, "[" + path + "]: open failed: " + response.errorMsg());
-                return -1;
-            }
-            return response.id();
-        } catch (IOException e) {
-            disconnect();
-            throw e;
+        if (!response.success()) {
+            Log.e(TAG, "[" + path + "]: open failed: " + response.errorMsg());
+            return -1;
         }
+        return response.id();
     }
 
+    /**
+     * Read from a file.
+     *
+     * The returned buffer is a view of the calling thread's receive buffer (or of its
+     * decompression buffer if the data was compressed). It is only valid until the thread sends
+     * its next request.
+     *
+     * @return Data read from the file or null if the read failed
+     * @throws IOException When any socket communication error occurs
+     */
     @Nullable
-    public synchronized ByteBuffer fileRead(Context context, int id, long size) throws IOException {
+    public ByteBuffer fileRead(Context context, int id, long size) throws IOException {
         connect(context);
 
-        try {
-            // Create request
-            FlatBufferBuilder builder = new FlatBufferBuilder(FBB_SIZE);
-            FileReadRequest.startFileReadRequest(builder);
-            FileReadRequest.addId(builder, id);
-            FileReadRequest.addCount(builder, size);
-            int fbRequest = FileReadRequest.endFileReadRequest(builder);
+        // Create request
+        FlatBufferBuilder builder = MbtoolCodec.obtainBuilder();
+        FileReadRequest.startFileReadRequest(builder);
+        FileReadRequest.addId(builder, id);
+        FileReadRequest.addCount(builder, size);
+        int fbRequest = FileReadRequest.endFileReadRequest(builder);
+
+        // Send request
+        FileReadResponse response = (FileReadResponse)
+                sendRequest(builder, fbRequest, RequestType.FileReadRequest,
+                        ResponseType.FileReadResponse);
+
+        if (!response.success()) {
+            Log.e(TAG, "[" + id + "]: read failed: " + response.errorMsg());
+            return null;
+        }
 
-            // Send request
-            FileReadResponse response = (FileReadResponse)
-                    sendRequest(builder, fbRequest, RequestType.FileReadRequest,
-                            ResponseType.FileReadResponse);
+        ByteBuffer data = response.dataAsByteBuffer();
+        if (data == null) {
+            return null;
+        }
 
-            if (!response.success()) {
-                Log.e(TAG, "[" + id + "]: read failed: " + response.errorMsg());
-                return null;
-            }
-            return response.dataAsByteBuffer();
-        } catch (IOException e) {
-            disconnect();
-            throw e;
+        int wireSize = data.remaining();
+        if (response.compression() == CompressionType.DEFLATE) {
+            data = MbtoolCodec.inflate(data, (int) response.bytesRead());
         }
+        accountCompression(response, wireSize);
+        return data;
     }
 
-    public synchronized long fileSeek(Context context, int id, long offset,
-                                      short whence) throws IOException {
+    /**
+     * Read from a file into an existing array.
+     *
+     * Repeated calls from the same thread reuse the same request and receive buffers. See
+     * {@link MbtoolCodec} for the small objects that each request still creates.
+     *
+     * @return Number of bytes read (0 at EOF) or -1 if the read failed
+     * @throws IOException When any socket communication error occurs
+     */
+    public int fileRead(Context context, int id, byte[] buf, int offset, int length)
+            throws IOException {
         connect(context);
 
-        try {
-            // Create request
-            FlatBufferBuilder builder = new FlatBufferBuilder(FBB_SIZE);
-            FileSeekRequest.startFileSeekRequest(builder);
-            FileSeekRequest.addId(builder, id);
-            FileSeekRequest.addOffset(builder, offset);
-            FileSeekRequest.addWhence(builder, whence);
-            int fbRequest = FileSeekRequest.endFileSeekRequest(builder);
+        // Create request
+        FlatBufferBuilder builder = MbtoolCodec.obtainBuilder();
+        FileReadRequest.startFileReadRequest(builder);
+        FileReadRequest.addId(builder, id);
+        FileReadRequest.addCount(builder, length);
+        int fbRequest = FileReadRequest.endFileReadRequest(builder);
+
+        // Send request
+        FileReadResponse response = (FileReadResponse)
+                sendRequest(builder, fbRequest, RequestType.FileReadRequest,
+                        ResponseType.FileReadResponse);
+
+        if (!response.success()) {
+            Log.e(TAG, "[" + id + "]: read failed: " + response.errorMsg());
+            return -1;
+        }
 
-            // Send request
-            FileSeekResponse response = (FileSeekResponse)
-                    sendRequest(builder, fbRequest, RequestType.FileSeekRequest,
-                            ResponseType.FileSeekResponse);
+        ByteBuffer data = response.dataAsByteBuffer();
+        if (data == null) {
+            return 0;
+        }
 
-            if (!response.success()) {
-                Log.e(TAG, "[" + id + "]: seek failed: " + response.errorMsg());
-                return -1;
+        int wireSize = data.remaining();
+        int n;
+        if (response.compression() == CompressionType.DEFLATE) {
+            if (response.bytesRead() > length) {
+                throw new IOException("Read returned more data than requested");
             }
-            return response.offset();
-        } catch (IOException e) {
-            disconnect();
-            throw e;
+            n = (int) response.bytesRead();
+            MbtoolCodec.inflate(data, buf, offset, n);
+        } else {
+            n = Math.min(data.remaining(), length);
+            data.get(buf, offset, n);
         }
+        accountCompression(response, wireSize);
+        return n;
+    }
+
+    public long fileSeek(Context context, int id, long offset,
+                                      short whence) throws IOException {
+        connect(context);
+
+        // Create request
+        FlatBufferBuilder builder = MbtoolCodec.obtainBuilder();
+        FileSeekRequest.startFileSeekRequest(builder);
+        FileSeekRequest.addId(builder, id);
+        FileSeekRequest.addOffset(builder, offset);
+        FileSeekRequest.addWhence(builder, whence);
+        int fbRequest = FileSeekRequest.endFileSeekRequest(builder);
+
+        // Send request
+        FileSeekResponse response = (FileSeekResponse)
+                sendRequest(builder, fbRequest, RequestType.FileSeekRequest,
+                        ResponseType.FileSeekResponse);
+
+        if (!response.success()) {
+            Log.e(TAG, "[" + id + "]: seek failed: " + response.errorMsg());
+            return -1;
+        }
+        return response.offset();
     }
 
     public static class StatBuf {
@@ -460,128 +715,111 @@ public class MbtoolSocket {
     }
 
     @Nullable
-    public synchronized StatBuf fileStat(Context context, int id) throws IOException {
+    public StatBuf fileStat(Context context, int id) throws IOException {
         connect(context);
 
-        try {
-            // Create request
-            FlatBufferBuilder builder = new FlatBufferBuilder(FBB_SIZE);
-            FileStatRequest.startFileStatRequest(builder);
-            FileStatRequest.addId(builder, id);
-            int fbRequest = FileStatRequest.endFileStatRequest(builder);
-
-            // Send request
-            FileStatResponse response = (FileStatResponse)
-                    sendRequest(builder, fbRequest, RequestType.FileStatRequest,
-                            ResponseType.FileStatResponse);
+        // Create request
+        FlatBufferBuilder builder = MbtoolCodec.obtainBuilder();
+        FileStatRequest.startFileStatRequest(builder);
+        FileStatRequest.addId(builder, id);
+        int fbRequest = FileStatRequest.endFileStatRequest(builder);
 
-            if (!response.success()) {
-                Log.e(TAG, "[" + id + "]: stat failed: " + response.errorMsg());
-                return null;
-            }
+        // Send request
+        FileStatResponse response = (FileStatResponse)
+                sendRequest(builder, fbRequest, RequestType.FileStatRequest,
+                        ResponseType.FileStatResponse);
 
-            StructStat ss = response.stat();
-            StatBuf sb = new StatBuf();
-            sb.st_dev = ss.stDev();
-            sb.st_ino = ss.stIno();
-            sb.st_mode = (int) ss.stMode();
-            sb.st_nlink = ss.stNlink();
-            sb.st_uid = (int) ss.stUid();
-            sb.st_gid = (int) ss.stGid();
-            sb.st_rdev = ss.stRdev();
-            sb.st_size = ss.stSize();
-            sb.st_blksize = ss.stBlksize();
-            sb.st_blocks = ss.stBlocks();
-            sb.st_atime = ss.stAtime();
-            sb.st_mtime = ss.stMtime();
-            sb.st_ctime = ss.stCtime();
-            return sb;
-        } catch (IOException e) {
-            disconnect();
-            throw e;
+        if (!response.success()) {
+            Log.e(TAG, "[" + id + "]: stat failed: " + response.errorMsg());
+            return null;
         }
-    }
 
-    public synchronized long fileWrite(Context context, int id, byte[] data) throws IOException {
-        connect(context);
+        return toStatBuf(response.stat());
+    }
 
-        try {
-            // Create request
-            FlatBufferBuilder builder = new FlatBufferBuilder(FBB_SIZE);
-            int fbData = FileWriteRequest.createDataVector(builder, data);
-            FileWriteRequest.startFileWriteRequest(builder);
-            FileWriteRequest.addId(builder, id);
-            FileWriteRequest.addData(builder, fbData);
-            int fbRequest = FileWriteRequest.endFileWriteRequest(builder);
+    static StatBuf toStatBuf(StructStat ss) {
+        StatBuf sb = new StatBuf();
+        sb.st_dev = ss.stDev();
+        sb.st_ino = ss.stIno();
+        sb.st_mode = (int) ss.stMode();
+        sb.st_nlink = ss.stNlink();
+        sb.st_uid = (int) ss.stUid();
+        sb.st_gid = (int) ss.stGid();
+        sb.st_rdev = ss.stRdev();
+        sb.st_size = ss.stSize();
+        sb.st_blksize = ss.stBlksize();
+        sb.st_blocks = ss.stBlocks();
+        sb.st_atime = ss.stAtime();
+        sb.st_mtime = ss.stMtime();
+        sb.st_ctime = ss.stCtime();
+        return sb;
+    }
 
-            // Send request
-            FileWriteResponse response = (FileWriteResponse)
-                    sendRequest(builder, fbRequest, RequestType.FileWriteRequest,
-                            ResponseType.FileWriteResponse);
+    public long fileWrite(Context context, int id, byte[] data) throws IOException {
+        connect(context);
 
-            if (!response.success()) {
-                Log.e(TAG, "[" + id + "]: write failed: " + response.errorMsg());
-                return -1;
-            }
-            return response.bytesWritten();
-        } catch (IOException e) {
-            disconnect();
-            throw e;
+        // Create request
+        FlatBufferBuilder builder = MbtoolCodec.obtainBuilder();
+        int fbData = FileWriteRequest.createDataVector(builder, data);
+        FileWriteRequest.startFileWriteRequest(builder);
+        FileWriteRequest.addId(builder, id);
+        FileWriteRequest.addData(builder, fbData);
+        int fbRequest = FileWriteRequest.endFileWriteRequest(builder);
+
+        // Send request
+        FileWriteResponse response = (FileWriteResponse)
+                sendRequest(builder, fbRequest, RequestType.FileWriteRequest,
+                        ResponseType.FileWriteResponse);
+
+        if (!response.success()) {
+            Log.e(TAG, "[" + id + "]: write failed: " + response.errorMsg());
+            return -1;
         }
+        return response.bytesWritten();
     }
 
     @Nullable
-    public synchronized String fileSelinuxGetLabel(Context context, int id) throws IOException {
+    public String fileSelinuxGetLabel(Context context, int id) throws IOException {
         connect(context);
 
-        try {
-            // Create request
-            FlatBufferBuilder builder = new FlatBufferBuilder(FBB_SIZE);
-            FileSELinuxGetLabelRequest.startFileSELinuxGetLabelRequest(builder);
-            FileSELinuxGetLabelRequest.addId(builder, id);
-            int fbRequest = FileSELinuxGetLabelRequest.endFileSELinuxGetLabelRequest(builder);
+        // Create request
+        FlatBufferBuilder builder = MbtoolCodec.obtainBuilder();
+        FileSELinuxGetLabelRequest.startFileSELinuxGetLabelRequest(builder);
+        FileSELinuxGetLabelRequest.addId(builder, id);
+        int fbRequest = FileSELinuxGetLabelRequest.endFileSELinuxGetLabelRequest(builder);
 
-            // Send request
-            FileSELinuxGetLabelResponse response = (FileSELinuxGetLabelResponse)
-                    sendRequest(builder, fbRequest, RequestType.FileSELinuxGetLabelRequest,
-                            ResponseType.FileSELinuxGetLabelResponse);
+        // Send request
+        FileSELinuxGetLabelResponse response = (FileSELinuxGetLabelResponse)
+                sendRequest(builder, fbRequest, RequestType.FileSELinuxGetLabelRequest,
+                        ResponseType.FileSELinuxGetLabelResponse);
 
-            if (!response.success()) {
-                Log.e(TAG, "[" + id + "]: SELinux get label failed: " + response.errorMsg());
-                return null;
-            }
-            return response.label();
-        } catch (IOException e) {
-            disconnect();
-            throw e;
+        if (!response.success()) {
+            Log.e(TAG, "[" + id + "]: SELinux get label failed: " + response.errorMsg());
+            return null;
         }
+        return response.label();
     }
 
-    public synchronized boolean fileSelinuxSetLabel(Context context, int id,
+    public boolean fileSelinuxSetLabel(Context context, int id,
                                                     String label) throws IOException {
         connect(context);
 
-        try {
-            // Create request
-            FlatBufferBuilder builder = new FlatBufferBuilder(FBB_SIZE);
-            FileSELinuxSetLabelRequest.startFileSELinuxSetLabelRequest(builder);
-            FileSELinuxSetLabelRequest.addId(builder, id);
-            int fbRequest = FileSELinuxSetLabelRequest.endFileSELinuxSetLabelRequest(builder);
+        // Create request
+        FlatBufferBuilder builder = MbtoolCodec.obtainBuilder();
+        FileSELinuxSetLabelRequest.startFileSELinuxSetLabelRequest(builder);
+        FileSELinuxSetLabelRequest.addId(builder, id);
+        int fbRequest = FileSELinuxSetLabelRequest.endFileSELinuxSetLabelRequest(builder);
 
-            // Send request
-            FileSELinuxSetLabelResponse response = (FileSELinuxSetLabelResponse)
-                    sendRequest(builder, fbRequest, RequestType.FileSELinuxSetLabelRequest,
-                            ResponseType.FileSELinuxSetLabelResponse);
+        // Send request
+        FileSELinuxSetLabelResponse response = (FileSELinuxSetLabelResponse)
+                sendRequest(builder, fbRequest, RequestType.FileSELinuxSetLabelRequest,
+                        ResponseType.FileSELinuxSetLabelResponse);
 
-            if (!response.success()) {
-                Log.e(TAG, "[" + id + "]: SELinux set label failed: " + response.errorMsg());
-                return false;
-            }
-            return true;
-        } catch (IOException e) {
-            disconnect();
-            throw e;
+        if (!response.success()) {
+            Log.e(TAG, "[" + id + "]: SELinux set label failed: " + response.errorMsg());
+            return false;
         }
+        return true;
     }
 
     /**
@@ -609,40 +847,39 @@ public class MbtoolSocket {
      * @throws IOException When any socket communication error occurs
      */
     @NonNull
-    public synchronized RomInformation[] getInstalledRoms(Context context) throws IOException {
+    public RomInformation[] getInstalledRoms(Context context) throws IOException {
         connect(context);
 
-        try {
-            // Create request
-            FlatBufferBuilder builder = new FlatBufferBuilder(FBB_SIZE);
-            MbGetInstalledRomsRequest.startMbGetInstalledRomsRequest(builder);
-            // No parameters
-            int fbRequest = MbGetInstalledRomsRequest.endMbGetInstalledRomsRequest(builder);
+        // Create request
+        FlatBufferBuilder builder = MbtoolCodec.obtainBuilder();
+        MbGetInstalledRomsRequest.startMbGetInstalledRomsRequest(builder);
+        // No parameters
+        int fbRequest = MbGetInstalledRomsRequest.endMbGetInstalledRomsRequest(builder);
 
-            // Send request
-            MbGetInstalledRomsResponse response = (MbGetInstalledRomsResponse)
-                    sendRequest(builder, fbRequest, RequestType.MbGetInstalledRomsRequest,
-                            ResponseType.MbGetInstalledRomsResponse);
-
-            RomInformation[] roms = new RomInformation[response.romsLength()];
-
-            for (int i = 0; i < response.romsLength(); i++) {
-                RomInformation rom = roms[i] = new RomInformation();
-                MbRom fbrom = response.roms(i);
-
-                rom.setId(fbrom.id());
-                rom.setSystemPath(fbrom.systemPath());
-                rom.setCachePath(fbrom.cachePath());
-                rom.setDataPath(fbrom.dataPath());
-                rom.setVersion(fbrom.version());
-                rom.setBuild(fbrom.build());
-            }
+        // Send request
+        MbGetInstalledRomsResponse response = (MbGetInstalledRomsResponse)
+                sendRequest(builder, fbRequest, RequestType.MbGetInstalledRomsRequest,
+                        ResponseType.MbGetInstalledRomsResponse);
 
-            return roms;
-        } catch (IOException e) {
-            disconnect();
-            throw e;
+        return toRomInformation(response);
+    }
+
+    static RomInformation[] toRomInformation(MbGetInstalledRomsResponse response) {
+        RomInformation[] roms = new RomInformation[response.romsLength()];
+
+        for (int i = 0; i < response.romsLength(); i++) {
+            RomInformation rom = roms[i] = new RomInformation();
+            MbRom fbrom = response.roms(i);
+
+            rom.setId(fbrom.id());
+            rom.setSystemPath(fbrom.systemPath());
+            rom.setCachePath(fbrom.cachePath());
+            rom.setDataPath(fbrom.dataPath());
+            rom.setVersion(fbrom.version());
+            rom.setBuild(fbrom.build());
         }
+
+        return roms;
     }
 
     /**
@@ -653,26 +890,21 @@ public class MbtoolSocket {
      * @throws IOException When any socket communication error occurs
      */
     @NonNull
-    public synchronized String getBootedRomId(Context context) throws IOException {
+    public String getBootedRomId(Context context) throws IOException {
         connect(context);
 
-        try {
-            // Create request
-            FlatBufferBuilder builder = new FlatBufferBuilder(FBB_SIZE);
-            MbGetBootedRomIdRequest.startMbGetBootedRomIdRequest(builder);
-            // No parameters
-            int fbRequest = MbGetBootedRomIdRequest.endMbGetBootedRomIdRequest(builder);
+        // Create request
+        FlatBufferBuilder builder = MbtoolCodec.obtainBuilder();
+        MbGetBootedRomIdRequest.startMbGetBootedRomIdRequest(builder);
+        // No parameters
+        int fbRequest = MbGetBootedRomIdRequest.endMbGetBootedRomIdRequest(builder);
 
-            // Send request
-            MbGetBootedRomIdResponse response = (MbGetBootedRomIdResponse)
-                    sendRequest(builder, fbRequest, RequestType.MbGetBootedRomIdRequest,
-                            ResponseType.MbGetBootedRomIdResponse);
+        // Send request
+        MbGetBootedRomIdResponse response = (MbGetBootedRomIdResponse)
+                sendRequest(builder, fbRequest, RequestType.MbGetBootedRomIdRequest,
+                        ResponseType.MbGetBootedRomIdResponse);
 
-            return response.romId();
-        } catch (IOException e) {
-            disconnect();
-            throw e;
-        }
+        return response.romId();
     }
 
     public enum SwitchRomResult {
@@ -698,70 +930,66 @@ public class MbtoolSocket {
      * @throws IOException When any socket communication error occurs
      */
     @NonNull
-    public synchronized SwitchRomResult switchRom(Context context, String id,
+    public SwitchRomResult switchRom(Context context, String id,
                                                   boolean forceChecksumsUpdate) throws IOException {
         connect(context);
 
-        try {
-            String bootBlockDev = SwitcherUtils.getBootPartition(context);
-            if (bootBlockDev == null) {
-                Log.e(TAG, "Failed to determine boot partition");
-                return SwitchRomResult.UNKNOWN_BOOT_PARTITION;
-            }
-
-            // Create request
-            FlatBufferBuilder builder = new FlatBufferBuilder(FBB_SIZE);
-            int fbRomId = builder.createString(id);
-            int fbBootBlockDev = builder.createString(bootBlockDev);
-
-            // Blockdev search dirs
-            String[] searchDirs = SwitcherUtils.getBlockDevSearchDirs(context);
-            int fbSearchDirs = 0;
-            if (searchDirs != null) {
-                int[] searchDirsOffsets = new int[searchDirs.length];
-                for (int i = 0; i < searchDirs.length; i++) {
-                    searchDirsOffsets[i] = builder.createString(searchDirs[i]);
-                }
+        String bootBlockDev = SwitcherUtils.getBootPartition(context);
+        if (bootBlockDev == null) {
+            Log.e(TAG, "Failed to determine boot partition");
+            return SwitchRomResult.UNKNOWN_BOOT_PARTITION;
+        }
 
-                fbSearchDirs = MbSwitchRomRequest.createBlockdevBaseDirsVector(
-                        builder, searchDirsOffsets);
-            }
+        String[] searchDirs = SwitcherUtils.getBlockDevSearchDirs(context);
 
-            MbSwitchRomRequest.startMbSwitchRomRequest(builder);
-            MbSwitchRomRequest.addRomId(builder, fbRomId);
-            MbSwitchRomRequest.addBootBlockdev(builder, fbBootBlockDev);
-            MbSwitchRomRequest.addBlockdevBaseDirs(builder, fbSearchDirs);
-            MbSwitchRomRequest.addForceUpdateChecksums(builder, forceChecksumsUpdate);
-            int fbRequest = MbSwitchRomRequest.endMbSwitchRomRequest(builder);
+        // Create request
+        FlatBufferBuilder builder = MbtoolCodec.obtainBuilder();
+        int fbRomId = builder.createString(id);
+        int fbBootBlockDev = builder.createString(bootBlockDev);
 
-            // Send request
-            MbSwitchRomResponse response = (MbSwitchRomResponse)
-                    sendRequest(builder, fbRequest, RequestType.MbSwitchRomRequest,
-                            ResponseType.MbSwitchRomResponse);
-
-            SwitchRomResult result;
-            switch (response.result()) {
-            case MbSwitchRomResult.SUCCEEDED:
-                result = SwitchRomResult.SUCCEEDED;
-                break;
-            case MbSwitchRomResult.FAILED:
-                result = SwitchRomResult.FAILED;
-                break;
-            case MbSwitchRomResult.CHECKSUM_INVALID:
-                result = SwitchRomResult.CHECKSUM_INVALID;
-                break;
-            case MbSwitchRomResult.CHECKSUM_NOT_FOUND:
-                result = SwitchRomResult.CHECKSUM_NOT_FOUND;
-                break;
-            default:
-                throw new IOException("Invalid SwitchRomResult: " + response.result());
+        // Blockdev search dirs
+        int fbSearchDirs = 0;
+        if (searchDirs != null) {
+            int[] searchDirsOffsets = new int[searchDirs.length];
+            for (int i = 0; i < searchDirs.length; i++) {
+                searchDirsOffsets[i] = builder.createString(searchDirs[i]);
             }
 
-            return result;
-        } catch (IOException e) {
-            disconnect();
-            throw e;
+            fbSearchDirs = MbSwitchRomRequest.createBlockdevBaseDirsVector(
+                    builder, searchDirsOffsets);
+        }
+
+        MbSwitchRomRequest.startMbSwitchRomRequest(builder);
+        MbSwitchRomRequest.addRomId(builder, fbRomId);
+        MbSwitchRomRequest.addBootBlockdev(builder, fbBootBlockDev);
+        MbSwitchRomRequest.addBlockdevBaseDirs(builder, fbSearchDirs);
+        MbSwitchRomRequest.addForceUpdateChecksums(builder, forceChecksumsUpdate);
+        int fbRequest = MbSwitchRomRequest.endMbSwitchRomRequest(builder);
+
+        // Send request
+        MbSwitchRomResponse response = (MbSwitchRomResponse)
+                sendRequest(builder, fbRequest, RequestType.MbSwitchRomRequest,
+                        ResponseType.MbSwitchRomResponse);
+
+        SwitchRomResult result;
+        switch (response.result()) {
+        case MbSwitchRomResult.SUCCEEDED:
+            result = SwitchRomResult.SUCCEEDED;
+            break;
+        case MbSwitchRomResult.FAILED:
+            result = SwitchRomResult.FAILED;
+            break;
+        case MbSwitchRomResult.CHECKSUM_INVALID:
+            result = SwitchRomResult.CHECKSUM_INVALID;
+            break;
+        case MbSwitchRomResult.CHECKSUM_NOT_FOUND:
+            result = SwitchRomResult.CHECKSUM_NOT_FOUND;
+            break;
+        default:
+            throw new IOException("Invalid SwitchRomResult: " + response.result());
         }
+
+        return result;
     }
 
     public enum SetKernelResult {
@@ -785,35 +1013,30 @@ public class MbtoolSocket {
      * @throws IOException When any socket communication error occurs
      */
     @NonNull
-    public synchronized SetKernelResult setKernel(Context context, String id) throws IOException {
+    public SetKernelResult setKernel(Context context, String id) throws IOException {
         connect(context);
 
-        try {
-            String bootBlockDev = SwitcherUtils.getBootPartition(context);
-            if (bootBlockDev == null) {
-                Log.e(TAG, "Failed to determine boot partition");
-                return SetKernelResult.UNKNOWN_BOOT_PARTITION;
-            }
-
-            // Create request
-            FlatBufferBuilder builder = new FlatBufferBuilder(FBB_SIZE);
-            int fbRomId = builder.createString(id);
-            int fbBootBlockDev = builder.createString(bootBlockDev);
-            MbSetKernelRequest.startMbSetKernelRequest(builder);
-            MbSetKernelRequest.addRomId(builder, fbRomId);
-            MbSetKernelRequest.addBootBlockdev(builder, fbBootBlockDev);
-            int fbRequest = MbSetKernelRequest.endMbSetKernelRequest(builder);
-
-            // Send request
-            MbSetKernelResponse response = (MbSetKernelResponse)
-                    sendRequest(builder, fbRequest, RequestType.MbSetKernelRequest,
-                            ResponseType.MbSetKernelResponse);
-
-            return response.success() ? SetKernelResult.SUCCEEDED : SetKernelResult.FAILED;
-        } catch (IOException e) {
-            disconnect();
-            throw e;
+        String bootBlockDev = SwitcherUtils.getBootPartition(context);
+        if (bootBlockDev == null) {
+            Log.e(TAG, "Failed to determine boot partition");
+            return SetKernelResult.UNKNOWN_BOOT_PARTITION;
         }
+
+        // Create request
+        FlatBufferBuilder builder = MbtoolCodec.obtainBuilder();
+        int fbRomId = builder.createString(id);
+        int fbBootBlockDev = builder.createString(bootBlockDev);
+        MbSetKernelRequest.startMbSetKernelRequest(builder);
+        MbSetKernelRequest.addRomId(builder, fbRomId);
+        MbSetKernelRequest.addBootBlockdev(builder, fbBootBlockDev);
+        int fbRequest = MbSetKernelRequest.endMbSetKernelRequest(builder);
+
+        // Send request
+        MbSetKernelResponse response = (MbSetKernelResponse)
+                sendRequest(builder, fbRequest, RequestType.MbSetKernelRequest,
+                        ResponseType.MbSetKernelResponse);
+
+        return response.success() ? SetKernelResult.SUCCEEDED : SetKernelResult.FAILED;
     }
 
     /**
@@ -825,27 +1048,22 @@ public class MbtoolSocket {
      * @return True if the call to init succeeded and a reboot is pending. False, otherwise.
      * @throws IOException When any socket communication error occurs
      */
-    public synchronized boolean restart(Context context, String arg) throws IOException {
+    public boolean restart(Context context, String arg) throws IOException {
         connect(context);
 
-        try {
-            // Create request
-            FlatBufferBuilder builder = new FlatBufferBuilder(FBB_SIZE);
-            int fbArg = builder.createString(arg != null ? arg : "");
-            RebootRequest.startRebootRequest(builder);
-            RebootRequest.addArg(builder, fbArg);
-            int fbRequest = RebootRequest.endRebootRequest(builder);
+        // Create request
+        FlatBufferBuilder builder = MbtoolCodec.obtainBuilder();
+        int fbArg = builder.createString(arg != null ? arg : "");
+        RebootRequest.startRebootRequest(builder);
+        RebootRequest.addArg(builder, fbArg);
+        int fbRequest = RebootRequest.endRebootRequest(builder);
 
-            // Send request
-            RebootResponse response = (RebootResponse)
-                    sendRequest(builder, fbRequest, RequestType.RebootRequest,
-                            ResponseType.RebootResponse);
+        // Send request
+        RebootResponse response = (RebootResponse)
+                sendRequest(builder, fbRequest, RequestType.RebootRequest,
+                        ResponseType.RebootResponse);
 
-            return response.success();
-        } catch (IOException e) {
-            disconnect();
-            throw e;
-        }
+        return response.success();
     }
 
     /**
@@ -861,36 +1079,190 @@ public class MbtoolSocket {
      * @return True if the operation was successful. False, otherwise.
      * @throws IOException When any socket communication error occurs
      */
-    public synchronized boolean pathCopy(Context context, String source,
+    public boolean pathCopy(Context context, String source,
                                          String target) throws IOException {
         connect(context);
 
-        try {
-            // Create request
-            FlatBufferBuilder builder = new FlatBufferBuilder(FBB_SIZE);
-            int fbSource = builder.createString(source);
-            int fbTarget = builder.createString(target);
-            PathCopyRequest.startPathCopyRequest(builder);
-            PathCopyRequest.addSource(builder, fbSource);
-            PathCopyRequest.addTarget(builder, fbTarget);
-            int fbRequest = PathCopyRequest.endPathCopyRequest(builder);
-
-            // Send request
-            PathCopyResponse response = (PathCopyResponse)
-                    sendRequest(builder, fbRequest, RequestType.PathCopyRequest,
-                            ResponseType.PathCopyResponse);
+        // Create request
+        FlatBufferBuilder builder = MbtoolCodec.obtainBuilder();
+        int fbSource = builder.createString(source);
+        int fbTarget = builder.createString(target);
+        PathCopyRequest.startPathCopyRequest(builder);
+        PathCopyRequest.addSource(builder, fbSource);
+        PathCopyRequest.addTarget(builder, fbTarget);
+        int fbRequest = PathCopyRequest.endPathCopyRequest(builder);
+
+        // Send request
+        PathCopyResponse response = (PathCopyResponse)
+                sendRequest(builder, fbRequest, RequestType.PathCopyRequest,
+                        ResponseType.PathCopyResponse);
+
+        if (!response.success()) {
+            Log.e(TAG, "Failed to copy from " + source + " to " + target + ": " +
+                    response.errorMsg());
+            return false;
+        }
 
-            if (!response.success()) {
-                Log.e(TAG, "Failed to copy from " + source + " to " + target + ": " +
-                        response.errorMsg());
-                return false;
-            }
+        return true;
+    }
 
-            return true;
+    /**
+     * Thrown when the connection to mbtool was lost while a request was in flight
+     */
+    private static class ConnectionLostException extends IOException {
+        ConnectionLostException(IOException cause) {
+            super("mbtool connection lost", cause);
+        }
+    }
+
+    public interface CopyProgressListener {
+        /**
+         * Called periodically while mbtool is copying.
+         *
+         * This is called from the connection's reader thread and must return quickly.
+         *
+         * @param bytesCopied Offset up to which the target has been written
+         * @param totalSize Size of the source
+         */
+        void onProgress(long bytesCopied, long totalSize);
+    }
+
+    public static class CopyResult {
+        public boolean success;
+        public boolean cancelled;
+        // Everything before this offset has been copied. Pass it back to resume the copy.
+        public long bytesCopied;
+        public long totalSize;
+    }
+
+    /**
+     * Copy a file using mbtool and report the progress while it is copying.
+     *
+     * Unlike {@link #pathCopy(Context, String, String)}, the target is not truncated before copying
+     * and the copy starts at {@code offset} in both files. A regular file target is truncated to
+     * the end of the copy once it succeeds. If the connection to mbtool is lost, the copy is
+     * resumed from the last reported offset up to {@link #COPY_MAX_RESUMES} times.
+     *
+     * If mbtool does not support streaming copies, this falls back to
+     * {@link #pathCopy(Context, String, String)} when {@code offset} is 0. There is no progress or
+     * cancellation in that case.
+     *
+     * @param context Application context
+     * @param source Absolute source path
+     * @param target Absolute target path
+     * @param offset Offset to start copying from
+     * @param sparse Skip writing blocks of zeros if the target is a regular file. Only use this if
+     *               the target is new or the skipped ranges are known to be zeros already.
+     * @param listener Listener for progress updates
+     * @param signal Signal for cancelling the copy
+     * @return Result of the copy. {@link CopyResult#bytesCopied} is valid even if the copy failed
+     *         or was cancelled.
+     * @throws IOException When any socket communication error occurs and the copy could not be
+     *                     resumed
+     */
+    @NonNull
+    public CopyResult pathCopyStream(Context context, String source, String target, long offset,
+                                     boolean sparse, @Nullable CopyProgressListener listener,
+                                     @Nullable CancellationSignal signal) throws IOException {
+        CopyResult result = new CopyResult();
+        result.bytesCopied = offset;
+
+        for (int resumes = 0; ; resumes++) {
+            if (signal != null && signal.isCanceled()) {
+                result.cancelled = true;
+                return result;
+            }
+
+            try {
+                pathCopyStreamOnce(context, source, target, sparse, listener, signal, result);
+                return result;
+            } catch (ConnectionLostException e) {
+                if (resumes >= COPY_MAX_RESUMES) {
+                    throw e;
+                }
+                Log.w(TAG, "Lost connection while copying from " + source + " to " + target
+                        + "; resuming at offset " + result.bytesCopied, e);
+            }
+        }
+    }
+
+    private void pathCopyStreamOnce(Context context, String source, String target,
+                                    boolean sparse, @Nullable final CopyProgressListener listener,
+                                    @Nullable CancellationSignal signal,
+                                    final CopyResult result) throws IOException {
+        connect(context);
+
+        // Create request
+        FlatBufferBuilder builder = MbtoolCodec.obtainBuilder();
+        int fbSource = builder.createString(source);
+        int fbTarget = builder.createString(target);
+        PathCopyStreamRequest.startPathCopyStreamRequest(builder);
+        PathCopyStreamRequest.addSource(builder, fbSource);
+        PathCopyStreamRequest.addTarget(builder, fbTarget);
+        PathCopyStreamRequest.addOffset(builder, result.bytesCopied);
+        PathCopyStreamRequest.addSparse(builder, sparse);
+        int fbRequest = PathCopyStreamRequest.endPathCopyStreamRequest(builder);
+
+        CancellableStream stream = new CancellableStream(context, signal) {
+            @Override
+            void onProgress(Response response) {
+                PathCopyStreamProgress progress = (PathCopyStreamProgress)
+                        response.response(new PathCopyStreamProgress());
+                if (progress == null) {
+                    return;
+                }
+
+                result.bytesCopied = progress.bytesCopied();
+                result.totalSize = progress.totalSize();
+
+                if (listener != null) {
+                    listener.onProgress(result.bytesCopied, result.totalSize);
+                }
+            }
+        };
+
+        MbtoolConnection conn;
+        synchronized (this) {
+            conn = mConn;
+        }
+
+        // Send request
+        Response rawResponse;
+        try {
+            rawResponse = stream.send(builder, fbRequest, RequestType.PathCopyStreamRequest);
+        } catch (InterruptedIOException e) {
+            throw e;
         } catch (IOException e) {
-            disconnect();
+            // Only a dropped connection can be resumed from
+            if (conn != null && conn.isClosed()) {
+                throw new ConnectionLostException(e);
+            }
             throw e;
         }
+
+        if (rawResponse.responseType() == ResponseType.Unsupported) {
+            if (result.bytesCopied != 0) {
+                Log.e(TAG, "mbtool does not support resuming copies");
+                result.success = false;
+                return;
+            }
+            Log.w(TAG, "mbtool does not support streaming copies; using a regular copy");
+            result.success = pathCopy(context, source, target);
+            return;
+        }
+
+        PathCopyStreamResponse response = (PathCopyStreamResponse)
+                unwrapResponse(rawResponse, ResponseType.PathCopyStreamResponse);
+
+        result.success = response.success();
+        result.cancelled = response.cancelled();
+        result.bytesCopied = response.bytesCopied();
+        result.totalSize = response.totalSize();
+
+        if (!result.success && !result.cancelled) {
+            Log.e(TAG, "Failed to copy from " + source + " to " + target + ": " +
+                    response.errorMsg());
+        }
     }
 
     /**
@@ -906,34 +1278,29 @@ public class MbtoolSocket {
      * @return True if the operation was successful. False, otherwise.
      * @throws IOException When any socket communication error occurs
      */
-    public synchronized boolean pathChmod(Context context, String filename,
+    public boolean pathChmod(Context context, String filename,
                                           int mode) throws IOException {
         connect(context);
 
-        try {
-            // Create request
-            FlatBufferBuilder builder = new FlatBufferBuilder(FBB_SIZE);
-            int fbFilename = builder.createString(filename);
-            PathChmodRequest.startPathChmodRequest(builder);
-            PathChmodRequest.addPath(builder, fbFilename);
-            PathChmodRequest.addMode(builder, mode);
-            int fbRequest = PathChmodRequest.endPathChmodRequest(builder);
-
-            // Send request
-            PathChmodResponse response = (PathChmodResponse)
-                    sendRequest(builder, fbRequest, RequestType.PathChmodRequest,
-                            ResponseType.PathChmodResponse);
-
-            if (!response.success()) {
-                Log.e(TAG, "Failed to chmod " + filename + ": " + response.errorMsg());
-                return false;
-            }
-
-            return true;
-        } catch (IOException e) {
-            disconnect();
-            throw e;
+        // Create request
+        FlatBufferBuilder builder = MbtoolCodec.obtainBuilder();
+        int fbFilename = builder.createString(filename);
+        PathChmodRequest.startPathChmodRequest(builder);
+        PathChmodRequest.addPath(builder, fbFilename);
+        PathChmodRequest.addMode(builder, mode);
+        int fbRequest = PathChmodRequest.endPathChmodRequest(builder);
+
+        // Send request
+        PathChmodResponse response = (PathChmodResponse)
+                sendRequest(builder, fbRequest, RequestType.PathChmodRequest,
+                        ResponseType.PathChmodResponse);
+
+        if (!response.success()) {
+            Log.e(TAG, "Failed to chmod " + filename + ": " + response.errorMsg());
+            return false;
         }
+
+        return true;
     }
 
     public static class WipeResult {
@@ -952,41 +1319,36 @@ public class MbtoolSocket {
      * @throws IOException When any socket communication error occurs
      */
     @NonNull
-    public synchronized WipeResult wipeRom(Context context, String romId,
+    public WipeResult wipeRom(Context context, String romId,
                                            short[] targets) throws IOException {
         connect(context);
 
-        try {
-            // Create request
-            FlatBufferBuilder builder = new FlatBufferBuilder(FBB_SIZE);
-            int fbRomId = builder.createString(romId);
-            int fbTargets = MbWipeRomRequest.createTargetsVector(builder, targets);
-            MbWipeRomRequest.startMbWipeRomRequest(builder);
-            MbWipeRomRequest.addRomId(builder, fbRomId);
-            MbWipeRomRequest.addTargets(builder, fbTargets);
-            int fbRequest = MbWipeRomRequest.endMbWipeRomRequest(builder);
-
-            // Send request
-            MbWipeRomResponse response = (MbWipeRomResponse)
-                    sendRequest(builder, fbRequest, RequestType.MbWipeRomRequest,
-                            ResponseType.MbWipeRomResponse);
-
-            WipeResult result = new WipeResult();
-            result.succeeded = new short[response.succeededLength()];
-            result.failed = new short[response.failedLength()];
-
-            for (int i = 0; i < response.succeededLength(); i++) {
-                result.succeeded[i] = response.succeeded(i);
-            }
-            for (int i = 0; i < response.failedLength(); i++) {
-                result.failed[i] = response.failed(i);
-            }
-
-            return result;
-        } catch (IOException e) {
-            disconnect();
-            throw e;
+        // Create request
+        FlatBufferBuilder builder = MbtoolCodec.obtainBuilder();
+        int fbRomId = builder.createString(romId);
+        int fbTargets = MbWipeRomRequest.createTargetsVector(builder, targets);
+        MbWipeRomRequest.startMbWipeRomRequest(builder);
+        MbWipeRomRequest.addRomId(builder, fbRomId);
+        MbWipeRomRequest.addTargets(builder, fbTargets);
+        int fbRequest = MbWipeRomRequest.endMbWipeRomRequest(builder);
+
+        // Send request
+        MbWipeRomResponse response = (MbWipeRomResponse)
+                sendRequest(builder, fbRequest, RequestType.MbWipeRomRequest,
+                        ResponseType.MbWipeRomResponse);
+
+        WipeResult result = new WipeResult();
+        result.succeeded = new short[response.succeededLength()];
+        result.failed = new short[response.failedLength()];
+
+        for (int i = 0; i < response.succeededLength(); i++) {
+            result.succeeded[i] = response.succeeded(i);
+        }
+        for (int i = 0; i < response.failedLength(); i++) {
+            result.failed[i] = response.failed(i);
         }
+
+        return result;
     }
 
     public static class PackageCounts {
@@ -996,36 +1358,31 @@ public class MbtoolSocket {
     }
 
     @Nullable
-    public synchronized PackageCounts getPackagesCounts(Context context,
+    public PackageCounts getPackagesCounts(Context context,
                                                         String romId) throws IOException {
         connect(context);
 
-        try {
-            // Create request
-            FlatBufferBuilder builder = new FlatBufferBuilder(FBB_SIZE);
-            int fbRomId = builder.createString(romId);
-            MbGetPackagesCountRequest.startMbGetPackagesCountRequest(builder);
-            MbGetPackagesCountRequest.addRomId(builder, fbRomId);
-            int fbRequest = MbGetPackagesCountRequest.endMbGetPackagesCountRequest(builder);
-
-            // Send request
-            MbGetPackagesCountResponse response = (MbGetPackagesCountResponse)
-                    sendRequest(builder, fbRequest, RequestType.MbGetPackagesCountRequest,
-                            ResponseType.MbGetPackagesCountResponse);
+        // Create request
+        FlatBufferBuilder builder = MbtoolCodec.obtainBuilder();
+        int fbRomId = builder.createString(romId);
+        MbGetPackagesCountRequest.startMbGetPackagesCountRequest(builder);
+        MbGetPackagesCountRequest.addRomId(builder, fbRomId);
+        int fbRequest = MbGetPackagesCountRequest.endMbGetPackagesCountRequest(builder);
 
-            if (!response.success()) {
-                return null;
-            }
+        // Send request
+        MbGetPackagesCountResponse response = (MbGetPackagesCountResponse)
+                sendRequest(builder, fbRequest, RequestType.MbGetPackagesCountRequest,
+                        ResponseType.MbGetPackagesCountResponse);
 
-            PackageCounts pc = new PackageCounts();
-            pc.systemPackages = (int) response.systemPackages();
-            pc.systemUpdatePackages = (int) response.systemUpdatePackages();
-            pc.nonSystemPackages = (int) response.nonSystemPackages();
-            return pc;
-        } catch (IOException e) {
-            disconnect();
-            throw e;
+        if (!response.success()) {
+            return null;
         }
+
+        PackageCounts pc = new PackageCounts();
+        pc.systemPackages = (int) response.systemPackages();
+        pc.systemUpdatePackages = (int) response.systemUpdatePackages();
+        pc.nonSystemPackages = (int) response.nonSystemPackages();
+        return pc;
     }
 
     /**
@@ -1041,34 +1398,29 @@ public class MbtoolSocket {
      * @return SELinux label if it was successfully retrieved. False, otherwise.
      * @throws IOException When any socket communication error occurs
      */
-    public synchronized String pathSelinuxGetLabel(Context context, String path,
+    public String pathSelinuxGetLabel(Context context, String path,
                                                    boolean followSymlinks) throws IOException {
         connect(context);
 
-        try {
-            // Create request
-            FlatBufferBuilder builder = new FlatBufferBuilder(FBB_SIZE);
-            int fbPath = builder.createString(path);
-            PathSELinuxGetLabelRequest.startPathSELinuxGetLabelRequest(builder);
-            PathSELinuxGetLabelRequest.addPath(builder, fbPath);
-            PathSELinuxGetLabelRequest.addFollowSymlinks(builder, followSymlinks);
-            int fbRequest = PathSELinuxGetLabelRequest.endPathSELinuxGetLabelRequest(builder);
-
-            // Send request
-            PathSELinuxGetLabelResponse response = (PathSELinuxGetLabelResponse)
-                    sendRequest(builder, fbRequest, RequestType.PathSELinuxGetLabelRequest,
-                            ResponseType.PathSELinuxGetLabelResponse);
-
-            if (!response.success()) {
-                Log.e(TAG, "Failed to get SELinux label for " + path + ": " + response.errorMsg());
-                return null;
-            }
-
-            return response.label();
-        } catch (IOException e) {
-            disconnect();
-            throw e;
+        // Create request
+        FlatBufferBuilder builder = MbtoolCodec.obtainBuilder();
+        int fbPath = builder.createString(path);
+        PathSELinuxGetLabelRequest.startPathSELinuxGetLabelRequest(builder);
+        PathSELinuxGetLabelRequest.addPath(builder, fbPath);
+        PathSELinuxGetLabelRequest.addFollowSymlinks(builder, followSymlinks);
+        int fbRequest = PathSELinuxGetLabelRequest.endPathSELinuxGetLabelRequest(builder);
+
+        // Send request
+        PathSELinuxGetLabelResponse response = (PathSELinuxGetLabelResponse)
+                sendRequest(builder, fbRequest, RequestType.PathSELinuxGetLabelRequest,
+                        ResponseType.PathSELinuxGetLabelResponse);
+
+        if (!response.success()) {
+            Log.e(TAG, "Failed to get SELinux label for " + path + ": " + response.errorMsg());
+            return null;
         }
+
+        return response.label();
     }
 
     /**
@@ -1085,96 +1437,806 @@ public class MbtoolSocket {
      * @return True if the SELinux label was successfully set. False, otherwise.
      * @throws IOException When any socket communication error occurs
      */
-    public synchronized boolean pathSelinuxSetLabel(Context context, String path, String label,
+    public boolean pathSelinuxSetLabel(Context context, String path, String label,
                                                     boolean followSymlinks) throws IOException {
         connect(context);
 
-        try {
+        // Create request
+        FlatBufferBuilder builder = MbtoolCodec.obtainBuilder();
+        int fbPath = builder.createString(path);
+        int fbLabel = builder.createString(label);
+        PathSELinuxSetLabelRequest.startPathSELinuxSetLabelRequest(builder);
+        PathSELinuxSetLabelRequest.addPath(builder, fbPath);
+        PathSELinuxSetLabelRequest.addLabel(builder, fbLabel);
+        PathSELinuxSetLabelRequest.addFollowSymlinks(builder, followSymlinks);
+        int fbRequest = PathSELinuxSetLabelRequest.endPathSELinuxSetLabelRequest(builder);
+
+        // Send request
+        PathSELinuxSetLabelResponse response = (PathSELinuxSetLabelResponse)
+                sendRequest(builder, fbRequest, RequestType.PathSELinuxSetLabelRequest,
+                        ResponseType.PathSELinuxSetLabelResponse);
+
+        if (!response.success()) {
+            Log.e(TAG, "Failed to set SELinux label for " + path + ": " + response.errorMsg());
+            return false;
+        }
+
+        return true;
+    }
+
+    public long pathGetDirectorySize(Context context, String path,
+                                                  String[] exclusions) throws IOException {
+        connect(context);
+
+        // Create request
+        FlatBufferBuilder builder = MbtoolCodec.obtainBuilder();
+        int fbPath = builder.createString(path);
+        int fbExclusions = 0;
+        if (exclusions != null) {
+            int[] exclusionOffsets = new int[exclusions.length];
+            for (int i = 0; i < exclusions.length; i++) {
+                exclusionOffsets[i] = builder.createString(exclusions[i]);
+            }
+
+            fbExclusions = PathGetDirectorySizeRequest.createExclusionsVector(
+                    builder, exclusionOffsets);
+        }
+        PathGetDirectorySizeRequest.startPathGetDirectorySizeRequest(builder);
+        PathGetDirectorySizeRequest.addPath(builder, fbPath);
+        PathGetDirectorySizeRequest.addExclusions(builder, fbExclusions);
+        int fbRequest = PathGetDirectorySizeRequest.endPathGetDirectorySizeRequest(builder);
+
+        // Send request
+        PathGetDirectorySizeResponse response = (PathGetDirectorySizeResponse)
+                sendRequest(builder, fbRequest, RequestType.PathGetDirectorySizeRequest,
+                        ResponseType.PathGetDirectorySizeResponse);
+
+        if (!response.success()) {
+            Log.e(TAG, "Failed to set directory size for " + path + ": " + response.errorMsg());
+            return -1;
+        }
+
+        return response.size();
+    }
+
+    public interface DirectorySizeListener {
+        /**
+         * Called periodically while mbtool is walking the tree.
+         *
+         * This is called from the connection's reader thread and must return quickly.
+         *
+         * @param size Size of everything visited so far
+         * @param subtotals Sizes of the first-level directories that have been fully walked
+         */
+        void onProgress(long size, Map<String, Long> subtotals);
+    }
+
+    public static class DirectorySize {
+        public boolean success;
+        public boolean cancelled;
+        // Partial if the walk was cancelled or failed
+        public long size;
+        // Sizes of the first-level directories that have been fully walked
+        public Map<String, Long> subtotals = new LinkedHashMap<>();
+    }
+
+    static class CachedDirectorySize {
+        long mtime;
+        long timestamp;
+        long size;
+        Map<String, Long> subtotals;
+    }
+
+    /**
+     * Compute the size of a directory tree and report running totals while it is being walked.
+     *
+     * Successful results are cached by path and exclusions. If the modification time of the path
+     * has not changed since then, the cached result is returned without walking the tree again.
+     * The modification time only changes when first-level entries are added or removed, so cached
+     * results are only trusted for {@link #DIRECTORY_SIZE_CACHE_MAX_AGE} ms.
+     *
+     * If mbtool does not support streaming directory sizes, this falls back to
+     * {@link #pathGetDirectorySize(Context, String, String[])}. There are no subtotals, progress
+     * updates or cancellation in that case.
+     *
+     * @param context Application context
+     * @param path Absolute path
+     * @param exclusions Names of first-level directories to skip
+     * @param listener Listener for progress updates
+     * @param signal Signal for stopping the walk
+     * @return Total size and subtotals. These are partial if the walk was cancelled.
+     * @throws IOException When any socket communication error occurs
+     */
+    @NonNull
+    public DirectorySize pathGetDirectorySizeStream(Context context, String path,
+                                                    @Nullable String[] exclusions,
+                                                    @Nullable final DirectorySizeListener listener,
+                                                    @Nullable CancellationSignal signal)
+            throws IOException {
+        String key = getDirectorySizeCacheKey(path, exclusions);
+        CachedDirectorySize cached = getCachedDirectorySize(key);
+
+        if (signal != null && signal.isCanceled()) {
+            DirectorySize result = new DirectorySize();
+            result.cancelled = true;
+            return result;
+        }
+
+        connect(context);
+
+        // Create request
+        FlatBufferBuilder builder = MbtoolCodec.obtainBuilder();
+        int fbRequest = buildDirectorySizeStreamRequest(builder, path, exclusions, cached);
+
+        CancellableStream stream = new CancellableStream(context, signal) {
+            @Override
+            void onProgress(Response response) {
+                reportDirectorySizeProgress(response, listener);
+            }
+        };
+
+        // Send request
+        Response rawResponse = stream.send(
+                builder, fbRequest, RequestType.PathGetDirectorySizeStreamRequest);
+
+        if (rawResponse.responseType() == ResponseType.Unsupported) {
+            Log.w(TAG, "mbtool does not support streaming directory sizes");
+            DirectorySize result = new DirectorySize();
+            result.size = pathGetDirectorySize(context, path, exclusions);
+            result.success = result.size >= 0;
+            return result;
+        }
+
+        PathGetDirectorySizeStreamResponse response = (PathGetDirectorySizeStreamResponse)
+                unwrapResponse(rawResponse, ResponseType.PathGetDirectorySizeStreamResponse);
+
+        return toDirectorySize(response, path, key, cached);
+    }
+
+    @Nullable
+    static CachedDirectorySize getCachedDirectorySize(String key) {
+        CachedDirectorySize cached = sDirectorySizeCache.get(key);
+        if (cached != null && SystemClock.elapsedRealtime() - cached.timestamp
+                > DIRECTORY_SIZE_CACHE_MAX_AGE) {
+            return null;
+        }
+        return cached;
+    }
+
+    static int buildDirectorySizeStreamRequest(FlatBufferBuilder builder, String path,
+                                               @Nullable String[] exclusions,
+                                               @Nullable CachedDirectorySize cached) {
+        int fbPath = builder.createString(path);
+        int fbExclusions = 0;
+        if (exclusions != null) {
+            int[] exclusionOffsets = new int[exclusions.length];
+            for (int i = 0; i < exclusions.length; i++) {
+                exclusionOffsets[i] = builder.createString(exclusions[i]);
+            }
+
+            fbExclusions = PathGetDirectorySizeStreamRequest.createExclusionsVector(
+                    builder, exclusionOffsets);
+        }
+        PathGetDirectorySizeStreamRequest.startPathGetDirectorySizeStreamRequest(builder);
+        PathGetDirectorySizeStreamRequest.addPath(builder, fbPath);
+        PathGetDirectorySizeStreamRequest.addExclusions(builder, fbExclusions);
+        if (cached != null) {
+            PathGetDirectorySizeStreamRequest.addUnchangedMtime(builder, cached.mtime);
+        }
+        return PathGetDirectorySizeStreamRequest.endPathGetDirectorySizeStreamRequest(builder);
+    }
+
+    static void reportDirectorySizeProgress(Response response,
+                                            @Nullable DirectorySizeListener listener) {
+        PathGetDirectorySizeStreamProgress progress = (PathGetDirectorySizeStreamProgress)
+                response.response(new PathGetDirectorySizeStreamProgress());
+        if (progress == null || listener == null) {
+            return;
+        }
+
+        Map<String, Long> subtotals = new LinkedHashMap<>();
+        DirectorySubtotal subtotal = new DirectorySubtotal();
+        for (int i = 0; i < progress.subtotalsLength(); i++) {
+            progress.subtotals(subtotal, i);
+            subtotals.put(subtotal.name(), subtotal.size());
+        }
+
+        listener.onProgress(progress.size(), subtotals);
+    }
+
+    /**
+     * Convert the final response of a PathGetDirectorySizeStreamRequest and cache the result if
+     * it was successful.
+     */
+    @NonNull
+    static DirectorySize toDirectorySize(PathGetDirectorySizeStreamResponse response, String path,
+                                         String key, @Nullable CachedDirectorySize cached) {
+        DirectorySize result = new DirectorySize();
+
+        if (response.unchanged() && cached != null) {
+            result.success = true;
+            result.size = cached.size;
+            result.subtotals.putAll(cached.subtotals);
+            return result;
+        }
+
+        result.success = response.success();
+        result.cancelled = response.cancelled();
+        result.size = response.size();
+        DirectorySubtotal subtotal = new DirectorySubtotal();
+        for (int i = 0; i < response.subtotalsLength(); i++) {
+            response.subtotals(subtotal, i);
+            result.subtotals.put(subtotal.name(), subtotal.size());
+        }
+
+        if (result.success) {
+            CachedDirectorySize entry = new CachedDirectorySize();
+            entry.mtime = response.mtime();
+            entry.timestamp = SystemClock.elapsedRealtime();
+            entry.size = result.size;
+            entry.subtotals = new LinkedHashMap<>(result.subtotals);
+            sDirectorySizeCache.put(key, entry);
+        } else if (!result.cancelled) {
+            Log.e(TAG, "Failed to get directory size for " + path + ": " + response.errorMsg());
+        }
+
+        return result;
+    }
+
+    static String getDirectorySizeCacheKey(String path, @Nullable String[] exclusions) {
+        StringBuilder sb = new StringBuilder(path);
+        if (exclusions != null) {
+            String[] sorted = exclusions.clone();
+            Arrays.sort(sorted);
+            for (String exclusion : sorted) {
+                sb.append('\0').append(exclusion);
+            }
+        }
+        return sb.toString();
+    }
+
+    public static class DirectoryEntry {
+        public String name;
+        /** lstat() of the entry */
+        public StatBuf stat;
+    }
+
+    /**
+     * Lazily lists a directory, one page of entries at a time.
+     *
+     * Only the current page is kept in memory, so this works the same way for directories of any
+     * size. This is not a {@link java.util.Iterator} because fetching the next page can fail.
+     */
+    public class DirectoryIterator {
+        private final Context mContext;
+        private final String mPath;
+        private final String mPattern;
+        private final ArrayList<DirectoryEntry> mPage = new ArrayList<>();
+        private int mIndex;
+        private long mCursor;
+        private boolean mEof;
+
+        private DirectoryIterator(Context context, String path, @Nullable String pattern) {
+            mContext = context;
+            mPath = path;
+            mPattern = pattern;
+        }
+
+        /**
+         * @throws IOException When any socket communication error occurs or if the next page
+         *                     could not be listed
+         */
+        public boolean hasNext() throws IOException {
+            // Pages can be empty if none of their entries match the pattern
+            while (mIndex == mPage.size() && !mEof) {
+                if (!fetchPage()) {
+                    throw new IOException("Failed to list " + mPath);
+                }
+            }
+            return mIndex < mPage.size();
+        }
+
+        /**
+         * @throws IOException When any socket communication error occurs or if the next page
+         *                     could not be listed
+         */
+        @NonNull
+        public DirectoryEntry next() throws IOException {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            DirectoryEntry entry = mPage.get(mIndex);
+            // Let the entry be collected once the caller is done with it
+            mPage.set(mIndex, null);
+            mIndex++;
+            return entry;
+        }
+
+        private boolean fetchPage() throws IOException {
+            connect(mContext);
+
             // Create request
-            FlatBufferBuilder builder = new FlatBufferBuilder(FBB_SIZE);
-            int fbPath = builder.createString(path);
-            int fbLabel = builder.createString(label);
-            PathSELinuxSetLabelRequest.startPathSELinuxSetLabelRequest(builder);
-            PathSELinuxSetLabelRequest.addPath(builder, fbPath);
-            PathSELinuxSetLabelRequest.addLabel(builder, fbLabel);
-            PathSELinuxSetLabelRequest.addFollowSymlinks(builder, followSymlinks);
-            int fbRequest = PathSELinuxSetLabelRequest.endPathSELinuxSetLabelRequest(builder);
+            FlatBufferBuilder builder = MbtoolCodec.obtainBuilder();
+            int fbPath = builder.createString(mPath);
+            int fbPattern = mPattern != null ? builder.createString(mPattern) : 0;
+            PathListDirectoryRequest.startPathListDirectoryRequest(builder);
+            PathListDirectoryRequest.addPath(builder, fbPath);
+            PathListDirectoryRequest.addPattern(builder, fbPattern);
+            PathListDirectoryRequest.addCursor(builder, mCursor);
+            PathListDirectoryRequest.addMaxEntries(builder, LIST_DIRECTORY_PAGE_SIZE);
+            int fbRequest = PathListDirectoryRequest.endPathListDirectoryRequest(builder);
 
             // Send request
-            PathSELinuxSetLabelResponse response = (PathSELinuxSetLabelResponse)
-                    sendRequest(builder, fbRequest, RequestType.PathSELinuxSetLabelRequest,
-                            ResponseType.PathSELinuxSetLabelResponse);
+            Response rawResponse = sendRawRequest(
+                    builder, fbRequest, RequestType.PathListDirectoryRequest);
+
+            if (rawResponse.responseType() == ResponseType.Unsupported) {
+                Log.w(TAG, "mbtool does not support listing directories");
+                return false;
+            }
+
+            PathListDirectoryResponse response = (PathListDirectoryResponse)
+                    unwrapResponse(rawResponse, ResponseType.PathListDirectoryResponse);
 
             if (!response.success()) {
-                Log.e(TAG, "Failed to set SELinux label for " + path + ": " + response.errorMsg());
+                Log.e(TAG, "Failed to list " + mPath + ": " + response.errorMsg());
                 return false;
             }
 
+            // The response is only valid until the next request, so copy the entries out
+            mPage.clear();
+            mIndex = 0;
+            mbtool.daemon.v3.DirectoryEntry fbEntry = new mbtool.daemon.v3.DirectoryEntry();
+            for (int i = 0; i < response.entriesLength(); i++) {
+                response.entries(fbEntry, i);
+                DirectoryEntry entry = new DirectoryEntry();
+                entry.name = fbEntry.name();
+                entry.stat = toStatBuf(fbEntry.stat());
+                mPage.add(entry);
+            }
+            mCursor = response.nextCursor();
+            mEof = response.eof();
             return true;
-        } catch (IOException e) {
-            disconnect();
-            throw e;
         }
     }
 
-    public synchronized long pathGetDirectorySize(Context context, String path,
-                                                  String[] exclusions) throws IOException {
+    /**
+     * List a directory as the daemon sees it (eg. another ROM's /data/app).
+     *
+     * @param context Application context
+     * @param path Directory to list
+     * @param pattern fnmatch() pattern that names must match or null to list every entry
+     * @return Iterator over the entries (excluding "." and "..") or null if the directory could
+     *         not be listed or if mbtool does not support listing directories
+     * @throws IOException When any socket communication error occurs
+     */
+    @Nullable
+    public DirectoryIterator pathListDirectory(Context context, String path,
+                                               @Nullable String pattern) throws IOException {
+        DirectoryIterator iter = new DirectoryIterator(context, path, pattern);
+
+        // Fetch the first page right away so that errors can be reported here
+        if (!iter.fetchPage()) {
+            return null;
+        }
+        return iter;
+    }
+
+    public static class OpenFdResult {
+        /** Read-only file descriptor. Must be closed by the caller. */
+        public ParcelFileDescriptor fd;
+        public StatBuf stat;
+        /** Size of the file or block device */
+        public long size;
+    }
+
+    /**
+     * Open a file or block device read-only and receive the file descriptor directly.
+     *
+     * Unlike {@link #fileOpen(Context, String, short[], int)}, the data does not go through the
+     * daemon. It can be read (and mapped) directly by this process as long as SELinux allows it
+     * to use the file descriptor.
+     *
+     * @param context Application context
+     * @param path Path to open
+     * @return Open file descriptor with its stat buffer and size or null if the path could not be
+     *         opened or if mbtool does not support passing file descriptors
+     * @throws IOException When any socket communication error occurs
+     */
+    @Nullable
+    public OpenFdResult pathOpenFd(Context context, String path) throws IOException {
         connect(context);
 
-        try {
-            // Create request
-            FlatBufferBuilder builder = new FlatBufferBuilder(FBB_SIZE);
-            int fbPath = builder.createString(path);
-            int fbExclusions = 0;
-            if (exclusions != null) {
-                int[] exclusionOffsets = new int[exclusions.length];
-                for (int i = 0; i < exclusions.length; i++) {
-                    exclusionOffsets[i] = builder.createString(exclusions[i]);
+        // Create request
+        FlatBufferBuilder builder = MbtoolCodec.obtainBuilder();
+        int fbPath = builder.createString(path);
+        PathOpenFdRequest.startPathOpenFdRequest(builder);
+        PathOpenFdRequest.addPath(builder, fbPath);
+        int fbRequest = PathOpenFdRequest.endPathOpenFdRequest(builder);
+
+        // Send request
+        ArrayList<ParcelFileDescriptor> fds = new ArrayList<>();
+        Response rawResponse = sendRawRequest(
+                builder, fbRequest, RequestType.PathOpenFdRequest, fds);
+
+        if (rawResponse.responseType() == ResponseType.Unsupported) {
+            Log.w(TAG, "mbtool does not support passing file descriptors");
+            return null;
+        }
+
+        PathOpenFdResponse response = (PathOpenFdResponse)
+                unwrapResponse(rawResponse, ResponseType.PathOpenFdResponse);
+
+        if (!response.success()) {
+            Log.e(TAG, "Failed to open " + path + ": " + response.errorMsg());
+            return null;
+        }
+
+        // Extra file descriptors are not expected, but must not be leaked
+        for (int i = 1; i < fds.size(); i++) {
+            IOUtils.closeQuietly(fds.get(i));
+        }
+
+        OpenFdResult result = new OpenFdResult();
+        result.fd = fds.get(0);
+        result.stat = toStatBuf(response.stat());
+        result.size = response.size();
+        return result;
+    }
+
+    /**
+     * Compute the SHA-256 digest of a file or block device.
+     *
+     * The data is hashed by the daemon and never sent over the socket.
+     *
+     * @param context Application context
+     * @param path Path to hash
+     * @param offset Offset at which to start hashing
+     * @param size Number of bytes to hash or 0 to hash everything up to the end of the file
+     * @return SHA-256 digest or null if the path could not be read or if mbtool does not support
+     *         hashing
+     * @throws IOException When any socket communication error occurs
+     */
+    @Nullable
+    public byte[] pathHash(Context context, String path, long offset, long size)
+            throws IOException {
+        connect(context);
+
+        // Create request
+        FlatBufferBuilder builder = MbtoolCodec.obtainBuilder();
+        int fbPath = builder.createString(path);
+        PathHashRequest.startPathHashRequest(builder);
+        PathHashRequest.addPath(builder, fbPath);
+        PathHashRequest.addOffset(builder, offset);
+        PathHashRequest.addSize(builder, size);
+        int fbRequest = PathHashRequest.endPathHashRequest(builder);
+
+        // Send request
+        Response rawResponse = sendRawRequest(builder, fbRequest, RequestType.PathHashRequest);
+
+        if (rawResponse.responseType() == ResponseType.Unsupported) {
+            Log.w(TAG, "mbtool does not support hashing paths");
+            return null;
+        }
+
+        PathHashResponse response = (PathHashResponse)
+                unwrapResponse(rawResponse, ResponseType.PathHashResponse);
+
+        if (!response.success()) {
+            Log.e(TAG, "Failed to hash " + path + ": " + response.errorMsg());
+            return null;
+        }
+
+        ByteBuffer bb = response.sha256AsByteBuffer();
+        if (bb == null) {
+            return null;
+        }
+        byte[] digest = new byte[bb.remaining()];
+        bb.get(digest);
+        return digest;
+    }
+
+    public interface EventListener {
+        /**
+         * Called on the connection's reader thread for every event. This must not block or send
+         * requests.
+         */
+        void onEvent(Event event);
+
+        /**
+         * Called when the connection is lost. Events may have been missed until the next request
+         * reconnects and subscribes again.
+         */
+        void onDisconnected();
+    }
+
+    public static class Event {
+        /** One of the {@link EventType} constants */
+        public short type;
+        /** ROM that was installed, wiped, or switched to (if applicable) */
+        public String romId;
+        /** File or block device that was changed (if applicable) */
+        public String path;
+    }
+
+    private static class EventSubscription {
+        short[] types;
+        String bootBlockdev;
+        String multibootDir;
+        EventListener listener;
+    }
+
+    /**
+     * Subscribe to events pushed by the daemon.
+     *
+     * Any previous subscription in this lane is replaced. The subscription is renewed
+     * automatically whenever the lane reconnects.
+     *
+     * @param context Application context
+     * @param types {@link EventType}s to subscribe to
+     * @param bootBlockdev Boot partition block device to watch for
+     *                     {@link EventType#BOOT_PARTITION_CHANGED}
+     * @param multibootDir MultiBoot directory to watch for {@link EventType#MULTIBOOT_DIR_CHANGED}
+     * @param listener Listener for the events
+     * @return Types that the daemon is watching or null if mbtool does not support events
+     * @throws IOException When any socket communication error occurs
+     */
+    @Nullable
+    public synchronized short[] subscribeEvents(Context context, short[] types,
+                                                @Nullable String bootBlockdev,
+                                                @Nullable String multibootDir,
+                                                EventListener listener) throws IOException {
+        connect(context);
+
+        EventSubscription subscription = new EventSubscription();
+        subscription.types = types;
+        subscription.bootBlockdev = bootBlockdev;
+        subscription.multibootDir = multibootDir;
+        subscription.listener = listener;
+
+        short[] watching = sendEventSubscription(subscription);
+        // Don't keep asking a daemon that doesn't support events
+        mSubscription = watching != null ? subscription : null;
+        return watching;
+    }
+
+    /**
+     * Stop receiving events in this lane.
+     *
+     * @param context Application context
+     * @throws IOException When any socket communication error occurs
+     */
+    public synchronized void unsubscribeEvents(Context context) throws IOException {
+        if (mSubscription == null) {
+            return;
+        }
+        mSubscription = null;
+
+        if (mConn == null || mConn.isClosed()) {
+            return;
+        }
+        mConn.setEventHandler(null);
+
+        EventSubscription empty = new EventSubscription();
+        empty.types = new short[0];
+        sendEventSubscription(empty);
+    }
+
+    @Nullable
+    private synchronized short[] sendEventSubscription(final EventSubscription subscription)
+            throws IOException {
+        if (subscription.listener != null) {
+            mConn.setEventHandler(new MbtoolConnection.ResponseHandler() {
+                @Override
+                public void onResponse(Response response) {
+                    EventNotification notification = (EventNotification)
+                            response.response(new EventNotification());
+                    if (notification == null) {
+                        return;
+                    }
+
+                    Event event = new Event();
+                    event.type = notification.type();
+                    event.romId = notification.romId();
+                    event.path = notification.path();
+                    subscription.listener.onEvent(event);
                 }
 
-                fbExclusions = PathGetDirectorySizeRequest.createExclusionsVector(
-                        builder, exclusionOffsets);
-            }
-            PathGetDirectorySizeRequest.startPathGetDirectorySizeRequest(builder);
-            PathGetDirectorySizeRequest.addPath(builder, fbPath);
-            PathGetDirectorySizeRequest.addExclusions(builder, fbExclusions);
-            int fbRequest = PathGetDirectorySizeRequest.endPathGetDirectorySizeRequest(builder);
+                @Override
+                public void onFailure(IOException e) {
+                    subscription.listener.onDisconnected();
+                }
+            });
+        }
 
-            // Send request
-            PathGetDirectorySizeResponse response = (PathGetDirectorySizeResponse)
-                    sendRequest(builder, fbRequest, RequestType.PathGetDirectorySizeRequest,
-                            ResponseType.PathGetDirectorySizeResponse);
+        // Create request
+        FlatBufferBuilder builder = MbtoolCodec.obtainBuilder();
+        int fbTypes = EventSubscribeRequest.createTypesVector(builder, subscription.types);
+        int fbBootBlockdev = subscription.bootBlockdev != null
+                ? builder.createString(subscription.bootBlockdev) : 0;
+        int fbMultibootDir = subscription.multibootDir != null
+                ? builder.createString(subscription.multibootDir) : 0;
+        EventSubscribeRequest.startEventSubscribeRequest(builder);
+        EventSubscribeRequest.addTypes(builder, fbTypes);
+        EventSubscribeRequest.addBootBlockdev(builder, fbBootBlockdev);
+        EventSubscribeRequest.addMultibootDir(builder, fbMultibootDir);
+        int fbRequest = EventSubscribeRequest.endEventSubscribeRequest(builder);
+
+        // Send request
+        Response rawResponse = sendRawRequest(
+                builder, fbRequest, RequestType.EventSubscribeRequest);
+
+        if (rawResponse.responseType() == ResponseType.Unsupported) {
+            Log.w(TAG, "mbtool does not support events");
+            mConn.setEventHandler(null);
+            return null;
+        }
 
-            if (!response.success()) {
-                Log.e(TAG, "Failed to set directory size for " + path + ": " + response.errorMsg());
-                return -1;
-            }
+        EventSubscribeResponse response = (EventSubscribeResponse)
+                unwrapResponse(rawResponse, ResponseType.EventSubscribeResponse);
 
-            return response.size();
-        } catch (IOException e) {
-            disconnect();
-            throw e;
+        if (!response.success()) {
+            Log.e(TAG, "Failed to subscribe to events: " + response.errorMsg());
+            mConn.setEventHandler(null);
+            return null;
         }
+
+        short[] watching = new short[response.typesLength()];
+        for (int i = 0; i < watching.length; i++) {
+            watching[i] = response.types(i);
+        }
+        return watching;
+    }
+
+    /**
+     * Get an asynchronous interface to this lane.
+     *
+     * @return Asynchronous interface without a timeout
+     */
+    @NonNull
+    public MbtoolAsync async() {
+        return new MbtoolAsync(this, 0);
+    }
+
+    /**
+     * Create a batch of requests that will be sent to mbtool in a single round trip.
+     *
+     * @return New empty batch
+     */
+    @NonNull
+    public MbtoolBatch newBatch() {
+        return new MbtoolBatch(this);
     }
 
     // Private helper functions
 
+    /**
+     * Listener for a request that sends intermediate responses and can be stopped with a
+     * RequestCancelRequest when a {@link CancellationSignal} is triggered.
+     */
+    private abstract class CancellableStream implements MbtoolConnection.StreamListener,
+            CancellationSignal.OnCancelListener {
+        private final Context mContext;
+        private final CancellationSignal mSignal;
+        private final AtomicLong mRequestId = new AtomicLong();
+
+        CancellableStream(Context context, @Nullable CancellationSignal signal) {
+            mContext = context;
+            mSignal = signal;
+        }
+
+        abstract void onProgress(Response response);
+
+        @Override
+        public void onRequestId(long id) {
+            mRequestId.set(id);
+        }
+
+        @Override
+        public void onIntermediateResponse(Response response) {
+            onProgress(response);
+
+            // The cancel request may have reached mbtool before the request started
+            if (mSignal != null && mSignal.isCanceled()) {
+                onCancel();
+            }
+        }
+
+        @Override
+        public void onCancel() {
+            long id = mRequestId.get();
+            if (id != 0) {
+                async().requestCancel(mContext, id);
+            }
+        }
+
+        @NonNull
+        Response send(FlatBufferBuilder builder, int fbRequest, byte fbRequestType)
+                throws IOException {
+            if (mSignal != null) {
+                mSignal.setOnCancelListener(this);
+            }
+            try {
+                return sendRawRequest(builder, fbRequest, fbRequestType, null, this);
+            } finally {
+                if (mSignal != null) {
+                    mSignal.setOnCancelListener(null);
+                }
+            }
+        }
+    }
+
+    @NonNull
+    Table sendRequest(FlatBufferBuilder builder, int fbRequest,
+                      byte fbRequestType, byte expected) throws IOException {
+        return unwrapResponse(sendRawRequest(builder, fbRequest, fbRequestType), expected);
+    }
+
     @NonNull
-    private synchronized Table sendRequest(FlatBufferBuilder builder, int fbRequest,
-                                           byte fbRequestType, byte expected) throws IOException {
+    Response sendRawRequest(FlatBufferBuilder builder, int fbRequest,
+                            byte fbRequestType) throws IOException {
+        return sendRawRequest(builder, fbRequest, fbRequestType, null);
+    }
+
+    @NonNull
+    Response sendRawRequest(FlatBufferBuilder builder, int fbRequest, byte fbRequestType,
+                            @Nullable List<ParcelFileDescriptor> fds) throws IOException {
+        return sendRawRequest(builder, fbRequest, fbRequestType, fds, null);
+    }
+
+    @NonNull
+    Response sendRawRequest(FlatBufferBuilder builder, int fbRequest, byte fbRequestType,
+                            @Nullable List<ParcelFileDescriptor> fds,
+                            @Nullable MbtoolConnection.StreamListener stream) throws IOException {
         ThreadUtils.enforceExecutionOnNonMainThread();
 
-        Request.startRequest(builder);
-        Request.addRequestType(builder, fbRequestType);
-        Request.addRequest(builder, fbRequest);
-        builder.finish(Request.endRequest(builder));
+        MbtoolConnection conn;
+        synchronized (this) {
+            conn = mConn;
+        }
+        if (conn == null) {
+            throw new IOException("Not connected to mbtool");
+        }
 
-        SocketUtils.writeBytes(mSocketOS, builder.sizedByteArray());
+        // Only the calling thread waits for the response. Other threads can send requests over
+        // the same connection in the meantime.
+        return conn.transact(builder, fbRequest, fbRequestType, fds, stream);
+    }
 
-        byte[] responseBytes = SocketUtils.readBytes(mSocketIS);
-        ByteBuffer bb = ByteBuffer.wrap(responseBytes);
-        Response response = Response.getRootAsResponse(bb);
+    /**
+     * Send a request without waiting for the response.
+     *
+     * @param handler Handler that receives the response on the connection's reader thread
+     * @throws IOException When any socket communication error occurs
+     */
+    void submitRawRequest(FlatBufferBuilder builder, int fbRequest, byte fbRequestType,
+                          MbtoolConnection.ResponseHandler handler) throws IOException {
+        submitRawRequest(builder, fbRequest, fbRequestType, handler, null);
+    }
+
+    /**
+     * Send a request without waiting for the final response.
+     *
+     * @param handler Handler that receives the final response on the connection's reader thread
+     * @param stream Listener for the request ID and the intermediate responses
+     * @throws IOException When any socket communication error occurs
+     */
+    void submitRawRequest(FlatBufferBuilder builder, int fbRequest, byte fbRequestType,
+                          MbtoolConnection.ResponseHandler handler,
+                          @Nullable MbtoolConnection.StreamListener stream) throws IOException {
+        MbtoolConnection conn;
+        synchronized (this) {
+            conn = mConn;
+        }
+        if (conn == null) {
+            throw new IOException("Not connected to mbtool");
+        }
+
+        conn.submit(builder, fbRequest, fbRequestType, handler, stream);
+    }
 
+    @NonNull
+    static Table unwrapResponse(Response response, byte expected) throws IOException {
         if (response.responseType() == ResponseType.Unsupported) {
             throw new IOException("Unsupported command");
         } else if (response.responseType() == ResponseType.Invalid) {
@@ -1253,9 +2315,37 @@ public class MbtoolSocket {
         case ResponseType.RebootResponse:
             table = new RebootResponse();
             break;
+        case ResponseType.ResponseBatch:
+            table = new ResponseBatch();
+            break;
+        case ResponseType.PathOpenFdResponse:
+            table = new PathOpenFdResponse();
+            break;
+        case ResponseType.PathHashResponse:
+            table = new PathHashResponse();
+            break;
+        case ResponseType.SetCompressionResponse:
+            table = new SetCompressionResponse();
+            break;
+        case ResponseType.PathCopyStreamResponse:
+            table = new PathCopyStreamResponse();
+            break;
+        case ResponseType.RequestCancelResponse:
+            table = new RequestCancelResponse();
+            break;
+        case ResponseType.PathGetDirectorySizeStreamResponse:
+            table = new PathGetDirectorySizeStreamResponse();
+            break;
+        case ResponseType.EventSubscribeResponse:
+            table = new EventSubscribeResponse();
+            break;
+        case ResponseType.PathListDirectoryResponse:
+            table = new PathListDirectoryResponse();
+            break;
         default:
             throw new IOException("Invalid response type");
         }
+        MbtoolCodec.countObject();
 
         Table ret = response.response(table);
 
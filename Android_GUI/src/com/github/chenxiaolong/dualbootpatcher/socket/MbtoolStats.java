@@ -0,0 +1,325 @@
+/*
+ * Copyright (C) 2015  Andrew Gunnerson <andrewgunnerson@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.chenxiaolong.dualbootpatcher.socket;
+
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import org.apache.commons.io.Charsets;
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import mbtool.daemon.v3.RequestType;
+
+/**
+ * Latency and traffic statistics for mbtool requests.
+ *
+ * Every request sent through {@link MbtoolConnection} is recorded under its request type:
+ * - Queue wait: time between the request being submitted and it being written to the socket
+ * - Round trip: time between the request being written and its response arriving
+ * - Number of request and response bytes
+ * - Number of requests that failed with an I/O error
+ *
+ * Recording only updates atomic counters and never blocks, so it is always enabled.
+ */
+public final class MbtoolStats {
+    private static final String TAG = MbtoolStats.class.getSimpleName();
+
+    private static final AtomicReferenceArray<RequestStats> sStats =
+            new AtomicReferenceArray<>(256);
+
+    private static final AtomicLong sCompressionRawBytes = new AtomicLong();
+    private static final AtomicLong sCompressionWireBytes = new AtomicLong();
+
+    private MbtoolStats() {
+    }
+
+    /**
+     * Histogram of non-negative values with logarithmic buckets.
+     *
+     * Each power of two is split into {@link #SUB_BUCKETS} linear buckets, so the reported
+     * values are accurate to within 1/8 (12.5%) regardless of magnitude.
+     */
+    public static final class Histogram {
+        private static final int SUB_BUCKET_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+        private final AtomicLongArray mCounts = new AtomicLongArray(BUCKETS);
+        private final AtomicLong mCount = new AtomicLong();
+        private final AtomicLong mSum = new AtomicLong();
+        private final AtomicLong mMax = new AtomicLong();
+
+        void record(long value) {
+            if (value < 0) {
+                value = 0;
+            }
+
+            mCounts.incrementAndGet(bucketIndex(value));
+            mCount.incrementAndGet();
+            mSum.addAndGet(value);
+
+            long max;
+            do {
+                max = mMax.get();
+            } while (value > max && !mMax.compareAndSet(max, value));
+        }
+
+        public long getCount() {
+            return mCount.get();
+        }
+
+        public long getMean() {
+            long count = mCount.get();
+            return count == 0 ? 0 : mSum.get() / count;
+        }
+
+        public long getMax() {
+            return mMax.get();
+        }
+
+        /**
+         * Get the value below which a percentage of the recorded values fall
+         *
+         * @param percentile Percentile between 0 and 100
+         * @return Upper bound of the bucket containing the percentile or 0 if nothing has been
+         *         recorded
+         */
+        public long getPercentile(double percentile) {
+            long count = mCount.get();
+            if (count == 0) {
+                return 0;
+            }
+
+            long target = Math.max(1, (long) Math.ceil(count * percentile / 100.0));
+            long seen = 0;
+
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += mCounts.get(i);
+                if (seen >= target) {
+                    return Math.min(bucketUpperBound(i), mMax.get());
+                }
+            }
+
+            return mMax.get();
+        }
+
+        private static int bucketIndex(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int shift = exponent - SUB_BUCKET_BITS;
+            int mantissa = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+            return (shift + 1) * SUB_BUCKETS + mantissa;
+        }
+
+        private static long bucketUpperBound(int index) {
+            if (index < SUB_BUCKETS) {
+                return index;
+            }
+
+            int shift = index / SUB_BUCKETS - 1;
+            long lower = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+            return lower + (1L << shift) - 1;
+        }
+    }
+
+    public static final class RequestStats {
+        /** Time spent waiting to be sent in microseconds */
+        public final Histogram queueWait = new Histogram();
+        /** Time from being sent to receiving the response in microseconds */
+        public final Histogram roundTrip = new Histogram();
+
+        private final AtomicLong mRequestBytes = new AtomicLong();
+        private final AtomicLong mResponseBytes = new AtomicLong();
+        private final AtomicLong mFailures = new AtomicLong();
+
+        public long getRequestBytes() {
+            return mRequestBytes.get();
+        }
+
+        public long getResponseBytes() {
+            return mResponseBytes.get();
+        }
+
+        public long getFailures() {
+            return mFailures.get();
+        }
+    }
+
+    private static RequestStats getOrCreate(byte requestType) {
+        int index = requestType & 0xff;
+        RequestStats stats = sStats.get(index);
+        if (stats == null) {
+            sStats.compareAndSet(index, null, new RequestStats());
+            stats = sStats.get(index);
+        }
+        return stats;
+    }
+
+    /**
+     * Record a completed request
+     *
+     * @param requestType Type of the request
+     * @param queueNanos Time spent waiting to be sent
+     * @param roundTripNanos Time from being sent to receiving the response
+     * @param requestBytes Size of the request
+     * @param responseBytes Size of the response
+     */
+    static void record(byte requestType, long queueNanos, long roundTripNanos,
+                       int requestBytes, int responseBytes) {
+        RequestStats stats = getOrCreate(requestType);
+        stats.queueWait.record(queueNanos / 1000);
+        stats.roundTrip.record(roundTripNanos / 1000);
+        stats.mRequestBytes.addAndGet(requestBytes);
+        stats.mResponseBytes.addAndGet(responseBytes);
+    }
+
+    /**
+     * Record a request that failed due to an I/O error
+     *
+     * @param requestType Type of the request
+     */
+    static void recordFailure(byte requestType) {
+        getOrCreate(requestType).mFailures.incrementAndGet();
+    }
+
+    /**
+     * Record a payload that was eligible for compression
+     *
+     * @param rawBytes Uncompressed size
+     * @param wireBytes Size sent over the socket
+     */
+    static void recordCompression(long rawBytes, long wireBytes) {
+        sCompressionRawBytes.addAndGet(rawBytes);
+        sCompressionWireBytes.addAndGet(wireBytes);
+    }
+
+    /** Uncompressed size of the payloads that were eligible for compression */
+    public static long getCompressionRawBytes() {
+        return sCompressionRawBytes.get();
+    }
+
+    /** Size of the payloads that were eligible for compression as sent over the socket */
+    public static long getCompressionWireBytes() {
+        return sCompressionWireBytes.get();
+    }
+
+    /**
+     * Get the statistics for a request type
+     *
+     * @param requestType Type of the request (one of the {@link RequestType} constants)
+     * @return Statistics or null if no request of that type has been sent
+     */
+    @Nullable
+    public static RequestStats get(byte requestType) {
+        return sStats.get(requestType & 0xff);
+    }
+
+    /**
+     * Clear all statistics
+     */
+    public static void reset() {
+        for (int i = 0; i < sStats.length(); i++) {
+            sStats.set(i, null);
+        }
+        sCompressionRawBytes.set(0);
+        sCompressionWireBytes.set(0);
+    }
+
+    /**
+     * Format the statistics of every request type that has been sent as a table
+     *
+     * All times are in microseconds.
+     *
+     * @return Text dump
+     */
+    public static String dump() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.US,
+                "%-28s %7s %5s %9s %9s %9s %9s %9s %9s %11s %11s\n",
+                "request", "count", "fail", "wait_p50", "wait_p99", "rtt_p50", "rtt_p90",
+                "rtt_p99", "rtt_max", "req_bytes", "resp_bytes"));
+
+        for (int i = 0; i < sStats.length(); i++) {
+            RequestStats stats = sStats.get(i);
+            if (stats == null) {
+                continue;
+            }
+
+            sb.append(String.format(Locale.US,
+                    "%-28s %7d %5d %9d %9d %9d %9d %9d %9d %11d %11d\n",
+                    getName(i), stats.roundTrip.getCount(), stats.getFailures(),
+                    stats.queueWait.getPercentile(50), stats.queueWait.getPercentile(99),
+                    stats.roundTrip.getPercentile(50), stats.roundTrip.getPercentile(90),
+                    stats.roundTrip.getPercentile(99), stats.roundTrip.getMax(),
+                    stats.getRequestBytes(), stats.getResponseBytes()));
+        }
+
+        long raw = sCompressionRawBytes.get();
+        if (raw > 0) {
+            sb.append(String.format(Locale.US, "compression: %d -> %d bytes (%.1f%%)\n",
+                    raw, sCompressionWireBytes.get(),
+                    sCompressionWireBytes.get() * 100.0 / raw));
+        }
+
+        sb.append(String.format(Locale.US,
+                "codec: %d builders, %d buffers (%d bytes), %d per-request objects\n",
+                MbtoolCodec.getBuilderAllocations(), MbtoolCodec.getBufferAllocations(),
+                MbtoolCodec.getBytesAllocated(), MbtoolCodec.getObjectAllocations()));
+
+        return sb.toString();
+    }
+
+    /**
+     * Write {@link #dump()} to a file
+     *
+     * @param file Output file
+     */
+    public static void dump(File file) {
+        Writer writer = null;
+
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(file), Charsets.UTF_8);
+            writer.write(dump());
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write " + file, e);
+        } finally {
+            IOUtils.closeQuietly(writer);
+        }
+    }
+
+    private static String getName(int requestType) {
+        try {
+            return RequestType.name(requestType);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            return "Unknown(" + requestType + ")";
+        }
+    }
+}
@@ -22,10 +22,17 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 
 @SuppressWarnings("unused")
 public class SocketUtils {
+    /** Scratch space for encoding and decoding integers without allocating */
+    private static final ThreadLocal<byte[]> sScratch = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[8];
+        }
+    };
+
     public static void readFully(InputStream is, byte[] buf, int offset,
                                  int length) throws IOException {
         while (length > 0) {
@@ -54,34 +61,84 @@ public class SocketUtils {
         os.write(bytes);
     }
 
+    /**
+     * Write a length-prefixed message from a heap buffer.
+     *
+     * The bytes between the buffer's position and limit are written. If there are at least four
+     * unused bytes before the position (as is the case for a finished {@link
+     * com.google.flatbuffers.FlatBufferBuilder}), the length is stored there so that the whole
+     * message goes out in a single write.
+     */
+    public static void writeBytes(OutputStream os, ByteBuffer bb) throws IOException {
+        int length = bb.remaining();
+        int offset = bb.arrayOffset() + bb.position();
+        byte[] array = bb.array();
+
+        if (bb.position() >= 4) {
+            putInt32(array, offset - 4, length);
+            os.write(array, offset - 4, length + 4);
+        } else {
+            writeInt32(os, length);
+            os.write(array, offset, length);
+        }
+    }
+
+    private static long getLittleEndian(byte[] buf, int offset, int size) {
+        long num = 0;
+        for (int i = size - 1; i >= 0; i--) {
+            num = (num << 8) | (buf[offset + i] & 0xff);
+        }
+        return num;
+    }
+
+    private static void putLittleEndian(byte[] buf, int offset, int size, long num) {
+        for (int i = 0; i < size; i++) {
+            buf[offset + i] = (byte) (num >>> (i * 8));
+        }
+    }
+
+    public static int getInt32(byte[] buf, int offset) {
+        return (int) getLittleEndian(buf, offset, 4);
+    }
+
+    public static void putInt32(byte[] buf, int offset, int num) {
+        putLittleEndian(buf, offset, 4, num);
+    }
+
     public static short readInt16(InputStream is) throws IOException {
-        byte[] buf = new byte[2];
+        byte[] buf = sScratch.get();
         readFully(is, buf, 0, 2);
-        return ByteBuffer.wrap(buf).order(ByteOrder.LITTLE_ENDIAN).getShort();
+        return (short) getLittleEndian(buf, 0, 2);
     }
 
     public static void writeInt16(OutputStream os, short num) throws IOException {
-        os.write(ByteBuffer.allocate(2).order(ByteOrder.LITTLE_ENDIAN).putShort(num).array());
+        byte[] buf = sScratch.get();
+        putLittleEndian(buf, 0, 2, num);
+        os.write(buf, 0, 2);
     }
 
     public static int readInt32(InputStream is) throws IOException {
-        byte[] buf = new byte[4];
+        byte[] buf = sScratch.get();
         readFully(is, buf, 0, 4);
-        return ByteBuffer.wrap(buf).order(ByteOrder.LITTLE_ENDIAN).getInt();
+        return (int) getLittleEndian(buf, 0, 4);
     }
 
     public static void writeInt32(OutputStream os, int num) throws IOException {
-        os.write(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(num).array());
+        byte[] buf = sScratch.get();
+        putLittleEndian(buf, 0, 4, num);
+        os.write(buf, 0, 4);
     }
 
     public static long readInt64(InputStream is) throws IOException {
-        byte[] buf = new byte[8];
+        byte[] buf = sScratch.get();
         readFully(is, buf, 0, 8);
-        return ByteBuffer.wrap(buf).order(ByteOrder.LITTLE_ENDIAN).getLong();
+        return getLittleEndian(buf, 0, 8);
     }
 
     public static void writeInt64(OutputStream os, long num) throws IOException {
-        os.write(ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putLong(num).array());
+        byte[] buf = sScratch.get();
+        putLittleEndian(buf, 0, 8, num);
+        os.write(buf, 0, 8);
     }
 
     public static String readString(InputStream is) throws IOException {
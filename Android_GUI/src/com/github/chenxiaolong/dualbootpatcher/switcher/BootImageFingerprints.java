@@ -0,0 +1,261 @@
+/*
+ * Copyright (C) 2015  Andrew Gunnerson <andrewgunnerson@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.chenxiaolong.dualbootpatcher.switcher;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.github.chenxiaolong.dualbootpatcher.nativelib.LibMbp.BootImage;
+import com.github.chenxiaolong.dualbootpatcher.socket.MbtoolSocket;
+import com.github.chenxiaolong.dualbootpatcher.socket.MbtoolSocket.Lane;
+import com.google.gson.annotations.SerializedName;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+
+/**
+ * Persistent index of boot image fingerprints
+ *
+ * A fingerprint holds the ROM ID of a boot image and a digest of every section that libmbp
+ * compares in BootImage.equals(). Once a boot image has been fingerprinted, checking which ROM it
+ * belongs to and whether it matches a ROM's saved boot image does not require loading it again.
+ *
+ * Partitions are keyed by the SHA-256 of their contents, which mbtool computes without sending the
+ * data over the socket. The modification time of a block device says nothing about its contents.
+ * Regular files are keyed by their path, size, and modification time.
+ */
+public class BootImageFingerprints {
+    private static final String TAG = BootImageFingerprints.class.getSimpleName();
+
+    private static final String FILENAME = "boot-image-fingerprints.json";
+
+    /** Maximum number of fingerprints to keep. The least recently used ones are dropped. */
+    private static final int MAX_ENTRIES = 16;
+
+    private static BootImageFingerprints sInstance;
+
+    private final PersistentLruCache<Fingerprint> mEntries;
+
+    public static class Fingerprint {
+        @SerializedName("rom_id")
+        public final String romId;
+        @SerializedName("sections")
+        private final HashMap<String, String> mSections;
+
+        private Fingerprint(String romId, HashMap<String, String> sections) {
+            this.romId = romId;
+            mSections = sections;
+        }
+
+        /**
+         * Check if two boot images have the same contents
+         *
+         * This is equivalent to calling BootImage.equals() on the original boot images.
+         *
+         * @param other Other fingerprint
+         * @return Whether the fingerprints match
+         */
+        public boolean hasSameContents(@NonNull Fingerprint other) {
+            return mSections.equals(other.mSections);
+        }
+    }
+
+    private BootImageFingerprints(File file) {
+        mEntries = new PersistentLruCache<Fingerprint>(file, Fingerprint.class, MAX_ENTRIES) {
+            @Override
+            protected boolean isValid(Fingerprint fp) {
+                return fp.romId != null && fp.mSections != null;
+            }
+        };
+    }
+
+    public static synchronized BootImageFingerprints getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new BootImageFingerprints(new File(context.getCacheDir(), FILENAME));
+            sInstance.mEntries.load();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Get the fingerprint of the boot image in a partition
+     *
+     * If mbtool supports hashing paths, the partition is hashed daemon-side and a cached
+     * fingerprint is returned if the contents have not changed. Otherwise, the partition is read
+     * and parsed without caching the result.
+     *
+     * @param context Application context
+     * @param path Path to partition
+     * @return Fingerprint or null if the partition could not be read or parsed
+     */
+    @Nullable
+    public Fingerprint getForPartition(Context context, String path) {
+        String key = null;
+
+        try {
+            byte[] digest = MbtoolSocket.getInstance(Lane.BULK).pathHash(context, path, 0, 0);
+            if (digest != null) {
+                key = "partition:" + path + ":" + toHex(digest);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to hash " + path, e);
+        }
+
+        if (key != null) {
+            Fingerprint fp = mEntries.get(key);
+            if (fp != null) {
+                return fp;
+            }
+        }
+
+        byte[] data = SwitcherUtils.readPartition(context, path);
+        if (data == null) {
+            return null;
+        }
+
+        BootImage bi = new BootImage();
+        try {
+            if (!bi.load(data)) {
+                Log.e(TAG, "libmbp error code: " + bi.getError());
+                return null;
+            }
+            return create(key, bi);
+        } finally {
+            bi.destroy();
+        }
+    }
+
+    /**
+     * Get the fingerprint of a boot image file
+     *
+     * @param file Boot image file
+     * @return Fingerprint or null if the file does not exist or could not be parsed
+     */
+    @Nullable
+    public Fingerprint getForFile(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+
+        String key = file.getAbsolutePath() + ":" + file.length() + ":" + file.lastModified();
+
+        Fingerprint fp = mEntries.get(key);
+        if (fp != null) {
+            return fp;
+        }
+
+        BootImage bi = new BootImage();
+        try {
+            if (!bi.load(file.getAbsolutePath())) {
+                Log.e(TAG, "libmbp error code: " + bi.getError());
+                return null;
+            }
+            return create(key, bi);
+        } finally {
+            bi.destroy();
+        }
+    }
+
+    @Nullable
+    private Fingerprint create(@Nullable String key, BootImage bi) {
+        String romId = SwitcherUtils.getBootImageRomId(bi);
+        if (romId == null) {
+            return null;
+        }
+
+        Fingerprint fp = new Fingerprint(romId, hashSections(bi));
+
+        if (key != null) {
+            mEntries.put(key, fp);
+        }
+
+        return fp;
+    }
+
+    /**
+     * Hash the same fields that libmbp's BootImage::operator==() compares. The header ID is not
+     * exposed to Java and is not included.
+     */
+    private static HashMap<String, String> hashSections(BootImage bi) {
+        HashMap<String, String> sections = new HashMap<>();
+
+        // The largest sections are hashed in place
+        sections.put("kernel", hash(bi.getKernelImageBuffer()));
+        sections.put("ramdisk", hash(bi.getRamdiskImageBuffer()));
+        sections.put("second", hash(bi.getSecondBootloaderImage()));
+        sections.put("dt", hash(bi.getDeviceTreeImage()));
+        sections.put("aboot", hash(bi.getAbootImage()));
+        sections.put("kernel_mtkhdr", hash(bi.getKernelMtkHeader()));
+        sections.put("ramdisk_mtkhdr", hash(bi.getRamdiskMtkHeader()));
+        sections.put("ipl", hash(bi.getIplImage()));
+        sections.put("rpm", hash(bi.getRpmImage()));
+        sections.put("appsbl", hash(bi.getAppsblImage()));
+        sections.put("sin", hash(bi.getSinImage()));
+
+        sections.put("board_name", bi.getBoardName());
+        sections.put("cmdline", bi.getKernelCmdline());
+        sections.put("page_size", Integer.toString(bi.getPageSize()));
+        sections.put("kernel_address", Integer.toHexString(bi.getKernelAddress()));
+        sections.put("ramdisk_address", Integer.toHexString(bi.getRamdiskAddress()));
+        sections.put("second_address", Integer.toHexString(bi.getSecondBootloaderAddress()));
+        sections.put("tags_address", Integer.toHexString(bi.getKernelTagsAddress()));
+        sections.put("ipl_address", Integer.toHexString(bi.getIplAddress()));
+        sections.put("rpm_address", Integer.toHexString(bi.getRpmAddress()));
+        sections.put("appsbl_address", Integer.toHexString(bi.getAppsblAddress()));
+        sections.put("entrypoint_address", Integer.toHexString(bi.getEntrypointAddress()));
+
+        return sections;
+    }
+
+    @Nullable
+    private static String hash(byte[] data) {
+        if (data == null) {
+            return null;
+        }
+
+        try {
+            return toHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hash(ByteBuffer data) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(data);
+            return toHex(md.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] data) {
+        StringBuilder sb = new StringBuilder(data.length * 2);
+        for (byte b : data) {
+            sb.append(String.format("%02x", b & 0xff));
+        }
+        return sb.toString();
+    }
+}
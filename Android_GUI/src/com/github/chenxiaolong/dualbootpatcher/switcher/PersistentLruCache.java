@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2016  Andrew Gunnerson <andrewgunnerson@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.chenxiaolong.dualbootpatcher.switcher;
+
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import org.apache.commons.io.Charsets;
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU map from string keys to Gson-serializable values that is saved to a JSON file
+ *
+ * The whole file is rewritten on every {@link #put(String, Object)}, so this is only meant for
+ * small caches that change rarely.
+ */
+class PersistentLruCache<V> {
+    private static final String TAG = PersistentLruCache.class.getSimpleName();
+
+    private final File mFile;
+    private final Class<V> mValueClass;
+    private final Gson mGson = new Gson();
+    private final LinkedHashMap<String, V> mEntries;
+
+    /**
+     * @param file JSON file to load from and save to
+     * @param valueClass Class of the values
+     * @param maxEntries Maximum number of entries to keep. The least recently used ones are
+     *                   dropped.
+     */
+    PersistentLruCache(File file, Class<V> valueClass, final int maxEntries) {
+        mFile = file;
+        mValueClass = valueClass;
+        mEntries = new LinkedHashMap<String, V>(maxEntries, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Whether a value read from the file is usable. Invalid values are dropped.
+     */
+    protected boolean isValid(V value) {
+        return true;
+    }
+
+    @Nullable
+    synchronized V get(String key) {
+        return mEntries.get(key);
+    }
+
+    /**
+     * Add or replace an entry and save the file
+     */
+    synchronized void put(String key, V value) {
+        mEntries.put(key, value);
+        save();
+    }
+
+    synchronized void load() {
+        JsonReader reader = null;
+
+        try {
+            reader = new JsonReader(new InputStreamReader(
+                    new FileInputStream(mFile), Charsets.UTF_8));
+            RawIndex raw = mGson.fromJson(reader, RawIndex.class);
+
+            if (raw != null && raw.entries != null) {
+                for (RawEntry entry : raw.entries) {
+                    if (entry.key == null || entry.value == null) {
+                        continue;
+                    }
+                    V value = mGson.fromJson(entry.value, mValueClass);
+                    if (value != null && isValid(value)) {
+                        mEntries.put(entry.key, value);
+                    }
+                }
+            }
+        } catch (FileNotFoundException e) {
+            // Nothing cached yet
+        } catch (JsonParseException e) {
+            Log.e(TAG, "Failed to parse " + mFile, e);
+        } finally {
+            IOUtils.closeQuietly(reader);
+        }
+    }
+
+    private void save() {
+        RawIndex raw = new RawIndex();
+        raw.entries = new RawEntry[mEntries.size()];
+
+        int i = 0;
+        for (Map.Entry<String, V> entry : mEntries.entrySet()) {
+            RawEntry rawEntry = new RawEntry();
+            rawEntry.key = entry.getKey();
+            rawEntry.value = mGson.toJsonTree(entry.getValue(), mValueClass);
+            raw.entries[i++] = rawEntry;
+        }
+
+        JsonWriter writer = null;
+
+        try {
+            writer = new JsonWriter(new OutputStreamWriter(
+                    new FileOutputStream(mFile), Charsets.UTF_8));
+            mGson.toJson(raw, RawIndex.class, writer);
+        } catch (IOException | JsonParseException e) {
+            Log.e(TAG, "Failed to write " + mFile, e);
+        } finally {
+            IOUtils.closeQuietly(writer);
+        }
+    }
+
+    private static class RawIndex {
+        @SerializedName("entries")
+        RawEntry[] entries;
+    }
+
+    private static class RawEntry {
+        @SerializedName("key")
+        String key;
+        @SerializedName("value")
+        JsonElement value;
+    }
+}
@@ -90,6 +90,7 @@ import com.github.chenxiaolong.dualbootpatcher.switcher.service.CacheWallpaperTa
         .CacheWallpaperTaskListener;
 import com.github.chenxiaolong.dualbootpatcher.switcher.service.CreateLauncherTask
         .CreateLauncherTaskListener;
+import com.github.chenxiaolong.dualbootpatcher.switcher.service.GetRomDetailsTask;
 import com.github.chenxiaolong.dualbootpatcher.switcher.service.GetRomDetailsTask
         .GetRomDetailsTaskListener;
 import com.github.chenxiaolong.dualbootpatcher.switcher.service.SetKernelTask.SetKernelTaskListener;
@@ -936,6 +937,26 @@ public class RomDetailActivity extends AppCompatActivity implements
         }
     }
 
+    private void onSizeProgress(int which, long size) {
+        int item;
+        switch (which) {
+        case GetRomDetailsTask.SIZE_SYSTEM:
+            item = INFO_SYSTEM_SIZE;
+            break;
+        case GetRomDetailsTask.SIZE_CACHE:
+            item = INFO_CACHE_SIZE;
+            break;
+        case GetRomDetailsTask.SIZE_DATA:
+            item = INFO_DATA_SIZE;
+            break;
+        default:
+            return;
+        }
+
+        setInfoItem(item, getString(R.string.rom_details_info_calculating_partial,
+                FileUtils.toHumanReadableSize(this, size, 2)));
+    }
+
     private void onHavePackagesCounts(boolean success, int systemPackages, int updatedPackages,
                                       int userPackages) {
         if (success) {
@@ -1150,6 +1171,19 @@ public class RomDetailActivity extends AppCompatActivity implements
             }
         }
 
+        @Override
+        public void onRomDetailsSizeProgress(int taskId, RomInformation romInfo,
+                                             final int which, final long size) {
+            if (taskId == mTaskIdGetRomDetails) {
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onSizeProgress(which, size);
+                    }
+                });
+            }
+        }
+
         @Override
         public void onRomDetailsGotPackagesCounts(int taskId, RomInformation romInfo,
                                                   final boolean success, final int systemPackages,
@@ -23,6 +23,7 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.ServiceConnection;
 import android.os.Bundle;
+import android.os.Environment;
 import android.os.Handler;
 import android.os.IBinder;
 import android.os.Looper;
@@ -55,6 +56,9 @@ import com.github.chenxiaolong.dualbootpatcher.dialogs.GenericProgressDialog;
 import com.github.chenxiaolong.dualbootpatcher.dialogs.GenericYesNoDialog;
 import com.github.chenxiaolong.dualbootpatcher.dialogs.GenericYesNoDialog
         .GenericYesNoDialogListener;
+import com.github.chenxiaolong.dualbootpatcher.socket.MbtoolSocket;
+import com.github.chenxiaolong.dualbootpatcher.socket.MbtoolSocket.Event;
+import com.github.chenxiaolong.dualbootpatcher.socket.MbtoolSocket.EventListener;
 import com.github.chenxiaolong.dualbootpatcher.socket.MbtoolSocket.SetKernelResult;
 import com.github.chenxiaolong.dualbootpatcher.socket.MbtoolSocket.SwitchRomResult;
 import com.github.chenxiaolong.dualbootpatcher.switcher.ConfirmChecksumIssueDialog
@@ -69,9 +73,16 @@ import com.github.chenxiaolong.dualbootpatcher.switcher.service.GetRomsStateTask
 import com.github.chenxiaolong.dualbootpatcher.switcher.service.SetKernelTask.SetKernelTaskListener;
 import com.github.chenxiaolong.dualbootpatcher.switcher.service.SwitchRomTask.SwitchRomTaskListener;
 import com.github.chenxiaolong.dualbootpatcher.views.SwipeRefreshLayoutWorkaround;
+import com.squareup.picasso.Picasso;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import mbtool.daemon.v3.EventType;
 
 public class SwitcherListFragment extends Fragment implements
         RomCardActionListener, SetKernelNeededDialogListener, ConfirmChecksumIssueDialogListener,
@@ -138,6 +149,28 @@ public class SwitcherListFragment extends Fragment implements
 
     private static final int REQUEST_FLASH_ZIP = 2345;
 
+    /** Changes pushed by mbtool often come in bursts (eg. while a ROM is being installed) */
+    private static final long EVENT_RELOAD_DELAY_MS = 1000;
+
+    private static final short[] EVENT_TYPES = new short[] {
+            EventType.ROMS_CHANGED,
+            EventType.BOOT_PARTITION_CHANGED,
+            EventType.ACTIVE_ROM_CHANGED,
+            EventType.MULTIBOOT_DIR_CHANGED,
+    };
+
+    /** Subscribes and unsubscribes in order, off the main thread */
+    private final ExecutorService mEventExecutor = Executors.newSingleThreadExecutor();
+    private final MbtoolEventListener mEventListener = new MbtoolEventListener();
+    private final Runnable mReloadRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (!mPerformingAction) {
+                reloadRomsState();
+            }
+        }
+    };
+
     private boolean mPerformingAction;
 
     private CardView mErrorCardView;
@@ -236,6 +269,8 @@ public class SwitcherListFragment extends Fragment implements
         Intent intent = new Intent(getActivity(), SwitcherService.class);
         getActivity().bindService(intent, this, Context.BIND_AUTO_CREATE);
         getActivity().startService(intent);
+
+        subscribeToEvents();
     }
 
     /**
@@ -254,11 +289,105 @@ public class SwitcherListFragment extends Fragment implements
         getActivity().unbindService(this);
         mService = null;
 
+        unsubscribeFromEvents();
+
         // At this point, the mCallback will not get called anymore by the service. Now we just need
         // to remove all pending Runnables that were posted to mHandler.
         mHandler.removeCallbacksAndMessages(null);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+
+        // Let a pending unsubscribe finish
+        mEventExecutor.shutdown();
+    }
+
+    /**
+     * Ask mbtool to tell us about ROM, boot partition, and MultiBoot directory changes so the list
+     * can be updated without polling
+     */
+    private void subscribeToEvents() {
+        final Context context = getActivity().getApplicationContext();
+        final String multibootDir = Environment.getExternalStorageDirectory()
+                + File.separator + "MultiBoot";
+
+        mEventExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // The first lookup loads the device list from libmbp
+                String bootBlockdev = SwitcherUtils.getBootPartition(context);
+
+                try {
+                    short[] watching = MbtoolSocket.getInstance().subscribeEvents(
+                            context, EVENT_TYPES, bootBlockdev, multibootDir, mEventListener);
+                    if (watching == null) {
+                        Log.w(TAG, "mbtool events are not available");
+                    }
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed to subscribe to mbtool events", e);
+                }
+            }
+        });
+    }
+
+    private void unsubscribeFromEvents() {
+        final Context context = getActivity().getApplicationContext();
+
+        mEventExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    MbtoolSocket.getInstance().unsubscribeEvents(context);
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed to unsubscribe from mbtool events", e);
+                }
+            }
+        });
+    }
+
+    private void scheduleReload() {
+        mHandler.removeCallbacks(mReloadRunnable);
+        mHandler.postDelayed(mReloadRunnable, EVENT_RELOAD_DELAY_MS);
+    }
+
+    private void onEvent(Event event) {
+        switch (event.type) {
+        case EventType.ACTIVE_ROM_CHANGED:
+            // Our own switches are handled by onSwitchedRom()
+            if (!mPerformingAction && event.romId != null
+                    && !event.romId.equals(mActiveRomId)) {
+                mActiveRomId = event.romId;
+                mRomCardAdapter.setActiveRomId(mActiveRomId);
+                mRomCardAdapter.notifyDataSetChanged();
+            }
+            break;
+        case EventType.ROMS_CHANGED:
+            scheduleReload();
+            break;
+        case EventType.BOOT_PARTITION_CHANGED:
+            // Switching ROMs or setting the kernel from here writes the boot partition too
+            if (!mPerformingAction) {
+                scheduleReload();
+            }
+            break;
+        case EventType.MULTIBOOT_DIR_CHANGED:
+            // Only the thumbnails are shown in the list
+            for (int i = 0; i < mRoms.size(); i++) {
+                String thumbnailPath = mRoms.get(i).getThumbnailPath();
+                if (thumbnailPath != null && thumbnailPath.equals(event.path)) {
+                    Picasso.with(getActivity()).invalidate(new File(thumbnailPath));
+                    mRomCardAdapter.notifyItemChanged(i);
+                }
+            }
+            break;
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -787,6 +916,29 @@ public class SwitcherListFragment extends Fragment implements
         switchRom(romId, true);
     }
 
+    private class MbtoolEventListener implements EventListener {
+        @Override
+        public void onEvent(final Event event) {
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    SwitcherListFragment.this.onEvent(event);
+                }
+            });
+        }
+
+        @Override
+        public void onDisconnected() {
+            // Changes may have been missed. Reloading also reconnects and subscribes again.
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    scheduleReload();
+                }
+            });
+        }
+    }
+
     private class SwitcherEventCallback implements GetRomsStateTaskListener, SwitchRomTaskListener,
             SetKernelTaskListener {
         @Override
@@ -45,6 +45,7 @@ import com.github.chenxiaolong.dualbootpatcher.switcher.service.GetRomDetailsTas
 import com.github.chenxiaolong.dualbootpatcher.switcher.service.GetRomsStateTask;
 import com.github.chenxiaolong.dualbootpatcher.switcher.service.GetRomsStateTask
         .GetRomsStateTaskListener;
+import com.github.chenxiaolong.dualbootpatcher.switcher.service.OutputRingBuffer;
 import com.github.chenxiaolong.dualbootpatcher.switcher.service.SetKernelTask;
 import com.github.chenxiaolong.dualbootpatcher.switcher.service.SetKernelTask.SetKernelTaskListener;
 import com.github.chenxiaolong.dualbootpatcher.switcher.service.SwitchRomTask;
@@ -161,6 +162,10 @@ public class SwitcherService extends ThreadPoolService {
 
     public boolean removeCachedTask(int taskId) {
         BaseServiceTask task = removeTask(taskId);
+        if (task != null) {
+            // Nobody is interested in the result anymore
+            task.cancel();
+        }
         return task != null;
     }
 
@@ -415,8 +420,21 @@ public class SwitcherService extends ThreadPoolService {
     // In-app flashing
 
     public int flashZips(PendingAction[] actions) {
+        return flashZips(actions, false);
+    }
+
+    /**
+     * Flash zips after verifying all of them
+     *
+     * @param actions Pending actions
+     * @param verifyIntegrity Whether to check the CRC32 of every entry in every zip before
+     *                        flashing
+     * @return Task ID
+     */
+    public int flashZips(PendingAction[] actions, boolean verifyIntegrity) {
         int taskId = sNewTaskId.getAndIncrement();
-        FlashZipsTask task = new FlashZipsTask(taskId, this, actions, mFlashZipsTaskListener);
+        FlashZipsTask task = new FlashZipsTask(
+                taskId, this, actions, verifyIntegrity, mFlashZipsTaskListener);
         enqueueTask(task);
         return taskId;
     }
@@ -461,9 +479,9 @@ public class SwitcherService extends ThreadPoolService {
         return task.mFailed;
     }
 
-    public String[] getResultFlashZipsOutputLines(int taskId) {
+    public OutputRingBuffer getResultFlashZipsOutput(int taskId) {
         FlashZipsTask task = (FlashZipsTask) getTask(taskId);
-        return task.getLines();
+        return task.getOutput();
     }
 
     // Wipe ROM
@@ -602,6 +620,20 @@ public class SwitcherService extends ThreadPoolService {
             });
         }
 
+        @Override
+        public void onRomDetailsSizeProgress(final int taskId, final RomInformation romInfo,
+                                             final int which, final long size) {
+            executeAllCallbacks(new CallbackRunnable() {
+                @Override
+                public void call(BaseServiceTaskListener callback) {
+                    if (callback instanceof GetRomDetailsTaskListener) {
+                        ((GetRomDetailsTaskListener) callback).onRomDetailsSizeProgress(
+                                taskId, romInfo, which, size);
+                    }
+                }
+            });
+        }
+
         @Override
         public void onRomDetailsGotPackagesCounts(final int taskId, final RomInformation romInfo,
                                                   final boolean success, final int systemPackages,
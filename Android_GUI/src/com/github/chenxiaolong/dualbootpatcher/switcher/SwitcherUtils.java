@@ -28,11 +28,17 @@ import com.github.chenxiaolong.dualbootpatcher.Version;
 import com.github.chenxiaolong.dualbootpatcher.Version.VersionParseException;
 import com.github.chenxiaolong.dualbootpatcher.nativelib.LibMbp.BootImage;
 import com.github.chenxiaolong.dualbootpatcher.nativelib.LibMbp.CpioFile;
-import com.github.chenxiaolong.dualbootpatcher.nativelib.LibMbp.Device;
-import com.github.chenxiaolong.dualbootpatcher.nativelib.LibMbp.PatcherConfig;
+import com.github.chenxiaolong.dualbootpatcher.patcher.DeviceDatabase;
+import com.github.chenxiaolong.dualbootpatcher.patcher.DeviceDatabase.DeviceInfo;
+import com.github.chenxiaolong.dualbootpatcher.socket.MbtoolBatch.Results;
+import com.github.chenxiaolong.dualbootpatcher.socket.MbtoolFileChannel;
 import com.github.chenxiaolong.dualbootpatcher.socket.MbtoolSocket;
+import com.github.chenxiaolong.dualbootpatcher.socket.MbtoolSocket.CopyResult;
+import com.github.chenxiaolong.dualbootpatcher.socket.MbtoolSocket.Lane;
 import com.github.chenxiaolong.dualbootpatcher.socket.MbtoolUtils;
 import com.github.chenxiaolong.dualbootpatcher.socket.MbtoolUtils.Feature;
+import com.github.chenxiaolong.dualbootpatcher.switcher.BootImageFingerprints.Fingerprint;
+import com.github.chenxiaolong.dualbootpatcher.switcher.ZipMetadataCache.ZipMetadata;
 
 import org.apache.commons.io.Charsets;
 import org.apache.commons.io.IOUtils;
@@ -40,67 +46,30 @@ import org.apache.commons.io.IOUtils;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.util.Enumeration;
-import java.util.Properties;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
 
 public class SwitcherUtils {
     public static final String TAG = SwitcherUtils.class.getSimpleName();
 
-    private static final String ZIP_MULTIBOOT_DIR = "multiboot/";
-    private static final String ZIP_INFO_PROP = ZIP_MULTIBOOT_DIR + "info.prop";
     private static final String PROP_INSTALLER_VERSION = "mbtool.installer.version";
     private static final String PROP_INSTALL_LOCATION = "mbtool.installer.install-location";
 
     public static String getBootPartition(Context context) {
-        String realCodename = RomUtils.getDeviceCodename(context);
-        String bootBlockDev = null;
-
-        PatcherConfig pc = new PatcherConfig();
-        for (Device d : pc.getDevices()) {
-            boolean matches = false;
-
-            for (String codename : d.getCodenames()) {
-                if (realCodename.equals(codename)) {
-                    matches = true;
-                    break;
-                }
-            }
-
-            if (matches) {
-                String[] bootBlockDevs = d.getBootBlockDevs();
-                if (bootBlockDevs.length > 0) {
-                    bootBlockDev = bootBlockDevs[0];
-                }
-                break;
+        DeviceInfo device = DeviceDatabase.getInstance(context).getCurrentDevice(context);
+        if (device != null) {
+            String[] bootBlockDevs = device.getBootBlockDevs();
+            if (bootBlockDevs.length > 0) {
+                return bootBlockDevs[0];
             }
         }
-        pc.destroy();
 
-        return bootBlockDev;
+        return null;
     }
 
     public static String[] getBlockDevSearchDirs(Context context) {
-        String realCodename = RomUtils.getDeviceCodename(context);
-        PatcherConfig pc = new PatcherConfig();
-        for (Device d : pc.getDevices()) {
-            boolean matches = false;
-
-            for (String codename : d.getCodenames()) {
-                if (realCodename.equals(codename)) {
-                    matches = true;
-                    break;
-                }
-            }
-
-            if (matches) {
-                String[] dirs = d.getBlockDevBaseDirs();
-                pc.destroy();
-                return dirs;
-            }
+        DeviceInfo device = DeviceDatabase.getInstance(context).getCurrentDevice(context);
+        if (device != null) {
+            return device.getBlockDevBaseDirs();
         }
-        pc.destroy();
 
         return null;
     }
@@ -108,38 +77,29 @@ public class SwitcherUtils {
     public static VerificationResult verifyZipMbtoolVersion(String zipFile) {
         ThreadUtils.enforceExecutionOnNonMainThread();
 
-        ZipFile zf = null;
-
         try {
-            zf = new ZipFile(zipFile);
-
-            boolean isMultiboot = false;
-
-            Properties prop = null;
-
-            final Enumeration<? extends ZipEntry> entries = zf.entries();
-            while (entries.hasMoreElements()) {
-                final ZipEntry ze = entries.nextElement();
-
-                if (ze.getName().startsWith(ZIP_MULTIBOOT_DIR)) {
-                    isMultiboot = true;
-                }
-                if (ze.getName().equals(ZIP_INFO_PROP)) {
-                    prop = new Properties();
-                    prop.load(zf.getInputStream(ze));
-                    break;
-                }
-            }
+            return verifyZipMbtoolVersion(ZipMetadataCache.read(zipFile));
+        } catch (FileNotFoundException e) {
+            e.printStackTrace();
+            return VerificationResult.ERROR_ZIP_NOT_FOUND;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return VerificationResult.ERROR_ZIP_READ_FAIL;
+        }
+    }
 
-            if (!isMultiboot) {
-                return VerificationResult.ERROR_NOT_MULTIBOOT;
-            }
+    public static VerificationResult verifyZipMbtoolVersion(ZipMetadata metadata) {
+        if (!metadata.isMultiboot()) {
+            return VerificationResult.ERROR_NOT_MULTIBOOT;
+        }
 
-            if (prop == null) {
-                return VerificationResult.ERROR_VERSION_TOO_OLD;
-            }
+        if (!metadata.hasInfoProp()) {
+            return VerificationResult.ERROR_VERSION_TOO_OLD;
+        }
 
-            Version version = new Version(prop.getProperty(PROP_INSTALLER_VERSION, "0.0.0"));
+        try {
+            Version version = new Version(
+                    metadata.getInfoProperty(PROP_INSTALLER_VERSION, "0.0.0"));
             Version minVersion = MbtoolUtils.getMinimumRequiredVersion(Feature.IN_APP_INSTALLATION);
 
             if (version.compareTo(minVersion) < 0) {
@@ -147,55 +107,25 @@ public class SwitcherUtils {
             }
 
             return VerificationResult.NO_ERROR;
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-            return VerificationResult.ERROR_ZIP_NOT_FOUND;
-        } catch (IOException e) {
-            e.printStackTrace();
-            return VerificationResult.ERROR_ZIP_READ_FAIL;
         } catch (VersionParseException e) {
             e.printStackTrace();
             return VerificationResult.ERROR_VERSION_TOO_OLD;
-        } finally {
-            IOUtils.closeQuietly(zf);
         }
     }
 
     public static String getTargetInstallLocation(String zipFile) {
-        ZipFile zf = null;
-
         try {
-            zf = new ZipFile(zipFile);
-
-            Properties prop = null;
-
-            final Enumeration<? extends ZipEntry> entries = zf.entries();
-            while (entries.hasMoreElements()) {
-                final ZipEntry ze = entries.nextElement();
-
-                if (ze.getName().equals(ZIP_INFO_PROP)) {
-                    prop = new Properties();
-                    prop.load(zf.getInputStream(ze));
-                    break;
-                }
-            }
-
-            if (prop == null) {
-                return null;
-            }
-
-            return prop.getProperty(PROP_INSTALL_LOCATION, null);
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-            return null;
+            return getTargetInstallLocation(ZipMetadataCache.read(zipFile));
         } catch (IOException e) {
             e.printStackTrace();
             return null;
-        } finally {
-            IOUtils.closeQuietly(zf);
         }
     }
 
+    public static String getTargetInstallLocation(ZipMetadata metadata) {
+        return metadata.getInfoProperty(PROP_INSTALL_LOCATION, null);
+    }
+
     /**
      * Get ROM ID from a boot image file
      *
@@ -205,21 +135,39 @@ public class SwitcherUtils {
      * and thus "primary" will be returned.
      *
      * @param context Context
-     * @param file Boot image file
+     * @param bootImage Boot image data
      * @return String containing the ROM ID or null if an error occurs within libmbp.
      */
     @Nullable
-    public static String getBootImageRomId(Context context, File file) {
+    public static String getBootImageRomId(Context context, byte[] bootImage) {
         BootImage bi = new BootImage();
-        CpioFile cf = new CpioFile();
 
         try {
-            if (!bi.load(file.getAbsolutePath())) {
+            if (!bi.load(bootImage)) {
                 Log.e(TAG, "libmbp error code: " + bi.getError());
                 return null;
             }
 
-            if (!cf.load(bi.getRamdiskImage())) {
+            return getBootImageRomId(bi);
+        } finally {
+            bi.destroy();
+        }
+    }
+
+    /**
+     * Get ROM ID from a loaded boot image
+     *
+     * @see #getBootImageRomId(Context, byte[])
+     *
+     * @param bi Boot image
+     * @return String containing the ROM ID or null if an error occurs within libmbp.
+     */
+    @Nullable
+    public static String getBootImageRomId(BootImage bi) {
+        CpioFile cf = new CpioFile();
+
+        try {
+            if (!cf.load(bi.getRamdiskImageBuffer())) {
                 Log.e(TAG, "libmbp error code: " + bi.getError());
                 return null;
             }
@@ -246,7 +194,6 @@ public class SwitcherUtils {
 
             return "primary";
         } finally {
-            bi.destroy();
             cf.destroy();
         }
     }
@@ -255,6 +202,7 @@ public class SwitcherUtils {
         NO_ERROR,
         ERROR_ZIP_NOT_FOUND,
         ERROR_ZIP_READ_FAIL,
+        ERROR_ZIP_CORRUPTED,
         ERROR_NOT_MULTIBOOT,
         ERROR_VERSION_TOO_OLD
     }
@@ -280,7 +228,16 @@ public class SwitcherUtils {
         UNKNOWN
     }
 
-    public static KernelStatus compareRomBootImage(RomInformation rom, File bootImageFile) {
+    /**
+     * Compare the boot image of a ROM against the one in the boot partition
+     *
+     * @param context Application context
+     * @param rom ROM whose saved boot image should be compared
+     * @param bootImage Fingerprint of the boot partition
+     * @return Whether the ROM's saved boot image is the one in the boot partition
+     */
+    public static KernelStatus compareRomBootImage(Context context, RomInformation rom,
+                                                   Fingerprint bootImage) {
         if (rom == null) {
             return KernelStatus.UNKNOWN;
         }
@@ -290,25 +247,38 @@ public class SwitcherUtils {
             return KernelStatus.UNSET;
         }
 
-        BootImage biSaved = new BootImage();
-        BootImage biOther = new BootImage();
+        Fingerprint saved = BootImageFingerprints.getInstance(context).getForFile(savedImageFile);
+        if (saved == null) {
+            return KernelStatus.UNKNOWN;
+        }
 
-        try {
-            if (!biSaved.load(savedImageFile.getAbsolutePath())) {
-                Log.e(TAG, "libmbp error code: " + biSaved.getError());
-                return KernelStatus.UNKNOWN;
-            }
-            if (!biOther.load(bootImageFile.getAbsolutePath())) {
-                Log.e(TAG, "libmbp error code: " + biOther.getError());
-                return KernelStatus.UNKNOWN;
-            }
+        return saved.hasSameContents(bootImage)
+                ? KernelStatus.SET
+                : KernelStatus.DIFFERENT;
+    }
 
-            return biSaved.equals(biOther)
-                    ? KernelStatus.SET
-                    : KernelStatus.DIFFERENT;
+    /**
+     * Read a partition (or any other file that only mbtool can access) into memory
+     *
+     * The data is read directly from a file descriptor passed by mbtool if possible, so no
+     * temporary copy is needed.
+     *
+     * @param context Application context
+     * @param path Path to partition
+     * @return Contents of the partition or null if it could not be read
+     */
+    @Nullable
+    public static byte[] readPartition(Context context, String path) {
+        MbtoolFileChannel channel = null;
+
+        try {
+            channel = MbtoolFileChannel.open(context, MbtoolSocket.getInstance(Lane.BULK), path);
+            return IOUtils.toByteArray(channel.newInputStream(), channel.size());
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to read " + path, e);
+            return null;
         } finally {
-            biSaved.destroy();
-            biOther.destroy();
+            IOUtils.closeQuietly(channel);
         }
     }
 
@@ -319,21 +289,32 @@ public class SwitcherUtils {
             return false;
         }
 
-        MbtoolSocket socket = MbtoolSocket.getInstance();
+        MbtoolSocket socket = MbtoolSocket.getInstance(Lane.BULK);
 
         try {
-            if (!socket.pathCopy(context, bootPartition, targetFile.getAbsolutePath())) {
+            // Boot images are mostly padding, so don't write the blocks of zeros. The target is
+            // truncated before copying, so the skipped ranges read back as zeros.
+            CopyResult copy = socket.pathCopyStream(context, bootPartition,
+                    targetFile.getAbsolutePath(), 0, true, null, null);
+            if (!copy.success) {
                 Log.e(TAG, "Failed to copy boot partition to " + targetFile);
                 return false;
             }
-            if (!socket.pathChmod(context, targetFile.getAbsolutePath(), 0644)) {
+
+            // Ensure SELinux label doesn't prevent reading from the file. The label of the parent
+            // directory is fetched in the same round trip as the chmod.
+            Results results = socket.newBatch()
+                    .stopOnError(true)
+                    .pathChmod(targetFile.getAbsolutePath(), 0644)
+                    .pathSelinuxGetLabel(targetFile.getParentFile().getAbsolutePath(), false)
+                    .execute(context);
+
+            if (!results.getBoolean(0)) {
                 Log.e(TAG, "Failed to chmod " + targetFile);
                 return false;
             }
 
-            // Ensure SELinux label doesn't prevent reading from the file
-            String label = socket.pathSelinuxGetLabel(
-                    context, targetFile.getParentFile().getAbsolutePath(), false);
+            String label = results.getString(1);
             if (label != null) {
                 // Ignore errors and hope for the best
                 socket.pathSelinuxSetLabel(context, targetFile.getAbsolutePath(), label, false);
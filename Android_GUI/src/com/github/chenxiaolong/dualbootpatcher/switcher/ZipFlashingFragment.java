@@ -92,6 +92,7 @@ public class ZipFlashingFragment extends Fragment implements FirstUseDialogListe
     private static final String EXTRA_TASK_ID_VERIFY_ZIP = "task_id_verify_zip";
 
     private static final String PREF_SHOW_FIRST_USE_DIALOG = "zip_flashing_first_use_show_dialog";
+    private static final String PREF_VERIFY_INTEGRITY = "zip_flashing_verify_integrity";
 
     /** Request code for file picker (used in {@link #onActivityResult(int, int, Intent)}) */
     private static final int ACTIVITY_REQUEST_FILE = 1000;
@@ -359,6 +360,10 @@ public class ZipFlashingFragment extends Fragment implements FirstUseDialogListe
                 error = getString(R.string.zip_flashing_error_zip_read_fail);
                 break;
 
+            case ERROR_ZIP_CORRUPTED:
+                error = getString(R.string.zip_flashing_error_zip_corrupted);
+                break;
+
             case ERROR_NOT_MULTIBOOT:
                 error = getString(R.string.zip_flashing_error_not_multiboot);
                 break;
@@ -495,6 +500,8 @@ public class ZipFlashingFragment extends Fragment implements FirstUseDialogListe
     public void onActionBarCheckItemClicked() {
         Intent intent = new Intent(getActivity(), ZipFlashingOutputActivity.class);
         intent.putExtra(ZipFlashingOutputFragment.PARAM_PENDING_ACTIONS, getPendingActions());
+        intent.putExtra(ZipFlashingOutputFragment.PARAM_VERIFY_INTEGRITY,
+                mPrefs.getBoolean(PREF_VERIFY_INTEGRITY, false));
         startActivityForResult(intent, PERFORM_ACTIONS);
     }
 
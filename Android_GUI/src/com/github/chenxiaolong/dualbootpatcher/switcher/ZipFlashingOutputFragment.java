@@ -37,6 +37,8 @@ import com.github.chenxiaolong.dualbootpatcher.ThreadPoolService.ThreadPoolServi
 import com.github.chenxiaolong.dualbootpatcher.switcher.ZipFlashingFragment.PendingAction;
 import com.github.chenxiaolong.dualbootpatcher.switcher.service.BaseServiceTask.TaskState;
 import com.github.chenxiaolong.dualbootpatcher.switcher.service.FlashZipsTask.FlashZipsTaskListener;
+import com.github.chenxiaolong.dualbootpatcher.switcher.service.OutputRingBuffer;
+import com.github.chenxiaolong.dualbootpatcher.switcher.service.OutputRingBuffer.LineCallback;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.output.NullOutputStream;
@@ -57,6 +59,7 @@ public class ZipFlashingOutputFragment extends Fragment implements ServiceConnec
     private static final String EXTRA_TASK_ID_FLASH_ZIPS = "task_id_flash_zips";
 
     public static final String PARAM_PENDING_ACTIONS = "pending_actions";
+    public static final String PARAM_VERIFY_INTEGRITY = "verify_integrity";
 
     private EmulatorView mEmulatorView;
     private TermSession mSession;
@@ -187,12 +190,21 @@ public class ZipFlashingOutputFragment extends Fragment implements ServiceConnec
             Parcelable[] parcelables = getArguments().getParcelableArray(PARAM_PENDING_ACTIONS);
             PendingAction[] actions = new PendingAction[parcelables.length];
             System.arraycopy(parcelables, 0, actions, 0, parcelables.length);
-            mTaskIdFlashZips = mService.flashZips(actions);
+            boolean verifyIntegrity = getArguments().getBoolean(PARAM_VERIFY_INTEGRITY, false);
+            mTaskIdFlashZips = mService.flashZips(actions, verifyIntegrity);
         } else {
-            String[] lines = mService.getResultFlashZipsOutputLines(mTaskIdFlashZips);
-            for (String line : lines) {
-                onNewOutputLine(line);
+            OutputRingBuffer output = mService.getResultFlashZipsOutput(mTaskIdFlashZips);
+            long start = output.getStartOffset();
+            if (start > 0 && output.getSpillFile() != null) {
+                onNewOutputLine("[" + start + " earlier lines omitted. See "
+                        + output.getSpillFile() + "]\n");
             }
+            output.read(start, new LineCallback() {
+                @Override
+                public void onLine(long offset, String line) {
+                    onNewOutputLine(line);
+                }
+            });
             if (mService.getCachedTaskState(mTaskIdFlashZips) == TaskState.FINISHED) {
                 onFinishedFlashing();
             }
@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2016  Andrew Gunnerson <andrewgunnerson@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.chenxiaolong.dualbootpatcher.switcher;
+
+import android.content.Context;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.StructStat;
+
+import com.github.chenxiaolong.dualbootpatcher.FileUtils;
+import com.google.gson.annotations.SerializedName;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Properties;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Persistent cache of the metadata needed to verify and flash a zip file
+ *
+ * The zip's central directory is walked once to find the multiboot marker, multiboot/info.prop,
+ * and the update-binary, which is also hashed. Entries are keyed by the zip's path, size, and
+ * modification time, so verifying a zip that has already been seen only requires a stat() call.
+ */
+public class ZipMetadataCache {
+    private static final String TAG = ZipMetadataCache.class.getSimpleName();
+
+    private static final String FILENAME = "zip-metadata.json";
+
+    /** Maximum number of zips to keep. The least recently used ones are dropped. */
+    private static final int MAX_ENTRIES = 32;
+
+    static final String ZIP_MULTIBOOT_DIR = "multiboot/";
+    static final String ZIP_INFO_PROP = ZIP_MULTIBOOT_DIR + "info.prop";
+    static final String ZIP_UPDATE_BINARY = "META-INF/com/google/android/update-binary";
+
+    private static ZipMetadataCache sInstance;
+
+    private final PersistentLruCache<ZipMetadata> mEntries;
+
+    public static class ZipMetadata {
+        /** Whether the zip contains a multiboot/ directory */
+        @SerializedName("multiboot")
+        boolean mMultiboot;
+        /** Contents of multiboot/info.prop or null if it does not exist */
+        @SerializedName("info_prop")
+        HashMap<String, String> mInfoProp;
+        /** Uncompressed size of the update-binary or -1 if it does not exist */
+        @SerializedName("update_binary_size")
+        long mUpdateBinarySize = -1;
+        /** CRC32 of the update-binary or -1 if it does not exist */
+        @SerializedName("update_binary_crc")
+        long mUpdateBinaryCrc = -1;
+        /** Hex SHA-256 of the update-binary or null if it does not exist */
+        @SerializedName("update_binary_sha256")
+        String mUpdateBinarySha256;
+
+        public boolean isMultiboot() {
+            return mMultiboot;
+        }
+
+        public boolean hasInfoProp() {
+            return mInfoProp != null;
+        }
+
+        @Nullable
+        public String getInfoProperty(String key, @Nullable String defaultValue) {
+            if (mInfoProp == null || !mInfoProp.containsKey(key)) {
+                return defaultValue;
+            }
+            return mInfoProp.get(key);
+        }
+
+        public boolean hasUpdateBinary() {
+            return mUpdateBinarySize >= 0;
+        }
+
+        public long getUpdateBinarySize() {
+            return mUpdateBinarySize;
+        }
+
+        public long getUpdateBinaryCrc() {
+            return mUpdateBinaryCrc;
+        }
+
+        @Nullable
+        public String getUpdateBinarySha256() {
+            return mUpdateBinarySha256;
+        }
+    }
+
+    private ZipMetadataCache(File file) {
+        mEntries = new PersistentLruCache<>(file, ZipMetadata.class, MAX_ENTRIES);
+    }
+
+    public static synchronized ZipMetadataCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ZipMetadataCache(new File(context.getCacheDir(), FILENAME));
+            sInstance.mEntries.load();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Get the metadata for a zip file, reading the zip only if it changed since it was last seen
+     *
+     * @param path Path to zip file
+     * @return Zip metadata
+     * @throws FileNotFoundException If the zip file does not exist
+     * @throws IOException If the zip file could not be read
+     */
+    @NonNull
+    public ZipMetadata get(String path) throws IOException {
+        String key = getKey(path);
+
+        ZipMetadata metadata = mEntries.get(key);
+        if (metadata != null) {
+            return metadata;
+        }
+
+        metadata = read(path);
+        mEntries.put(key, metadata);
+        return metadata;
+    }
+
+    /**
+     * Read the metadata for a zip file in a single pass over its entries without caching it
+     *
+     * @param path Path to zip file
+     * @return Zip metadata
+     * @throws FileNotFoundException If the zip file does not exist
+     * @throws IOException If the zip file could not be read
+     */
+    @NonNull
+    public static ZipMetadata read(String path) throws IOException {
+        ZipMetadata metadata = new ZipMetadata();
+        ZipFile zf = null;
+
+        try {
+            zf = new ZipFile(path);
+
+            ZipEntry infoProp = null;
+            ZipEntry updateBinary = null;
+
+            final Enumeration<? extends ZipEntry> entries = zf.entries();
+            while (entries.hasMoreElements()) {
+                final ZipEntry ze = entries.nextElement();
+                final String name = ze.getName();
+
+                if (name.startsWith(ZIP_MULTIBOOT_DIR)) {
+                    metadata.mMultiboot = true;
+                }
+                if (name.equals(ZIP_INFO_PROP)) {
+                    infoProp = ze;
+                } else if (name.equals(ZIP_UPDATE_BINARY)) {
+                    updateBinary = ze;
+                    metadata.mUpdateBinarySize = ze.getSize();
+                    metadata.mUpdateBinaryCrc = ze.getCrc();
+                }
+            }
+
+            // The update-binary is run as root from a cache keyed on this digest, so unlike the
+            // CRC32, it has to be computed from the data itself
+            if (updateBinary != null) {
+                InputStream is = zf.getInputStream(updateBinary);
+                try {
+                    metadata.mUpdateBinarySha256 = FileUtils.sha256Hex(is);
+                } finally {
+                    IOUtils.closeQuietly(is);
+                }
+            }
+
+            if (infoProp != null) {
+                Properties prop = new Properties();
+                InputStream is = zf.getInputStream(infoProp);
+                try {
+                    prop.load(is);
+                } finally {
+                    IOUtils.closeQuietly(is);
+                }
+
+                metadata.mInfoProp = new HashMap<>();
+                for (String name : prop.stringPropertyNames()) {
+                    metadata.mInfoProp.put(name, prop.getProperty(name));
+                }
+            }
+        } finally {
+            IOUtils.closeQuietly(zf);
+        }
+
+        return metadata;
+    }
+
+    /**
+     * Build the cache key for a file using a single stat() call where possible
+     */
+    private static String getKey(String path) throws IOException {
+        File file = new File(path).getAbsoluteFile();
+        long size;
+        long mtime;
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            try {
+                StructStat sb = Os.stat(file.getPath());
+                size = sb.st_size;
+                mtime = sb.st_mtime;
+            } catch (ErrnoException e) {
+                throw new FileNotFoundException(path + ": " + e.getMessage());
+            }
+        } else {
+            if (!file.isFile()) {
+                throw new FileNotFoundException(path);
+            }
+            size = file.length();
+            mtime = file.lastModified() / 1000;
+        }
+
+        return file.getPath() + ":" + size + ":" + mtime;
+    }
+}
@@ -0,0 +1,365 @@
+/*
+ * Copyright (C) 2016  Andrew Gunnerson <andrewgunnerson@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.chenxiaolong.dualbootpatcher.switcher;
+
+import android.content.Context;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.github.chenxiaolong.dualbootpatcher.ThreadUtils;
+import com.github.chenxiaolong.dualbootpatcher.switcher.SwitcherUtils.VerificationResult;
+import com.github.chenxiaolong.dualbootpatcher.switcher.ZipMetadataCache.ZipMetadata;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+/**
+ * Verifies a batch of zip files before any of them are flashed
+ *
+ * Zips are checked in parallel, but only a few at a time because they usually live on the same
+ * storage. If requested, every entry of every zip is then decompressed and its CRC32 compared
+ * against the central directory. The entries from all zips are shared between one worker per CPU
+ * core, largest first, so that a single large zip does not leave the other cores idle.
+ */
+public class ZipVerifier {
+    private static final String TAG = ZipVerifier.class.getSimpleName();
+
+    /** Maximum number of zips whose metadata is read at the same time */
+    private static final int MAX_PARALLEL_ZIPS = 2;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    public interface ProgressListener {
+        /**
+         * Called from the worker threads each time another percent of the data has been checked
+         *
+         * @param bytes Uncompressed bytes checked so far across all zips
+         * @param maxBytes Uncompressed size of all zips being checked
+         */
+        void onProgress(long bytes, long maxBytes);
+    }
+
+    public static class Result {
+        public final String path;
+        public final VerificationResult result;
+        public final String romId;
+
+        Result(String path, VerificationResult result, String romId) {
+            this.path = path;
+            this.result = result;
+            this.romId = romId;
+        }
+    }
+
+    private static class EntryItem {
+        final int zipIndex;
+        final String name;
+        final long size;
+        final long crc;
+
+        EntryItem(int zipIndex, ZipEntry ze) {
+            this.zipIndex = zipIndex;
+            this.name = ze.getName();
+            this.size = ze.getSize();
+            this.crc = ze.getCrc();
+        }
+    }
+
+    /**
+     * Verify zip files
+     *
+     * @param context Context
+     * @param paths Paths to zip files
+     * @param checkIntegrity Whether to check the CRC32 of every entry in addition to the metadata
+     * @param listener Progress listener for the integrity check (may be null)
+     * @return Results in the same order as {@code paths}
+     */
+    public static Result[] verifyAll(final Context context, String[] paths, boolean checkIntegrity,
+                                     @Nullable ProgressListener listener) {
+        ThreadUtils.enforceExecutionOnNonMainThread();
+
+        if (paths.length == 0) {
+            return new Result[0];
+        }
+
+        Result[] results = verifyMetadata(context, paths);
+
+        if (checkIntegrity) {
+            verifyIntegrity(results, listener);
+        }
+
+        return results;
+    }
+
+    private static Result[] verifyMetadata(final Context context, String[] paths) {
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(MAX_PARALLEL_ZIPS, paths.length));
+        try {
+            ArrayList<Future<Result>> futures = new ArrayList<>();
+            for (final String path : paths) {
+                futures.add(executor.submit(new Callable<Result>() {
+                    @Override
+                    public Result call() throws Exception {
+                        return verifyMetadata(context, path);
+                    }
+                }));
+            }
+
+            Result[] results = new Result[paths.length];
+            for (int i = 0; i < paths.length; i++) {
+                try {
+                    results[i] = futures.get(i).get();
+                } catch (ExecutionException e) {
+                    Log.e(TAG, "Failed to verify " + paths[i], e);
+                    results[i] = new Result(paths[i], VerificationResult.ERROR_ZIP_READ_FAIL, null);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    results[i] = new Result(paths[i], VerificationResult.ERROR_ZIP_READ_FAIL, null);
+                }
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Result verifyMetadata(Context context, String path) {
+        try {
+            ZipMetadata metadata = ZipMetadataCache.getInstance(context).get(path);
+            return new Result(path, SwitcherUtils.verifyZipMbtoolVersion(metadata),
+                    SwitcherUtils.getTargetInstallLocation(metadata));
+        } catch (FileNotFoundException e) {
+            Log.e(TAG, "Zip file not found: " + path, e);
+            return new Result(path, VerificationResult.ERROR_ZIP_NOT_FOUND, null);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to read zip file: " + path, e);
+            return new Result(path, VerificationResult.ERROR_ZIP_READ_FAIL, null);
+        }
+    }
+
+    /**
+     * Check the CRC32 of every entry in the zips that passed the metadata check. Failed zips have
+     * their result replaced in {@code results}. Zips that could not be checked completely (eg.
+     * because a worker failed or the thread was interrupted) are treated as failed.
+     */
+    private static void verifyIntegrity(final Result[] results,
+                                        @Nullable final ProgressListener listener) {
+        final AtomicReferenceArray<VerificationResult> failures =
+                new AtomicReferenceArray<>(results.length);
+        // Number of entries of each zip that have not been checked yet
+        final AtomicIntegerArray remaining = new AtomicIntegerArray(results.length);
+        final ArrayList<EntryItem> items = new ArrayList<>();
+        long totalBytes = 0;
+
+        for (int i = 0; i < results.length; i++) {
+            if (results[i].result != VerificationResult.NO_ERROR) {
+                continue;
+            }
+
+            ZipFile zf = null;
+            try {
+                zf = new ZipFile(results[i].path);
+                Enumeration<? extends ZipEntry> entries = zf.entries();
+                while (entries.hasMoreElements()) {
+                    ZipEntry ze = entries.nextElement();
+                    if (!ze.isDirectory()) {
+                        EntryItem item = new EntryItem(i, ze);
+                        items.add(item);
+                        remaining.incrementAndGet(i);
+                        totalBytes += Math.max(0, item.size);
+                    }
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to read zip file: " + results[i].path, e);
+                failures.set(i, VerificationResult.ERROR_ZIP_READ_FAIL);
+            } finally {
+                IOUtils.closeQuietly(zf);
+            }
+        }
+
+        // Start with the largest entries so that the work is evenly spread out at the end
+        Collections.sort(items, new Comparator<EntryItem>() {
+            @Override
+            public int compare(EntryItem lhs, EntryItem rhs) {
+                return lhs.size > rhs.size ? -1 : lhs.size < rhs.size ? 1 : 0;
+            }
+        });
+
+        final long maxBytes = totalBytes;
+        final AtomicInteger nextItem = new AtomicInteger(0);
+        final AtomicLong bytesChecked = new AtomicLong(0);
+        final AtomicInteger lastPercent = new AtomicInteger(0);
+
+        int threads = Math.max(1, Math.min(
+                Runtime.getRuntime().availableProcessors(), items.size()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        try {
+            ArrayList<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        checkEntries(results, items, nextItem, failures, remaining, bytesChecked,
+                                maxBytes, lastPercent, listener);
+                    }
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    Log.e(TAG, "Integrity check worker failed", e);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        for (int i = 0; i < results.length; i++) {
+            VerificationResult failure = failures.get(i);
+            if (failure == null && results[i].result == VerificationResult.NO_ERROR
+                    && remaining.get(i) != 0) {
+                Log.e(TAG, results[i].path + ": " + remaining.get(i) + " entries were not checked");
+                failure = VerificationResult.ERROR_ZIP_READ_FAIL;
+            }
+            if (failure != null) {
+                results[i] = new Result(results[i].path, failure, results[i].romId);
+            }
+        }
+    }
+
+    /**
+     * Worker loop for the integrity check. Each worker opens its own {@link ZipFile} for every zip
+     * so that reads from different threads do not contend on the same file.
+     */
+    private static void checkEntries(Result[] results, ArrayList<EntryItem> items,
+                                     AtomicInteger nextItem,
+                                     AtomicReferenceArray<VerificationResult> failures,
+                                     AtomicIntegerArray remaining,
+                                     AtomicLong bytesChecked, long maxBytes,
+                                     AtomicInteger lastPercent,
+                                     @Nullable ProgressListener listener) {
+        HashMap<Integer, ZipFile> zipFiles = new HashMap<>();
+        byte[] buf = new byte[BUFFER_SIZE];
+        CRC32 crc = new CRC32();
+
+        try {
+            int index;
+            while ((index = nextItem.getAndIncrement()) < items.size()) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+
+                EntryItem item = items.get(index);
+
+                // No need to keep checking a zip that has already failed
+                if (failures.get(item.zipIndex) != null) {
+                    continue;
+                }
+
+                ZipFile zf = zipFiles.get(item.zipIndex);
+                if (zf == null) {
+                    try {
+                        zf = new ZipFile(results[item.zipIndex].path);
+                    } catch (IOException e) {
+                        Log.e(TAG, "Failed to open zip file: " + results[item.zipIndex].path, e);
+                        failures.compareAndSet(item.zipIndex, null,
+                                VerificationResult.ERROR_ZIP_READ_FAIL);
+                        continue;
+                    }
+                    zipFiles.put(item.zipIndex, zf);
+                }
+
+                InputStream is = null;
+                try {
+                    ZipEntry ze = zf.getEntry(item.name);
+                    if (ze == null) {
+                        throw new IOException("Entry disappeared: " + item.name);
+                    }
+
+                    is = zf.getInputStream(ze);
+                    crc.reset();
+
+                    int n;
+                    while ((n = is.read(buf)) > 0) {
+                        crc.update(buf, 0, n);
+                        long bytes = bytesChecked.addAndGet(n);
+                        if (listener != null && maxBytes > 0) {
+                            // Only report whole percentage changes. This runs for every chunk.
+                            int percent = (int) (bytes * 100 / maxBytes);
+                            int prev = lastPercent.get();
+                            if (percent > prev && lastPercent.compareAndSet(prev, percent)) {
+                                listener.onProgress(bytes, maxBytes);
+                            }
+                        }
+                    }
+
+                    if (item.crc != -1 && crc.getValue() != item.crc) {
+                        Log.e(TAG, results[item.zipIndex].path + ": CRC32 mismatch for "
+                                + item.name);
+                        failures.compareAndSet(item.zipIndex, null,
+                                VerificationResult.ERROR_ZIP_CORRUPTED);
+                    }
+
+                    remaining.decrementAndGet(item.zipIndex);
+                } catch (ZipException e) {
+                    // Invalid compressed data
+                    Log.e(TAG, results[item.zipIndex].path + ": Corrupted entry " + item.name, e);
+                    failures.compareAndSet(item.zipIndex, null,
+                            VerificationResult.ERROR_ZIP_CORRUPTED);
+                } catch (IOException e) {
+                    Log.e(TAG, results[item.zipIndex].path + ": Failed to read " + item.name, e);
+                    failures.compareAndSet(item.zipIndex, null,
+                            VerificationResult.ERROR_ZIP_READ_FAIL);
+                } finally {
+                    IOUtils.closeQuietly(is);
+                }
+            }
+        } finally {
+            for (ZipFile zf : zipFiles.values()) {
+                IOUtils.closeQuietly(zf);
+            }
+        }
+    }
+}
@@ -65,5 +65,12 @@ public abstract class BaseServiceTask implements Runnable {
         mState.set(TaskState.FINISHED);
     }
 
+    /**
+     * Ask the task to stop early. Called when the task's result is no longer needed. Tasks that
+     * can't be stopped ignore this.
+     */
+    public void cancel() {
+    }
+
     protected abstract void execute();
 }
@@ -18,32 +18,59 @@
 package com.github.chenxiaolong.dualbootpatcher.switcher.service;
 
 import android.content.Context;
+import android.support.annotation.Nullable;
+import android.util.Log;
 
 import com.github.chenxiaolong.dualbootpatcher.AnsiStuff;
 import com.github.chenxiaolong.dualbootpatcher.AnsiStuff.Attribute;
 import com.github.chenxiaolong.dualbootpatcher.AnsiStuff.Color;
 import com.github.chenxiaolong.dualbootpatcher.CommandUtils;
-import com.github.chenxiaolong.dualbootpatcher.CommandUtils.CommandResult;
-import com.github.chenxiaolong.dualbootpatcher.CommandUtils.RootCommandListener;
-import com.github.chenxiaolong.dualbootpatcher.CommandUtils.RootCommandParams;
-import com.github.chenxiaolong.dualbootpatcher.CommandUtils.RootCommandRunner;
+import com.github.chenxiaolong.dualbootpatcher.CommandUtils.RootBatchListener;
+import com.github.chenxiaolong.dualbootpatcher.CommandUtils.RootShellSession;
 import com.github.chenxiaolong.dualbootpatcher.FileUtils;
+import com.github.chenxiaolong.dualbootpatcher.LogUtils;
+import com.github.chenxiaolong.dualbootpatcher.switcher.SwitcherUtils.VerificationResult;
 import com.github.chenxiaolong.dualbootpatcher.switcher.ZipFlashingFragment.PendingAction;
+import com.github.chenxiaolong.dualbootpatcher.switcher.ZipMetadataCache;
+import com.github.chenxiaolong.dualbootpatcher.switcher.ZipMetadataCache.ZipMetadata;
+import com.github.chenxiaolong.dualbootpatcher.switcher.ZipVerifier;
+import com.github.chenxiaolong.dualbootpatcher.switcher.ZipVerifier.Result;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.EnumSet;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public final class FlashZipsTask extends BaseServiceTask {
+    private static final String TAG = FlashZipsTask.class.getSimpleName();
+
     private static final String UPDATE_BINARY = "META-INF/com/google/android/update-binary";
 
+    /** Cache directory for extracted update-binaries, named by their SHA-256 */
+    private static final String INSTALLER_CACHE_DIR = "rom-installers";
+    /** Maximum number of cached update-binaries. The least recently used ones are deleted. */
+    private static final int INSTALLER_CACHE_MAX_ENTRIES = 4;
+    /** Name of the extracted update-binary when its digest is unknown */
+    private static final String UNCACHED_INSTALLER = "rom-installer";
+
+    /** Number of output lines kept in memory. The full output is in {@link #OUTPUT_LOG_FILE}. */
+    private static final int MAX_OUTPUT_LINES = 8192;
+    private static final String OUTPUT_LOG_FILE = "zip-flashing.log";
+
     private final PendingAction[] mPendingActions;
+    private final boolean mVerifyIntegrity;
     private final FlashZipsTaskListener mListener;
 
-    public final Object mLinesLock = new Object();
-    public ArrayList<String> mLines = new ArrayList<>();
+    private RootShellSession mShell;
+
+    private final OutputRingBuffer mOutput;
     public int mTotal = -1;
     public int mFailed = -1;
 
@@ -54,16 +81,17 @@ public final class FlashZipsTask extends BaseServiceTask {
     }
 
     public FlashZipsTask(int taskId, Context context, PendingAction[] pendingActions,
-                         FlashZipsTaskListener listener) {
+                         boolean verifyIntegrity, FlashZipsTaskListener listener) {
         super(taskId, context);
         mPendingActions = pendingActions;
+        mVerifyIntegrity = verifyIntegrity;
         mListener = listener;
+        mOutput = new OutputRingBuffer(MAX_OUTPUT_LINES,
+                new File(LogUtils.getPath(OUTPUT_LOG_FILE)));
     }
 
-    public String[] getLines() {
-        synchronized (mLinesLock) {
-            return mLines.toArray(new String[mLines.size()]);
-        }
+    public OutputRingBuffer getOutput() {
+        return mOutput;
     }
 
     @Override
@@ -74,22 +102,29 @@ public final class FlashZipsTask extends BaseServiceTask {
         int succeeded = 0;
 
         try {
-            if (!CommandUtils.requestRootAccess()) {
+            // Catch bad zips before anything on the system is touched
+            if (!verifyZips()) {
+                return;
+            }
+
+            mShell = RootShellSession.open();
+            if (mShell == null) {
                 printBoldText(Color.RED, "Failed to obtain root privileges\n");
                 return;
             }
 
-            if (!remountFs("/", true)) {
+            boolean[] remounted = remountFs(new String[] { "/", "/system" }, true);
+            remountedRoot = remounted[0];
+            remountedSystem = remounted[1];
+
+            if (!remountedRoot) {
                 printBoldText(Color.RED, "Failed to remount / as rw\n");
                 return;
             }
-            remountedRoot = true;
-
-            if (!remountFs("/system", true)) {
+            if (!remountedSystem) {
                 printBoldText(Color.RED, "Failed to remount /system as rw\n");
                 return;
             }
-            remountedSystem = true;
 
             for (PendingAction pa : mPendingActions) {
                 if (pa.type != PendingAction.Type.INSTALL_ZIP) {
@@ -102,36 +137,45 @@ public final class FlashZipsTask extends BaseServiceTask {
                 printBoldText(Color.MAGENTA, "- ZIP file: " + pa.zipFile + "\n");
                 printBoldText(Color.MAGENTA, "- Destination: " + pa.romId + "\n");
 
-                // Extract mbtool from the zip file
-                File zipInstaller = new File(
-                        getContext().getCacheDir() + File.separator + "rom-installer");
-                zipInstaller.delete();
-
-                printBoldText(Color.YELLOW, "Extracting mbtool ROM installer from the zip file\n");
-                if (!FileUtils.zipExtractFile(pa.zipFile, UPDATE_BINARY, zipInstaller.getPath())) {
+                // Extract mbtool from the zip file (or reuse a previous extraction)
+                File zipInstaller = getInstaller(pa.zipFile);
+                if (zipInstaller == null) {
                     printBoldText(Color.RED, "Failed to extract update-binary\n");
                     return;
                 }
 
-                // Copy to /
-                if (runRootCommand("rm -f /rom-installer") != 0) {
-                    printBoldText(Color.RED, "Failed to remove old /rom-installer\n");
-                    return;
-                }
-                if (runRootCommand("cp " + zipInstaller.getPath() + " /rom-installer") != 0) {
-                    printBoldText(Color.RED, "Failed to copy new /rom-installer\n");
-                    return;
+                // Install to / in one batch of root commands
+                String installerArg = CommandUtils.quoteArg(zipInstaller.getPath());
+                String[] installCommands = new String[] {
+                        "rm -f /rom-installer",
+                        "cp " + installerArg + " /rom-installer",
+                        "chmod 755 /rom-installer"
+                };
+                int[] installRets = runRootCommands(installCommands);
+                int failedStep = -1;
+                for (int i = 0; i < installRets.length; i++) {
+                    if (installRets[i] != 0) {
+                        failedStep = i;
+                        break;
+                    }
                 }
-                if (runRootCommand("chmod 755 /rom-installer") != 0) {
-                    printBoldText(Color.RED, "Failed to chmod /rom-installer\n");
+                if (failedStep >= 0) {
+                    printBoldText(Color.RED, "Failed to install /rom-installer: "
+                            + installCommands[failedStep] + " returned "
+                            + installRets[failedStep] + "\n");
+                    if (!isCachedInstaller(zipInstaller)) {
+                        zipInstaller.delete();
+                    }
                     return;
                 }
 
-                int ret = runRootCommand("/rom-installer --romid " +
+                int ret = runRootCommands("/rom-installer --romid " +
                         CommandUtils.quoteArg(pa.romId) + " " +
-                        CommandUtils.quoteArg(pa.zipFile));
+                        CommandUtils.quoteArg(pa.zipFile))[0];
 
-                zipInstaller.delete();
+                if (!isCachedInstaller(zipInstaller)) {
+                    zipInstaller.delete();
+                }
 
                 if (ret < 0) {
                     printBoldText(Color.RED, "\nFailed to run command\n");
@@ -152,11 +196,24 @@ public final class FlashZipsTask extends BaseServiceTask {
                 printSeparator();
             }
 
-            if (remountedRoot && !remountFs("/", false)) {
-                printBoldText(Color.RED, "Failed to remount / as ro\n");
-            }
-            if (remountedSystem && !remountFs("/system", false)) {
-                printBoldText(Color.RED, "Failed to remount /system as ro\n");
+            if (remountedRoot || remountedSystem) {
+                // /system first since it may be mounted under /
+                ArrayList<String> mountpoints = new ArrayList<>();
+                if (remountedSystem) {
+                    mountpoints.add("/system");
+                }
+                if (remountedRoot) {
+                    mountpoints.add("/");
+                }
+
+                boolean[] remounted = remountFs(
+                        mountpoints.toArray(new String[mountpoints.size()]), false);
+                for (int i = 0; i < remounted.length; i++) {
+                    if (!remounted[i]) {
+                        printBoldText(Color.RED, "Failed to remount " + mountpoints.get(i)
+                                + " as ro\n");
+                    }
+                }
             }
 
             printSeparator();
@@ -167,14 +224,187 @@ public final class FlashZipsTask extends BaseServiceTask {
 
             mTotal = mPendingActions.length;
             mFailed = mPendingActions.length - succeeded;
+            mOutput.close();
             mListener.onFlashedZips(getTaskId(), mTotal, mFailed);
         }
     }
 
-    private void onCommandOutput(String line) {
-        synchronized (mLinesLock) {
-            mLines.add(line);
+    /**
+     * Verify all queued zips
+     *
+     * @return Whether every zip can be flashed
+     */
+    private boolean verifyZips() {
+        String[] paths = new String[mPendingActions.length];
+        for (int i = 0; i < mPendingActions.length; i++) {
+            paths[i] = mPendingActions[i].zipFile;
+        }
+
+        printBoldText(Color.YELLOW, "Verifying " + paths.length + " zip file(s)"
+                + (mVerifyIntegrity ? " (full integrity check)" : "") + "\n");
+
+        final AtomicInteger lastPercent = new AtomicInteger(0);
+
+        Result[] results = ZipVerifier.verifyAll(getContext(), paths, mVerifyIntegrity,
+                new ZipVerifier.ProgressListener() {
+                    @Override
+                    public void onProgress(long bytes, long maxBytes) {
+                        if (maxBytes <= 0) {
+                            return;
+                        }
+
+                        // Only print every 10%. This is called from several threads.
+                        int percent = (int) (bytes * 10 / maxBytes) * 10;
+                        int prev = lastPercent.get();
+                        if (percent > prev && lastPercent.compareAndSet(prev, percent)) {
+                            printBoldText(Color.YELLOW, "- Checked " + percent + "%\n");
+                        }
+                    }
+                });
+
+        boolean ok = true;
+
+        for (Result result : results) {
+            if (result.result == VerificationResult.NO_ERROR) {
+                printBoldText(Color.GREEN, "- OK: " + result.path + "\n");
+            } else {
+                printBoldText(Color.RED, "- " + getErrorMessage(result.result) + ": "
+                        + result.path + "\n");
+                ok = false;
+            }
+        }
+
+        if (!ok) {
+            printBoldText(Color.RED, "Not flashing anything because some zips failed to verify\n");
+        }
+
+        return ok;
+    }
+
+    private static String getErrorMessage(VerificationResult result) {
+        switch (result) {
+        case ERROR_ZIP_NOT_FOUND:
+            return "Zip file not found";
+        case ERROR_ZIP_READ_FAIL:
+            return "Failed to read zip file";
+        case ERROR_ZIP_CORRUPTED:
+            return "Zip file is corrupted";
+        case ERROR_NOT_MULTIBOOT:
+            return "Zip file is not patched for multiboot";
+        case ERROR_VERSION_TOO_OLD:
+            return "Zip file was patched with an old version of the patcher";
+        default:
+            return result.name();
+        }
+    }
+
+    /**
+     * Get the mbtool ROM installer for a zip file
+     *
+     * The update-binary is identified by the SHA-256 of its contents, so flashing the same
+     * installer again (even from a different zip) does not extract it again. Since the installer
+     * is run as root, the cached copy is hashed again before it is reused.
+     *
+     * @param zipFile Path to zip file
+     * @return Path to the extracted update-binary or null if it could not be extracted
+     */
+    @Nullable
+    private File getInstaller(String zipFile) {
+        File cacheDir = new File(getContext().getCacheDir(), INSTALLER_CACHE_DIR);
+        if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+            Log.e(TAG, "Failed to create " + cacheDir);
+            return null;
+        }
+
+        ZipMetadata metadata = null;
+        try {
+            metadata = ZipMetadataCache.getInstance(getContext()).get(zipFile);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to get metadata for " + zipFile, e);
+        }
+
+        String digest = metadata != null ? metadata.getUpdateBinarySha256() : null;
+
+        if (digest == null) {
+            File target = new File(getContext().getCacheDir(), UNCACHED_INSTALLER);
+            target.delete();
+
+            printBoldText(Color.YELLOW, "Extracting mbtool ROM installer from the zip file\n");
+            if (!FileUtils.zipExtractFile(zipFile, UPDATE_BINARY, target.getPath())) {
+                target.delete();
+                return null;
+            }
+            return target;
+        }
+
+        File cached = new File(cacheDir, digest);
+
+        if (cached.isFile()) {
+            if (digest.equals(sha256Hex(cached))) {
+                printBoldText(Color.YELLOW, "Using previously extracted mbtool ROM installer\n");
+                cached.setLastModified(System.currentTimeMillis());
+                return cached;
+            }
+            Log.w(TAG, "Cached installer " + cached + " does not match its digest");
+            cached.delete();
+        }
+
+        printBoldText(Color.YELLOW, "Extracting mbtool ROM installer from the zip file\n");
+
+        // The zip may have changed since its metadata was cached
+        File temp = new File(cacheDir, cached.getName() + ".tmp");
+        if (!FileUtils.zipExtractFile(zipFile, UPDATE_BINARY, temp.getPath())
+                || !digest.equals(sha256Hex(temp))
+                || !temp.renameTo(cached)) {
+            temp.delete();
+            return null;
+        }
+
+        pruneInstallerCache(cacheDir);
+
+        return cached;
+    }
+
+    @Nullable
+    private static String sha256Hex(File file) {
+        FileInputStream fis = null;
+        try {
+            fis = new FileInputStream(file);
+            return FileUtils.sha256Hex(fis);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to hash " + file, e);
+            return null;
+        } finally {
+            IOUtils.closeQuietly(fis);
+        }
+    }
+
+    private static boolean isCachedInstaller(File installer) {
+        return !installer.getName().equals(UNCACHED_INSTALLER);
+    }
+
+    private static void pruneInstallerCache(File cacheDir) {
+        File[] files = cacheDir.listFiles();
+        if (files == null || files.length <= INSTALLER_CACHE_MAX_ENTRIES) {
+            return;
         }
+
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long l = lhs.lastModified();
+                long r = rhs.lastModified();
+                return l > r ? -1 : l < r ? 1 : 0;
+            }
+        });
+
+        for (int i = INSTALLER_CACHE_MAX_ENTRIES; i < files.length; i++) {
+            files[i].delete();
+        }
+    }
+
+    private void onCommandOutput(String line) {
+        mOutput.append(line);
         mListener.onCommandOutput(getTaskId(), line);
     }
 
@@ -187,42 +417,46 @@ public final class FlashZipsTask extends BaseServiceTask {
         printBoldText(Color.WHITE, StringUtils.repeat('-', 16) + "\n");
     }
 
-    private boolean remountFs(String mountpoint, boolean rw) {
-        printBoldText(Color.YELLOW, "Mounting " + mountpoint + " as " +
-                (rw ? "writable" : "read-only") + "\n");
+    /**
+     * Remount filesystems in a single batch
+     *
+     * @param mountpoints Mount points to remount
+     * @param rw Whether to remount as read-write or read-only
+     * @return Whether each mount point was remounted
+     */
+    private boolean[] remountFs(String[] mountpoints, boolean rw) {
+        String[] commands = new String[mountpoints.length];
+        for (int i = 0; i < mountpoints.length; i++) {
+            printBoldText(Color.YELLOW, "Mounting " + mountpoints[i] + " as " +
+                    (rw ? "writable" : "read-only") + "\n");
+            commands[i] = "mount -o remount," + (rw ? "rw " : "ro ") + mountpoints[i];
+        }
+
+        int[] exitCodes = runRootCommands(commands);
 
-        if (rw) {
-            return runRootCommand("mount -o remount,rw " + mountpoint) == 0;
-        } else {
-            return runRootCommand("mount -o remount,ro " + mountpoint) == 0;
+        boolean[] ret = new boolean[mountpoints.length];
+        for (int i = 0; i < mountpoints.length; i++) {
+            ret[i] = exitCodes[i] == 0;
         }
+        return ret;
     }
 
-    private int runRootCommand(String command) {
-        printBoldText(Color.YELLOW, "Running command: " + command + "\n");
+    /**
+     * Run a batch of commands in the root shell session
+     *
+     * @param commands Commands to run
+     * @return Exit code of each command or -1 for commands that could not be run
+     */
+    private int[] runRootCommands(String... commands) {
+        for (String command : commands) {
+            printBoldText(Color.YELLOW, "Running command: " + command + "\n");
+        }
 
-        RootCommandParams params = new RootCommandParams();
-        params.command = command;
-        params.listener = new RootCommandListener() {
+        return mShell.runBatch(commands, new RootBatchListener() {
             @Override
-            public void onNewOutputLine(String line) {
+            public void onNewOutputLine(int index, String line) {
                 onCommandOutput(line + "\n");
             }
-
-            @Override
-            public void onCommandCompletion(CommandResult result) {
-            }
-        };
-
-        RootCommandRunner cmd = new RootCommandRunner(params);
-        cmd.start();
-        CommandUtils.waitForRootCommand(cmd);
-        CommandResult result = cmd.getResult();
-
-        if (result == null) {
-            return -1;
-        } else {
-            return result.exitCode;
-        }
+        });
     }
 }
@@ -21,15 +21,27 @@ import android.content.Context;
 import android.util.Log;
 
 import com.github.chenxiaolong.dualbootpatcher.RomUtils.RomInformation;
+import com.github.chenxiaolong.dualbootpatcher.socket.MbtoolAsync;
+import com.github.chenxiaolong.dualbootpatcher.socket.MbtoolFuture;
 import com.github.chenxiaolong.dualbootpatcher.socket.MbtoolSocket;
+import com.github.chenxiaolong.dualbootpatcher.socket.MbtoolSocket.DirectorySize;
+import com.github.chenxiaolong.dualbootpatcher.socket.MbtoolSocket.DirectorySizeListener;
+import com.github.chenxiaolong.dualbootpatcher.socket.MbtoolSocket.Lane;
 import com.github.chenxiaolong.dualbootpatcher.socket.MbtoolSocket.PackageCounts;
 
-import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public final class GetRomDetailsTask extends BaseServiceTask {
     private static final String TAG = GetRomDetailsTask.class.getSimpleName();
 
+    public static final int SIZE_SYSTEM = 0;
+    public static final int SIZE_CACHE = 1;
+    public static final int SIZE_DATA = 2;
+
     public final RomInformation mRomInfo;
     private final GetRomDetailsTaskListener mListener;
 
@@ -49,6 +61,10 @@ public final class GetRomDetailsTask extends BaseServiceTask {
     public int mUpdatedPackages;
     public int mUserPackages;
 
+    /** Requests that are in flight. Guarded by itself. */
+    private final ArrayList<MbtoolFuture<?>> mFutures = new ArrayList<>();
+    private boolean mCancelled;
+
     public interface GetRomDetailsTaskListener extends BaseServiceTaskListener {
         void onRomDetailsGotSystemSize(int taskId, RomInformation romInfo,
                                        boolean success, long size);
@@ -59,6 +75,13 @@ public final class GetRomDetailsTask extends BaseServiceTask {
         void onRomDetailsGotDataSize(int taskId, RomInformation romInfo,
                                      boolean success, long size);
 
+        /**
+         * Running total of a directory size that is still being calculated
+         *
+         * @param which {@link #SIZE_SYSTEM}, {@link #SIZE_CACHE}, or {@link #SIZE_DATA}
+         */
+        void onRomDetailsSizeProgress(int taskId, RomInformation romInfo, int which, long size);
+
         void onRomDetailsGotPackagesCounts(int taskId, RomInformation romInfo, boolean success,
                                            int systemPackages, int updatedPackages,
                                            int userPackages);
@@ -73,70 +96,123 @@ public final class GetRomDetailsTask extends BaseServiceTask {
         mListener = listener;
     }
 
+    /**
+     * Stop calculating directory sizes. Sizes that have not been calculated yet are reported as
+     * failures.
+     */
+    @Override
+    public void cancel() {
+        ArrayList<MbtoolFuture<?>> futures;
+        synchronized (mFutures) {
+            mCancelled = true;
+            futures = new ArrayList<>(mFutures);
+        }
+        for (MbtoolFuture<?> future : futures) {
+            future.cancel(false);
+        }
+    }
+
     @Override
     public void execute() {
-        MbtoolSocket socket = MbtoolSocket.getInstance();
+        MbtoolAsync async = MbtoolSocket.getInstance().async();
+        // Walking large directory trees can take a while
+        MbtoolAsync bulkAsync = MbtoolSocket.getInstance(Lane.BULK).async();
+
+        // Send all requests up front. mbtool walks the directory trees in parallel.
+        MbtoolFuture<PackageCounts> pcFuture = track(
+                async.getPackagesCounts(getContext(), mRomInfo.getId()));
+        MbtoolFuture<DirectorySize> systemFuture = track(bulkAsync.pathGetDirectorySizeStream(
+                getContext(), mRomInfo.getSystemPath(), new String[]{ "multiboot" },
+                new SizeListener(SIZE_SYSTEM)));
+        MbtoolFuture<DirectorySize> cacheFuture = track(bulkAsync.pathGetDirectorySizeStream(
+                getContext(), mRomInfo.getCachePath(), new String[]{ "multiboot" },
+                new SizeListener(SIZE_CACHE)));
+        MbtoolFuture<DirectorySize> dataFuture = track(bulkAsync.pathGetDirectorySizeStream(
+                getContext(), mRomInfo.getDataPath(), new String[]{ "multiboot", "media" },
+                new SizeListener(SIZE_DATA)));
 
         // Packages counts
         mPackagesCountsSuccess = false;
         mSystemPackages = 0;
         mUpdatedPackages = 0;
         mUserPackages = 0;
-        try {
-            PackageCounts pc = socket.getPackagesCounts(getContext(), mRomInfo.getId());
-            if (pc != null) {
-                mPackagesCountsSuccess = true;
-                mSystemPackages = pc.systemPackages;
-                mUpdatedPackages = pc.systemUpdatePackages;
-                mUserPackages = pc.nonSystemPackages;
-            }
-        } catch (IOException e) {
-            Log.e(TAG, "mbtool connection error", e);
+        PackageCounts pc = getResult(pcFuture);
+        if (pc != null) {
+            mPackagesCountsSuccess = true;
+            mSystemPackages = pc.systemPackages;
+            mUpdatedPackages = pc.systemUpdatePackages;
+            mUserPackages = pc.nonSystemPackages;
         }
         mListener.onRomDetailsGotPackagesCounts(getTaskId(), mRomInfo, mPackagesCountsSuccess,
                 mSystemPackages, mUpdatedPackages, mUserPackages);
         mHavePackagesCounts.set(true);
 
         // System size
-        mSystemSizeSuccess = false;
-        mSystemSize = -1;
-        try {
-            mSystemSize = socket.pathGetDirectorySize(getContext(),
-                    mRomInfo.getSystemPath(), new String[]{ "multiboot" });
-            mSystemSizeSuccess = mSystemSize >= 0;
-        } catch (IOException e) {
-            Log.e(TAG, "mbtool connection error", e);
-        }
+        mSystemSize = getDirectorySize(systemFuture);
+        mSystemSizeSuccess = mSystemSize >= 0;
         mListener.onRomDetailsGotSystemSize(getTaskId(), mRomInfo, mSystemSizeSuccess, mSystemSize);
         mHaveSystemSize.set(true);
 
         // Cache size
-        mCacheSizeSuccess = false;
-        mCacheSize = -1;
-        try {
-            mCacheSize = socket.pathGetDirectorySize(getContext(),
-                    mRomInfo.getCachePath(), new String[]{ "multiboot" });
-            mCacheSizeSuccess = mCacheSize >= 0;
-        } catch (IOException e) {
-            Log.e(TAG, "mbtool connection error", e);
-        }
+        mCacheSize = getDirectorySize(cacheFuture);
+        mCacheSizeSuccess = mCacheSize >= 0;
         mListener.onRomDetailsGotCacheSize(getTaskId(), mRomInfo, mCacheSizeSuccess, mCacheSize);
         mHaveCacheSize.set(true);
 
         // Data size
-        mDataSizeSuccess = false;
-        mDataSize = -1;
-        try {
-            mDataSize = socket.pathGetDirectorySize(getContext(),
-                    mRomInfo.getDataPath(), new String[]{"multiboot", "media"});
-            mDataSizeSuccess = mDataSize >= 0;
-        } catch (IOException e) {
-            Log.e(TAG, "mbtool connection error", e);
-        }
+        mDataSize = getDirectorySize(dataFuture);
+        mDataSizeSuccess = mDataSize >= 0;
         mListener.onRomDetailsGotDataSize(getTaskId(), mRomInfo, mDataSizeSuccess, mDataSize);
         mHaveDataSize.set(true);
 
         // Finished
         mListener.onRomDetailsFinished(getTaskId(), mRomInfo);
     }
+
+    private class SizeListener implements DirectorySizeListener {
+        private final int mWhich;
+
+        SizeListener(int which) {
+            mWhich = which;
+        }
+
+        @Override
+        public void onProgress(long size, Map<String, Long> subtotals) {
+            mListener.onRomDetailsSizeProgress(getTaskId(), mRomInfo, mWhich, size);
+        }
+    }
+
+    private <T> MbtoolFuture<T> track(MbtoolFuture<T> future) {
+        boolean cancelled;
+        synchronized (mFutures) {
+            cancelled = mCancelled;
+            mFutures.add(future);
+        }
+        if (cancelled) {
+            future.cancel(false);
+        }
+        return future;
+    }
+
+    private long getDirectorySize(MbtoolFuture<DirectorySize> future) {
+        DirectorySize ds = getResult(future);
+        if (ds != null && ds.success) {
+            return ds.size;
+        }
+        return -1;
+    }
+
+    private static <T> T getResult(MbtoolFuture<T> future) {
+        try {
+            return future.get();
+        } catch (CancellationException e) {
+            return null;
+        } catch (ExecutionException e) {
+            Log.e(TAG, "mbtool connection error", e.getCause());
+        } catch (InterruptedException e) {
+            Log.e(TAG, "Interrupted while waiting for mbtool", e);
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
 }
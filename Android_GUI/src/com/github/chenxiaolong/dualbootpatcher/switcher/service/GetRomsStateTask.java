@@ -22,11 +22,11 @@ import android.util.Log;
 
 import com.github.chenxiaolong.dualbootpatcher.RomUtils;
 import com.github.chenxiaolong.dualbootpatcher.RomUtils.RomInformation;
+import com.github.chenxiaolong.dualbootpatcher.switcher.BootImageFingerprints;
+import com.github.chenxiaolong.dualbootpatcher.switcher.BootImageFingerprints.Fingerprint;
 import com.github.chenxiaolong.dualbootpatcher.switcher.SwitcherUtils;
 import com.github.chenxiaolong.dualbootpatcher.switcher.SwitcherUtils.KernelStatus;
 
-import java.io.File;
-
 public final class GetRomsStateTask extends BaseServiceTask {
     private static final String TAG = GetRomsStateTask.class.getSimpleName();
 
@@ -67,14 +67,18 @@ public final class GetRomsStateTask extends BaseServiceTask {
         mActiveRomId = null;
         mKernelStatus = KernelStatus.UNKNOWN;
 
-        File tmpImageFile = new File(getContext().getCacheDir() + File.separator + "boot.img");
-        if (SwitcherUtils.copyBootPartition(getContext(), tmpImageFile)) {
-            try {
-                mActiveRomId = SwitcherUtils.getBootImageRomId(getContext(), tmpImageFile);
-                mKernelStatus = SwitcherUtils.compareRomBootImage(mCurrentRom, tmpImageFile);
-            } finally {
-                tmpImageFile.delete();
-            }
+        String bootPartition = SwitcherUtils.getBootPartition(getContext());
+        if (bootPartition == null) {
+            Log.e(TAG, "Failed to determine boot partition");
+            return;
+        }
+
+        Fingerprint bootImage = BootImageFingerprints.getInstance(getContext())
+                .getForPartition(getContext(), bootPartition);
+        if (bootImage != null) {
+            mActiveRomId = bootImage.romId;
+            mKernelStatus = SwitcherUtils.compareRomBootImage(
+                    getContext(), mCurrentRom, bootImage);
         }
     }
 }
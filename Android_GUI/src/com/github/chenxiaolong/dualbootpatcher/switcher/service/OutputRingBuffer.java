@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2016  Andrew Gunnerson <andrewgunnerson@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.chenxiaolong.dualbootpatcher.switcher.service;
+
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import org.apache.commons.io.Charsets;
+import org.apache.commons.io.IOUtils;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed-size buffer of the most recent output lines of a task
+ *
+ * Every line gets an offset that increases by one per line. Appending never blocks: only the
+ * newest lines (up to the capacity) are kept in memory and the full output is written to a log
+ * file in the background. Readers page through the lines that are still in memory by offset
+ * without copying the buffer.
+ */
+public class OutputRingBuffer {
+    private static final String TAG = OutputRingBuffer.class.getSimpleName();
+
+    public interface LineCallback {
+        void onLine(long offset, String line);
+    }
+
+    private static class Slot {
+        final long offset;
+        final String line;
+
+        Slot(long offset, String line) {
+            this.offset = offset;
+            this.line = line;
+        }
+    }
+
+    private final int mMask;
+    private final AtomicReferenceArray<Slot> mSlots;
+    private final AtomicLong mNextOffset = new AtomicLong(0);
+
+    private final File mSpillFile;
+    private final ExecutorService mSpillExecutor;
+    private final ConcurrentLinkedQueue<String> mSpillQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean mSpillScheduled = new AtomicBoolean(false);
+    // Only accessed from the spill thread
+    private Writer mSpillWriter;
+    private boolean mSpillFailed;
+    private boolean mSpillClosed;
+
+    /**
+     * @param capacity Number of lines to keep in memory (rounded up to a power of two)
+     * @param spillFile File to write the full output to (may be null)
+     */
+    public OutputRingBuffer(int capacity, @Nullable File spillFile) {
+        int size = Integer.highestOneBit(Math.max(2, capacity));
+        if (size < capacity) {
+            size <<= 1;
+        }
+
+        mMask = size - 1;
+        mSlots = new AtomicReferenceArray<>(size);
+        mSpillFile = spillFile;
+        mSpillExecutor = spillFile != null ? Executors.newSingleThreadExecutor() : null;
+    }
+
+    public void append(String line) {
+        long offset = mNextOffset.getAndIncrement();
+        mSlots.set((int) (offset & mMask), new Slot(offset, line));
+
+        if (mSpillExecutor != null) {
+            mSpillQueue.offer(line);
+            scheduleSpill();
+        }
+    }
+
+    /**
+     * Offset of the oldest line that is still in memory
+     */
+    public long getStartOffset() {
+        return Math.max(0, mNextOffset.get() - mSlots.length());
+    }
+
+    /**
+     * Offset that the next line will be appended at
+     */
+    public long getEndOffset() {
+        return mNextOffset.get();
+    }
+
+    /**
+     * Get the file that the full output is written to
+     */
+    @Nullable
+    public File getSpillFile() {
+        return mSpillFile;
+    }
+
+    /**
+     * Read lines starting at an offset
+     *
+     * Lines older than {@link #getStartOffset()} are skipped. Reading stops at a line that is
+     * still being appended by another thread.
+     *
+     * @param offset Offset of the first line to read
+     * @param maxLines Maximum number of lines to read
+     * @param callback Callback for each line
+     * @return Offset to continue reading from
+     */
+    public long read(long offset, int maxLines, LineCallback callback) {
+        long end = mNextOffset.get();
+        long i = Math.max(offset, end - mSlots.length());
+
+        for (int count = 0; i < end && count < maxLines; i++, count++) {
+            Slot slot = mSlots.get((int) (i & mMask));
+            if (slot == null || slot.offset < i) {
+                // Not published yet
+                break;
+            } else if (slot.offset > i) {
+                // Overwritten while reading
+                continue;
+            }
+            callback.onLine(i, slot.line);
+        }
+
+        return i;
+    }
+
+    /**
+     * Read all lines from an offset that are in memory
+     *
+     * @see #read(long, int, LineCallback)
+     */
+    public long read(long offset, LineCallback callback) {
+        return read(offset, Integer.MAX_VALUE, callback);
+    }
+
+    /**
+     * Finish writing the log file in the background. Lines appended afterwards are only kept in
+     * memory.
+     */
+    public void close() {
+        if (mSpillExecutor == null) {
+            return;
+        }
+
+        try {
+            mSpillExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    spillPending();
+                    IOUtils.closeQuietly(mSpillWriter);
+                    mSpillWriter = null;
+                    mSpillClosed = true;
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Already closed
+        }
+        mSpillExecutor.shutdown();
+    }
+
+    private void scheduleSpill() {
+        if (mSpillScheduled.compareAndSet(false, true)) {
+            try {
+                mSpillExecutor.execute(mSpillRunnable);
+            } catch (RejectedExecutionException e) {
+                // Closed, so nothing will be written anymore
+                mSpillQueue.clear();
+            }
+        }
+    }
+
+    private final Runnable mSpillRunnable = new Runnable() {
+        @Override
+        public void run() {
+            do {
+                mSpillScheduled.set(false);
+                spillPending();
+            } while (!mSpillQueue.isEmpty() && mSpillScheduled.compareAndSet(false, true));
+        }
+    };
+
+    private void spillPending() {
+        // A spill that was queued right before close() must not reopen (and truncate) the file
+        if (mSpillClosed) {
+            mSpillQueue.clear();
+            return;
+        }
+
+        if (mSpillWriter == null && !mSpillFailed) {
+            try {
+                mSpillFile.getParentFile().mkdirs();
+                mSpillWriter = new BufferedWriter(new OutputStreamWriter(
+                        new FileOutputStream(mSpillFile), Charsets.UTF_8));
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to open " + mSpillFile, e);
+                mSpillFailed = true;
+            }
+        }
+
+        String line;
+        try {
+            while ((line = mSpillQueue.poll()) != null) {
+                if (mSpillWriter != null) {
+                    mSpillWriter.write(line);
+                }
+            }
+            if (mSpillWriter != null) {
+                mSpillWriter.flush();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write " + mSpillFile, e);
+            IOUtils.closeQuietly(mSpillWriter);
+            mSpillWriter = null;
+            mSpillFailed = true;
+            mSpillQueue.clear();
+        }
+    }
+}
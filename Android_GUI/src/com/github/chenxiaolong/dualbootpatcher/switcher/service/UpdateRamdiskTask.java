@@ -34,6 +34,7 @@ import com.github.chenxiaolong.dualbootpatcher.patcher.PatcherUtils;
 import com.github.chenxiaolong.dualbootpatcher.socket.MbtoolSocket;
 import com.github.chenxiaolong.dualbootpatcher.socket.MbtoolSocket.SetKernelResult;
 import com.github.chenxiaolong.dualbootpatcher.socket.MbtoolSocket.SwitchRomResult;
+import com.github.chenxiaolong.dualbootpatcher.switcher.SwitcherUtils;
 
 import java.io.File;
 import java.io.IOException;
@@ -90,7 +91,7 @@ public final class UpdateRamdiskTask extends BaseServiceTask {
         try {
             fi.setFilename(path);
 
-            Device device = PatcherUtils.getCurrentDevice(getContext(), PatcherUtils.sPC);
+            Device device = PatcherUtils.getCurrentDevice(getContext());
             String codename = RomUtils.getDeviceCodename(getContext());
             if (device == null) {
                 Log.e(TAG, "Current device " + codename + " does not appear to be supported");
@@ -127,26 +128,15 @@ public final class UpdateRamdiskTask extends BaseServiceTask {
                     Log.d(TAG, "Will reapply loki to boot image");
                     bi.setTargetType(Type.LOKI);
 
-                    File abootFile = new File(
-                            getContext().getCacheDir() + File.separator + "aboot.img");
-
-                    MbtoolSocket socket = MbtoolSocket.getInstance();
-
-                    // Copy aboot partition to the temporary file
-                    if (!socket.pathCopy(getContext(), ABOOT_PARTITION, abootFile.getPath()) ||
-                            !socket.pathChmod(getContext(), abootFile.getPath(), 0644)) {
-                        Log.e(TAG, "Failed to copy aboot partition to temporary file");
+                    byte[] abootImage = SwitcherUtils.readPartition(getContext(), ABOOT_PARTITION);
+                    if (abootImage == null) {
+                        Log.e(TAG, "Failed to read aboot partition");
                         return false;
                     }
-
-                    byte[] abootImage =
-                            org.apache.commons.io.FileUtils.readFileToByteArray(abootFile);
                     bi.setAbootImage(abootImage);
-
-                    abootFile.delete();
                 }
                 if (!hasRomIdFile) {
-                    if (!cpio.load(bi.getRamdiskImage())) {
+                    if (!cpio.load(bi.getRamdiskImageBuffer())) {
                         logLibMbpError(cpio.getError());
                         return false;
                     }
@@ -156,16 +146,16 @@ public final class UpdateRamdiskTask extends BaseServiceTask {
                         logLibMbpError(cpio.getError());
                         return false;
                     }
-                    bi.setRamdiskImage(cpio.createData());
+                    if (!bi.setRamdiskImage(cpio)) {
+                        logLibMbpError(cpio.getError());
+                        return false;
+                    }
                 }
 
                 if (!bi.createFile(file.getAbsolutePath())) {
                     logLibMbpError(bi.getError());
                     return false;
                 }
-            } catch (IOException e) {
-                Log.e(TAG, "Failed to make changes to boot image", e);
-                return false;
             } finally {
                 bi.destroy();
                 cpio.destroy();
@@ -280,7 +270,7 @@ public final class UpdateRamdiskTask extends BaseServiceTask {
 
                     wasType = bi.wasType();
 
-                    if (!cpio.load(bi.getRamdiskImage())) {
+                    if (!cpio.load(bi.getRamdiskImageBuffer())) {
                         logLibMbpError(cpio.getError());
                         return false;
                     }
@@ -22,6 +22,11 @@ import android.util.Log;
 
 import com.github.chenxiaolong.dualbootpatcher.switcher.SwitcherUtils;
 import com.github.chenxiaolong.dualbootpatcher.switcher.SwitcherUtils.VerificationResult;
+import com.github.chenxiaolong.dualbootpatcher.switcher.ZipMetadataCache;
+import com.github.chenxiaolong.dualbootpatcher.switcher.ZipMetadataCache.ZipMetadata;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
 
 public final class VerifyZipTask extends BaseServiceTask {
     private static final String TAG = VerifyZipTask.class.getSimpleName();
@@ -46,8 +51,17 @@ public final class VerifyZipTask extends BaseServiceTask {
     public void execute() {
         Log.d(TAG, "Verifying zip file: " + mPath);
 
-        mResult = SwitcherUtils.verifyZipMbtoolVersion(mPath);
-        mRomId = SwitcherUtils.getTargetInstallLocation(mPath);
+        try {
+            ZipMetadata metadata = ZipMetadataCache.getInstance(getContext()).get(mPath);
+            mResult = SwitcherUtils.verifyZipMbtoolVersion(metadata);
+            mRomId = SwitcherUtils.getTargetInstallLocation(metadata);
+        } catch (FileNotFoundException e) {
+            Log.e(TAG, "Zip file not found: " + mPath, e);
+            mResult = VerificationResult.ERROR_ZIP_NOT_FOUND;
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to read zip file: " + mPath, e);
+            mResult = VerificationResult.ERROR_ZIP_READ_FAIL;
+        }
 
         mListener.onVerifiedZip(getTaskId(), mPath, mResult, mRomId);
     }
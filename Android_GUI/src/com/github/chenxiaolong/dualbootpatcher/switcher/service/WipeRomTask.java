@@ -21,6 +21,7 @@ import android.content.Context;
 import android.util.Log;
 
 import com.github.chenxiaolong.dualbootpatcher.socket.MbtoolSocket;
+import com.github.chenxiaolong.dualbootpatcher.socket.MbtoolSocket.Lane;
 import com.github.chenxiaolong.dualbootpatcher.socket.MbtoolSocket.WipeResult;
 
 import java.io.IOException;
@@ -50,7 +51,7 @@ public final class WipeRomTask extends BaseServiceTask {
     @Override
     public void execute() {
         try {
-            WipeResult result = MbtoolSocket.getInstance().wipeRom(
+            WipeResult result = MbtoolSocket.getInstance(Lane.BULK).wipeRom(
                     getContext(), mRomId, mTargets);
             mTargetsSucceeded = result.succeeded;
             mTargetsFailed = result.failed;
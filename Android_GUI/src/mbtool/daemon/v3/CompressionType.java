@@ -0,0 +1,14 @@
+// automatically generated, do not modify
+
+package mbtool.daemon.v3;
+
+public final class CompressionType {
+  private CompressionType() { }
+  public static final short NONE = 0;
+  public static final short DEFLATE = 1;
+
+  private static final String[] names = { "NONE", "DEFLATE", };
+
+  public static String name(int e) { return names[e]; }
+};
+
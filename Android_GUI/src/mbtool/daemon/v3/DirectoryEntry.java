@@ -0,0 +1,38 @@
+// automatically generated, do not modify
+
+package mbtool.daemon.v3;
+
+import java.nio.*;
+import java.lang.*;
+import java.util.*;
+import com.google.flatbuffers.*;
+
+@SuppressWarnings("unused")
+public final class DirectoryEntry extends Table {
+  public static DirectoryEntry getRootAsDirectoryEntry(ByteBuffer _bb) { return getRootAsDirectoryEntry(_bb, new DirectoryEntry()); }
+  public static DirectoryEntry getRootAsDirectoryEntry(ByteBuffer _bb, DirectoryEntry obj) { _bb.order(ByteOrder.LITTLE_ENDIAN); return (obj.__init(_bb.getInt(_bb.position()) + _bb.position(), _bb)); }
+  public DirectoryEntry __init(int _i, ByteBuffer _bb) { bb_pos = _i; bb = _bb; return this; }
+
+  public String name() { int o = __offset(4); return o != 0 ? __string(o + bb_pos) : null; }
+  public ByteBuffer nameAsByteBuffer() { return __vector_as_bytebuffer(4, 1); }
+  public StructStat stat() { return stat(new StructStat()); }
+  public StructStat stat(StructStat obj) { int o = __offset(6); return o != 0 ? obj.__init(__indirect(o + bb_pos), bb) : null; }
+
+  public static int createDirectoryEntry(FlatBufferBuilder builder,
+      int name,
+      int stat) {
+    builder.startObject(2);
+    DirectoryEntry.addStat(builder, stat);
+    DirectoryEntry.addName(builder, name);
+    return DirectoryEntry.endDirectoryEntry(builder);
+  }
+
+  public static void startDirectoryEntry(FlatBufferBuilder builder) { builder.startObject(2); }
+  public static void addName(FlatBufferBuilder builder, int nameOffset) { builder.addOffset(0, nameOffset, 0); }
+  public static void addStat(FlatBufferBuilder builder, int statOffset) { builder.addOffset(1, statOffset, 0); }
+  public static int endDirectoryEntry(FlatBufferBuilder builder) {
+    int o = builder.endObject();
+    return o;
+  }
+};
+
@@ -0,0 +1,37 @@
+// automatically generated, do not modify
+
+package mbtool.daemon.v3;
+
+import java.nio.*;
+import java.lang.*;
+import java.util.*;
+import com.google.flatbuffers.*;
+
+@SuppressWarnings("unused")
+public final class DirectorySubtotal extends Table {
+  public static DirectorySubtotal getRootAsDirectorySubtotal(ByteBuffer _bb) { return getRootAsDirectorySubtotal(_bb, new DirectorySubtotal()); }
+  public static DirectorySubtotal getRootAsDirectorySubtotal(ByteBuffer _bb, DirectorySubtotal obj) { _bb.order(ByteOrder.LITTLE_ENDIAN); return (obj.__init(_bb.getInt(_bb.position()) + _bb.position(), _bb)); }
+  public DirectorySubtotal __init(int _i, ByteBuffer _bb) { bb_pos = _i; bb = _bb; return this; }
+
+  public String name() { int o = __offset(4); return o != 0 ? __string(o + bb_pos) : null; }
+  public ByteBuffer nameAsByteBuffer() { return __vector_as_bytebuffer(4, 1); }
+  public long size() { int o = __offset(6); return o != 0 ? bb.getLong(o + bb_pos) : 0; }
+
+  public static int createDirectorySubtotal(FlatBufferBuilder builder,
+      int name,
+      long size) {
+    builder.startObject(2);
+    DirectorySubtotal.addSize(builder, size);
+    DirectorySubtotal.addName(builder, name);
+    return DirectorySubtotal.endDirectorySubtotal(builder);
+  }
+
+  public static void startDirectorySubtotal(FlatBufferBuilder builder) { builder.startObject(2); }
+  public static void addName(FlatBufferBuilder builder, int nameOffset) { builder.addOffset(0, nameOffset, 0); }
+  public static void addSize(FlatBufferBuilder builder, long size) { builder.addLong(1, size, 0); }
+  public static int endDirectorySubtotal(FlatBufferBuilder builder) {
+    int o = builder.endObject();
+    return o;
+  }
+};
+
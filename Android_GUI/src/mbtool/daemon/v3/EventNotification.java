@@ -0,0 +1,42 @@
+// automatically generated, do not modify
+
+package mbtool.daemon.v3;
+
+import java.nio.*;
+import java.lang.*;
+import java.util.*;
+import com.google.flatbuffers.*;
+
+@SuppressWarnings("unused")
+public final class EventNotification extends Table {
+  public static EventNotification getRootAsEventNotification(ByteBuffer _bb) { return getRootAsEventNotification(_bb, new EventNotification()); }
+  public static EventNotification getRootAsEventNotification(ByteBuffer _bb, EventNotification obj) { _bb.order(ByteOrder.LITTLE_ENDIAN); return (obj.__init(_bb.getInt(_bb.position()) + _bb.position(), _bb)); }
+  public EventNotification __init(int _i, ByteBuffer _bb) { bb_pos = _i; bb = _bb; return this; }
+
+  public short type() { int o = __offset(4); return o != 0 ? bb.getShort(o + bb_pos) : 0; }
+  public String romId() { int o = __offset(6); return o != 0 ? __string(o + bb_pos) : null; }
+  public ByteBuffer romIdAsByteBuffer() { return __vector_as_bytebuffer(6, 1); }
+  public String path() { int o = __offset(8); return o != 0 ? __string(o + bb_pos) : null; }
+  public ByteBuffer pathAsByteBuffer() { return __vector_as_bytebuffer(8, 1); }
+
+  public static int createEventNotification(FlatBufferBuilder builder,
+      short type,
+      int rom_id,
+      int path) {
+    builder.startObject(3);
+    EventNotification.addPath(builder, path);
+    EventNotification.addRomId(builder, rom_id);
+    EventNotification.addType(builder, type);
+    return EventNotification.endEventNotification(builder);
+  }
+
+  public static void startEventNotification(FlatBufferBuilder builder) { builder.startObject(3); }
+  public static void addType(FlatBufferBuilder builder, short type) { builder.addShort(0, type, 0); }
+  public static void addRomId(FlatBufferBuilder builder, int romIdOffset) { builder.addOffset(1, romIdOffset, 0); }
+  public static void addPath(FlatBufferBuilder builder, int pathOffset) { builder.addOffset(2, pathOffset, 0); }
+  public static int endEventNotification(FlatBufferBuilder builder) {
+    int o = builder.endObject();
+    return o;
+  }
+};
+
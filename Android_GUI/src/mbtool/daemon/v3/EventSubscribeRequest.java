@@ -0,0 +1,46 @@
+// automatically generated, do not modify
+
+package mbtool.daemon.v3;
+
+import java.nio.*;
+import java.lang.*;
+import java.util.*;
+import com.google.flatbuffers.*;
+
+@SuppressWarnings("unused")
+public final class EventSubscribeRequest extends Table {
+  public static EventSubscribeRequest getRootAsEventSubscribeRequest(ByteBuffer _bb) { return getRootAsEventSubscribeRequest(_bb, new EventSubscribeRequest()); }
+  public static EventSubscribeRequest getRootAsEventSubscribeRequest(ByteBuffer _bb, EventSubscribeRequest obj) { _bb.order(ByteOrder.LITTLE_ENDIAN); return (obj.__init(_bb.getInt(_bb.position()) + _bb.position(), _bb)); }
+  public EventSubscribeRequest __init(int _i, ByteBuffer _bb) { bb_pos = _i; bb = _bb; return this; }
+
+  public short types(int j) { int o = __offset(4); return o != 0 ? bb.getShort(__vector(o) + j * 2) : 0; }
+  public int typesLength() { int o = __offset(4); return o != 0 ? __vector_len(o) : 0; }
+  public ByteBuffer typesAsByteBuffer() { return __vector_as_bytebuffer(4, 2); }
+  public String bootBlockdev() { int o = __offset(6); return o != 0 ? __string(o + bb_pos) : null; }
+  public ByteBuffer bootBlockdevAsByteBuffer() { return __vector_as_bytebuffer(6, 1); }
+  public String multibootDir() { int o = __offset(8); return o != 0 ? __string(o + bb_pos) : null; }
+  public ByteBuffer multibootDirAsByteBuffer() { return __vector_as_bytebuffer(8, 1); }
+
+  public static int createEventSubscribeRequest(FlatBufferBuilder builder,
+      int types,
+      int boot_blockdev,
+      int multiboot_dir) {
+    builder.startObject(3);
+    EventSubscribeRequest.addMultibootDir(builder, multiboot_dir);
+    EventSubscribeRequest.addBootBlockdev(builder, boot_blockdev);
+    EventSubscribeRequest.addTypes(builder, types);
+    return EventSubscribeRequest.endEventSubscribeRequest(builder);
+  }
+
+  public static void startEventSubscribeRequest(FlatBufferBuilder builder) { builder.startObject(3); }
+  public static void addTypes(FlatBufferBuilder builder, int typesOffset) { builder.addOffset(0, typesOffset, 0); }
+  public static int createTypesVector(FlatBufferBuilder builder, short[] data) { builder.startVector(2, data.length, 2); for (int i = data.length - 1; i >= 0; i--) builder.addShort(data[i]); return builder.endVector(); }
+  public static void startTypesVector(FlatBufferBuilder builder, int numElems) { builder.startVector(2, numElems, 2); }
+  public static void addBootBlockdev(FlatBufferBuilder builder, int bootBlockdevOffset) { builder.addOffset(1, bootBlockdevOffset, 0); }
+  public static void addMultibootDir(FlatBufferBuilder builder, int multibootDirOffset) { builder.addOffset(2, multibootDirOffset, 0); }
+  public static int endEventSubscribeRequest(FlatBufferBuilder builder) {
+    int o = builder.endObject();
+    return o;
+  }
+};
+
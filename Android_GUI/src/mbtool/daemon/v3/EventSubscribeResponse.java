@@ -0,0 +1,45 @@
+// automatically generated, do not modify
+
+package mbtool.daemon.v3;
+
+import java.nio.*;
+import java.lang.*;
+import java.util.*;
+import com.google.flatbuffers.*;
+
+@SuppressWarnings("unused")
+public final class EventSubscribeResponse extends Table {
+  public static EventSubscribeResponse getRootAsEventSubscribeResponse(ByteBuffer _bb) { return getRootAsEventSubscribeResponse(_bb, new EventSubscribeResponse()); }
+  public static EventSubscribeResponse getRootAsEventSubscribeResponse(ByteBuffer _bb, EventSubscribeResponse obj) { _bb.order(ByteOrder.LITTLE_ENDIAN); return (obj.__init(_bb.getInt(_bb.position()) + _bb.position(), _bb)); }
+  public EventSubscribeResponse __init(int _i, ByteBuffer _bb) { bb_pos = _i; bb = _bb; return this; }
+
+  public boolean success() { int o = __offset(4); return o != 0 ? 0!=bb.get(o + bb_pos) : false; }
+  public String errorMsg() { int o = __offset(6); return o != 0 ? __string(o + bb_pos) : null; }
+  public ByteBuffer errorMsgAsByteBuffer() { return __vector_as_bytebuffer(6, 1); }
+  public short types(int j) { int o = __offset(8); return o != 0 ? bb.getShort(__vector(o) + j * 2) : 0; }
+  public int typesLength() { int o = __offset(8); return o != 0 ? __vector_len(o) : 0; }
+  public ByteBuffer typesAsByteBuffer() { return __vector_as_bytebuffer(8, 2); }
+
+  public static int createEventSubscribeResponse(FlatBufferBuilder builder,
+      boolean success,
+      int error_msg,
+      int types) {
+    builder.startObject(3);
+    EventSubscribeResponse.addTypes(builder, types);
+    EventSubscribeResponse.addErrorMsg(builder, error_msg);
+    EventSubscribeResponse.addSuccess(builder, success);
+    return EventSubscribeResponse.endEventSubscribeResponse(builder);
+  }
+
+  public static void startEventSubscribeResponse(FlatBufferBuilder builder) { builder.startObject(3); }
+  public static void addSuccess(FlatBufferBuilder builder, boolean success) { builder.addBoolean(0, success, false); }
+  public static void addErrorMsg(FlatBufferBuilder builder, int errorMsgOffset) { builder.addOffset(1, errorMsgOffset, 0); }
+  public static void addTypes(FlatBufferBuilder builder, int typesOffset) { builder.addOffset(2, typesOffset, 0); }
+  public static int createTypesVector(FlatBufferBuilder builder, short[] data) { builder.startVector(2, data.length, 2); for (int i = data.length - 1; i >= 0; i--) builder.addShort(data[i]); return builder.endVector(); }
+  public static void startTypesVector(FlatBufferBuilder builder, int numElems) { builder.startVector(2, numElems, 2); }
+  public static int endEventSubscribeResponse(FlatBufferBuilder builder) {
+    int o = builder.endObject();
+    return o;
+  }
+};
+
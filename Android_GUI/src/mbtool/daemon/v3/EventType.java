@@ -0,0 +1,16 @@
+// automatically generated, do not modify
+
+package mbtool.daemon.v3;
+
+public final class EventType {
+  private EventType() { }
+  public static final short ROMS_CHANGED = 0;
+  public static final short BOOT_PARTITION_CHANGED = 1;
+  public static final short ACTIVE_ROM_CHANGED = 2;
+  public static final short MULTIBOOT_DIR_CHANGED = 3;
+
+  private static final String[] names = { "ROMS_CHANGED", "BOOT_PARTITION_CHANGED", "ACTIVE_ROM_CHANGED", "MULTIBOOT_DIR_CHANGED", };
+
+  public static String name(int e) { return names[e]; }
+};
+
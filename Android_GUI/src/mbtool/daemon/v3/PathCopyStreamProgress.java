@@ -0,0 +1,36 @@
+// automatically generated, do not modify
+
+package mbtool.daemon.v3;
+
+import java.nio.*;
+import java.lang.*;
+import java.util.*;
+import com.google.flatbuffers.*;
+
+@SuppressWarnings("unused")
+public final class PathCopyStreamProgress extends Table {
+  public static PathCopyStreamProgress getRootAsPathCopyStreamProgress(ByteBuffer _bb) { return getRootAsPathCopyStreamProgress(_bb, new PathCopyStreamProgress()); }
+  public static PathCopyStreamProgress getRootAsPathCopyStreamProgress(ByteBuffer _bb, PathCopyStreamProgress obj) { _bb.order(ByteOrder.LITTLE_ENDIAN); return (obj.__init(_bb.getInt(_bb.position()) + _bb.position(), _bb)); }
+  public PathCopyStreamProgress __init(int _i, ByteBuffer _bb) { bb_pos = _i; bb = _bb; return this; }
+
+  public long bytesCopied() { int o = __offset(4); return o != 0 ? bb.getLong(o + bb_pos) : 0; }
+  public long totalSize() { int o = __offset(6); return o != 0 ? bb.getLong(o + bb_pos) : 0; }
+
+  public static int createPathCopyStreamProgress(FlatBufferBuilder builder,
+      long bytes_copied,
+      long total_size) {
+    builder.startObject(2);
+    PathCopyStreamProgress.addTotalSize(builder, total_size);
+    PathCopyStreamProgress.addBytesCopied(builder, bytes_copied);
+    return PathCopyStreamProgress.endPathCopyStreamProgress(builder);
+  }
+
+  public static void startPathCopyStreamProgress(FlatBufferBuilder builder) { builder.startObject(2); }
+  public static void addBytesCopied(FlatBufferBuilder builder, long bytesCopied) { builder.addLong(0, bytesCopied, 0); }
+  public static void addTotalSize(FlatBufferBuilder builder, long totalSize) { builder.addLong(1, totalSize, 0); }
+  public static int endPathCopyStreamProgress(FlatBufferBuilder builder) {
+    int o = builder.endObject();
+    return o;
+  }
+};
+
@@ -0,0 +1,50 @@
+// automatically generated, do not modify
+
+package mbtool.daemon.v3;
+
+import java.nio.*;
+import java.lang.*;
+import java.util.*;
+import com.google.flatbuffers.*;
+
+@SuppressWarnings("unused")
+public final class PathCopyStreamRequest extends Table {
+  public static PathCopyStreamRequest getRootAsPathCopyStreamRequest(ByteBuffer _bb) { return getRootAsPathCopyStreamRequest(_bb, new PathCopyStreamRequest()); }
+  public static PathCopyStreamRequest getRootAsPathCopyStreamRequest(ByteBuffer _bb, PathCopyStreamRequest obj) { _bb.order(ByteOrder.LITTLE_ENDIAN); return (obj.__init(_bb.getInt(_bb.position()) + _bb.position(), _bb)); }
+  public PathCopyStreamRequest __init(int _i, ByteBuffer _bb) { bb_pos = _i; bb = _bb; return this; }
+
+  public String source() { int o = __offset(4); return o != 0 ? __string(o + bb_pos) : null; }
+  public ByteBuffer sourceAsByteBuffer() { return __vector_as_bytebuffer(4, 1); }
+  public String target() { int o = __offset(6); return o != 0 ? __string(o + bb_pos) : null; }
+  public ByteBuffer targetAsByteBuffer() { return __vector_as_bytebuffer(6, 1); }
+  public long offset() { int o = __offset(8); return o != 0 ? bb.getLong(o + bb_pos) : 0; }
+  public boolean sparse() { int o = __offset(10); return o != 0 ? 0!=bb.get(o + bb_pos) : false; }
+  public long progressInterval() { int o = __offset(12); return o != 0 ? bb.getLong(o + bb_pos) : 0; }
+
+  public static int createPathCopyStreamRequest(FlatBufferBuilder builder,
+      int source,
+      int target,
+      long offset,
+      boolean sparse,
+      long progress_interval) {
+    builder.startObject(5);
+    PathCopyStreamRequest.addProgressInterval(builder, progress_interval);
+    PathCopyStreamRequest.addOffset(builder, offset);
+    PathCopyStreamRequest.addTarget(builder, target);
+    PathCopyStreamRequest.addSource(builder, source);
+    PathCopyStreamRequest.addSparse(builder, sparse);
+    return PathCopyStreamRequest.endPathCopyStreamRequest(builder);
+  }
+
+  public static void startPathCopyStreamRequest(FlatBufferBuilder builder) { builder.startObject(5); }
+  public static void addSource(FlatBufferBuilder builder, int sourceOffset) { builder.addOffset(0, sourceOffset, 0); }
+  public static void addTarget(FlatBufferBuilder builder, int targetOffset) { builder.addOffset(1, targetOffset, 0); }
+  public static void addOffset(FlatBufferBuilder builder, long offset) { builder.addLong(2, offset, 0); }
+  public static void addSparse(FlatBufferBuilder builder, boolean sparse) { builder.addBoolean(3, sparse, false); }
+  public static void addProgressInterval(FlatBufferBuilder builder, long progressInterval) { builder.addLong(4, progressInterval, 0); }
+  public static int endPathCopyStreamRequest(FlatBufferBuilder builder) {
+    int o = builder.endObject();
+    return o;
+  }
+};
+
@@ -0,0 +1,49 @@
+// automatically generated, do not modify
+
+package mbtool.daemon.v3;
+
+import java.nio.*;
+import java.lang.*;
+import java.util.*;
+import com.google.flatbuffers.*;
+
+@SuppressWarnings("unused")
+public final class PathCopyStreamResponse extends Table {
+  public static PathCopyStreamResponse getRootAsPathCopyStreamResponse(ByteBuffer _bb) { return getRootAsPathCopyStreamResponse(_bb, new PathCopyStreamResponse()); }
+  public static PathCopyStreamResponse getRootAsPathCopyStreamResponse(ByteBuffer _bb, PathCopyStreamResponse obj) { _bb.order(ByteOrder.LITTLE_ENDIAN); return (obj.__init(_bb.getInt(_bb.position()) + _bb.position(), _bb)); }
+  public PathCopyStreamResponse __init(int _i, ByteBuffer _bb) { bb_pos = _i; bb = _bb; return this; }
+
+  public boolean success() { int o = __offset(4); return o != 0 ? 0!=bb.get(o + bb_pos) : false; }
+  public String errorMsg() { int o = __offset(6); return o != 0 ? __string(o + bb_pos) : null; }
+  public ByteBuffer errorMsgAsByteBuffer() { return __vector_as_bytebuffer(6, 1); }
+  public long bytesCopied() { int o = __offset(8); return o != 0 ? bb.getLong(o + bb_pos) : 0; }
+  public long totalSize() { int o = __offset(10); return o != 0 ? bb.getLong(o + bb_pos) : 0; }
+  public boolean cancelled() { int o = __offset(12); return o != 0 ? 0!=bb.get(o + bb_pos) : false; }
+
+  public static int createPathCopyStreamResponse(FlatBufferBuilder builder,
+      boolean success,
+      int error_msg,
+      long bytes_copied,
+      long total_size,
+      boolean cancelled) {
+    builder.startObject(5);
+    PathCopyStreamResponse.addTotalSize(builder, total_size);
+    PathCopyStreamResponse.addBytesCopied(builder, bytes_copied);
+    PathCopyStreamResponse.addErrorMsg(builder, error_msg);
+    PathCopyStreamResponse.addCancelled(builder, cancelled);
+    PathCopyStreamResponse.addSuccess(builder, success);
+    return PathCopyStreamResponse.endPathCopyStreamResponse(builder);
+  }
+
+  public static void startPathCopyStreamResponse(FlatBufferBuilder builder) { builder.startObject(5); }
+  public static void addSuccess(FlatBufferBuilder builder, boolean success) { builder.addBoolean(0, success, false); }
+  public static void addErrorMsg(FlatBufferBuilder builder, int errorMsgOffset) { builder.addOffset(1, errorMsgOffset, 0); }
+  public static void addBytesCopied(FlatBufferBuilder builder, long bytesCopied) { builder.addLong(2, bytesCopied, 0); }
+  public static void addTotalSize(FlatBufferBuilder builder, long totalSize) { builder.addLong(3, totalSize, 0); }
+  public static void addCancelled(FlatBufferBuilder builder, boolean cancelled) { builder.addBoolean(4, cancelled, false); }
+  public static int endPathCopyStreamResponse(FlatBufferBuilder builder) {
+    int o = builder.endObject();
+    return o;
+  }
+};
+
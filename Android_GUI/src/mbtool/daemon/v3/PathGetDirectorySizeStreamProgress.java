@@ -0,0 +1,40 @@
+// automatically generated, do not modify
+
+package mbtool.daemon.v3;
+
+import java.nio.*;
+import java.lang.*;
+import java.util.*;
+import com.google.flatbuffers.*;
+
+@SuppressWarnings("unused")
+public final class PathGetDirectorySizeStreamProgress extends Table {
+  public static PathGetDirectorySizeStreamProgress getRootAsPathGetDirectorySizeStreamProgress(ByteBuffer _bb) { return getRootAsPathGetDirectorySizeStreamProgress(_bb, new PathGetDirectorySizeStreamProgress()); }
+  public static PathGetDirectorySizeStreamProgress getRootAsPathGetDirectorySizeStreamProgress(ByteBuffer _bb, PathGetDirectorySizeStreamProgress obj) { _bb.order(ByteOrder.LITTLE_ENDIAN); return (obj.__init(_bb.getInt(_bb.position()) + _bb.position(), _bb)); }
+  public PathGetDirectorySizeStreamProgress __init(int _i, ByteBuffer _bb) { bb_pos = _i; bb = _bb; return this; }
+
+  public long size() { int o = __offset(4); return o != 0 ? bb.getLong(o + bb_pos) : 0; }
+  public DirectorySubtotal subtotals(int j) { return subtotals(new DirectorySubtotal(), j); }
+  public DirectorySubtotal subtotals(DirectorySubtotal obj, int j) { int o = __offset(6); return o != 0 ? obj.__init(__indirect(__vector(o) + j * 4), bb) : null; }
+  public int subtotalsLength() { int o = __offset(6); return o != 0 ? __vector_len(o) : 0; }
+
+  public static int createPathGetDirectorySizeStreamProgress(FlatBufferBuilder builder,
+      long size,
+      int subtotals) {
+    builder.startObject(2);
+    PathGetDirectorySizeStreamProgress.addSize(builder, size);
+    PathGetDirectorySizeStreamProgress.addSubtotals(builder, subtotals);
+    return PathGetDirectorySizeStreamProgress.endPathGetDirectorySizeStreamProgress(builder);
+  }
+
+  public static void startPathGetDirectorySizeStreamProgress(FlatBufferBuilder builder) { builder.startObject(2); }
+  public static void addSize(FlatBufferBuilder builder, long size) { builder.addLong(0, size, 0); }
+  public static void addSubtotals(FlatBufferBuilder builder, int subtotalsOffset) { builder.addOffset(1, subtotalsOffset, 0); }
+  public static int createSubtotalsVector(FlatBufferBuilder builder, int[] data) { builder.startVector(4, data.length, 4); for (int i = data.length - 1; i >= 0; i--) builder.addOffset(data[i]); return builder.endVector(); }
+  public static void startSubtotalsVector(FlatBufferBuilder builder, int numElems) { builder.startVector(4, numElems, 4); }
+  public static int endPathGetDirectorySizeStreamProgress(FlatBufferBuilder builder) {
+    int o = builder.endObject();
+    return o;
+  }
+};
+
@@ -0,0 +1,48 @@
+// automatically generated, do not modify
+
+package mbtool.daemon.v3;
+
+import java.nio.*;
+import java.lang.*;
+import java.util.*;
+import com.google.flatbuffers.*;
+
+@SuppressWarnings("unused")
+public final class PathGetDirectorySizeStreamRequest extends Table {
+  public static PathGetDirectorySizeStreamRequest getRootAsPathGetDirectorySizeStreamRequest(ByteBuffer _bb) { return getRootAsPathGetDirectorySizeStreamRequest(_bb, new PathGetDirectorySizeStreamRequest()); }
+  public static PathGetDirectorySizeStreamRequest getRootAsPathGetDirectorySizeStreamRequest(ByteBuffer _bb, PathGetDirectorySizeStreamRequest obj) { _bb.order(ByteOrder.LITTLE_ENDIAN); return (obj.__init(_bb.getInt(_bb.position()) + _bb.position(), _bb)); }
+  public PathGetDirectorySizeStreamRequest __init(int _i, ByteBuffer _bb) { bb_pos = _i; bb = _bb; return this; }
+
+  public String path() { int o = __offset(4); return o != 0 ? __string(o + bb_pos) : null; }
+  public ByteBuffer pathAsByteBuffer() { return __vector_as_bytebuffer(4, 1); }
+  public String exclusions(int j) { int o = __offset(6); return o != 0 ? __string(__vector(o) + j * 4) : null; }
+  public int exclusionsLength() { int o = __offset(6); return o != 0 ? __vector_len(o) : 0; }
+  public long progressInterval() { int o = __offset(8); return o != 0 ? (long)bb.getInt(o + bb_pos) & 0xFFFFFFFFL : 0; }
+  public long unchangedMtime() { int o = __offset(10); return o != 0 ? bb.getLong(o + bb_pos) : 0; }
+
+  public static int createPathGetDirectorySizeStreamRequest(FlatBufferBuilder builder,
+      int path,
+      int exclusions,
+      long progress_interval,
+      long unchanged_mtime) {
+    builder.startObject(4);
+    PathGetDirectorySizeStreamRequest.addUnchangedMtime(builder, unchanged_mtime);
+    PathGetDirectorySizeStreamRequest.addProgressInterval(builder, progress_interval);
+    PathGetDirectorySizeStreamRequest.addExclusions(builder, exclusions);
+    PathGetDirectorySizeStreamRequest.addPath(builder, path);
+    return PathGetDirectorySizeStreamRequest.endPathGetDirectorySizeStreamRequest(builder);
+  }
+
+  public static void startPathGetDirectorySizeStreamRequest(FlatBufferBuilder builder) { builder.startObject(4); }
+  public static void addPath(FlatBufferBuilder builder, int pathOffset) { builder.addOffset(0, pathOffset, 0); }
+  public static void addExclusions(FlatBufferBuilder builder, int exclusionsOffset) { builder.addOffset(1, exclusionsOffset, 0); }
+  public static int createExclusionsVector(FlatBufferBuilder builder, int[] data) { builder.startVector(4, data.length, 4); for (int i = data.length - 1; i >= 0; i--) builder.addOffset(data[i]); return builder.endVector(); }
+  public static void startExclusionsVector(FlatBufferBuilder builder, int numElems) { builder.startVector(4, numElems, 4); }
+  public static void addProgressInterval(FlatBufferBuilder builder, long progressInterval) { builder.addInt(2, (int)(progressInterval & 0xFFFFFFFFL), 0); }
+  public static void addUnchangedMtime(FlatBufferBuilder builder, long unchangedMtime) { builder.addLong(3, unchangedMtime, 0); }
+  public static int endPathGetDirectorySizeStreamRequest(FlatBufferBuilder builder) {
+    int o = builder.endObject();
+    return o;
+  }
+};
+
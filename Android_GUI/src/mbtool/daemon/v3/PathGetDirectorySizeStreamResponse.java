@@ -0,0 +1,61 @@
+// automatically generated, do not modify
+
+package mbtool.daemon.v3;
+
+import java.nio.*;
+import java.lang.*;
+import java.util.*;
+import com.google.flatbuffers.*;
+
+@SuppressWarnings("unused")
+public final class PathGetDirectorySizeStreamResponse extends Table {
+  public static PathGetDirectorySizeStreamResponse getRootAsPathGetDirectorySizeStreamResponse(ByteBuffer _bb) { return getRootAsPathGetDirectorySizeStreamResponse(_bb, new PathGetDirectorySizeStreamResponse()); }
+  public static PathGetDirectorySizeStreamResponse getRootAsPathGetDirectorySizeStreamResponse(ByteBuffer _bb, PathGetDirectorySizeStreamResponse obj) { _bb.order(ByteOrder.LITTLE_ENDIAN); return (obj.__init(_bb.getInt(_bb.position()) + _bb.position(), _bb)); }
+  public PathGetDirectorySizeStreamResponse __init(int _i, ByteBuffer _bb) { bb_pos = _i; bb = _bb; return this; }
+
+  public boolean success() { int o = __offset(4); return o != 0 ? 0!=bb.get(o + bb_pos) : false; }
+  public String errorMsg() { int o = __offset(6); return o != 0 ? __string(o + bb_pos) : null; }
+  public ByteBuffer errorMsgAsByteBuffer() { return __vector_as_bytebuffer(6, 1); }
+  public long size() { int o = __offset(8); return o != 0 ? bb.getLong(o + bb_pos) : 0; }
+  public DirectorySubtotal subtotals(int j) { return subtotals(new DirectorySubtotal(), j); }
+  public DirectorySubtotal subtotals(DirectorySubtotal obj, int j) { int o = __offset(10); return o != 0 ? obj.__init(__indirect(__vector(o) + j * 4), bb) : null; }
+  public int subtotalsLength() { int o = __offset(10); return o != 0 ? __vector_len(o) : 0; }
+  public long mtime() { int o = __offset(12); return o != 0 ? bb.getLong(o + bb_pos) : 0; }
+  public boolean unchanged() { int o = __offset(14); return o != 0 ? 0!=bb.get(o + bb_pos) : false; }
+  public boolean cancelled() { int o = __offset(16); return o != 0 ? 0!=bb.get(o + bb_pos) : false; }
+
+  public static int createPathGetDirectorySizeStreamResponse(FlatBufferBuilder builder,
+      boolean success,
+      int error_msg,
+      long size,
+      int subtotals,
+      long mtime,
+      boolean unchanged,
+      boolean cancelled) {
+    builder.startObject(7);
+    PathGetDirectorySizeStreamResponse.addMtime(builder, mtime);
+    PathGetDirectorySizeStreamResponse.addSize(builder, size);
+    PathGetDirectorySizeStreamResponse.addSubtotals(builder, subtotals);
+    PathGetDirectorySizeStreamResponse.addErrorMsg(builder, error_msg);
+    PathGetDirectorySizeStreamResponse.addCancelled(builder, cancelled);
+    PathGetDirectorySizeStreamResponse.addUnchanged(builder, unchanged);
+    PathGetDirectorySizeStreamResponse.addSuccess(builder, success);
+    return PathGetDirectorySizeStreamResponse.endPathGetDirectorySizeStreamResponse(builder);
+  }
+
+  public static void startPathGetDirectorySizeStreamResponse(FlatBufferBuilder builder) { builder.startObject(7); }
+  public static void addSuccess(FlatBufferBuilder builder, boolean success) { builder.addBoolean(0, success, false); }
+  public static void addErrorMsg(FlatBufferBuilder builder, int errorMsgOffset) { builder.addOffset(1, errorMsgOffset, 0); }
+  public static void addSize(FlatBufferBuilder builder, long size) { builder.addLong(2, size, 0); }
+  public static void addSubtotals(FlatBufferBuilder builder, int subtotalsOffset) { builder.addOffset(3, subtotalsOffset, 0); }
+  public static int createSubtotalsVector(FlatBufferBuilder builder, int[] data) { builder.startVector(4, data.length, 4); for (int i = data.length - 1; i >= 0; i--) builder.addOffset(data[i]); return builder.endVector(); }
+  public static void startSubtotalsVector(FlatBufferBuilder builder, int numElems) { builder.startVector(4, numElems, 4); }
+  public static void addMtime(FlatBufferBuilder builder, long mtime) { builder.addLong(4, mtime, 0); }
+  public static void addUnchanged(FlatBufferBuilder builder, boolean unchanged) { builder.addBoolean(5, unchanged, false); }
+  public static void addCancelled(FlatBufferBuilder builder, boolean cancelled) { builder.addBoolean(6, cancelled, false); }
+  public static int endPathGetDirectorySizeStreamResponse(FlatBufferBuilder builder) {
+    int o = builder.endObject();
+    return o;
+  }
+};
+
@@ -0,0 +1,41 @@
+// automatically generated, do not modify
+
+package mbtool.daemon.v3;
+
+import java.nio.*;
+import java.lang.*;
+import java.util.*;
+import com.google.flatbuffers.*;
+
+@SuppressWarnings("unused")
+public final class PathHashRequest extends Table {
+  public static PathHashRequest getRootAsPathHashRequest(ByteBuffer _bb) { return getRootAsPathHashRequest(_bb, new PathHashRequest()); }
+  public static PathHashRequest getRootAsPathHashRequest(ByteBuffer _bb, PathHashRequest obj) { _bb.order(ByteOrder.LITTLE_ENDIAN); return (obj.__init(_bb.getInt(_bb.position()) + _bb.position(), _bb)); }
+  public PathHashRequest __init(int _i, ByteBuffer _bb) { bb_pos = _i; bb = _bb; return this; }
+
+  public String path() { int o = __offset(4); return o != 0 ? __string(o + bb_pos) : null; }
+  public ByteBuffer pathAsByteBuffer() { return __vector_as_bytebuffer(4, 1); }
+  public long offset() { int o = __offset(6); return o != 0 ? bb.getLong(o + bb_pos) : 0; }
+  public long size() { int o = __offset(8); return o != 0 ? bb.getLong(o + bb_pos) : 0; }
+
+  public static int createPathHashRequest(FlatBufferBuilder builder,
+      int path,
+      long offset,
+      long size) {
+    builder.startObject(3);
+    PathHashRequest.addSize(builder, size);
+    PathHashRequest.addOffset(builder, offset);
+    PathHashRequest.addPath(builder, path);
+    return PathHashRequest.endPathHashRequest(builder);
+  }
+
+  public static void startPathHashRequest(FlatBufferBuilder builder) { builder.startObject(3); }
+  public static void addPath(FlatBufferBuilder builder, int pathOffset) { builder.addOffset(0, pathOffset, 0); }
+  public static void addOffset(FlatBufferBuilder builder, long offset) { builder.addLong(1, offset, 0); }
+  public static void addSize(FlatBufferBuilder builder, long size) { builder.addLong(2, size, 0); }
+  public static int endPathHashRequest(FlatBufferBuilder builder) {
+    int o = builder.endObject();
+    return o;
+  }
+};
+
@@ -0,0 +1,49 @@
+// automatically generated, do not modify
+
+package mbtool.daemon.v3;
+
+import java.nio.*;
+import java.lang.*;
+import java.util.*;
+import com.google.flatbuffers.*;
+
+@SuppressWarnings("unused")
+public final class PathHashResponse extends Table {
+  public static PathHashResponse getRootAsPathHashResponse(ByteBuffer _bb) { return getRootAsPathHashResponse(_bb, new PathHashResponse()); }
+  public static PathHashResponse getRootAsPathHashResponse(ByteBuffer _bb, PathHashResponse obj) { _bb.order(ByteOrder.LITTLE_ENDIAN); return (obj.__init(_bb.getInt(_bb.position()) + _bb.position(), _bb)); }
+  public PathHashResponse __init(int _i, ByteBuffer _bb) { bb_pos = _i; bb = _bb; return this; }
+
+  public boolean success() { int o = __offset(4); return o != 0 ? 0!=bb.get(o + bb_pos) : false; }
+  public String errorMsg() { int o = __offset(6); return o != 0 ? __string(o + bb_pos) : null; }
+  public ByteBuffer errorMsgAsByteBuffer() { return __vector_as_bytebuffer(6, 1); }
+  public int sha256(int j) { int o = __offset(8); return o != 0 ? bb.get(__vector(o) + j * 1) & 0xFF : 0; }
+  public int sha256Length() { int o = __offset(8); return o != 0 ? __vector_len(o) : 0; }
+  public ByteBuffer sha256AsByteBuffer() { return __vector_as_bytebuffer(8, 1); }
+  public long size() { int o = __offset(10); return o != 0 ? bb.getLong(o + bb_pos) : 0; }
+
+  public static int createPathHashResponse(FlatBufferBuilder builder,
+      boolean success,
+      int error_msg,
+      int sha256,
+      long size) {
+    builder.startObject(4);
+    PathHashResponse.addSize(builder, size);
+    PathHashResponse.addSha256(builder, sha256);
+    PathHashResponse.addErrorMsg(builder, error_msg);
+    PathHashResponse.addSuccess(builder, success);
+    return PathHashResponse.endPathHashResponse(builder);
+  }
+
+  public static void startPathHashResponse(FlatBufferBuilder builder) { builder.startObject(4); }
+  public static void addSuccess(FlatBufferBuilder builder, boolean success) { builder.addBoolean(0, success, false); }
+  public static void addErrorMsg(FlatBufferBuilder builder, int errorMsgOffset) { builder.addOffset(1, errorMsgOffset, 0); }
+  public static void addSha256(FlatBufferBuilder builder, int sha256Offset) { builder.addOffset(2, sha256Offset, 0); }
+  public static int createSha256Vector(FlatBufferBuilder builder, byte[] data) { builder.startVector(1, data.length, 1); for (int i = data.length - 1; i >= 0; i--) builder.addByte(data[i]); return builder.endVector(); }
+  public static void startSha256Vector(FlatBufferBuilder builder, int numElems) { builder.startVector(1, numElems, 1); }
+  public static void addSize(FlatBufferBuilder builder, long size) { builder.addLong(3, size, 0); }
+  public static int endPathHashResponse(FlatBufferBuilder builder) {
+    int o = builder.endObject();
+    return o;
+  }
+};
+
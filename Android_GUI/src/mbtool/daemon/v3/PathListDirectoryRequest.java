@@ -0,0 +1,46 @@
+// automatically generated, do not modify
+
+package mbtool.daemon.v3;
+
+import java.nio.*;
+import java.lang.*;
+import java.util.*;
+import com.google.flatbuffers.*;
+
+@SuppressWarnings("unused")
+public final class PathListDirectoryRequest extends Table {
+  public static PathListDirectoryRequest getRootAsPathListDirectoryRequest(ByteBuffer _bb) { return getRootAsPathListDirectoryRequest(_bb, new PathListDirectoryRequest()); }
+  public static PathListDirectoryRequest getRootAsPathListDirectoryRequest(ByteBuffer _bb, PathListDirectoryRequest obj) { _bb.order(ByteOrder.LITTLE_ENDIAN); return (obj.__init(_bb.getInt(_bb.position()) + _bb.position(), _bb)); }
+  public PathListDirectoryRequest __init(int _i, ByteBuffer _bb) { bb_pos = _i; bb = _bb; return this; }
+
+  public String path() { int o = __offset(4); return o != 0 ? __string(o + bb_pos) : null; }
+  public ByteBuffer pathAsByteBuffer() { return __vector_as_bytebuffer(4, 1); }
+  public String pattern() { int o = __offset(6); return o != 0 ? __string(o + bb_pos) : null; }
+  public ByteBuffer patternAsByteBuffer() { return __vector_as_bytebuffer(6, 1); }
+  public long cursor() { int o = __offset(8); return o != 0 ? bb.getLong(o + bb_pos) : 0; }
+  public long maxEntries() { int o = __offset(10); return o != 0 ? (long)bb.getInt(o + bb_pos) & 0xFFFFFFFFL : 0; }
+
+  public static int createPathListDirectoryRequest(FlatBufferBuilder builder,
+      int path,
+      int pattern,
+      long cursor,
+      long max_entries) {
+    builder.startObject(4);
+    PathListDirectoryRequest.addCursor(builder, cursor);
+    PathListDirectoryRequest.addMaxEntries(builder, max_entries);
+    PathListDirectoryRequest.addPattern(builder, pattern);
+    PathListDirectoryRequest.addPath(builder, path);
+    return PathListDirectoryRequest.endPathListDirectoryRequest(builder);
+  }
+
+  public static void startPathListDirectoryRequest(FlatBufferBuilder builder) { builder.startObject(4); }
+  public static void addPath(FlatBufferBuilder builder, int pathOffset) { builder.addOffset(0, pathOffset, 0); }
+  public static void addPattern(FlatBufferBuilder builder, int patternOffset) { builder.addOffset(1, patternOffset, 0); }
+  public static void addCursor(FlatBufferBuilder builder, long cursor) { builder.addLong(2, cursor, 0); }
+  public static void addMaxEntries(FlatBufferBuilder builder, long maxEntries) { builder.addInt(3, (int)(maxEntries & 0xFFFFFFFFL), 0); }
+  public static int endPathListDirectoryRequest(FlatBufferBuilder builder) {
+    int o = builder.endObject();
+    return o;
+  }
+};
+
@@ -0,0 +1,53 @@
+// automatically generated, do not modify
+
+package mbtool.daemon.v3;
+
+import java.nio.*;
+import java.lang.*;
+import java.util.*;
+import com.google.flatbuffers.*;
+
+@SuppressWarnings("unused")
+public final class PathListDirectoryResponse extends Table {
+  public static PathListDirectoryResponse getRootAsPathListDirectoryResponse(ByteBuffer _bb) { return getRootAsPathListDirectoryResponse(_bb, new PathListDirectoryResponse()); }
+  public static PathListDirectoryResponse getRootAsPathListDirectoryResponse(ByteBuffer _bb, PathListDirectoryResponse obj) { _bb.order(ByteOrder.LITTLE_ENDIAN); return (obj.__init(_bb.getInt(_bb.position()) + _bb.position(), _bb)); }
+  public PathListDirectoryResponse __init(int _i, ByteBuffer _bb) { bb_pos = _i; bb = _bb; return this; }
+
+  public boolean success() { int o = __offset(4); return o != 0 ? 0!=bb.get(o + bb_pos) : false; }
+  public String errorMsg() { int o = __offset(6); return o != 0 ? __string(o + bb_pos) : null; }
+  public ByteBuffer errorMsgAsByteBuffer() { return __vector_as_bytebuffer(6, 1); }
+  public DirectoryEntry entries(int j) { return entries(new DirectoryEntry(), j); }
+  public DirectoryEntry entries(DirectoryEntry obj, int j) { int o = __offset(8); return o != 0 ? obj.__init(__indirect(__vector(o) + j * 4), bb) : null; }
+  public int entriesLength() { int o = __offset(8); return o != 0 ? __vector_len(o) : 0; }
+  public long nextCursor() { int o = __offset(10); return o != 0 ? bb.getLong(o + bb_pos) : 0; }
+  public boolean eof() { int o = __offset(12); return o != 0 ? 0!=bb.get(o + bb_pos) : false; }
+
+  public static int createPathListDirectoryResponse(FlatBufferBuilder builder,
+      boolean success,
+      int error_msg,
+      int entries,
+      long next_cursor,
+      boolean eof) {
+    builder.startObject(5);
+    PathListDirectoryResponse.addNextCursor(builder, next_cursor);
+    PathListDirectoryResponse.addEntries(builder, entries);
+    PathListDirectoryResponse.addErrorMsg(builder, error_msg);
+    PathListDirectoryResponse.addEof(builder, eof);
+    PathListDirectoryResponse.addSuccess(builder, success);
+    return PathListDirectoryResponse.endPathListDirectoryResponse(builder);
+  }
+
+  public static void startPathListDirectoryResponse(FlatBufferBuilder builder) { builder.startObject(5); }
+  public static void addSuccess(FlatBufferBuilder builder, boolean success) { builder.addBoolean(0, success, false); }
+  public static void addErrorMsg(FlatBufferBuilder builder, int errorMsgOffset) { builder.addOffset(1, errorMsgOffset, 0); }
+  public static void addEntries(FlatBufferBuilder builder, int entriesOffset) { builder.addOffset(2, entriesOffset, 0); }
+  public static int createEntriesVector(FlatBufferBuilder builder, int[] data) { builder.startVector(4, data.length, 4); for (int i = data.length - 1; i >= 0; i--) builder.addOffset(data[i]); return builder.endVector(); }
+  public static void startEntriesVector(FlatBufferBuilder builder, int numElems) { builder.startVector(4, numElems, 4); }
+  public static void addNextCursor(FlatBufferBuilder builder, long nextCursor) { builder.addLong(3, nextCursor, 0); }
+  public static void addEof(FlatBufferBuilder builder, boolean eof) { builder.addBoolean(4, eof, false); }
+  public static int endPathListDirectoryResponse(FlatBufferBuilder builder) {
+    int o = builder.endObject();
+    return o;
+  }
+};
+
@@ -0,0 +1,33 @@
+// automatically generated, do not modify
+
+package mbtool.daemon.v3;
+
+import java.nio.*;
+import java.lang.*;
+import java.util.*;
+import com.google.flatbuffers.*;
+
+@SuppressWarnings("unused")
+public final class PathOpenFdRequest extends Table {
+  public static PathOpenFdRequest getRootAsPathOpenFdRequest(ByteBuffer _bb) { return getRootAsPathOpenFdRequest(_bb, new PathOpenFdRequest()); }
+  public static PathOpenFdRequest getRootAsPathOpenFdRequest(ByteBuffer _bb, PathOpenFdRequest obj) { _bb.order(ByteOrder.LITTLE_ENDIAN); return (obj.__init(_bb.getInt(_bb.position()) + _bb.position(), _bb)); }
+  public PathOpenFdRequest __init(int _i, ByteBuffer _bb) { bb_pos = _i; bb = _bb; return this; }
+
+  public String path() { int o = __offset(4); return o != 0 ? __string(o + bb_pos) : null; }
+  public ByteBuffer pathAsByteBuffer() { return __vector_as_bytebuffer(4, 1); }
+
+  public static int createPathOpenFdRequest(FlatBufferBuilder builder,
+      int path) {
+    builder.startObject(1);
+    PathOpenFdRequest.addPath(builder, path);
+    return PathOpenFdRequest.endPathOpenFdRequest(builder);
+  }
+
+  public static void startPathOpenFdRequest(FlatBufferBuilder builder) { builder.startObject(1); }
+  public static void addPath(FlatBufferBuilder builder, int pathOffset) { builder.addOffset(0, pathOffset, 0); }
+  public static int endPathOpenFdRequest(FlatBufferBuilder builder) {
+    int o = builder.endObject();
+    return o;
+  }
+};
+
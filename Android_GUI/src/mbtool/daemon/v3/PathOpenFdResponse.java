@@ -0,0 +1,46 @@
+// automatically generated, do not modify
+
+package mbtool.daemon.v3;
+
+import java.nio.*;
+import java.lang.*;
+import java.util.*;
+import com.google.flatbuffers.*;
+
+@SuppressWarnings("unused")
+public final class PathOpenFdResponse extends Table {
+  public static PathOpenFdResponse getRootAsPathOpenFdResponse(ByteBuffer _bb) { return getRootAsPathOpenFdResponse(_bb, new PathOpenFdResponse()); }
+  public static PathOpenFdResponse getRootAsPathOpenFdResponse(ByteBuffer _bb, PathOpenFdResponse obj) { _bb.order(ByteOrder.LITTLE_ENDIAN); return (obj.__init(_bb.getInt(_bb.position()) + _bb.position(), _bb)); }
+  public PathOpenFdResponse __init(int _i, ByteBuffer _bb) { bb_pos = _i; bb = _bb; return this; }
+
+  public boolean success() { int o = __offset(4); return o != 0 ? 0!=bb.get(o + bb_pos) : false; }
+  public String errorMsg() { int o = __offset(6); return o != 0 ? __string(o + bb_pos) : null; }
+  public ByteBuffer errorMsgAsByteBuffer() { return __vector_as_bytebuffer(6, 1); }
+  public StructStat stat() { return stat(new StructStat()); }
+  public StructStat stat(StructStat obj) { int o = __offset(8); return o != 0 ? obj.__init(__indirect(o + bb_pos), bb) : null; }
+  public long size() { int o = __offset(10); return o != 0 ? bb.getLong(o + bb_pos) : 0; }
+
+  public static int createPathOpenFdResponse(FlatBufferBuilder builder,
+      boolean success,
+      int error_msg,
+      int stat,
+      long size) {
+    builder.startObject(4);
+    PathOpenFdResponse.addSize(builder, size);
+    PathOpenFdResponse.addStat(builder, stat);
+    PathOpenFdResponse.addErrorMsg(builder, error_msg);
+    PathOpenFdResponse.addSuccess(builder, success);
+    return PathOpenFdResponse.endPathOpenFdResponse(builder);
+  }
+
+  public static void startPathOpenFdResponse(FlatBufferBuilder builder) { builder.startObject(4); }
+  public static void addSuccess(FlatBufferBuilder builder, boolean success) { builder.addBoolean(0, success, false); }
+  public static void addErrorMsg(FlatBufferBuilder builder, int errorMsgOffset) { builder.addOffset(1, errorMsgOffset, 0); }
+  public static void addStat(FlatBufferBuilder builder, int statOffset) { builder.addOffset(2, statOffset, 0); }
+  public static void addSize(FlatBufferBuilder builder, long size) { builder.addLong(3, size, 0); }
+  public static int endPathOpenFdResponse(FlatBufferBuilder builder) {
+    int o = builder.endObject();
+    return o;
+  }
+};
+
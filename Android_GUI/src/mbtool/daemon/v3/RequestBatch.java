@@ -0,0 +1,40 @@
+// automatically generated, do not modify
+
+package mbtool.daemon.v3;
+
+import java.nio.*;
+import java.lang.*;
+import java.util.*;
+import com.google.flatbuffers.*;
+
+@SuppressWarnings("unused")
+public final class RequestBatch extends Table {
+  public static RequestBatch getRootAsRequestBatch(ByteBuffer _bb) { return getRootAsRequestBatch(_bb, new RequestBatch()); }
+  public static RequestBatch getRootAsRequestBatch(ByteBuffer _bb, RequestBatch obj) { _bb.order(ByteOrder.LITTLE_ENDIAN); return (obj.__init(_bb.getInt(_bb.position()) + _bb.position(), _bb)); }
+  public RequestBatch __init(int _i, ByteBuffer _bb) { bb_pos = _i; bb = _bb; return this; }
+
+  public Request requests(int j) { return requests(new Request(), j); }
+  public Request requests(Request obj, int j) { int o = __offset(4); return o != 0 ? obj.__init(__indirect(__vector(o) + j * 4), bb) : null; }
+  public int requestsLength() { int o = __offset(4); return o != 0 ? __vector_len(o) : 0; }
+  public boolean stopOnError() { int o = __offset(6); return o != 0 ? 0!=bb.get(o + bb_pos) : false; }
+
+  public static int createRequestBatch(FlatBufferBuilder builder,
+      int requests,
+      boolean stop_on_error) {
+    builder.startObject(2);
+    RequestBatch.addRequests(builder, requests);
+    RequestBatch.addStopOnError(builder, stop_on_error);
+    return RequestBatch.endRequestBatch(builder);
+  }
+
+  public static void startRequestBatch(FlatBufferBuilder builder) { builder.startObject(2); }
+  public static void addRequests(FlatBufferBuilder builder, int requestsOffset) { builder.addOffset(0, requestsOffset, 0); }
+  public static int createRequestsVector(FlatBufferBuilder builder, int[] data) { builder.startVector(4, data.length, 4); for (int i = data.length - 1; i >= 0; i--) builder.addOffset(data[i]); return builder.endVector(); }
+  public static void startRequestsVector(FlatBufferBuilder builder, int numElems) { builder.startVector(4, numElems, 4); }
+  public static void addStopOnError(FlatBufferBuilder builder, boolean stopOnError) { builder.addBoolean(1, stopOnError, false); }
+  public static int endRequestBatch(FlatBufferBuilder builder) {
+    int o = builder.endObject();
+    return o;
+  }
+};
+
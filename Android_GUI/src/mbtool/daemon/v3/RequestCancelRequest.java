@@ -0,0 +1,32 @@
+// automatically generated, do not modify
+
+package mbtool.daemon.v3;
+
+import java.nio.*;
+import java.lang.*;
+import java.util.*;
+import com.google.flatbuffers.*;
+
+@SuppressWarnings("unused")
+public final class RequestCancelRequest extends Table {
+  public static RequestCancelRequest getRootAsRequestCancelRequest(ByteBuffer _bb) { return getRootAsRequestCancelRequest(_bb, new RequestCancelRequest()); }
+  public static RequestCancelRequest getRootAsRequestCancelRequest(ByteBuffer _bb, RequestCancelRequest obj) { _bb.order(ByteOrder.LITTLE_ENDIAN); return (obj.__init(_bb.getInt(_bb.position()) + _bb.position(), _bb)); }
+  public RequestCancelRequest __init(int _i, ByteBuffer _bb) { bb_pos = _i; bb = _bb; return this; }
+
+  public long id() { int o = __offset(4); return o != 0 ? (long)bb.getInt(o + bb_pos) & 0xFFFFFFFFL : 0; }
+
+  public static int createRequestCancelRequest(FlatBufferBuilder builder,
+      long id) {
+    builder.startObject(1);
+    RequestCancelRequest.addId(builder, id);
+    return RequestCancelRequest.endRequestCancelRequest(builder);
+  }
+
+  public static void startRequestCancelRequest(FlatBufferBuilder builder) { builder.startObject(1); }
+  public static void addId(FlatBufferBuilder builder, long id) { builder.addInt(0, (int)(id & 0xFFFFFFFFL), 0); }
+  public static int endRequestCancelRequest(FlatBufferBuilder builder) {
+    int o = builder.endObject();
+    return o;
+  }
+};
+
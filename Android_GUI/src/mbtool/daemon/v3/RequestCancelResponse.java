@@ -0,0 +1,32 @@
+// automatically generated, do not modify
+
+package mbtool.daemon.v3;
+
+import java.nio.*;
+import java.lang.*;
+import java.util.*;
+import com.google.flatbuffers.*;
+
+@SuppressWarnings("unused")
+public final class RequestCancelResponse extends Table {
+  public static RequestCancelResponse getRootAsRequestCancelResponse(ByteBuffer _bb) { return getRootAsRequestCancelResponse(_bb, new RequestCancelResponse()); }
+  public static RequestCancelResponse getRootAsRequestCancelResponse(ByteBuffer _bb, RequestCancelResponse obj) { _bb.order(ByteOrder.LITTLE_ENDIAN); return (obj.__init(_bb.getInt(_bb.position()) + _bb.position(), _bb)); }
+  public RequestCancelResponse __init(int _i, ByteBuffer _bb) { bb_pos = _i; bb = _bb; return this; }
+
+  public boolean success() { int o = __offset(4); return o != 0 ? 0!=bb.get(o + bb_pos) : false; }
+
+  public static int createRequestCancelResponse(FlatBufferBuilder builder,
+      boolean success) {
+    builder.startObject(1);
+    RequestCancelResponse.addSuccess(builder, success);
+    return RequestCancelResponse.endRequestCancelResponse(builder);
+  }
+
+  public static void startRequestCancelResponse(FlatBufferBuilder builder) { builder.startObject(1); }
+  public static void addSuccess(FlatBufferBuilder builder, boolean success) { builder.addBoolean(0, success, false); }
+  public static int endRequestCancelResponse(FlatBufferBuilder builder) {
+    int o = builder.endObject();
+    return o;
+  }
+};
+
@@ -27,8 +27,17 @@ public final class RequestType {
   public static final byte MbWipeRomRequest = 20;
   public static final byte MbGetPackagesCountRequest = 21;
   public static final byte RebootRequest = 22;
+  public static final byte RequestBatch = 23;
+  public static final byte PathOpenFdRequest = 24;
+  public static final byte PathHashRequest = 25;
+  public static final byte SetCompressionRequest = 26;
+  public static final byte PathCopyStreamRequest = 27;
+  public static final byte RequestCancelRequest = 28;
+  public static final byte PathGetDirectorySizeStreamRequest = 29;
+  public static final byte EventSubscribeRequest = 30;
+  public static final byte PathListDirectoryRequest = 31;
 
-  private static final String[] names = { "NONE", "FileChmodRequest", "FileCloseRequest", "FileOpenRequest", "FileReadRequest", "FileSeekRequest", "FileStatRequest", "FileWriteRequest", "FileSELinuxGetLabelRequest", "FileSELinuxSetLabelRequest", "PathChmodRequest", "PathCopyRequest", "PathSELinuxGetLabelRequest", "PathSELinuxSetLabelRequest", "PathGetDirectorySizeRequest", "MbGetVersionRequest", "MbGetInstalledRomsRequest", "MbGetBootedRomIdRequest", "MbSwitchRomRequest", "MbSetKernelRequest", "MbWipeRomRequest", "MbGetPackagesCountRequest", "RebootRequest", };
+  private static final String[] names = { "NONE", "FileChmodRequest", "FileCloseRequest", "FileOpenRequest", "FileReadRequest", "FileSeekRequest", "FileStatRequest", "FileWriteRequest", "FileSELinuxGetLabelRequest", "FileSELinuxSetLabelRequest", "PathChmodRequest", "PathCopyRequest", "PathSELinuxGetLabelRequest", "PathSELinuxSetLabelRequest", "PathGetDirectorySizeRequest", "MbGetVersionRequest", "MbGetInstalledRomsRequest", "MbGetBootedRomIdRequest", "MbSwitchRomRequest", "MbSetKernelRequest", "MbWipeRomRequest", "MbGetPackagesCountRequest", "RebootRequest", "RequestBatch", "PathOpenFdRequest", "PathHashRequest", "SetCompressionRequest", "PathCopyStreamRequest", "RequestCancelRequest", "PathGetDirectorySizeStreamRequest", "EventSubscribeRequest", "PathListDirectoryRequest", };
 
   public static String name(int e) { return names[e]; }
 };
@@ -0,0 +1,36 @@
+// automatically generated, do not modify
+
+package mbtool.daemon.v3;
+
+import java.nio.*;
+import java.lang.*;
+import java.util.*;
+import com.google.flatbuffers.*;
+
+@SuppressWarnings("unused")
+public final class ResponseBatch extends Table {
+  public static ResponseBatch getRootAsResponseBatch(ByteBuffer _bb) { return getRootAsResponseBatch(_bb, new ResponseBatch()); }
+  public static ResponseBatch getRootAsResponseBatch(ByteBuffer _bb, ResponseBatch obj) { _bb.order(ByteOrder.LITTLE_ENDIAN); return (obj.__init(_bb.getInt(_bb.position()) + _bb.position(), _bb)); }
+  public ResponseBatch __init(int _i, ByteBuffer _bb) { bb_pos = _i; bb = _bb; return this; }
+
+  public NestedResponse responses(int j) { return responses(new NestedResponse(), j); }
+  public NestedResponse responses(NestedResponse obj, int j) { int o = __offset(4); return o != 0 ? obj.__init(__indirect(__vector(o) + j * 4), bb) : null; }
+  public int responsesLength() { int o = __offset(4); return o != 0 ? __vector_len(o) : 0; }
+
+  public static int createResponseBatch(FlatBufferBuilder builder,
+      int responses) {
+    builder.startObject(1);
+    ResponseBatch.addResponses(builder, responses);
+    return ResponseBatch.endResponseBatch(builder);
+  }
+
+  public static void startResponseBatch(FlatBufferBuilder builder) { builder.startObject(1); }
+  public static void addResponses(FlatBufferBuilder builder, int responsesOffset) { builder.addOffset(0, responsesOffset, 0); }
+  public static int createResponsesVector(FlatBufferBuilder builder, int[] data) { builder.startVector(4, data.length, 4); for (int i = data.length - 1; i >= 0; i--) builder.addOffset(data[i]); return builder.endVector(); }
+  public static void startResponsesVector(FlatBufferBuilder builder, int numElems) { builder.startVector(4, numElems, 4); }
+  public static int endResponseBatch(FlatBufferBuilder builder) {
+    int o = builder.endObject();
+    return o;
+  }
+};
+
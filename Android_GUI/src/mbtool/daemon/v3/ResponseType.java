@@ -29,8 +29,20 @@ public final class ResponseType {
   public static final byte MbWipeRomResponse = 22;
   public static final byte MbGetPackagesCountResponse = 23;
   public static final byte RebootResponse = 24;
+  public static final byte ResponseBatch = 25;
+  public static final byte PathOpenFdResponse = 26;
+  public static final byte PathHashResponse = 27;
+  public static final byte SetCompressionResponse = 28;
+  public static final byte PathCopyStreamProgress = 29;
+  public static final byte PathCopyStreamResponse = 30;
+  public static final byte RequestCancelResponse = 31;
+  public static final byte PathGetDirectorySizeStreamProgress = 32;
+  public static final byte PathGetDirectorySizeStreamResponse = 33;
+  public static final byte EventSubscribeResponse = 34;
+  public static final byte EventNotification = 35;
+  public static final byte PathListDirectoryResponse = 36;
 
-  private static final String[] names = { "NONE", "Invalid", "Unsupported", "FileChmodResponse", "FileCloseResponse", "FileOpenResponse", "FileReadResponse", "FileSeekResponse", "FileStatResponse", "FileWriteResponse", "FileSELinuxGetLabelResponse", "FileSELinuxSetLabelResponse", "PathChmodResponse", "PathCopyResponse", "PathSELinuxGetLabelResponse", "PathSELinuxSetLabelResponse", "PathGetDirectorySizeResponse", "MbGetVersionResponse", "MbGetInstalledRomsResponse", "MbGetBootedRomIdResponse", "MbSwitchRomResponse", "MbSetKernelResponse", "MbWipeRomResponse", "MbGetPackagesCountResponse", "RebootResponse", };
+  private static final String[] names = { "NONE", "Invalid", "Unsupported", "FileChmodResponse", "FileCloseResponse", "FileOpenResponse", "FileReadResponse", "FileSeekResponse", "FileStatResponse", "FileWriteResponse", "FileSELinuxGetLabelResponse", "FileSELinuxSetLabelResponse", "PathChmodResponse", "PathCopyResponse", "PathSELinuxGetLabelResponse", "PathSELinuxSetLabelResponse", "PathGetDirectorySizeResponse", "MbGetVersionResponse", "MbGetInstalledRomsResponse", "MbGetBootedRomIdResponse", "MbSwitchRomResponse", "MbSetKernelResponse", "MbWipeRomResponse", "MbGetPackagesCountResponse", "RebootResponse", "ResponseBatch", "PathOpenFdResponse", "PathHashResponse", "SetCompressionResponse", "PathCopyStreamProgress", "PathCopyStreamResponse", "RequestCancelResponse", "PathGetDirectorySizeStreamProgress", "PathGetDirectorySizeStreamResponse", "EventSubscribeResponse", "EventNotification", "PathListDirectoryResponse", };
 
   public static String name(int e) { return names[e]; }
 };
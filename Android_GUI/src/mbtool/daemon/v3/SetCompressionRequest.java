@@ -0,0 +1,40 @@
+// automatically generated, do not modify
+
+package mbtool.daemon.v3;
+
+import java.nio.*;
+import java.lang.*;
+import java.util.*;
+import com.google.flatbuffers.*;
+
+@SuppressWarnings("unused")
+public final class SetCompressionRequest extends Table {
+  public static SetCompressionRequest getRootAsSetCompressionRequest(ByteBuffer _bb) { return getRootAsSetCompressionRequest(_bb, new SetCompressionRequest()); }
+  public static SetCompressionRequest getRootAsSetCompressionRequest(ByteBuffer _bb, SetCompressionRequest obj) { _bb.order(ByteOrder.LITTLE_ENDIAN); return (obj.__init(_bb.getInt(_bb.position()) + _bb.position(), _bb)); }
+  public SetCompressionRequest __init(int _i, ByteBuffer _bb) { bb_pos = _i; bb = _bb; return this; }
+
+  public short types(int j) { int o = __offset(4); return o != 0 ? bb.getShort(__vector(o) + j * 2) : 0; }
+  public int typesLength() { int o = __offset(4); return o != 0 ? __vector_len(o) : 0; }
+  public ByteBuffer typesAsByteBuffer() { return __vector_as_bytebuffer(4, 2); }
+  public long threshold() { int o = __offset(6); return o != 0 ? (long)bb.getInt(o + bb_pos) & 0xFFFFFFFFL : 0; }
+
+  public static int createSetCompressionRequest(FlatBufferBuilder builder,
+      int types,
+      long threshold) {
+    builder.startObject(2);
+    SetCompressionRequest.addThreshold(builder, threshold);
+    SetCompressionRequest.addTypes(builder, types);
+    return SetCompressionRequest.endSetCompressionRequest(builder);
+  }
+
+  public static void startSetCompressionRequest(FlatBufferBuilder builder) { builder.startObject(2); }
+  public static void addTypes(FlatBufferBuilder builder, int typesOffset) { builder.addOffset(0, typesOffset, 0); }
+  public static int createTypesVector(FlatBufferBuilder builder, short[] data) { builder.startVector(2, data.length, 2); for (int i = data.length - 1; i >= 0; i--) builder.addShort(data[i]); return builder.endVector(); }
+  public static void startTypesVector(FlatBufferBuilder builder, int numElems) { builder.startVector(2, numElems, 2); }
+  public static void addThreshold(FlatBufferBuilder builder, long threshold) { builder.addInt(1, (int)(threshold & 0xFFFFFFFFL), 0); }
+  public static int endSetCompressionRequest(FlatBufferBuilder builder) {
+    int o = builder.endObject();
+    return o;
+  }
+};
+
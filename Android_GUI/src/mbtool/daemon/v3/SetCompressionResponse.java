@@ -0,0 +1,41 @@
+// automatically generated, do not modify
+
+package mbtool.daemon.v3;
+
+import java.nio.*;
+import java.lang.*;
+import java.util.*;
+import com.google.flatbuffers.*;
+
+@SuppressWarnings("unused")
+public final class SetCompressionResponse extends Table {
+  public static SetCompressionResponse getRootAsSetCompressionResponse(ByteBuffer _bb) { return getRootAsSetCompressionResponse(_bb, new SetCompressionResponse()); }
+  public static SetCompressionResponse getRootAsSetCompressionResponse(ByteBuffer _bb, SetCompressionResponse obj) { _bb.order(ByteOrder.LITTLE_ENDIAN); return (obj.__init(_bb.getInt(_bb.position()) + _bb.position(), _bb)); }
+  public SetCompressionResponse __init(int _i, ByteBuffer _bb) { bb_pos = _i; bb = _bb; return this; }
+
+  public boolean success() { int o = __offset(4); return o != 0 ? 0!=bb.get(o + bb_pos) : false; }
+  public String errorMsg() { int o = __offset(6); return o != 0 ? __string(o + bb_pos) : null; }
+  public ByteBuffer errorMsgAsByteBuffer() { return __vector_as_bytebuffer(6, 1); }
+  public short type() { int o = __offset(8); return o != 0 ? bb.getShort(o + bb_pos) : 0; }
+
+  public static int createSetCompressionResponse(FlatBufferBuilder builder,
+      boolean success,
+      int error_msg,
+      short type) {
+    builder.startObject(3);
+    SetCompressionResponse.addErrorMsg(builder, error_msg);
+    SetCompressionResponse.addType(builder, type);
+    SetCompressionResponse.addSuccess(builder, success);
+    return SetCompressionResponse.endSetCompressionResponse(builder);
+  }
+
+  public static void startSetCompressionResponse(FlatBufferBuilder builder) { builder.startObject(3); }
+  public static void addSuccess(FlatBufferBuilder builder, boolean success) { builder.addBoolean(0, success, false); }
+  public static void addErrorMsg(FlatBufferBuilder builder, int errorMsgOffset) { builder.addOffset(1, errorMsgOffset, 0); }
+  public static void addType(FlatBufferBuilder builder, short type) { builder.addShort(2, type, 0); }
+  public static int endSetCompressionResponse(FlatBufferBuilder builder) {
+    int o = builder.endObject();
+    return o;
+  }
+};
+
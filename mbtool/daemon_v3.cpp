@@ -19,25 +19,40 @@
 
 #include "daemon_v3.h"
 
+#include <algorithm>
+#include <atomic>
+#include <deque>
+#include <functional>
 #include <unordered_map>
 #include <unordered_set>
 
+#include <dirent.h>
 #include <fcntl.h>
+#include <fnmatch.h>
+#include <pthread.h>
+#include <sys/inotify.h>
 #include <sys/mount.h>
+#include <sys/socket.h>
 #include <sys/stat.h>
 #include <unistd.h>
 
+#include <openssl/sha.h>
+#include <zlib.h>
+
 #include "packages.h"
 #include "reboot.h"
 #include "roms.h"
 #include "switcher.h"
 #include "util/copy.h"
+#include "util/file.h"
 #include "util/finally.h"
 #include "util/fts.h"
 #include "util/logging.h"
 #include "util/properties.h"
 #include "util/selinux.h"
 #include "util/socket.h"
+#include "util/string.h"
+#include "util/time.h"
 #include "version.h"
 #include "wipe.h"
 
@@ -56,6 +71,8 @@
 #include "protocol/path_selinux_get_label_generated.h"
 #include "protocol/path_selinux_set_label_generated.h"
 #include "protocol/path_get_directory_size_generated.h"
+#include "protocol/path_open_fd_generated.h"
+#include "protocol/path_hash_generated.h"
 #include "protocol/mb_get_booted_rom_id_generated.h"
 #include "protocol/mb_get_installed_roms_generated.h"
 #include "protocol/mb_get_version_generated.h"
@@ -64,6 +81,12 @@
 #include "protocol/mb_wipe_rom_generated.h"
 #include "protocol/mb_get_packages_count_generated.h"
 #include "protocol/reboot_generated.h"
+#include "protocol/set_compression_generated.h"
+#include "protocol/path_copy_stream_generated.h"
+#include "protocol/request_cancel_generated.h"
+#include "protocol/path_get_directory_size_stream_generated.h"
+#include "protocol/event_subscribe_generated.h"
+#include "protocol/path_list_directory_generated.h"
 #include "protocol/request_generated.h"
 #include "protocol/response_generated.h"
 
@@ -75,27 +98,163 @@ namespace fb = flatbuffers;
 
 static std::unordered_map<int, int> fd_map;
 static int fd_count = 0;
+static pthread_mutex_t fd_map_lock = PTHREAD_MUTEX_INITIALIZER;
+
+// Some requests are handled by worker threads, so writes to the socket must not
+// interleave
+static pthread_mutex_t write_lock = PTHREAD_MUTEX_INITIALIZER;
+
+// Slow path requests that do not use file handles or change the multiboot state
+// are handled by a small pool of worker threads. The threads are started as
+// needed and live as long as the connection.
+#define MAX_WORKERS 4
+
+struct V3Job
+{
+    int fd;
+    std::vector<uint8_t> data;
+};
+
+static std::deque<V3Job> jobs;
+static std::vector<pthread_t> worker_threads;
+static size_t idle_workers = 0;
+static bool workers_exit = false;
+static pthread_mutex_t workers_lock = PTHREAD_MUTEX_INITIALIZER;
+static pthread_cond_t workers_cond = PTHREAD_COND_INITIALIZER;
+
+// Compression negotiated with a SetCompressionRequest. Every connection is
+// handled by its own process, so this only applies to the current client.
+static std::atomic<int> compression_type(v3::CompressionType_NONE);
+static std::atomic<uint32_t> compression_threshold(0);
+
+// Running requests that can be stopped with a RequestCancelRequest, keyed by
+// request ID
+static std::unordered_map<uint32_t, std::atomic<bool> *> cancellable;
+static pthread_mutex_t cancellable_lock = PTHREAD_MUTEX_INITIALIZER;
+
+// Events subscribed to with an EventSubscribeRequest. The inotify watches are
+// read by a thread that is started with the first subscription and lives as
+// long as the connection.
+struct EventWatch {
+    v3::EventType type;
+    std::string path;
+    // For MULTIBOOT_DIR_CHANGED, whether this is the top-level directory
+    bool top_level;
+};
+
+// Every connection is handled by its own process. A successful switch is
+// announced to all of them by renaming a file with the new ROM ID into this
+// directory. It is on tmpfs, so it does not outlive the boot.
+#define ACTIVE_ROM_DIR "/dev/.mbtool"
+#define ACTIVE_ROM_FILE "active_rom"
+
+static std::unordered_set<int> event_types;
+static std::unordered_map<int, EventWatch> event_watches;
+static int event_inotify_fd = -1;
+static pthread_mutex_t event_lock = PTHREAD_MUTEX_INITIALIZER;
+
+// While a batch is being handled, the responses of the requests in the batch
+// are collected in a per-thread list instead of being written to the socket
+typedef std::vector<std::vector<uint8_t>> CapturedResponses;
+static pthread_key_t capture_key;
+static pthread_once_t capture_key_once = PTHREAD_ONCE_INIT;
+
+static void capture_key_create()
+{
+    pthread_key_create(&capture_key, nullptr);
+}
+
+static CapturedResponses * get_captured_responses()
+{
+    pthread_once(&capture_key_once, &capture_key_create);
+    return static_cast<CapturedResponses *>(pthread_getspecific(capture_key));
+}
+
+static void set_captured_responses(CapturedResponses *captured)
+{
+    pthread_once(&capture_key_once, &capture_key_create);
+    pthread_setspecific(capture_key, captured);
+}
+
+static int fd_map_add(int ffd)
+{
+    pthread_mutex_lock(&fd_map_lock);
+    int id = fd_count++;
+    fd_map[id] = ffd;
+    pthread_mutex_unlock(&fd_map_lock);
+    return id;
+}
+
+static bool fd_map_get(int id, int *ffd)
+{
+    pthread_mutex_lock(&fd_map_lock);
+    auto it = fd_map.find(id);
+    bool found = it != fd_map.end();
+    if (found) {
+        *ffd = it->second;
+    }
+    pthread_mutex_unlock(&fd_map_lock);
+    return found;
+}
+
+static bool fd_map_remove(int id, int *ffd)
+{
+    pthread_mutex_lock(&fd_map_lock);
+    auto it = fd_map.find(id);
+    bool found = it != fd_map.end();
+    if (found) {
+        *ffd = it->second;
+        fd_map.erase(it);
+    }
+    pthread_mutex_unlock(&fd_map_lock);
+    return found;
+}
 
 static bool v3_send_response(int fd, const fb::FlatBufferBuilder &builder)
 {
-    return util::socket_write_bytes(
+    CapturedResponses *captured = get_captured_responses();
+    if (captured) {
+        const uint8_t *buf = builder.GetBufferPointer();
+        captured->emplace_back(buf, buf + builder.GetSize());
+        return true;
+    }
+
+    pthread_mutex_lock(&write_lock);
+    bool ret = util::socket_write_bytes(
             fd, builder.GetBufferPointer(), builder.GetSize());
+    pthread_mutex_unlock(&write_lock);
+    return ret;
+}
+
+// The file descriptors must directly follow the response on the socket, so both
+// are written while holding the write lock. Must not be used within a batch.
+static bool v3_send_response_with_fds(int fd, const fb::FlatBufferBuilder &builder,
+                                      const std::vector<int> &fds)
+{
+    pthread_mutex_lock(&write_lock);
+    bool ret = util::socket_write_bytes(
+            fd, builder.GetBufferPointer(), builder.GetSize())
+            && util::socket_send_fds(fd, fds);
+    pthread_mutex_unlock(&write_lock);
+    return ret;
 }
 
-static bool v3_send_response_invalid(int fd)
+static bool v3_send_response_invalid(int fd, const v3::Request *msg)
 {
     fb::FlatBufferBuilder builder;
     auto response = v3::CreateResponse(builder, v3::ResponseType_Invalid,
-                                       v3::CreateInvalid(builder).Union());
+                                       v3::CreateInvalid(builder).Union(),
+                                       msg->id());
     builder.Finish(response);
     return v3_send_response(fd, builder);
 }
 
-static bool v3_send_response_unsupported(int fd)
+static bool v3_send_response_unsupported(int fd, const v3::Request *msg)
 {
     fb::FlatBufferBuilder builder;
     auto response = v3::CreateResponse(builder, v3::ResponseType_Unsupported,
-                                       v3::CreateUnsupported(builder).Union());
+                                       v3::CreateUnsupported(builder).Union(),
+                                       msg->id());
     builder.Finish(response);
     return v3_send_response(fd, builder);
 }
@@ -103,17 +262,16 @@ static bool v3_send_response_unsupported(int fd)
 static bool v3_file_chmod(int fd, const v3::Request *msg)
 {
     auto request = (v3::FileChmodRequest *) msg->request();
-    if (fd_map.find(request->id()) == fd_map.end()) {
-        return v3_send_response_invalid(fd);
+    int ffd;
+    if (!fd_map_get(request->id(), &ffd)) {
+        return v3_send_response_invalid(fd, msg);
     }
 
-    int ffd = fd_map[request->id()];
-
     // Don't allow setting setuid or setgid permissions
     uint32_t mode = request->mode();
     uint32_t masked = mode & (S_IRWXU | S_IRWXG | S_IRWXO);
     if (masked != mode) {
-        return v3_send_response_invalid(fd);
+        return v3_send_response_invalid(fd, msg);
     }
 
     fb::FlatBufferBuilder builder;
@@ -130,6 +288,7 @@ static bool v3_file_chmod(int fd, const v3::Request *msg)
     v3::ResponseBuilder rb(builder);
     rb.add_response_type(v3::ResponseType_FileChmodResponse);
     rb.add_response(response.Union());
+    rb.add_id(msg->id());
     builder.Finish(rb.Finish());
 
     return v3_send_response(fd, builder);
@@ -138,13 +297,11 @@ static bool v3_file_chmod(int fd, const v3::Request *msg)
 static bool v3_file_close(int fd, const v3::Request *msg)
 {
     auto request = (v3::FileCloseRequest *) msg->request();
-    if (fd_map.find(request->id()) == fd_map.end()) {
-        return v3_send_response_invalid(fd);
-    }
-
     // Remove ID from map
-    int ffd = fd_map[request->id()];
-    fd_map.erase(request->id());
+    int ffd;
+    if (!fd_map_remove(request->id(), &ffd)) {
+        return v3_send_response_invalid(fd, msg);
+    }
 
     fb::FlatBufferBuilder builder;
     fb::Offset<v3::FileCloseResponse> response;
@@ -160,6 +317,7 @@ static bool v3_file_close(int fd, const v3::Request *msg)
     v3::ResponseBuilder rb(builder);
     rb.add_response_type(v3::ResponseType_FileCloseResponse);
     rb.add_response(response.Union());
+    rb.add_id(msg->id());
     builder.Finish(rb.Finish());
 
     return v3_send_response(fd, builder);
@@ -169,7 +327,7 @@ static bool v3_file_open(int fd, const v3::Request *msg)
 {
     auto request = (v3::FileOpenRequest *) msg->request();
     if (!request->path()) {
-        return v3_send_response_invalid(fd);
+        return v3_send_response_invalid(fd, msg);
     }
 
     int flags = O_CLOEXEC;
@@ -203,29 +361,52 @@ static bool v3_file_open(int fd, const v3::Request *msg)
         response = v3::CreateFileOpenResponse(builder, false, error);
     } else {
         // Assign a new ID
-        int id = fd_count++;
+        int id = fd_map_add(ffd);
         response = v3::CreateFileOpenResponse(builder, true, 0, id);
-        fd_map[id] = ffd;
     }
 
     // Wrap response
     v3::ResponseBuilder rb(builder);
     rb.add_response_type(v3::ResponseType_FileOpenResponse);
     rb.add_response(response.Union());
+    rb.add_id(msg->id());
     builder.Finish(rb.Finish());
 
     return v3_send_response(fd, builder);
 }
 
+// Compress a payload if the client asked for it. Returns false if the payload
+// should be sent as is, either because it is below the threshold or because it
+// did not get any smaller.
+static bool v3_compress(const unsigned char *data, size_t size,
+                        std::vector<unsigned char> *out)
+{
+    if (compression_type != v3::CompressionType_DEFLATE
+            || size < compression_threshold || size == 0) {
+        return false;
+    }
+
+    uLongf out_size = compressBound(size);
+    out->resize(out_size);
+
+    // Speed matters more than ratio since the data only crosses a local socket
+    if (compress2(out->data(), &out_size, data, size, Z_BEST_SPEED) != Z_OK
+            || out_size >= size) {
+        return false;
+    }
+
+    out->resize(out_size);
+    return true;
+}
+
 static bool v3_file_read(int fd, const v3::Request *msg)
 {
     auto request = (v3::FileReadRequest *) msg->request();
-    if (fd_map.find(request->id()) == fd_map.end()) {
-        return v3_send_response_invalid(fd);
+    int ffd;
+    if (!fd_map_get(request->id(), &ffd)) {
+        return v3_send_response_invalid(fd, msg);
     }
 
-    int ffd = fd_map[request->id()];
-
     std::vector<unsigned char> buf(request->count());
 
     fb::FlatBufferBuilder builder;
@@ -236,14 +417,22 @@ static bool v3_file_read(int fd, const v3::Request *msg)
         auto error = builder.CreateString(strerror(errno));
         response = v3::CreateFileReadResponse(builder, false, error);
     } else {
-        auto data = builder.CreateVector(buf.data(), ret);
-        response = v3::CreateFileReadResponse(builder, true, 0, ret, data);
+        std::vector<unsigned char> compressed;
+        if (v3_compress(buf.data(), ret, &compressed)) {
+            auto data = builder.CreateVector(compressed);
+            response = v3::CreateFileReadResponse(builder, true, 0, ret, data,
+                                                  v3::CompressionType_DEFLATE);
+        } else {
+            auto data = builder.CreateVector(buf.data(), ret);
+            response = v3::CreateFileReadResponse(builder, true, 0, ret, data);
+        }
     }
 
     // Wrap response
     v3::ResponseBuilder rb(builder);
     rb.add_response_type(v3::ResponseType_FileReadResponse);
     rb.add_response(response.Union());
+    rb.add_id(msg->id());
     builder.Finish(rb.Finish());
 
     return v3_send_response(fd, builder);
@@ -252,11 +441,10 @@ static bool v3_file_read(int fd, const v3::Request *msg)
 static bool v3_file_seek(int fd, const v3::Request *msg)
 {
     auto request = (v3::FileSeekRequest *) msg->request();
-    if (fd_map.find(request->id()) == fd_map.end()) {
-        return v3_send_response_invalid(fd);
+    int ffd;
+    if (!fd_map_get(request->id(), &ffd)) {
+        return v3_send_response_invalid(fd, msg);
     }
-
-    int ffd = fd_map[request->id()];
     int64_t offset = request->offset();
     int whence;
 
@@ -267,7 +455,7 @@ static bool v3_file_seek(int fd, const v3::Request *msg)
     } else if (request->whence() == v3::FileSeekWhence_SEEK_END) {
         whence = SEEK_END;
     } else {
-        return v3_send_response_invalid(fd);
+        return v3_send_response_invalid(fd, msg);
     }
 
     fb::FlatBufferBuilder builder;
@@ -287,6 +475,7 @@ static bool v3_file_seek(int fd, const v3::Request *msg)
     v3::ResponseBuilder rb(builder);
     rb.add_response_type(v3::ResponseType_FileSeekResponse);
     rb.add_response(response.Union());
+    rb.add_id(msg->id());
     builder.Finish(rb.Finish());
 
     return v3_send_response(fd, builder);
@@ -295,12 +484,11 @@ static bool v3_file_seek(int fd, const v3::Request *msg)
 static bool v3_file_selinux_get_label(int fd, const v3::Request *msg)
 {
     auto request = (v3::FileSELinuxGetLabelRequest *) msg->request();
-    if (fd_map.find(request->id()) == fd_map.end()) {
-        return v3_send_response_invalid(fd);
+    int ffd;
+    if (!fd_map_get(request->id(), &ffd)) {
+        return v3_send_response_invalid(fd, msg);
     }
 
-    int ffd = fd_map[request->id()];
-
     fb::FlatBufferBuilder builder;
     fb::Offset<v3::FileSELinuxGetLabelResponse> response;
 
@@ -320,6 +508,7 @@ static bool v3_file_selinux_get_label(int fd, const v3::Request *msg)
     v3::ResponseBuilder rb(builder);
     rb.add_response_type(v3::ResponseType_PathSELinuxGetLabelResponse);
     rb.add_response(response.Union());
+    rb.add_id(msg->id());
     builder.Finish(rb.Finish());
 
     return v3_send_response(fd, builder);
@@ -328,12 +517,11 @@ static bool v3_file_selinux_get_label(int fd, const v3::Request *msg)
 static bool v3_file_selinux_set_label(int fd, const v3::Request *msg)
 {
     auto request = (v3::FileSELinuxSetLabelRequest *) msg->request();
-    if (fd_map.find(request->id()) == fd_map.end() || !request->label()) {
-        return v3_send_response_invalid(fd);
+    int ffd;
+    if (!fd_map_get(request->id(), &ffd) || !request->label()) {
+        return v3_send_response_invalid(fd, msg);
     }
 
-    int ffd = fd_map[request->id()];
-
     fb::FlatBufferBuilder builder;
     fb::Offset<v3::FileSELinuxSetLabelResponse> response;
 
@@ -348,20 +536,40 @@ static bool v3_file_selinux_set_label(int fd, const v3::Request *msg)
     v3::ResponseBuilder rb(builder);
     rb.add_response_type(v3::ResponseType_FileSELinuxSetLabelResponse);
     rb.add_response(response.Union());
+    rb.add_id(msg->id());
     builder.Finish(rb.Finish());
 
     return v3_send_response(fd, builder);
 }
 
+static fb::Offset<v3::StructStat> v3_create_struct_stat(fb::FlatBufferBuilder &builder,
+                                                        const struct stat &sb)
+{
+    v3::StructStatBuilder ssb(builder);
+    ssb.add_st_dev(sb.st_dev);
+    ssb.add_st_ino(sb.st_ino);
+    ssb.add_st_mode(sb.st_mode);
+    ssb.add_st_nlink(sb.st_nlink);
+    ssb.add_st_uid(sb.st_uid);
+    ssb.add_st_gid(sb.st_gid);
+    ssb.add_st_rdev(sb.st_rdev);
+    ssb.add_st_size(sb.st_size);
+    ssb.add_st_blksize(sb.st_blksize);
+    ssb.add_st_blocks(sb.st_blocks);
+    ssb.add_st_atime(sb.st_atime);
+    ssb.add_st_mtime(sb.st_mtime);
+    ssb.add_st_ctime(sb.st_ctime);
+    return ssb.Finish();
+}
+
 static bool v3_file_stat(int fd, const v3::Request *msg)
 {
     auto request = (v3::FileStatRequest *) msg->request();
-    if (fd_map.find(request->id()) == fd_map.end()) {
-        return v3_send_response_invalid(fd);
+    int ffd;
+    if (!fd_map_get(request->id(), &ffd)) {
+        return v3_send_response_invalid(fd, msg);
     }
 
-    int ffd = fd_map[request->id()];
-
     fb::FlatBufferBuilder builder;
     fb::Offset<v3::FileStatResponse> response;
 
@@ -371,22 +579,7 @@ static bool v3_file_stat(int fd, const v3::Request *msg)
         auto error = builder.CreateString(strerror(errno));
         response = v3::CreateFileStatResponse(builder, false, error);
     } else {
-        v3::StructStatBuilder ssb(builder);
-        ssb.add_st_dev(sb.st_dev);
-        ssb.add_st_ino(sb.st_ino);
-        ssb.add_st_mode(sb.st_mode);
-        ssb.add_st_nlink(sb.st_nlink);
-        ssb.add_st_uid(sb.st_uid);
-        ssb.add_st_gid(sb.st_gid);
-        ssb.add_st_rdev(sb.st_rdev);
-        ssb.add_st_size(sb.st_size);
-        ssb.add_st_blksize(sb.st_blksize);
-        ssb.add_st_blocks(sb.st_blocks);
-        ssb.add_st_atime(sb.st_atime);
-        ssb.add_st_mtime(sb.st_mtime);
-        ssb.add_st_ctime(sb.st_ctime);
-        auto fb_ssb = ssb.Finish();
-
+        auto fb_ssb = v3_create_struct_stat(builder, sb);
         response = v3::CreateFileStatResponse(builder, true, 0, fb_ssb);
     }
 
@@ -394,6 +587,7 @@ static bool v3_file_stat(int fd, const v3::Request *msg)
     v3::ResponseBuilder rb(builder);
     rb.add_response_type(v3::ResponseType_FileStatResponse);
     rb.add_response(response.Union());
+    rb.add_id(msg->id());
     builder.Finish(rb.Finish());
 
     return v3_send_response(fd, builder);
@@ -402,12 +596,11 @@ static bool v3_file_stat(int fd, const v3::Request *msg)
 static bool v3_file_write(int fd, const v3::Request *msg)
 {
     auto request = (v3::FileWriteRequest *) msg->request();
-    if (fd_map.find(request->id()) == fd_map.end() || !request->data()) {
-        return v3_send_response_invalid(fd);
+    int ffd;
+    if (!fd_map_get(request->id(), &ffd) || !request->data()) {
+        return v3_send_response_invalid(fd, msg);
     }
 
-    int ffd = fd_map[request->id()];
-
     fb::FlatBufferBuilder builder;
     fb::Offset<v3::FileWriteResponse> response;
 
@@ -423,6 +616,7 @@ static bool v3_file_write(int fd, const v3::Request *msg)
     v3::ResponseBuilder rb(builder);
     rb.add_response_type(v3::ResponseType_FileWriteResponse);
     rb.add_response(response.Union());
+    rb.add_id(msg->id());
     builder.Finish(rb.Finish());
 
     return v3_send_response(fd, builder);
@@ -432,14 +626,14 @@ static bool v3_path_chmod(int fd, const v3::Request *msg)
 {
     auto request = (v3::PathChmodRequest *) msg->request();
     if (!request->path()) {
-        return v3_send_response_invalid(fd);
+        return v3_send_response_invalid(fd, msg);
     }
 
     // Don't allow setting setuid or setgid permissions
     uint32_t mode = request->mode();
     uint32_t masked = mode & (S_IRWXU | S_IRWXG | S_IRWXO);
     if (masked != mode) {
-        return v3_send_response_invalid(fd);
+        return v3_send_response_invalid(fd, msg);
     }
 
     fb::FlatBufferBuilder builder;
@@ -456,6 +650,7 @@ static bool v3_path_chmod(int fd, const v3::Request *msg)
     v3::ResponseBuilder rb(builder);
     rb.add_response_type(v3::ResponseType_PathChmodResponse);
     rb.add_response(response.Union());
+    rb.add_id(msg->id());
     builder.Finish(rb.Finish());
 
     return v3_send_response(fd, builder);
@@ -465,7 +660,7 @@ static bool v3_path_copy(int fd, const v3::Request *msg)
 {
     auto request = (v3::PathCopyRequest *) msg->request();
     if (!request->source() || !request->target()) {
-        return v3_send_response_invalid(fd);
+        return v3_send_response_invalid(fd, msg);
     }
 
     fb::FlatBufferBuilder builder;
@@ -483,6 +678,546 @@ static bool v3_path_copy(int fd, const v3::Request *msg)
     v3::ResponseBuilder rb(builder);
     rb.add_response_type(v3::ResponseType_PathCopyResponse);
     rb.add_response(response.Union());
+    rb.add_id(msg->id());
+    builder.Finish(rb.Finish());
+
+    return v3_send_response(fd, builder);
+}
+
+// Allow a running request to be stopped with a RequestCancelRequest. Requests
+// without an ID cannot be referred to and are not registered.
+static void v3_register_cancellable(const v3::Request *msg,
+                                    std::atomic<bool> *cancelled)
+{
+    if (msg->id() != 0) {
+        pthread_mutex_lock(&cancellable_lock);
+        cancellable[msg->id()] = cancelled;
+        pthread_mutex_unlock(&cancellable_lock);
+    }
+}
+
+static void v3_unregister_cancellable(const v3::Request *msg)
+{
+    if (msg->id() != 0) {
+        pthread_mutex_lock(&cancellable_lock);
+        cancellable.erase(msg->id());
+        pthread_mutex_unlock(&cancellable_lock);
+    }
+}
+
+static bool v3_send_path_copy_stream_progress(int fd, const v3::Request *msg,
+                                              uint64_t bytes_copied,
+                                              uint64_t total_size)
+{
+    fb::FlatBufferBuilder builder;
+    auto response = v3::CreatePathCopyStreamProgress(
+            builder, bytes_copied, total_size);
+
+    // Wrap response
+    v3::ResponseBuilder rb(builder);
+    rb.add_response_type(v3::ResponseType_PathCopyStreamProgress);
+    rb.add_response(response.Union());
+    rb.add_id(msg->id());
+    builder.Finish(rb.Finish());
+
+    return v3_send_response(fd, builder);
+}
+
+static bool v3_is_zero(const unsigned char *data, size_t size)
+{
+    return size == 0
+            || (data[0] == 0 && memcmp(data, data + 1, size - 1) == 0);
+}
+
+// Write data at an offset. If sparse is true, blocks that are entirely zero are
+// skipped, leaving holes in the file.
+static bool v3_write_at(int fd, const unsigned char *data, size_t size,
+                        uint64_t offset, bool sparse)
+{
+    static const size_t block_size = 4096;
+    size_t pos = 0;
+
+    while (pos < size) {
+        size_t end = size;
+
+        if (sparse) {
+            // Skip zero blocks and then find the end of the non-zero run
+            while (pos < size) {
+                size_t n = std::min(block_size, size - pos);
+                if (!v3_is_zero(data + pos, n)) {
+                    break;
+                }
+                pos += n;
+            }
+            end = pos;
+            while (end < size) {
+                size_t n = std::min(block_size, size - end);
+                if (v3_is_zero(data + end, n)) {
+                    break;
+                }
+                end += n;
+            }
+        }
+
+        while (pos < end) {
+            ssize_t n = pwrite64(fd, data + pos, end - pos, offset + pos);
+            if (n < 0 && errno == EINTR) {
+                continue;
+            } else if (n <= 0) {
+                return false;
+            }
+            pos += n;
+        }
+    }
+
+    return true;
+}
+
+static bool v3_path_copy_stream(int fd, const v3::Request *msg)
+{
+    auto request = (v3::PathCopyStreamRequest *) msg->request();
+    if (!request->source() || !request->target()) {
+        return v3_send_response_invalid(fd, msg);
+    }
+
+    // Progress can only be reported for requests with an ID and not from
+    // within a batch
+    bool send_progress = msg->id() != 0 && !get_captured_responses();
+    uint64_t interval = request->progress_interval();
+    if (interval == 0) {
+        interval = 4 * 1024 * 1024;
+    }
+
+    std::atomic<bool> cancelled(false);
+    v3_register_cancellable(msg, &cancelled);
+
+    auto unregister = util::finally([&]{
+        v3_unregister_cancellable(msg);
+    });
+
+    uint64_t offset = request->offset();
+    uint64_t total = 0;
+    std::string error;
+
+    int fd_source = open(request->source()->c_str(), O_RDONLY | O_CLOEXEC);
+    if (fd_source < 0) {
+        error = strerror(errno);
+    }
+
+    auto close_fd_source = util::finally([&]{
+        if (fd_source >= 0) {
+            close(fd_source);
+        }
+    });
+
+    // The target is not truncated when opened so that an interrupted copy can
+    // be resumed. Regular files are truncated to the copied size once done.
+    int fd_target = -1;
+    if (fd_source >= 0) {
+        fd_target = open(request->target()->c_str(),
+                         O_WRONLY | O_CREAT | O_CLOEXEC, 0666);
+        if (fd_target < 0) {
+            error = strerror(errno);
+        }
+    }
+
+    auto close_fd_target = util::finally([&]{
+        if (fd_target >= 0) {
+            close(fd_target);
+        }
+    });
+
+    if (fd_target >= 0) {
+        // Holes only make sense in regular files. Skipping zeros when writing
+        // to a block device would leave its old contents in place.
+        struct stat sb;
+        bool regular = fstat(fd_target, &sb) == 0 && S_ISREG(sb.st_mode);
+        bool sparse = request->sparse() && regular;
+
+        // Block devices report a size of 0 in st_size, but can be seeked
+        off64_t size = lseek64(fd_source, 0, SEEK_END);
+        total = size > 0 ? size : 0;
+
+        if (sparse && ftruncate64(fd_target, offset) < 0) {
+            error = strerror(errno);
+        }
+
+        std::vector<unsigned char> buf(256 * 1024);
+        uint64_t last_progress = offset;
+
+        while (error.empty() && !cancelled) {
+            ssize_t n = pread64(fd_source, buf.data(), buf.size(), offset);
+            if (n < 0 && errno == EINTR) {
+                continue;
+            } else if (n < 0) {
+                error = strerror(errno);
+                break;
+            } else if (n == 0) {
+                break;
+            }
+
+            if (!v3_write_at(fd_target, buf.data(), n, offset, sparse)) {
+                error = strerror(errno);
+                break;
+            }
+            offset += n;
+
+            if (send_progress && offset - last_progress >= interval) {
+                // Stop copying if the client is gone
+                if (!v3_send_path_copy_stream_progress(
+                        fd, msg, offset, total)) {
+                    return false;
+                }
+                last_progress = offset;
+            }
+        }
+
+        // Drop whatever was after the end of the copy in an existing larger
+        // file. This also extends the file over skipped blocks at the end.
+        if (error.empty() && !cancelled && regular
+                && ftruncate64(fd_target, offset) < 0) {
+            error = strerror(errno);
+        }
+
+        if (error.empty() && cancelled) {
+            error = "Cancelled";
+        }
+    }
+
+    fb::FlatBufferBuilder builder;
+    fb::Offset<v3::PathCopyStreamResponse> response;
+
+    if (error.empty()) {
+        response = v3::CreatePathCopyStreamResponse(
+                builder, true, 0, offset, total, false);
+    } else {
+        auto fb_error = builder.CreateString(error);
+        response = v3::CreatePathCopyStreamResponse(
+                builder, false, fb_error, offset, total, cancelled);
+    }
+
+    // Wrap response
+    v3::ResponseBuilder rb(builder);
+    rb.add_response_type(v3::ResponseType_PathCopyStreamResponse);
+    rb.add_response(response.Union());
+    rb.add_id(msg->id());
+    builder.Finish(rb.Finish());
+
+    return v3_send_response(fd, builder);
+}
+
+static bool v3_request_cancel(int fd, const v3::Request *msg)
+{
+    auto request = (v3::RequestCancelRequest *) msg->request();
+
+    pthread_mutex_lock(&cancellable_lock);
+    auto it = cancellable.find(request->id());
+    bool found = it != cancellable.end();
+    if (found) {
+        *it->second = true;
+    }
+    pthread_mutex_unlock(&cancellable_lock);
+
+    fb::FlatBufferBuilder builder;
+    auto response = v3::CreateRequestCancelResponse(builder, found);
+
+    // Wrap response
+    v3::ResponseBuilder rb(builder);
+    rb.add_response_type(v3::ResponseType_RequestCancelResponse);
+    rb.add_response(response.Union());
+    rb.add_id(msg->id());
+    builder.Finish(rb.Finish());
+
+    return v3_send_response(fd, builder);
+}
+
+// Events are written directly to the socket, even if they are triggered by a
+// request in a batch
+static bool v3_send_event(int fd, v3::EventType type,
+                          const std::string &rom_id, const std::string &path)
+{
+    pthread_mutex_lock(&event_lock);
+    bool subscribed = event_types.find(type) != event_types.end();
+    pthread_mutex_unlock(&event_lock);
+
+    if (!subscribed) {
+        return true;
+    }
+
+    fb::FlatBufferBuilder builder;
+    auto fb_rom_id = rom_id.empty() ? 0 : builder.CreateString(rom_id);
+    auto fb_path = path.empty() ? 0 : builder.CreateString(path);
+    auto response = v3::CreateEventNotification(
+            builder, type, fb_rom_id, fb_path);
+
+    // Wrap response
+    v3::ResponseBuilder rb(builder);
+    rb.add_response_type(v3::ResponseType_EventNotification);
+    rb.add_response(response.Union());
+    rb.add_id(0);
+    builder.Finish(rb.Finish());
+
+    pthread_mutex_lock(&write_lock);
+    bool ret = util::socket_write_bytes(
+            fd, builder.GetBufferPointer(), builder.GetSize());
+    pthread_mutex_unlock(&write_lock);
+    return ret;
+}
+
+// Must be called with event_lock held
+static bool v3_event_add_watch(v3::EventType type, const std::string &path,
+                               uint32_t mask, bool top_level)
+{
+    int wd = inotify_add_watch(event_inotify_fd, path.c_str(), mask);
+    if (wd < 0) {
+        LOGW("Failed to watch %s: %s", path.c_str(), strerror(errno));
+        return false;
+    }
+
+    event_watches[wd] = { type, path, top_level };
+    return true;
+}
+
+// Must be called with event_lock held
+static bool v3_event_watch_multiboot_dir(const std::string &path)
+{
+    static const uint32_t mask = IN_CREATE | IN_DELETE | IN_MOVED_FROM
+            | IN_MOVED_TO | IN_CLOSE_WRITE;
+
+    if (!v3_event_add_watch(v3::EventType_MULTIBOOT_DIR_CHANGED,
+                            path, mask, true)) {
+        return false;
+    }
+
+    // inotify is not recursive. The files of interest (eg. thumbnails) are
+    // in the ROM directories one level down.
+    DIR *dp = opendir(path.c_str());
+    if (!dp) {
+        return true;
+    }
+
+    auto close_dp = util::finally([&]{
+        closedir(dp);
+    });
+
+    struct dirent *ent;
+    while ((ent = readdir(dp))) {
+        if (ent->d_type == DT_DIR && strcmp(ent->d_name, ".") != 0
+                && strcmp(ent->d_name, "..") != 0) {
+            v3_event_add_watch(v3::EventType_MULTIBOOT_DIR_CHANGED,
+                               path + "/" + ent->d_name, mask, false);
+        }
+    }
+
+    return true;
+}
+
+static void * v3_event_watcher(void *data)
+{
+    int fd = (int) (intptr_t) data;
+
+    char buf[4096]
+            __attribute__((aligned(__alignof__(struct inotify_event))));
+
+    while (true) {
+        ssize_t n = read(event_inotify_fd, buf, sizeof(buf));
+        if (n < 0 && errno == EINTR) {
+            continue;
+        } else if (n <= 0) {
+            LOGE("Failed to read inotify events: %s", strerror(errno));
+            break;
+        }
+
+        for (char *ptr = buf; ptr < buf + n; ) {
+            auto event = (struct inotify_event *) ptr;
+            ptr += sizeof(struct inotify_event) + event->len;
+
+            std::string name(event->len > 0 ? event->name : "");
+
+            pthread_mutex_lock(&event_lock);
+            auto it = event_watches.find(event->wd);
+            if (it == event_watches.end()) {
+                pthread_mutex_unlock(&event_lock);
+                continue;
+            }
+            EventWatch watch = it->second;
+            if (event->mask & IN_IGNORED) {
+                event_watches.erase(it);
+            } else if (watch.type == v3::EventType_MULTIBOOT_DIR_CHANGED
+                    && watch.top_level && (event->mask & IN_ISDIR)
+                    && (event->mask & (IN_CREATE | IN_MOVED_TO))) {
+                v3_event_add_watch(watch.type, watch.path + "/" + name,
+                                   IN_CREATE | IN_DELETE | IN_MOVED_FROM
+                                   | IN_MOVED_TO | IN_CLOSE_WRITE, false);
+            }
+            pthread_mutex_unlock(&event_lock);
+
+            if (event->mask & IN_IGNORED) {
+                continue;
+            }
+
+            bool ret = true;
+
+            switch (watch.type) {
+            case v3::EventType_ROMS_CHANGED:
+                // Only directories can be ROMs
+                if (event->mask & IN_ISDIR) {
+                    ret = v3_send_event(fd, watch.type, name, "");
+                }
+                break;
+            case v3::EventType_BOOT_PARTITION_CHANGED:
+                ret = v3_send_event(fd, watch.type, "", watch.path);
+                break;
+            case v3::EventType_ACTIVE_ROM_CHANGED: {
+                std::string rom_id;
+                if (name == ACTIVE_ROM_FILE && util::file_first_line(
+                        watch.path + "/" + name, &rom_id)) {
+                    ret = v3_send_event(fd, watch.type, rom_id, "");
+                }
+                break;
+            }
+            case v3::EventType_MULTIBOOT_DIR_CHANGED:
+                ret = v3_send_event(fd, watch.type, "",
+                                    watch.path + "/" + name);
+                break;
+            default:
+                break;
+            }
+
+            // Stop if the client is gone
+            if (!ret) {
+                return nullptr;
+            }
+        }
+    }
+
+    return nullptr;
+}
+
+// Tell the connections that are subscribed to ACTIVE_ROM_CHANGED events,
+// including this one, that a ROM was switched to
+static void v3_announce_active_rom(const std::string &rom_id)
+{
+    std::string path(ACTIVE_ROM_DIR "/" ACTIVE_ROM_FILE);
+    // Unique per process in case two connections switch at the same time
+    std::string temp_path = util::format("%s.%d", path.c_str(), getpid());
+    std::string data(rom_id + "\n");
+
+    if ((mkdir(ACTIVE_ROM_DIR, 0700) < 0 && errno != EEXIST)
+            || !util::file_write_data(temp_path, data.data(), data.size())
+            || rename(temp_path.c_str(), path.c_str()) < 0) {
+        LOGW("Failed to announce active ROM %s: %s",
+             rom_id.c_str(), strerror(errno));
+        unlink(temp_path.c_str());
+    }
+}
+
+static bool v3_event_subscribe(int fd, const v3::Request *msg)
+{
+    auto request = (v3::EventSubscribeRequest *) msg->request();
+
+    std::vector<int16_t> watching;
+    std::string error;
+
+    pthread_mutex_lock(&event_lock);
+
+    if (event_inotify_fd < 0) {
+        event_inotify_fd = inotify_init();
+        if (event_inotify_fd < 0) {
+            error = strerror(errno);
+        } else {
+            fcntl(event_inotify_fd, F_SETFD, FD_CLOEXEC);
+
+            pthread_t thread;
+            pthread_attr_t attr;
+            pthread_attr_init(&attr);
+            pthread_attr_setdetachstate(&attr, PTHREAD_CREATE_DETACHED);
+            int ret = pthread_create(&thread, &attr, &v3_event_watcher,
+                                     (void *) (intptr_t) fd);
+            pthread_attr_destroy(&attr);
+
+            if (ret != 0) {
+                error = strerror(ret);
+                close(event_inotify_fd);
+                event_inotify_fd = -1;
+            }
+        }
+    }
+
+    if (error.empty()) {
+        // Replace the previous subscription
+        for (auto const &pair : event_watches) {
+            inotify_rm_watch(event_inotify_fd, pair.first);
+        }
+        event_watches.clear();
+        event_types.clear();
+
+        if (request->types()) {
+            for (int16_t type : *request->types()) {
+                bool ok = false;
+
+                switch (type) {
+                case v3::EventType_ROMS_CHANGED: {
+                    static const uint32_t mask = IN_CREATE | IN_DELETE
+                            | IN_MOVED_FROM | IN_MOVED_TO;
+                    std::string dirs[] = {
+                        Roms::get_system_partition() + "/multiboot",
+                        Roms::get_cache_partition() + "/multiboot",
+                        get_raw_path("/data/multiboot"),
+                    };
+                    for (auto const &dir : dirs) {
+                        ok = v3_event_add_watch(
+                                v3::EventType_ROMS_CHANGED, dir, mask, true)
+                                || ok;
+                    }
+                    break;
+                }
+                case v3::EventType_BOOT_PARTITION_CHANGED:
+                    ok = request->boot_blockdev() && v3_event_add_watch(
+                            v3::EventType_BOOT_PARTITION_CHANGED,
+                            request->boot_blockdev()->c_str(),
+                            IN_CLOSE_WRITE, true);
+                    break;
+                case v3::EventType_ACTIVE_ROM_CHANGED:
+                    // Written by v3_announce_active_rom()
+                    ok = (mkdir(ACTIVE_ROM_DIR, 0700) == 0 || errno == EEXIST)
+                            && v3_event_add_watch(
+                                    v3::EventType_ACTIVE_ROM_CHANGED,
+                                    ACTIVE_ROM_DIR, IN_MOVED_TO, true);
+                    break;
+                case v3::EventType_MULTIBOOT_DIR_CHANGED:
+                    ok = request->multiboot_dir()
+                            && v3_event_watch_multiboot_dir(
+                                    request->multiboot_dir()->c_str());
+                    break;
+                }
+
+                if (ok) {
+                    event_types.insert(type);
+                    watching.push_back(type);
+                }
+            }
+        }
+    }
+
+    pthread_mutex_unlock(&event_lock);
+
+    fb::FlatBufferBuilder builder;
+    fb::Offset<v3::EventSubscribeResponse> response;
+
+    if (error.empty()) {
+        response = v3::CreateEventSubscribeResponse(
+                builder, true, 0, builder.CreateVector(watching));
+    } else {
+        auto fb_error = builder.CreateString(error);
+        response = v3::CreateEventSubscribeResponse(builder, false, fb_error);
+    }
+
+    // Wrap response
+    v3::ResponseBuilder rb(builder);
+    rb.add_response_type(v3::ResponseType_EventSubscribeResponse);
+    rb.add_response(response.Union());
+    rb.add_id(msg->id());
     builder.Finish(rb.Finish());
 
     return v3_send_response(fd, builder);
@@ -492,7 +1227,7 @@ static bool v3_path_selinux_get_label(int fd, const v3::Request *msg)
 {
     auto request = (v3::PathSELinuxGetLabelRequest *) msg->request();
     if (!request->path()) {
-        return v3_send_response_invalid(fd);
+        return v3_send_response_invalid(fd, msg);
     }
 
     std::string label;
@@ -520,6 +1255,7 @@ static bool v3_path_selinux_get_label(int fd, const v3::Request *msg)
     v3::ResponseBuilder rb(builder);
     rb.add_response_type(v3::ResponseType_PathSELinuxGetLabelResponse);
     rb.add_response(response.Union());
+    rb.add_id(msg->id());
     builder.Finish(rb.Finish());
 
     return v3_send_response(fd, builder);
@@ -529,7 +1265,7 @@ static bool v3_path_selinux_set_label(int fd, const v3::Request *msg)
 {
     auto request = (v3::PathSELinuxSetLabelRequest *) msg->request();
     if (!request->path()) {
-        return v3_send_response_invalid(fd);
+        return v3_send_response_invalid(fd, msg);
     }
 
     bool ret;
@@ -555,6 +1291,7 @@ static bool v3_path_selinux_set_label(int fd, const v3::Request *msg)
     v3::ResponseBuilder rb(builder);
     rb.add_response_type(v3::ResponseType_PathSELinuxSetLabelResponse);
     rb.add_response(response.Union());
+    rb.add_id(msg->id());
     builder.Finish(rb.Finish());
 
     return v3_send_response(fd, builder);
@@ -582,38 +1319,119 @@ public:
         return Action::FTS_OK;
     }
 
-    virtual int on_reached_file() override
+    virtual int on_reached_directory_pre() override
     {
-        dev_t dev = _curr->fts_statp->st_dev;
-        ino_t ino = _curr->fts_statp->st_ino;
-
-        // If this file has been visited before (hard link), then skip it
-        if (_links.find(dev) != _links.end()
-                && _links[dev].find(ino) != _links[dev].end()) {
-            return Action::FTS_OK;
+        if (_curr->fts_level == 1) {
+            _subtotal_start = _total;
         }
 
-        _total += _curr->fts_statp->st_size;
-        _links[dev].emplace(dev);
-
         return Action::FTS_OK;
     }
 
-    uint64_t total() const {
+    virtual int on_reached_directory_post() override
+    {
+        if (_curr->fts_level == 1) {
+            _subtotals.emplace_back(_curr->fts_name, _total - _subtotal_start);
+        }
+
+        return Action::FTS_OK;
+    }
+
+    virtual int on_reached_file() override
+    {
+        dev_t dev = _curr->fts_statp->st_dev;
+        ino_t ino = _curr->fts_statp->st_ino;
+
+        // If this file has been visited before (hard link), then skip it
+        if (_links.find(dev) != _links.end()
+                && _links[dev].find(ino) != _links[dev].end()) {
+            return Action::FTS_OK;
+        }
+
+        _total += _curr->fts_statp->st_size;
+        _links[dev].emplace(dev);
+
+        return Action::FTS_OK;
+    }
+
+    uint64_t total() const {
         return _total;
     }
 
+    // Sizes of the first-level directories that have been fully walked
+    const std::vector<std::pair<std::string, uint64_t>> & subtotals() const {
+        return _subtotals;
+    }
+
 private:
     std::vector<std::string> _exclusions;
     std::unordered_map<dev_t, std::unordered_set<ino_t>> _links;
     uint64_t _total;
+    uint64_t _subtotal_start = 0;
+    std::vector<std::pair<std::string, uint64_t>> _subtotals;
+};
+
+// DirectorySizeGetter that calls a function every so often while walking
+// the tree and stops when the cancellation flag is set
+class DirectorySizeStreamer : public DirectorySizeGetter {
+public:
+    DirectorySizeStreamer(std::string path,
+                          std::vector<std::string> exclusions,
+                          uint64_t interval_ms,
+                          const std::atomic<bool> *cancelled,
+                          std::function<bool()> progress)
+        : DirectorySizeGetter(std::move(path), std::move(exclusions)),
+        _interval_ms(interval_ms),
+        _cancelled(cancelled),
+        _progress(std::move(progress)),
+        _last_progress(util::current_time_ms())
+    {
+    }
+
+    virtual int on_reached_file() override
+    {
+        int ret = DirectorySizeGetter::on_reached_file();
+        if (ret != Action::FTS_OK) {
+            return ret;
+        }
+
+        if (*_cancelled) {
+            return Action::FTS_Stop;
+        }
+
+        // Only look at the clock every so often
+        if (++_files % 256 == 0) {
+            uint64_t now = util::current_time_ms();
+            if (now - _last_progress >= _interval_ms) {
+                _last_progress = now;
+                if (!_progress()) {
+                    _progress_failed = true;
+                    return Action::FTS_Stop;
+                }
+            }
+        }
+
+        return Action::FTS_OK;
+    }
+
+    bool progress_failed() const {
+        return _progress_failed;
+    }
+
+private:
+    uint64_t _interval_ms;
+    const std::atomic<bool> *_cancelled;
+    std::function<bool()> _progress;
+    uint64_t _last_progress;
+    uint64_t _files = 0;
+    bool _progress_failed = false;
 };
 
 static bool v3_path_get_directory_size(int fd, const v3::Request *msg)
 {
     auto request = (v3::PathGetDirectorySizeRequest *) msg->request();
     if (!request->path()) {
-        return v3_send_response_invalid(fd);
+        return v3_send_response_invalid(fd, msg);
     }
 
     std::vector<std::string> exclusions;
@@ -642,15 +1460,394 @@ static bool v3_path_get_directory_size(int fd, const v3::Request *msg)
     v3::ResponseBuilder rb(builder);
     rb.add_response_type(v3::ResponseType_PathGetDirectorySizeResponse);
     rb.add_response(response.Union());
+    rb.add_id(msg->id());
     builder.Finish(rb.Finish());
 
     return v3_send_response(fd, builder);
 }
 
-static bool v3_mb_get_booted_rom_id(int fd, const v3::Request *msg)
+static fb::Offset<fb::Vector<fb::Offset<v3::DirectorySubtotal>>>
+v3_create_subtotals(fb::FlatBufferBuilder &builder,
+                    const DirectorySizeGetter &dsg)
+{
+    std::vector<fb::Offset<v3::DirectorySubtotal>> subtotals;
+    for (auto const &pair : dsg.subtotals()) {
+        subtotals.push_back(v3::CreateDirectorySubtotal(
+                builder, builder.CreateString(pair.first), pair.second));
+    }
+    return builder.CreateVector(subtotals);
+}
+
+static bool v3_path_get_directory_size_stream(int fd, const v3::Request *msg)
+{
+    auto request = (v3::PathGetDirectorySizeStreamRequest *) msg->request();
+    if (!request->path()) {
+        return v3_send_response_invalid(fd, msg);
+    }
+
+    std::vector<std::string> exclusions;
+    if (request->exclusions()) {
+        for (auto const &exclusion : *request->exclusions()) {
+            exclusions.push_back(exclusion->c_str());
+        }
+    }
+
+    // Progress can only be reported for requests with an ID and not from
+    // within a batch
+    bool send_progress = msg->id() != 0 && !get_captured_responses();
+    uint64_t interval = request->progress_interval();
+    if (interval == 0) {
+        interval = 500;
+    }
+
+    std::atomic<bool> cancelled(false);
+    v3_register_cancellable(msg, &cancelled);
+
+    auto unregister = util::finally([&]{
+        v3_unregister_cancellable(msg);
+    });
+
+    fb::FlatBufferBuilder builder;
+    fb::Offset<v3::PathGetDirectorySizeStreamResponse> response;
+
+    struct stat sb;
+    if (stat(request->path()->c_str(), &sb) < 0) {
+        auto error = builder.CreateString(strerror(errno));
+        response = v3::CreatePathGetDirectorySizeStreamResponse(
+                builder, false, error);
+    } else if (request->unchanged_mtime() != 0
+            && request->unchanged_mtime() == (uint64_t) sb.st_mtime) {
+        // The client already knows the size
+        response = v3::CreatePathGetDirectorySizeStreamResponse(
+                builder, true, 0, 0, 0, sb.st_mtime, true);
+    } else {
+        DirectorySizeStreamer *dss_ptr = nullptr;
+
+        DirectorySizeStreamer dss(request->path()->c_str(),
+                                  std::move(exclusions), interval,
+                                  &cancelled, [&]{
+            if (!send_progress) {
+                return true;
+            }
+
+            fb::FlatBufferBuilder pb;
+            auto progress = v3::CreatePathGetDirectorySizeStreamProgress(
+                    pb, dss_ptr->total(), v3_create_subtotals(pb, *dss_ptr));
+
+            // Wrap response
+            v3::ResponseBuilder rb(pb);
+            rb.add_response_type(
+                    v3::ResponseType_PathGetDirectorySizeStreamProgress);
+            rb.add_response(progress.Union());
+            rb.add_id(msg->id());
+            pb.Finish(rb.Finish());
+
+            return v3_send_response(fd, pb);
+        });
+        dss_ptr = &dss;
+
+        bool ret = dss.run();
+
+        // Stop if the client is gone
+        if (dss.progress_failed()) {
+            return false;
+        }
+
+        auto subtotals = v3_create_subtotals(builder, dss);
+
+        if (cancelled) {
+            auto error = builder.CreateString("Cancelled");
+            response = v3::CreatePathGetDirectorySizeStreamResponse(
+                    builder, false, error, dss.total(), subtotals,
+                    sb.st_mtime, false, true);
+        } else if (!ret) {
+            auto error = builder.CreateString(dss.error());
+            response = v3::CreatePathGetDirectorySizeStreamResponse(
+                    builder, false, error, dss.total(), subtotals,
+                    sb.st_mtime);
+        } else {
+            response = v3::CreatePathGetDirectorySizeStreamResponse(
+                    builder, true, 0, dss.total(), subtotals, sb.st_mtime);
+        }
+    }
+
+    // Wrap response
+    v3::ResponseBuilder rb(builder);
+    rb.add_response_type(v3::ResponseType_PathGetDirectorySizeStreamResponse);
+    rb.add_response(response.Union());
+    rb.add_id(msg->id());
+    builder.Finish(rb.Finish());
+
+    return v3_send_response(fd, builder);
+}
+
+static bool v3_path_open_fd(int fd, const v3::Request *msg)
+{
+    auto request = (v3::PathOpenFdRequest *) msg->request();
+    if (!request->path()) {
+        return v3_send_response_invalid(fd, msg);
+    }
+
+    // There is no way to pass the fd along with a batched response
+    if (get_captured_responses()) {
+        return v3_send_response_invalid(fd, msg);
+    }
+
+    fb::FlatBufferBuilder builder;
+    fb::Offset<v3::PathOpenFdResponse> response;
+
+    struct stat sb;
+    off64_t size = -1;
+
+    int ffd = open(request->path()->c_str(), O_RDONLY | O_CLOEXEC);
+    if (ffd >= 0 && (fstat(ffd, &sb) < 0
+            || (size = lseek64(ffd, 0, SEEK_END)) < 0
+            || lseek64(ffd, 0, SEEK_SET) < 0)) {
+        int saved_errno = errno;
+        close(ffd);
+        ffd = -1;
+        errno = saved_errno;
+    }
+
+    if (ffd < 0) {
+        auto error = builder.CreateString(strerror(errno));
+        response = v3::CreatePathOpenFdResponse(builder, false, error);
+    } else {
+        auto fb_ssb = v3_create_struct_stat(builder, sb);
+        response = v3::CreatePathOpenFdResponse(
+                builder, true, 0, fb_ssb, size);
+    }
+
+    // Wrap response
+    v3::ResponseBuilder rb(builder);
+    rb.add_response_type(v3::ResponseType_PathOpenFdResponse);
+    rb.add_response(response.Union());
+    rb.add_id(msg->id());
+    builder.Finish(rb.Finish());
+
+    if (ffd < 0) {
+        return v3_send_response(fd, builder);
+    }
+
+    // The client has its own reference once the fd has been sent
+    bool ret = v3_send_response_with_fds(fd, builder, { ffd });
+    close(ffd);
+    return ret;
+}
+
+static bool v3_path_list_directory(int fd, const v3::Request *msg)
+{
+    auto request = (v3::PathListDirectoryRequest *) msg->request();
+    if (!request->path()) {
+        return v3_send_response_invalid(fd, msg);
+    }
+
+    // Keep pages small enough to not hold up other responses
+    uint32_t max_entries = request->max_entries();
+    if (max_entries == 0) {
+        max_entries = 256;
+    } else if (max_entries > 1024) {
+        max_entries = 1024;
+    }
+
+    fb::FlatBufferBuilder builder;
+    fb::Offset<v3::PathListDirectoryResponse> response;
+
+    std::vector<fb::Offset<v3::DirectoryEntry>> entries;
+    // The position of a directory entry is the d_off of the entry before it.
+    // Unlike telldir(), this can be used with lseek() on a new file descriptor.
+    int64_t next_cursor = request->cursor();
+    bool eof = false;
+    bool ret = false;
+
+    int dfd = open(request->path()->c_str(),
+                   O_RDONLY | O_DIRECTORY | O_CLOEXEC);
+    if (dfd >= 0) {
+        DIR *dp = nullptr;
+
+        if (lseek64(dfd, request->cursor(), SEEK_SET) >= 0) {
+            dp = fdopendir(dfd);
+        }
+
+        if (!dp) {
+            int saved_errno = errno;
+            close(dfd);
+            errno = saved_errno;
+        } else {
+            auto close_dp = util::finally([&]{
+                int saved_errno = errno;
+                closedir(dp);
+                errno = saved_errno;
+            });
+
+            const char *pattern = request->pattern()
+                    ? request->pattern()->c_str() : nullptr;
+            struct dirent *ent;
+            struct stat sb;
+
+            while (true) {
+                errno = 0;
+                ent = readdir(dp);
+                if (!ent) {
+                    eof = errno == 0;
+                    ret = eof;
+                    break;
+                }
+
+                if (strcmp(ent->d_name, ".") == 0
+                        || strcmp(ent->d_name, "..") == 0
+                        || (pattern && fnmatch(pattern, ent->d_name, 0) != 0)) {
+                    next_cursor = ent->d_off;
+                    continue;
+                }
+
+                // Leave this entry for the next page
+                if (entries.size() == max_entries) {
+                    ret = true;
+                    break;
+                }
+
+                // Skip entries that were removed after being read
+                if (fstatat(dirfd(dp), ent->d_name, &sb,
+                            AT_SYMLINK_NOFOLLOW) == 0) {
+                    auto fb_name = builder.CreateString(ent->d_name);
+                    auto fb_ssb = v3_create_struct_stat(builder, sb);
+                    entries.push_back(v3::CreateDirectoryEntry(
+                            builder, fb_name, fb_ssb));
+                }
+
+                next_cursor = ent->d_off;
+            }
+        }
+    }
+
+    if (!ret) {
+        auto error = builder.CreateString(strerror(errno));
+        response = v3::CreatePathListDirectoryResponse(builder, false, error);
+    } else {
+        auto fb_entries = builder.CreateVector(entries);
+        response = v3::CreatePathListDirectoryResponse(
+                builder, true, 0, fb_entries, next_cursor, eof);
+    }
+
+    // Wrap response
+    v3::ResponseBuilder rb(builder);
+    rb.add_response_type(v3::ResponseType_PathListDirectoryResponse);
+    rb.add_response(response.Union());
+    rb.add_id(msg->id());
+    builder.Finish(rb.Finish());
+
+    return v3_send_response(fd, builder);
+}
+
+static bool v3_path_hash(int fd, const v3::Request *msg)
+{
+    auto request = (v3::PathHashRequest *) msg->request();
+    if (!request->path()) {
+        return v3_send_response_invalid(fd, msg);
+    }
+
+    fb::FlatBufferBuilder builder;
+    fb::Offset<v3::PathHashResponse> response;
+
+    unsigned char digest[SHA256_DIGEST_LENGTH];
+    uint64_t remaining = request->size();
+    uint64_t total = 0;
+    bool ret = false;
+
+    int ffd = open(request->path()->c_str(), O_RDONLY | O_CLOEXEC);
+    if (ffd >= 0) {
+        auto close_ffd = util::finally([&]{
+            int saved_errno = errno;
+            close(ffd);
+            errno = saved_errno;
+        });
+
+        if (lseek64(ffd, request->offset(), SEEK_SET) >= 0) {
+            SHA256_CTX ctx;
+            SHA256_Init(&ctx);
+
+            std::vector<unsigned char> buf(64 * 1024);
+            ssize_t n = 0;
+
+            while (true) {
+                size_t to_read = buf.size();
+                if (request->size() > 0) {
+                    if (remaining == 0) {
+                        break;
+                    }
+                    to_read = std::min<uint64_t>(to_read, remaining);
+                }
+
+                n = read(ffd, buf.data(), to_read);
+                if (n < 0 && errno == EINTR) {
+                    continue;
+                } else if (n <= 0) {
+                    break;
+                }
+
+                SHA256_Update(&ctx, buf.data(), n);
+                total += n;
+                remaining -= std::min<uint64_t>(remaining, n);
+            }
+
+            SHA256_Final(digest, &ctx);
+            ret = n >= 0;
+        }
+    }
+
+    if (!ret) {
+        auto error = builder.CreateString(strerror(errno));
+        response = v3::CreatePathHashResponse(builder, false, error);
+    } else {
+        auto fb_digest = builder.CreateVector(digest, sizeof(digest));
+        response = v3::CreatePathHashResponse(
+                builder, true, 0, fb_digest, total);
+    }
+
+    // Wrap response
+    v3::ResponseBuilder rb(builder);
+    rb.add_response_type(v3::ResponseType_PathHashResponse);
+    rb.add_response(response.Union());
+    rb.add_id(msg->id());
+    builder.Finish(rb.Finish());
+
+    return v3_send_response(fd, builder);
+}
+
+static bool v3_set_compression(int fd, const v3::Request *msg)
 {
-    (void) msg;
+    auto request = (v3::SetCompressionRequest *) msg->request();
+
+    // Pick the client's most preferred type that we support
+    v3::CompressionType type = v3::CompressionType_NONE;
+    if (request->types()) {
+        for (auto t : *request->types()) {
+            if (t == v3::CompressionType_DEFLATE) {
+                type = v3::CompressionType_DEFLATE;
+                break;
+            }
+        }
+    }
+
+    compression_threshold = request->threshold();
+    compression_type = type;
 
+    fb::FlatBufferBuilder builder;
+    auto response = v3::CreateSetCompressionResponse(builder, true, 0, type);
+
+    // Wrap response
+    v3::ResponseBuilder rb(builder);
+    rb.add_response_type(v3::ResponseType_SetCompressionResponse);
+    rb.add_response(response.Union());
+    rb.add_id(msg->id());
+    builder.Finish(rb.Finish());
+
+    return v3_send_response(fd, builder);
+}
+
+static bool v3_mb_get_booted_rom_id(int fd, const v3::Request *msg)
+{
     fb::FlatBufferBuilder builder;
     fb::Offset<fb::String> id;
     auto rom = Roms::get_current_rom();
@@ -665,6 +1862,7 @@ static bool v3_mb_get_booted_rom_id(int fd, const v3::Request *msg)
     v3::ResponseBuilder rb(builder);
     rb.add_response_type(v3::ResponseType_MbGetBootedRomIdResponse);
     rb.add_response(response.Union());
+    rb.add_id(msg->id());
     builder.Finish(rb.Finish());
 
     return v3_send_response(fd, builder);
@@ -672,8 +1870,6 @@ static bool v3_mb_get_booted_rom_id(int fd, const v3::Request *msg)
 
 static bool v3_mb_get_installed_roms(int fd, const v3::Request *msg)
 {
-    (void) msg;
-
     fb::FlatBufferBuilder builder;
 
     Roms roms;
@@ -734,6 +1930,7 @@ static bool v3_mb_get_installed_roms(int fd, const v3::Request *msg)
     v3::ResponseBuilder rb(builder);
     rb.add_response_type(v3::ResponseType_MbGetInstalledRomsResponse);
     rb.add_response(response.Union());
+    rb.add_id(msg->id());
     builder.Finish(rb.Finish());
 
     return v3_send_response(fd, builder);
@@ -741,8 +1938,6 @@ static bool v3_mb_get_installed_roms(int fd, const v3::Request *msg)
 
 static bool v3_mb_get_version(int fd, const v3::Request *msg)
 {
-    (void) msg;
-
     fb::FlatBufferBuilder builder;
 
     // Get version
@@ -753,6 +1948,7 @@ static bool v3_mb_get_version(int fd, const v3::Request *msg)
     v3::ResponseBuilder rb(builder);
     rb.add_response_type(v3::ResponseType_MbGetVersionResponse);
     rb.add_response(response.Union());
+    rb.add_id(msg->id());
     builder.Finish(rb.Finish());
 
     return v3_send_response(fd, builder);
@@ -762,7 +1958,7 @@ static bool v3_mb_set_kernel(int fd, const v3::Request *msg)
 {
     auto request = (v3::MbSetKernelRequest *) msg->request();
     if (!request->rom_id() || !request->boot_blockdev()) {
-        return v3_send_response_invalid(fd);
+        return v3_send_response_invalid(fd, msg);
     }
 
     fb::FlatBufferBuilder builder;
@@ -777,6 +1973,7 @@ static bool v3_mb_set_kernel(int fd, const v3::Request *msg)
     v3::ResponseBuilder rb(builder);
     rb.add_response_type(v3::ResponseType_MbSetKernelResponse);
     rb.add_response(response.Union());
+    rb.add_id(msg->id());
     builder.Finish(rb.Finish());
 
     return v3_send_response(fd, builder);
@@ -786,7 +1983,7 @@ static bool v3_mb_switch_rom(int fd, const v3::Request *msg)
 {
     auto request = (v3::MbSwitchRomRequest *) msg->request();
     if (!request->rom_id() || !request->boot_blockdev()) {
-        return v3_send_response_invalid(fd);
+        return v3_send_response_invalid(fd, msg);
     }
 
     std::vector<std::string> block_dev_dirs;
@@ -830,8 +2027,13 @@ static bool v3_mb_switch_rom(int fd, const v3::Request *msg)
     v3::ResponseBuilder rb(builder);
     rb.add_response_type(v3::ResponseType_MbSwitchRomResponse);
     rb.add_response(response.Union());
+    rb.add_id(msg->id());
     builder.Finish(rb.Finish());
 
+    if (success) {
+        v3_announce_active_rom(request->rom_id()->c_str());
+    }
+
     return v3_send_response(fd, builder);
 }
 
@@ -839,7 +2041,7 @@ static bool v3_mb_wipe_rom(int fd, const v3::Request *msg)
 {
     auto request = (v3::MbWipeRomRequest *) msg->request();
     if (!request->rom_id()) {
-        return v3_send_response_invalid(fd);
+        return v3_send_response_invalid(fd, msg);
     }
 
     // Find and verify ROM is installed
@@ -850,14 +2052,14 @@ static bool v3_mb_wipe_rom(int fd, const v3::Request *msg)
     if (!rom) {
         LOGE("Tried to wipe non-installed or invalid ROM ID: %s",
              request->rom_id()->c_str());
-        return v3_send_response_invalid(fd);
+        return v3_send_response_invalid(fd, msg);
     }
 
     // The GUI should check this, but we'll enforce it here
     auto current_rom = Roms::get_current_rom();
     if (current_rom && current_rom->id == rom->id) {
         LOGE("Cannot wipe currently booted ROM: %s", rom->id.c_str());
-        return v3_send_response_invalid(fd);
+        return v3_send_response_invalid(fd, msg);
     }
 
     // Wipe the selected targets
@@ -908,16 +2110,19 @@ static bool v3_mb_wipe_rom(int fd, const v3::Request *msg)
     v3::ResponseBuilder rb(builder);
     rb.add_response_type(v3::ResponseType_MbWipeRomResponse);
     rb.add_response(response.Union());
+    rb.add_id(msg->id());
     builder.Finish(rb.Finish());
 
-    return v3_send_response(fd, builder);
+    return v3_send_response(fd, builder)
+            && (succeeded.empty() || v3_send_event(
+                    fd, v3::EventType_ROMS_CHANGED, rom->id, ""));
 }
 
 static bool v3_mb_get_packages_count(int fd, const v3::Request *msg)
 {
     auto request = (v3::MbGetPackagesCountRequest *) msg->request();
     if (!request->rom_id()) {
-        return v3_send_response_invalid(fd);
+        return v3_send_response_invalid(fd, msg);
     }
 
     // Find and verify ROM is installed
@@ -926,7 +2131,7 @@ static bool v3_mb_get_packages_count(int fd, const v3::Request *msg)
 
     auto rom = roms.find_by_id(request->rom_id()->c_str());
     if (!rom) {
-        return v3_send_response_invalid(fd);
+        return v3_send_response_invalid(fd, msg);
     }
 
     std::string packages_xml(rom->full_data_path());
@@ -970,6 +2175,7 @@ static bool v3_mb_get_packages_count(int fd, const v3::Request *msg)
     v3::ResponseBuilder rb(builder);
     rb.add_response_type(v3::ResponseType_MbGetPackagesCountResponse);
     rb.add_response(response.Union());
+    rb.add_id(msg->id());
     builder.Finish(rb.Finish());
 
     return v3_send_response(fd, builder);
@@ -997,21 +2203,352 @@ static bool v3_reboot(int fd, const v3::Request *msg)
     v3::ResponseBuilder rb(builder);
     rb.add_response_type(v3::ResponseType_RebootResponse);
     rb.add_response(response.Union());
+    rb.add_id(msg->id());
     builder.Finish(rb.Finish());
 
     return v3_send_response(fd, builder);
 }
 
-bool connection_version_3(int fd)
+static bool v3_request_batch(int fd, const v3::Request *msg);
+
+// NOTE: A false return value indicates a connection error, not a command
+//       failure!
+static bool v3_dispatch(int fd, const v3::Request *request)
+{
+    v3::RequestType type = request->request_type();
+
+    if (type == v3::RequestType_FileChmodRequest) {
+        return v3_file_chmod(fd, request);
+    } else if (type == v3::RequestType_FileCloseRequest) {
+        return v3_file_close(fd, request);
+    } else if (type == v3::RequestType_FileOpenRequest) {
+        return v3_file_open(fd, request);
+    } else if (type == v3::RequestType_FileReadRequest) {
+        return v3_file_read(fd, request);
+    } else if (type == v3::RequestType_FileSeekRequest) {
+        return v3_file_seek(fd, request);
+    } else if (type == v3::RequestType_FileSELinuxGetLabelRequest) {
+        return v3_file_selinux_get_label(fd, request);
+    } else if (type == v3::RequestType_FileSELinuxSetLabelRequest) {
+        return v3_file_selinux_set_label(fd, request);
+    } else if (type == v3::RequestType_FileStatRequest) {
+        return v3_file_stat(fd, request);
+    } else if (type == v3::RequestType_FileWriteRequest) {
+        return v3_file_write(fd, request);
+    } else if (type == v3::RequestType_PathChmodRequest) {
+        return v3_path_chmod(fd, request);
+    } else if (type == v3::RequestType_PathCopyRequest) {
+        return v3_path_copy(fd, request);
+    } else if (type == v3::RequestType_PathCopyStreamRequest) {
+        return v3_path_copy_stream(fd, request);
+    } else if (type == v3::RequestType_RequestCancelRequest) {
+        return v3_request_cancel(fd, request);
+    } else if (type == v3::RequestType_PathSELinuxGetLabelRequest) {
+        return v3_path_selinux_get_label(fd, request);
+    } else if (type == v3::RequestType_PathSELinuxSetLabelRequest) {
+        return v3_path_selinux_set_label(fd, request);
+    } else if (type == v3::RequestType_PathGetDirectorySizeRequest) {
+        return v3_path_get_directory_size(fd, request);
+    } else if (type == v3::RequestType_PathGetDirectorySizeStreamRequest) {
+        return v3_path_get_directory_size_stream(fd, request);
+    } else if (type == v3::RequestType_EventSubscribeRequest) {
+        return v3_event_subscribe(fd, request);
+    } else if (type == v3::RequestType_PathOpenFdRequest) {
+        return v3_path_open_fd(fd, request);
+    } else if (type == v3::RequestType_PathListDirectoryRequest) {
+        return v3_path_list_directory(fd, request);
+    } else if (type == v3::RequestType_PathHashRequest) {
+        return v3_path_hash(fd, request);
+    } else if (type == v3::RequestType_SetCompressionRequest) {
+        return v3_set_compression(fd, request);
+    } else if (type == v3::RequestType_MbGetBootedRomIdRequest) {
+        return v3_mb_get_booted_rom_id(fd, request);
+    } else if (type == v3::RequestType_MbGetInstalledRomsRequest) {
+        return v3_mb_get_installed_roms(fd, request);
+    } else if (type == v3::RequestType_MbGetVersionRequest) {
+        return v3_mb_get_version(fd, request);
+    } else if (type == v3::RequestType_MbSetKernelRequest) {
+        return v3_mb_set_kernel(fd, request);
+    } else if (type == v3::RequestType_MbSwitchRomRequest) {
+        return v3_mb_switch_rom(fd, request);
+    } else if (type == v3::RequestType_MbWipeRomRequest) {
+        return v3_mb_wipe_rom(fd, request);
+    } else if (type == v3::RequestType_MbGetPackagesCountRequest) {
+        return v3_mb_get_packages_count(fd, request);
+    } else if (type == v3::RequestType_RebootRequest) {
+        return v3_reboot(fd, request);
+    } else if (type == v3::RequestType_RequestBatch) {
+        return v3_request_batch(fd, request);
+    } else {
+        // Invalid command; allow further commands
+        return v3_send_response_unsupported(fd, request);
+    }
+}
+
+template<typename T>
+static bool v3_response_success_field(const v3::Response *response)
+{
+    auto table = static_cast<const T *>(response->response());
+    return table && table->success();
+}
+
+// Whether a response indicates that the request succeeded. Responses that
+// don't have a success field are always considered successful.
+static bool v3_response_succeeded(const v3::Response *response)
+{
+    switch (response->response_type()) {
+    case v3::ResponseType_NONE:
+    case v3::ResponseType_Invalid:
+    case v3::ResponseType_Unsupported:
+        return false;
+    case v3::ResponseType_FileChmodResponse:
+        return v3_response_success_field<v3::FileChmodResponse>(response);
+    case v3::ResponseType_FileCloseResponse:
+        return v3_response_success_field<v3::FileCloseResponse>(response);
+    case v3::ResponseType_FileOpenResponse:
+        return v3_response_success_field<v3::FileOpenResponse>(response);
+    case v3::ResponseType_FileReadResponse:
+        return v3_response_success_field<v3::FileReadResponse>(response);
+    case v3::ResponseType_FileSeekResponse:
+        return v3_response_success_field<v3::FileSeekResponse>(response);
+    case v3::ResponseType_FileStatResponse:
+        return v3_response_success_field<v3::FileStatResponse>(response);
+    case v3::ResponseType_FileWriteResponse:
+        return v3_response_success_field<v3::FileWriteResponse>(response);
+    case v3::ResponseType_FileSELinuxGetLabelResponse:
+        return v3_response_success_field<v3::FileSELinuxGetLabelResponse>(response);
+    case v3::ResponseType_FileSELinuxSetLabelResponse:
+        return v3_response_success_field<v3::FileSELinuxSetLabelResponse>(response);
+    case v3::ResponseType_PathChmodResponse:
+        return v3_response_success_field<v3::PathChmodResponse>(response);
+    case v3::ResponseType_PathCopyResponse:
+        return v3_response_success_field<v3::PathCopyResponse>(response);
+    case v3::ResponseType_PathSELinuxGetLabelResponse:
+        return v3_response_success_field<v3::PathSELinuxGetLabelResponse>(response);
+    case v3::ResponseType_PathSELinuxSetLabelResponse:
+        return v3_response_success_field<v3::PathSELinuxSetLabelResponse>(response);
+    case v3::ResponseType_PathGetDirectorySizeResponse:
+        return v3_response_success_field<v3::PathGetDirectorySizeResponse>(response);
+    case v3::ResponseType_PathListDirectoryResponse:
+        return v3_response_success_field<v3::PathListDirectoryResponse>(
+                response);
+    case v3::ResponseType_PathHashResponse:
+        return v3_response_success_field<v3::PathHashResponse>(response);
+    case v3::ResponseType_SetCompressionResponse:
+        return v3_response_success_field<v3::SetCompressionResponse>(response);
+    case v3::ResponseType_PathCopyStreamResponse:
+        return v3_response_success_field<v3::PathCopyStreamResponse>(response);
+    case v3::ResponseType_RequestCancelResponse:
+        return v3_response_success_field<v3::RequestCancelResponse>(response);
+    case v3::ResponseType_EventSubscribeResponse:
+        return v3_response_success_field<v3::EventSubscribeResponse>(response);
+    case v3::ResponseType_PathGetDirectorySizeStreamResponse:
+        return v3_response_success_field<
+                v3::PathGetDirectorySizeStreamResponse>(response);
+    case v3::ResponseType_MbSetKernelResponse:
+        return v3_response_success_field<v3::MbSetKernelResponse>(response);
+    case v3::ResponseType_MbSwitchRomResponse:
+        return v3_response_success_field<v3::MbSwitchRomResponse>(response);
+    case v3::ResponseType_MbGetPackagesCountResponse:
+        return v3_response_success_field<v3::MbGetPackagesCountResponse>(response);
+    case v3::ResponseType_RebootResponse:
+        return v3_response_success_field<v3::RebootResponse>(response);
+    case v3::ResponseType_MbWipeRomResponse: {
+        auto table = static_cast<const v3::MbWipeRomResponse *>(response->response());
+        return table && (!table->failed() || table->failed()->size() == 0);
+    }
+    default:
+        return true;
+    }
+}
+
+static bool v3_request_batch(int fd, const v3::Request *msg)
+{
+    auto request = (v3::RequestBatch *) msg->request();
+
+    // Batches cannot be nested
+    if (get_captured_responses()) {
+        return v3_send_response_invalid(fd, msg);
+    }
+
+    CapturedResponses captured;
+    bool ret = true;
+
+    set_captured_responses(&captured);
+
+    if (request->requests()) {
+        for (auto const *subrequest : *request->requests()) {
+            size_t count = captured.size();
+
+            ret = v3_dispatch(fd, subrequest);
+            if (!ret) {
+                break;
+            }
+
+            if (request->stop_on_error() && captured.size() > count
+                    && !v3_response_succeeded(
+                            v3::GetResponse(captured.back().data()))) {
+                break;
+            }
+        }
+    }
+
+    set_captured_responses(nullptr);
+
+    if (!ret) {
+        return false;
+    }
+
+    fb::FlatBufferBuilder builder;
+
+    std::vector<fb::Offset<v3::NestedResponse>> fb_responses;
+    for (auto const &data : captured) {
+        auto fb_data = builder.CreateVector(data.data(), data.size());
+        fb_responses.push_back(v3::CreateNestedResponse(builder, fb_data));
+    }
+    auto fb_responses_vec = builder.CreateVector(fb_responses);
+
+    // Create response
+    auto response = v3::CreateResponseBatch(builder, fb_responses_vec);
+
+    // Wrap response
+    v3::ResponseBuilder rb(builder);
+    rb.add_response_type(v3::ResponseType_ResponseBatch);
+    rb.add_response(response.Union());
+    rb.add_id(msg->id());
+    builder.Finish(rb.Finish());
+
+    return v3_send_response(fd, builder);
+}
+
+// Whether a request can be handled by a worker thread. Requests that use file
+// handles must stay in order (eg. a seek followed by a read) and must not race
+// with the handle being closed. Requests that change the multiboot state must
+// not overlap. Everything else that can take long (copying, hashing, measuring
+// or listing paths) may complete out of order. This includes the copies, which
+// write to their target, so a client that depends on a copy having finished
+// must wait for its response.
+static bool v3_can_offload(const v3::Request *request)
 {
-    std::string command;
+    if (request->id() == 0) {
+        return false;
+    }
+
+    switch (request->request_type()) {
+    case v3::RequestType_PathCopyRequest:
+    case v3::RequestType_PathCopyStreamRequest:
+    case v3::RequestType_PathGetDirectorySizeRequest:
+    case v3::RequestType_PathGetDirectorySizeStreamRequest:
+    case v3::RequestType_PathHashRequest:
+    case v3::RequestType_PathListDirectoryRequest:
+        return true;
+    default:
+        return false;
+    }
+}
+
+static void * v3_worker(void *userdata)
+{
+    (void) userdata;
+
+    pthread_mutex_lock(&workers_lock);
+
+    while (true) {
+        while (jobs.empty() && !workers_exit) {
+            ++idle_workers;
+            pthread_cond_wait(&workers_cond, &workers_lock);
+            --idle_workers;
+        }
 
+        if (workers_exit) {
+            break;
+        }
+
+        V3Job job = std::move(jobs.front());
+        jobs.pop_front();
+
+        pthread_mutex_unlock(&workers_lock);
+
+        const v3::Request *request = v3::GetRequest(job.data.data());
+        if (!v3_dispatch(job.fd, request)) {
+            // Wake up the main loop so the connection gets torn down
+            shutdown(job.fd, SHUT_RDWR);
+        }
+
+        pthread_mutex_lock(&workers_lock);
+    }
+
+    pthread_mutex_unlock(&workers_lock);
+
+    return nullptr;
+}
+
+static bool v3_queue_job(int fd, std::vector<uint8_t> data)
+{
+    bool ret = true;
+
+    pthread_mutex_lock(&workers_lock);
+
+    jobs.push_back(V3Job{fd, std::move(data)});
+
+    if (jobs.size() > idle_workers && worker_threads.size() < MAX_WORKERS) {
+        pthread_t thread;
+        int error = pthread_create(&thread, nullptr, &v3_worker, nullptr);
+        if (error == 0) {
+            worker_threads.push_back(thread);
+        } else {
+            LOGE("Failed to create worker thread: %s", strerror(error));
+
+            // The job will be picked up by an existing worker
+            if (worker_threads.empty()) {
+                jobs.pop_back();
+                ret = false;
+            }
+        }
+    }
+
+    pthread_cond_signal(&workers_cond);
+    pthread_mutex_unlock(&workers_lock);
+
+    return ret;
+}
+
+static void v3_stop_workers()
+{
+    pthread_mutex_lock(&workers_lock);
+    // Nobody is listening for the responses of requests that have not started
+    jobs.clear();
+    workers_exit = true;
+    pthread_cond_broadcast(&workers_cond);
+    pthread_mutex_unlock(&workers_lock);
+
+    // Stop long-running requests early
+    pthread_mutex_lock(&cancellable_lock);
+    for (auto &p : cancellable) {
+        p.second->store(true);
+    }
+    pthread_mutex_unlock(&cancellable_lock);
+
+    for (pthread_t thread : worker_threads) {
+        pthread_join(thread, nullptr);
+    }
+    worker_threads.clear();
+    workers_exit = false;
+}
+
+bool connection_version_3(int fd)
+{
     auto close_all_fds = util::finally([&]{
+        // Wait for in-flight requests before closing anything they may use
+        v3_stop_workers();
+
         // Ensure opened fd's are closed if the connection is lost
+        pthread_mutex_lock(&fd_map_lock);
         for (auto &p : fd_map) {
             close(p.second);
         }
         fd_map.clear();
+        pthread_mutex_unlock(&fd_map_lock);
     });
 
     while (1) {
@@ -1027,59 +2564,15 @@ bool connection_version_3(int fd)
         }
 
         const v3::Request *request = v3::GetRequest(data.data());
-        v3::RequestType type = request->request_type();
-
-        // NOTE: A false return value indicates a connection error, not a
-        //       command failure!
-        bool ret = true;
-
-        if (type == v3::RequestType_FileChmodRequest) {
-            ret = v3_file_chmod(fd, request);
-        } else if (type == v3::RequestType_FileCloseRequest) {
-            ret = v3_file_close(fd, request);
-        } else if (type == v3::RequestType_FileOpenRequest) {
-            ret = v3_file_open(fd, request);
-        } else if (type == v3::RequestType_FileReadRequest) {
-            ret = v3_file_read(fd, request);
-        } else if (type == v3::RequestType_FileSeekRequest) {
-            ret = v3_file_seek(fd, request);
-        } else if (type == v3::RequestType_FileSELinuxGetLabelRequest) {
-            ret = v3_file_selinux_get_label(fd, request);
-        } else if (type == v3::RequestType_FileSELinuxSetLabelRequest) {
-            ret = v3_file_selinux_set_label(fd, request);
-        } else if (type == v3::RequestType_FileStatRequest) {
-            ret = v3_file_stat(fd, request);
-        } else if (type == v3::RequestType_FileWriteRequest) {
-            ret = v3_file_write(fd, request);
-        } else if (type == v3::RequestType_PathChmodRequest) {
-            ret = v3_path_chmod(fd, request);
-        } else if (type == v3::RequestType_PathCopyRequest) {
-            ret = v3_path_copy(fd, request);
-        } else if (type == v3::RequestType_PathSELinuxGetLabelRequest) {
-            ret = v3_path_selinux_get_label(fd, request);
-        } else if (type == v3::RequestType_PathSELinuxSetLabelRequest) {
-            ret = v3_path_selinux_set_label(fd, request);
-        } else if (type == v3::RequestType_PathGetDirectorySizeRequest) {
-            ret = v3_path_get_directory_size(fd, request);
-        } else if (type == v3::RequestType_MbGetBootedRomIdRequest) {
-            ret = v3_mb_get_booted_rom_id(fd, request);
-        } else if (type == v3::RequestType_MbGetInstalledRomsRequest) {
-            ret = v3_mb_get_installed_roms(fd, request);
-        } else if (type == v3::RequestType_MbGetVersionRequest) {
-            ret = v3_mb_get_version(fd, request);
-        } else if (type == v3::RequestType_MbSetKernelRequest) {
-            ret = v3_mb_set_kernel(fd, request);
-        } else if (type == v3::RequestType_MbSwitchRomRequest) {
-            ret = v3_mb_switch_rom(fd, request);
-        } else if (type == v3::RequestType_MbWipeRomRequest) {
-            ret = v3_mb_wipe_rom(fd, request);
-        } else if (type == v3::RequestType_MbGetPackagesCountRequest) {
-            ret = v3_mb_get_packages_count(fd, request);
-        } else if (type == v3::RequestType_RebootRequest) {
-            ret = v3_reboot(fd, request);
+
+        // Requests are handled in order, except for slow path requests from
+        // clients that tag their requests. Those are handed to a worker so
+        // that they (eg. copying a partition) do not hold up the rest.
+        bool ret;
+        if (v3_can_offload(request)) {
+            ret = v3_queue_job(fd, std::move(data));
         } else {
-            // Invalid command; allow further commands
-            ret = v3_send_response_unsupported(fd);
+            ret = v3_dispatch(fd, request);
         }
 
         if (!ret) {
@@ -1090,4 +2583,4 @@ bool connection_version_3(int fd)
     return true;
 }
 
-}
\ No newline at end of file
+}
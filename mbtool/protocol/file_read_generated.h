@@ -41,6 +41,18 @@ namespace v3 {
 struct FileReadRequest;
 struct FileReadResponse;
 
+enum CompressionType {
+  CompressionType_NONE = 0,
+  CompressionType_DEFLATE = 1
+};
+
+inline const char **EnumNamesCompressionType() {
+  static const char *names[] = { "NONE", "DEFLATE", nullptr };
+  return names;
+}
+
+inline const char *EnumNameCompressionType(CompressionType e) { return EnumNamesCompressionType()[static_cast<int>(e)]; }
+
 struct FileReadRequest FLATBUFFERS_FINAL_CLASS : private flatbuffers::Table {
   int32_t id() const { return GetField<int32_t>(4, 0); }
   uint64_t count() const { return GetField<uint64_t>(6, 0); }
@@ -79,6 +91,7 @@ struct FileReadResponse FLATBUFFERS_FINAL_CLASS : private flatbuffers::Table {
   const flatbuffers::String *error_msg() const { return GetPointer<const flatbuffers::String *>(6); }
   uint64_t bytes_read() const { return GetField<uint64_t>(8, 0); }
   const flatbuffers::Vector<uint8_t> *data() const { return GetPointer<const flatbuffers::Vector<uint8_t> *>(10); }
+  CompressionType compression() const { return static_cast<CompressionType>(GetField<int16_t>(12, 0)); }
   bool Verify(flatbuffers::Verifier &verifier) const {
     return VerifyTableStart(verifier) &&
            VerifyField<uint8_t>(verifier, 4 /* success */) &&
@@ -87,6 +100,7 @@ struct FileReadResponse FLATBUFFERS_FINAL_CLASS : private flatbuffers::Table {
            VerifyField<uint64_t>(verifier, 8 /* bytes_read */) &&
            VerifyField<flatbuffers::uoffset_t>(verifier, 10 /* data */) &&
            verifier.Verify(data()) &&
+           VerifyField<int16_t>(verifier, 12 /* compression */) &&
            verifier.EndTable();
   }
 };
@@ -98,10 +112,11 @@ struct FileReadResponseBuilder {
   void add_error_msg(flatbuffers::Offset<flatbuffers::String> error_msg) { fbb_.AddOffset(6, error_msg); }
   void add_bytes_read(uint64_t bytes_read) { fbb_.AddElement<uint64_t>(8, bytes_read, 0); }
   void add_data(flatbuffers::Offset<flatbuffers::Vector<uint8_t>> data) { fbb_.AddOffset(10, data); }
+  void add_compression(CompressionType compression) { fbb_.AddElement<int16_t>(12, static_cast<int16_t>(compression), 0); }
   FileReadResponseBuilder(flatbuffers::FlatBufferBuilder &_fbb) : fbb_(_fbb) { start_ = fbb_.StartTable(); }
   FileReadResponseBuilder &operator=(const FileReadResponseBuilder &);
   flatbuffers::Offset<FileReadResponse> Finish() {
-    auto o = flatbuffers::Offset<FileReadResponse>(fbb_.EndTable(start_, 4));
+    auto o = flatbuffers::Offset<FileReadResponse>(fbb_.EndTable(start_, 5));
     return o;
   }
 };
@@ -110,11 +125,13 @@ inline flatbuffers::Offset<FileReadResponse> CreateFileReadResponse(flatbuffers:
    uint8_t success = 0,
    flatbuffers::Offset<flatbuffers::String> error_msg = 0,
    uint64_t bytes_read = 0,
-   flatbuffers::Offset<flatbuffers::Vector<uint8_t>> data = 0) {
+   flatbuffers::Offset<flatbuffers::Vector<uint8_t>> data = 0,
+   CompressionType compression = CompressionType_NONE) {
   FileReadResponseBuilder builder_(_fbb);
   builder_.add_bytes_read(bytes_read);
   builder_.add_data(data);
   builder_.add_error_msg(error_msg);
+  builder_.add_compression(compression);
   builder_.add_success(success);
   return builder_.Finish();
 }
@@ -5,6 +5,7 @@
 
 #include "flatbuffers/flatbuffers.h"
 
+#include "event_subscribe_generated.h"
 #include "file_chmod_generated.h"
 #include "file_close_generated.h"
 #include "file_open_generated.h"
@@ -23,10 +24,17 @@
 #include "mb_wipe_rom_generated.h"
 #include "path_chmod_generated.h"
 #include "path_copy_generated.h"
+#include "path_copy_stream_generated.h"
 #include "path_get_directory_size_generated.h"
+#include "path_get_directory_size_stream_generated.h"
+#include "path_hash_generated.h"
+#include "path_list_directory_generated.h"
+#include "path_open_fd_generated.h"
 #include "path_selinux_get_label_generated.h"
 #include "path_selinux_set_label_generated.h"
 #include "reboot_generated.h"
+#include "request_cancel_generated.h"
+#include "set_compression_generated.h"
 
 namespace mbtool {
 namespace daemon {
@@ -206,12 +214,82 @@ struct RebootResponse;
 }  // namespace v3
 }  // namespace daemon
 }  // namespace mbtool
+namespace mbtool {
+namespace daemon {
+namespace v3 {
+struct PathOpenFdRequest;
+struct PathOpenFdResponse;
+}  // namespace v3
+}  // namespace daemon
+}  // namespace mbtool
+namespace mbtool {
+namespace daemon {
+namespace v3 {
+struct PathHashRequest;
+struct PathHashResponse;
+}  // namespace v3
+}  // namespace daemon
+}  // namespace mbtool
+namespace mbtool {
+namespace daemon {
+namespace v3 {
+struct SetCompressionRequest;
+struct SetCompressionResponse;
+}  // namespace v3
+}  // namespace daemon
+}  // namespace mbtool
+namespace mbtool {
+namespace daemon {
+namespace v3 {
+struct PathCopyStreamRequest;
+struct PathCopyStreamProgress;
+struct PathCopyStreamResponse;
+}  // namespace v3
+}  // namespace daemon
+}  // namespace mbtool
+namespace mbtool {
+namespace daemon {
+namespace v3 {
+struct RequestCancelRequest;
+struct RequestCancelResponse;
+}  // namespace v3
+}  // namespace daemon
+}  // namespace mbtool
+namespace mbtool {
+namespace daemon {
+namespace v3 {
+struct PathGetDirectorySizeStreamRequest;
+struct DirectorySubtotal;
+struct PathGetDirectorySizeStreamProgress;
+struct PathGetDirectorySizeStreamResponse;
+}  // namespace v3
+}  // namespace daemon
+}  // namespace mbtool
+namespace mbtool {
+namespace daemon {
+namespace v3 {
+struct EventSubscribeRequest;
+struct EventSubscribeResponse;
+struct EventNotification;
+}  // namespace v3
+}  // namespace daemon
+}  // namespace mbtool
+namespace mbtool {
+namespace daemon {
+namespace v3 {
+struct PathListDirectoryRequest;
+struct DirectoryEntry;
+struct PathListDirectoryResponse;
+}  // namespace v3
+}  // namespace daemon
+}  // namespace mbtool
 
 namespace mbtool {
 namespace daemon {
 namespace v3 {
 
 struct Request;
+struct RequestBatch;
 
 enum RequestType {
   RequestType_NONE = 0,
@@ -236,11 +314,20 @@ enum RequestType {
   RequestType_MbSetKernelRequest = 19,
   RequestType_MbWipeRomRequest = 20,
   RequestType_MbGetPackagesCountRequest = 21,
-  RequestType_RebootRequest = 22
+  RequestType_RebootRequest = 22,
+  RequestType_RequestBatch = 23,
+  RequestType_PathOpenFdRequest = 24,
+  RequestType_PathHashRequest = 25,
+  RequestType_SetCompressionRequest = 26,
+  RequestType_PathCopyStreamRequest = 27,
+  RequestType_RequestCancelRequest = 28,
+  RequestType_PathGetDirectorySizeStreamRequest = 29,
+  RequestType_EventSubscribeRequest = 30,
+  RequestType_PathListDirectoryRequest = 31
 };
 
 inline const char **EnumNamesRequestType() {
-  static const char *names[] = { "NONE", "FileChmodRequest", "FileCloseRequest", "FileOpenRequest", "FileReadRequest", "FileSeekRequest", "FileStatRequest", "FileWriteRequest", "FileSELinuxGetLabelRequest", "FileSELinuxSetLabelRequest", "PathChmodRequest", "PathCopyRequest", "PathSELinuxGetLabelRequest", "PathSELinuxSetLabelRequest", "PathGetDirectorySizeRequest", "MbGetVersionRequest", "MbGetInstalledRomsRequest", "MbGetBootedRomIdRequest", "MbSwitchRomRequest", "MbSetKernelRequest", "MbWipeRomRequest", "MbGetPackagesCountRequest", "RebootRequest", nullptr };
+  static const char *names[] = { "NONE", "FileChmodRequest", "FileCloseRequest", "FileOpenRequest", "FileReadRequest", "FileSeekRequest", "FileStatRequest", "FileWriteRequest", "FileSELinuxGetLabelRequest", "FileSELinuxSetLabelRequest", "PathChmodRequest", "PathCopyRequest", "PathSELinuxGetLabelRequest", "PathSELinuxSetLabelRequest", "PathGetDirectorySizeRequest", "MbGetVersionRequest", "MbGetInstalledRomsRequest", "MbGetBootedRomIdRequest", "MbSwitchRomRequest", "MbSetKernelRequest", "MbWipeRomRequest", "MbGetPackagesCountRequest", "RebootRequest", "RequestBatch", "PathOpenFdRequest", "PathHashRequest", "SetCompressionRequest", "PathCopyStreamRequest", "RequestCancelRequest", "PathGetDirectorySizeStreamRequest", "EventSubscribeRequest", "PathListDirectoryRequest", nullptr };
   return names;
 }
 
@@ -251,11 +338,13 @@ inline bool VerifyRequestType(flatbuffers::Verifier &verifier, const void *union
 struct Request FLATBUFFERS_FINAL_CLASS : private flatbuffers::Table {
   RequestType request_type() const { return static_cast<RequestType>(GetField<uint8_t>(4, 0)); }
   const void *request() const { return GetPointer<const void *>(6); }
+  uint32_t id() const { return GetField<uint32_t>(8, 0); }
   bool Verify(flatbuffers::Verifier &verifier) const {
     return VerifyTableStart(verifier) &&
            VerifyField<uint8_t>(verifier, 4 /* request_type */) &&
            VerifyField<flatbuffers::uoffset_t>(verifier, 6 /* request */) &&
            VerifyRequestType(verifier, request(), request_type()) &&
+           VerifyField<uint32_t>(verifier, 8 /* id */) &&
            verifier.EndTable();
   }
 };
@@ -265,23 +354,61 @@ struct RequestBuilder {
   flatbuffers::uoffset_t start_;
   void add_request_type(RequestType request_type) { fbb_.AddElement<uint8_t>(4, static_cast<uint8_t>(request_type), 0); }
   void add_request(flatbuffers::Offset<void> request) { fbb_.AddOffset(6, request); }
+  void add_id(uint32_t id) { fbb_.AddElement<uint32_t>(8, id, 0); }
   RequestBuilder(flatbuffers::FlatBufferBuilder &_fbb) : fbb_(_fbb) { start_ = fbb_.StartTable(); }
   RequestBuilder &operator=(const RequestBuilder &);
   flatbuffers::Offset<Request> Finish() {
-    auto o = flatbuffers::Offset<Request>(fbb_.EndTable(start_, 2));
+    auto o = flatbuffers::Offset<Request>(fbb_.EndTable(start_, 3));
     return o;
   }
 };
 
 inline flatbuffers::Offset<Request> CreateRequest(flatbuffers::FlatBufferBuilder &_fbb,
    RequestType request_type = RequestType_NONE,
-   flatbuffers::Offset<void> request = 0) {
+   flatbuffers::Offset<void> request = 0,
+   uint32_t id = 0) {
   RequestBuilder builder_(_fbb);
+  builder_.add_id(id);
   builder_.add_request(request);
   builder_.add_request_type(request_type);
   return builder_.Finish();
 }
 
+struct RequestBatch FLATBUFFERS_FINAL_CLASS : private flatbuffers::Table {
+  const flatbuffers::Vector<flatbuffers::Offset<Request>> *requests() const { return GetPointer<const flatbuffers::Vector<flatbuffers::Offset<Request>> *>(4); }
+  uint8_t stop_on_error() const { return GetField<uint8_t>(6, 0); }
+  bool Verify(flatbuffers::Verifier &verifier) const {
+    return VerifyTableStart(verifier) &&
+           VerifyField<flatbuffers::uoffset_t>(verifier, 4 /* requests */) &&
+           verifier.Verify(requests()) &&
+           verifier.VerifyVectorOfTables(requests()) &&
+           VerifyField<uint8_t>(verifier, 6 /* stop_on_error */) &&
+           verifier.EndTable();
+  }
+};
+
+struct RequestBatchBuilder {
+  flatbuffers::FlatBufferBuilder &fbb_;
+  flatbuffers::uoffset_t start_;
+  void add_requests(flatbuffers::Offset<flatbuffers::Vector<flatbuffers::Offset<Request>>> requests) { fbb_.AddOffset(4, requests); }
+  void add_stop_on_error(uint8_t stop_on_error) { fbb_.AddElement<uint8_t>(6, stop_on_error, 0); }
+  RequestBatchBuilder(flatbuffers::FlatBufferBuilder &_fbb) : fbb_(_fbb) { start_ = fbb_.StartTable(); }
+  RequestBatchBuilder &operator=(const RequestBatchBuilder &);
+  flatbuffers::Offset<RequestBatch> Finish() {
+    auto o = flatbuffers::Offset<RequestBatch>(fbb_.EndTable(start_, 2));
+    return o;
+  }
+};
+
+inline flatbuffers::Offset<RequestBatch> CreateRequestBatch(flatbuffers::FlatBufferBuilder &_fbb,
+   flatbuffers::Offset<flatbuffers::Vector<flatbuffers::Offset<Request>>> requests = 0,
+   uint8_t stop_on_error = 0) {
+  RequestBatchBuilder builder_(_fbb);
+  builder_.add_requests(requests);
+  builder_.add_stop_on_error(stop_on_error);
+  return builder_.Finish();
+}
+
 inline bool VerifyRequestType(flatbuffers::Verifier &verifier, const void *union_obj, RequestType type) {
   switch (type) {
     case RequestType_NONE: return true;
@@ -307,6 +434,15 @@ inline bool VerifyRequestType(flatbuffers::Verifier &verifier, const void *union
     case RequestType_MbWipeRomRequest: return verifier.VerifyTable(reinterpret_cast<const mbtool::daemon::v3::MbWipeRomRequest *>(union_obj));
     case RequestType_MbGetPackagesCountRequest: return verifier.VerifyTable(reinterpret_cast<const mbtool::daemon::v3::MbGetPackagesCountRequest *>(union_obj));
     case RequestType_RebootRequest: return verifier.VerifyTable(reinterpret_cast<const mbtool::daemon::v3::RebootRequest *>(union_obj));
+    case RequestType_RequestBatch: return verifier.VerifyTable(reinterpret_cast<const RequestBatch *>(union_obj));
+    case RequestType_PathOpenFdRequest: return verifier.VerifyTable(reinterpret_cast<const mbtool::daemon::v3::PathOpenFdRequest *>(union_obj));
+    case RequestType_PathHashRequest: return verifier.VerifyTable(reinterpret_cast<const mbtool::daemon::v3::PathHashRequest *>(union_obj));
+    case RequestType_SetCompressionRequest: return verifier.VerifyTable(reinterpret_cast<const mbtool::daemon::v3::SetCompressionRequest *>(union_obj));
+    case RequestType_PathCopyStreamRequest: return verifier.VerifyTable(reinterpret_cast<const mbtool::daemon::v3::PathCopyStreamRequest *>(union_obj));
+    case RequestType_RequestCancelRequest: return verifier.VerifyTable(reinterpret_cast<const mbtool::daemon::v3::RequestCancelRequest *>(union_obj));
+    case RequestType_PathGetDirectorySizeStreamRequest: return verifier.VerifyTable(reinterpret_cast<const mbtool::daemon::v3::PathGetDirectorySizeStreamRequest *>(union_obj));
+    case RequestType_EventSubscribeRequest: return verifier.VerifyTable(reinterpret_cast<const mbtool::daemon::v3::EventSubscribeRequest *>(union_obj));
+    case RequestType_PathListDirectoryRequest: return verifier.VerifyTable(reinterpret_cast<const mbtool::daemon::v3::PathListDirectoryRequest *>(union_obj));
     default: return false;
   }
 }
@@ -6,6 +6,7 @@
 #include "flatbuffers/flatbuffers.h"
 
 #include "request_generated.h"
+#include "event_subscribe_generated.h"
 #include "file_chmod_generated.h"
 #include "file_close_generated.h"
 #include "file_open_generated.h"
@@ -24,10 +25,17 @@
 #include "mb_wipe_rom_generated.h"
 #include "path_chmod_generated.h"
 #include "path_copy_generated.h"
+#include "path_copy_stream_generated.h"
 #include "path_get_directory_size_generated.h"
+#include "path_get_directory_size_stream_generated.h"
+#include "path_hash_generated.h"
+#include "path_list_directory_generated.h"
+#include "path_open_fd_generated.h"
 #include "path_selinux_get_label_generated.h"
 #include "path_selinux_set_label_generated.h"
 #include "reboot_generated.h"
+#include "request_cancel_generated.h"
+#include "set_compression_generated.h"
 
 namespace mbtool {
 namespace daemon {
@@ -210,6 +218,75 @@ struct RebootResponse;
 namespace mbtool {
 namespace daemon {
 namespace v3 {
+struct PathOpenFdRequest;
+struct PathOpenFdResponse;
+}  // namespace v3
+}  // namespace daemon
+}  // namespace mbtool
+namespace mbtool {
+namespace daemon {
+namespace v3 {
+struct PathHashRequest;
+struct PathHashResponse;
+}  // namespace v3
+}  // namespace daemon
+}  // namespace mbtool
+namespace mbtool {
+namespace daemon {
+namespace v3 {
+struct SetCompressionRequest;
+struct SetCompressionResponse;
+}  // namespace v3
+}  // namespace daemon
+}  // namespace mbtool
+namespace mbtool {
+namespace daemon {
+namespace v3 {
+struct PathCopyStreamRequest;
+struct PathCopyStreamProgress;
+struct PathCopyStreamResponse;
+}  // namespace v3
+}  // namespace daemon
+}  // namespace mbtool
+namespace mbtool {
+namespace daemon {
+namespace v3 {
+struct RequestCancelRequest;
+struct RequestCancelResponse;
+}  // namespace v3
+}  // namespace daemon
+}  // namespace mbtool
+namespace mbtool {
+namespace daemon {
+namespace v3 {
+struct PathGetDirectorySizeStreamRequest;
+struct DirectorySubtotal;
+struct PathGetDirectorySizeStreamProgress;
+struct PathGetDirectorySizeStreamResponse;
+}  // namespace v3
+}  // namespace daemon
+}  // namespace mbtool
+namespace mbtool {
+namespace daemon {
+namespace v3 {
+struct EventSubscribeRequest;
+struct EventSubscribeResponse;
+struct EventNotification;
+}  // namespace v3
+}  // namespace daemon
+}  // namespace mbtool
+namespace mbtool {
+namespace daemon {
+namespace v3 {
+struct PathListDirectoryRequest;
+struct DirectoryEntry;
+struct PathListDirectoryResponse;
+}  // namespace v3
+}  // namespace daemon
+}  // namespace mbtool
+namespace mbtool {
+namespace daemon {
+namespace v3 {
 struct Request;
 }  // namespace v3
 }  // namespace daemon
@@ -222,6 +299,8 @@ namespace v3 {
 struct Invalid;
 struct Unsupported;
 struct Response;
+struct NestedResponse;
+struct ResponseBatch;
 
 enum ResponseType {
   ResponseType_NONE = 0,
@@ -248,11 +327,23 @@ enum ResponseType {
   ResponseType_MbSetKernelResponse = 21,
   ResponseType_MbWipeRomResponse = 22,
   ResponseType_MbGetPackagesCountResponse = 23,
-  ResponseType_RebootResponse = 24
+  ResponseType_RebootResponse = 24,
+  ResponseType_ResponseBatch = 25,
+  ResponseType_PathOpenFdResponse = 26,
+  ResponseType_PathHashResponse = 27,
+  ResponseType_SetCompressionResponse = 28,
+  ResponseType_PathCopyStreamProgress = 29,
+  ResponseType_PathCopyStreamResponse = 30,
+  ResponseType_RequestCancelResponse = 31,
+  ResponseType_PathGetDirectorySizeStreamProgress = 32,
+  ResponseType_PathGetDirectorySizeStreamResponse = 33,
+  ResponseType_EventSubscribeResponse = 34,
+  ResponseType_EventNotification = 35,
+  ResponseType_PathListDirectoryResponse = 36
 };
 
 inline const char **EnumNamesResponseType() {
-  static const char *names[] = { "NONE", "Invalid", "Unsupported", "FileChmodResponse", "FileCloseResponse", "FileOpenResponse", "FileReadResponse", "FileSeekResponse", "FileStatResponse", "FileWriteResponse", "FileSELinuxGetLabelResponse", "FileSELinuxSetLabelResponse", "PathChmodResponse", "PathCopyResponse", "PathSELinuxGetLabelResponse", "PathSELinuxSetLabelResponse", "PathGetDirectorySizeResponse", "MbGetVersionResponse", "MbGetInstalledRomsResponse", "MbGetBootedRomIdResponse", "MbSwitchRomResponse", "MbSetKernelResponse", "MbWipeRomResponse", "MbGetPackagesCountResponse", "RebootResponse", nullptr };
+  static const char *names[] = { "NONE", "Invalid", "Unsupported", "FileChmodResponse", "FileCloseResponse", "FileOpenResponse", "FileReadResponse", "FileSeekResponse", "FileStatResponse", "FileWriteResponse", "FileSELinuxGetLabelResponse", "FileSELinuxSetLabelResponse", "PathChmodResponse", "PathCopyResponse", "PathSELinuxGetLabelResponse", "PathSELinuxSetLabelResponse", "PathGetDirectorySizeResponse", "MbGetVersionResponse", "MbGetInstalledRomsResponse", "MbGetBootedRomIdResponse", "MbSwitchRomResponse", "MbSetKernelResponse", "MbWipeRomResponse", "MbGetPackagesCountResponse", "RebootResponse", "ResponseBatch", "PathOpenFdResponse", "PathHashResponse", "SetCompressionResponse", "PathCopyStreamProgress", "PathCopyStreamResponse", "RequestCancelResponse", "PathGetDirectorySizeStreamProgress", "PathGetDirectorySizeStreamResponse", "EventSubscribeResponse", "EventNotification", "PathListDirectoryResponse", nullptr };
   return names;
 }
 
@@ -309,11 +400,13 @@ inline flatbuffers::Offset<Unsupported> CreateUnsupported(flatbuffers::FlatBuffe
 struct Response FLATBUFFERS_FINAL_CLASS : private flatbuffers::Table {
   ResponseType response_type() const { return static_cast<ResponseType>(GetField<uint8_t>(4, 0)); }
   const void *response() const { return GetPointer<const void *>(6); }
+  uint32_t id() const { return GetField<uint32_t>(8, 0); }
   bool Verify(flatbuffers::Verifier &verifier) const {
     return VerifyTableStart(verifier) &&
            VerifyField<uint8_t>(verifier, 4 /* response_type */) &&
            VerifyField<flatbuffers::uoffset_t>(verifier, 6 /* response */) &&
            VerifyResponseType(verifier, response(), response_type()) &&
+           VerifyField<uint32_t>(verifier, 8 /* id */) &&
            verifier.EndTable();
   }
 };
@@ -323,23 +416,86 @@ struct ResponseBuilder {
   flatbuffers::uoffset_t start_;
   void add_response_type(ResponseType response_type) { fbb_.AddElement<uint8_t>(4, static_cast<uint8_t>(response_type), 0); }
   void add_response(flatbuffers::Offset<void> response) { fbb_.AddOffset(6, response); }
+  void add_id(uint32_t id) { fbb_.AddElement<uint32_t>(8, id, 0); }
   ResponseBuilder(flatbuffers::FlatBufferBuilder &_fbb) : fbb_(_fbb) { start_ = fbb_.StartTable(); }
   ResponseBuilder &operator=(const ResponseBuilder &);
   flatbuffers::Offset<Response> Finish() {
-    auto o = flatbuffers::Offset<Response>(fbb_.EndTable(start_, 2));
+    auto o = flatbuffers::Offset<Response>(fbb_.EndTable(start_, 3));
     return o;
   }
 };
 
 inline flatbuffers::Offset<Response> CreateResponse(flatbuffers::FlatBufferBuilder &_fbb,
    ResponseType response_type = ResponseType_NONE,
-   flatbuffers::Offset<void> response = 0) {
+   flatbuffers::Offset<void> response = 0,
+   uint32_t id = 0) {
   ResponseBuilder builder_(_fbb);
+  builder_.add_id(id);
   builder_.add_response(response);
   builder_.add_response_type(response_type);
   return builder_.Finish();
 }
 
+struct NestedResponse FLATBUFFERS_FINAL_CLASS : private flatbuffers::Table {
+  const flatbuffers::Vector<uint8_t> *data() const { return GetPointer<const flatbuffers::Vector<uint8_t> *>(4); }
+  const Response *data_nested_root() const { return flatbuffers::GetRoot<Response>(data()->Data()); }
+  bool Verify(flatbuffers::Verifier &verifier) const {
+    return VerifyTableStart(verifier) &&
+           VerifyField<flatbuffers::uoffset_t>(verifier, 4 /* data */) &&
+           verifier.Verify(data()) &&
+           verifier.EndTable();
+  }
+};
+
+struct NestedResponseBuilder {
+  flatbuffers::FlatBufferBuilder &fbb_;
+  flatbuffers::uoffset_t start_;
+  void add_data(flatbuffers::Offset<flatbuffers::Vector<uint8_t>> data) { fbb_.AddOffset(4, data); }
+  NestedResponseBuilder(flatbuffers::FlatBufferBuilder &_fbb) : fbb_(_fbb) { start_ = fbb_.StartTable(); }
+  NestedResponseBuilder &operator=(const NestedResponseBuilder &);
+  flatbuffers::Offset<NestedResponse> Finish() {
+    auto o = flatbuffers::Offset<NestedResponse>(fbb_.EndTable(start_, 1));
+    return o;
+  }
+};
+
+inline flatbuffers::Offset<NestedResponse> CreateNestedResponse(flatbuffers::FlatBufferBuilder &_fbb,
+   flatbuffers::Offset<flatbuffers::Vector<uint8_t>> data = 0) {
+  NestedResponseBuilder builder_(_fbb);
+  builder_.add_data(data);
+  return builder_.Finish();
+}
+
+struct ResponseBatch FLATBUFFERS_FINAL_CLASS : private flatbuffers::Table {
+  const flatbuffers::Vector<flatbuffers::Offset<NestedResponse>> *responses() const { return GetPointer<const flatbuffers::Vector<flatbuffers::Offset<NestedResponse>> *>(4); }
+  bool Verify(flatbuffers::Verifier &verifier) const {
+    return VerifyTableStart(verifier) &&
+           VerifyField<flatbuffers::uoffset_t>(verifier, 4 /* responses */) &&
+           verifier.Verify(responses()) &&
+           verifier.VerifyVectorOfTables(responses()) &&
+           verifier.EndTable();
+  }
+};
+
+struct ResponseBatchBuilder {
+  flatbuffers::FlatBufferBuilder &fbb_;
+  flatbuffers::uoffset_t start_;
+  void add_responses(flatbuffers::Offset<flatbuffers::Vector<flatbuffers::Offset<NestedResponse>>> responses) { fbb_.AddOffset(4, responses); }
+  ResponseBatchBuilder(flatbuffers::FlatBufferBuilder &_fbb) : fbb_(_fbb) { start_ = fbb_.StartTable(); }
+  ResponseBatchBuilder &operator=(const ResponseBatchBuilder &);
+  flatbuffers::Offset<ResponseBatch> Finish() {
+    auto o = flatbuffers::Offset<ResponseBatch>(fbb_.EndTable(start_, 1));
+    return o;
+  }
+};
+
+inline flatbuffers::Offset<ResponseBatch> CreateResponseBatch(flatbuffers::FlatBufferBuilder &_fbb,
+   flatbuffers::Offset<flatbuffers::Vector<flatbuffers::Offset<NestedResponse>>> responses = 0) {
+  ResponseBatchBuilder builder_(_fbb);
+  builder_.add_responses(responses);
+  return builder_.Finish();
+}
+
 inline bool VerifyResponseType(flatbuffers::Verifier &verifier, const void *union_obj, ResponseType type) {
   switch (type) {
     case ResponseType_NONE: return true;
@@ -367,6 +523,18 @@ inline bool VerifyResponseType(flatbuffers::Verifier &verifier, const void *unio
     case ResponseType_MbWipeRomResponse: return verifier.VerifyTable(reinterpret_cast<const mbtool::daemon::v3::MbWipeRomResponse *>(union_obj));
     case ResponseType_MbGetPackagesCountResponse: return verifier.VerifyTable(reinterpret_cast<const mbtool::daemon::v3::MbGetPackagesCountResponse *>(union_obj));
     case ResponseType_RebootResponse: return verifier.VerifyTable(reinterpret_cast<const mbtool::daemon::v3::RebootResponse *>(union_obj));
+    case ResponseType_ResponseBatch: return verifier.VerifyTable(reinterpret_cast<const ResponseBatch *>(union_obj));
+    case ResponseType_PathOpenFdResponse: return verifier.VerifyTable(reinterpret_cast<const mbtool::daemon::v3::PathOpenFdResponse *>(union_obj));
+    case ResponseType_PathHashResponse: return verifier.VerifyTable(reinterpret_cast<const mbtool::daemon::v3::PathHashResponse *>(union_obj));
+    case ResponseType_SetCompressionResponse: return verifier.VerifyTable(reinterpret_cast<const mbtool::daemon::v3::SetCompressionResponse *>(union_obj));
+    case ResponseType_PathCopyStreamProgress: return verifier.VerifyTable(reinterpret_cast<const mbtool::daemon::v3::PathCopyStreamProgress *>(union_obj));
+    case ResponseType_PathCopyStreamResponse: return verifier.VerifyTable(reinterpret_cast<const mbtool::daemon::v3::PathCopyStreamResponse *>(union_obj));
+    case ResponseType_RequestCancelResponse: return verifier.VerifyTable(reinterpret_cast<const mbtool::daemon::v3::RequestCancelResponse *>(union_obj));
+    case ResponseType_PathGetDirectorySizeStreamProgress: return verifier.VerifyTable(reinterpret_cast<const mbtool::daemon::v3::PathGetDirectorySizeStreamProgress *>(union_obj));
+    case ResponseType_PathGetDirectorySizeStreamResponse: return verifier.VerifyTable(reinterpret_cast<const mbtool::daemon::v3::PathGetDirectorySizeStreamResponse *>(union_obj));
+    case ResponseType_EventSubscribeResponse: return verifier.VerifyTable(reinterpret_cast<const mbtool::daemon::v3::EventSubscribeResponse *>(union_obj));
+    case ResponseType_EventNotification: return verifier.VerifyTable(reinterpret_cast<const mbtool::daemon::v3::EventNotification *>(union_obj));
+    case ResponseType_PathListDirectoryResponse: return verifier.VerifyTable(reinterpret_cast<const mbtool::daemon::v3::PathListDirectoryResponse *>(union_obj));
     default: return false;
   }
 }
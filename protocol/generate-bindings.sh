@@ -25,6 +25,14 @@ files=(
     v3/mb_wipe_rom.fbs
     v3/mb_get_packages_count.fbs
     v3/reboot.fbs
+    v3/path_open_fd.fbs
+    v3/path_hash.fbs
+    v3/set_compression.fbs
+    v3/path_copy_stream.fbs
+    v3/request_cancel.fbs
+    v3/path_get_directory_size_stream.fbs
+    v3/event_subscribe.fbs
+    v3/path_list_directory.fbs
     request.fbs
     response.fbs
 )